@@ -0,0 +1,18 @@
+#!/bin/sh
+
+BINDIR="`dirname $0`"
+JARFILE="$BINDIR/../target/jpegfile-0.9-SNAPSHOT.jar"
+
+if [ "$1" == "" -o "$1" == "--help" -o "$1" == "-h" ]
+then
+	echo "Usage: jbatch.sh [--threads N] [--per-file [--in-flight N]] [--output <directory>] <directory> validate|headers|strip [all]|comment <comment string>"
+	exit 1;
+fi;
+
+if [ ! -e ${JARFILE} ]
+then
+	echo "You must build the project first with 'mvn package'."
+	exit 1;
+fi;
+
+java -classpath ${JARFILE} com.davidjohnburrowes.cli.Batch "$@"
@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.cli;
+
+import com.davidjohnburrowes.format.jpeg.batch.BatchExecutors;
+import com.davidjohnburrowes.format.jpeg.batch.BatchFailure;
+import com.davidjohnburrowes.format.jpeg.batch.BatchOperation;
+import com.davidjohnburrowes.format.jpeg.batch.BatchProcessor;
+import com.davidjohnburrowes.format.jpeg.batch.BatchReport;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.data.FrameSegment;
+import com.davidjohnburrowes.format.jpeg.marker.AppNSegment;
+import com.davidjohnburrowes.format.jpeg.marker.ComSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfxxSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.support.DataMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs one of a few simple operations over every JPEG file in a directory
+ * tree, using a BatchProcessor, and prints how it went.
+ */
+public class Batch {
+	/**
+	 * How many files to have in flight at once on virtual threads for each
+	 * processor, unless told otherwise. Each file in flight holds its bytes
+	 * and its parsed data in memory, so this is kept small: enough for one
+	 * file's I/O to overlap others' parsing, not enough to fill the heap
+	 * when the files are large.
+	 */
+	private static final int DEFAULT_VIRTUAL_IN_FLIGHT_PER_PROCESSOR = 8;
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int inFlight = 0;
+		boolean perFile = false;
+		Path output = null;
+		int index = 0;
+
+		while (index < args.length && args[index].startsWith("--")) {
+			if (args[index].equals("--per-file")) {
+				perFile = true;
+				index++;
+				continue;
+			}
+
+			if (args[index].equals("--threads") && index + 1 < args.length) {
+				threads = parseCount(args[index + 1]);
+			} else if (args[index].equals("--in-flight") && index + 1 < args.length) {
+				inFlight = parseCount(args[index + 1]);
+			} else if (args[index].equals("--output") && index + 1 < args.length) {
+				output = Paths.get(args[index + 1]);
+			} else {
+				usage();
+				return;
+			}
+			if (threads < 1 || inFlight < 0) {
+				System.out.println(args[index] + " must be a whole number, at least 1. Found " + args[index + 1]);
+				usage();
+				return;
+			}
+			index += 2;
+		}
+
+		if (args.length - index < 2) {
+			usage();
+			return;
+		}
+		Path root = Paths.get(args[index]);
+		String operationName = args[index + 1];
+		String argument = args.length - index > 2 ? args[index + 2] : null;
+
+		BatchOperation operation = makeOperation(operationName, argument);
+		if (operation == null) {
+			usage();
+			return;
+		}
+
+		BatchProcessor processor = new BatchProcessor(operation);
+		processor.setOutputDirectory(output);
+		if (operationName.equals("validate")) {
+			processor.setDataMode(DataMode.LAX);
+		}
+
+		ExecutorService executor;
+		ForkJoinPool pool = null;
+		if (perFile) {
+			executor = BatchExecutors.newPerFileExecutor(threads);
+			if (inFlight == 0) {
+				inFlight = BatchExecutors.hasVirtualThreads() ?
+						  DEFAULT_VIRTUAL_IN_FLIGHT_PER_PROCESSOR * Runtime.getRuntime().availableProcessors() :
+						  threads * 2;
+			}
+		} else {
+			pool = new ForkJoinPool(threads);
+			executor = pool;
+		}
+
+		try {
+			BatchReport report;
+			if (pool == null) {
+				report = processor.process(root, executor, inFlight);
+			} else {
+				report = processor.process(root, pool);
+			}
+			for (BatchFailure failure : report.getFailures()) {
+				System.out.println("FAILED: " + failure);
+			}
+			System.out.print(report);
+		} catch (Exception ex) {
+			System.out.println("EXCEPTION: " + ex);
+			ex.printStackTrace();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Runs an operation over every .jpg or .jpeg file in a directory tree. Call as:");
+		System.out.println("    bin/jbatch.sh [--threads N] [--per-file [--in-flight N]] [--output directory] <directory> <operation>");
+		System.out.println("where the operation is one of:");
+		System.out.println("    validate         report the problems with each file");
+		System.out.println("    headers          print the size and kind of each image");
+		System.out.println("    strip            remove APPn (but not JFIF, Adobe or ICC profile) and COM segments");
+		System.out.println("    strip all        remove APPn (but not JFIF) and COM segments, even if that");
+		System.out.println("                     changes the colors of the images");
+		System.out.println("    comment 'text'   add a comment to each file");
+		System.out.println("Changed files replace the originals, unless an output directory is given.");
+		System.out.println("--per-file gives each file a thread of its own: a virtual thread on Java 21 or");
+		System.out.println("later, or else one of --threads ordinary threads. That suits storage so slow");
+		System.out.println("that files spend most of their time waiting for it. Each file in flight is held");
+		System.out.println("in memory; --in-flight sets how many there may be (by default 8 per processor");
+		System.out.println("with virtual threads, or twice --threads).");
+	}
+
+	/**
+	 * @return The number, or -1 if it isn't a whole number of at least 1
+	 */
+	private static int parseCount(String value) {
+		try {
+			int count = Integer.parseInt(value);
+			return count >= 1 ? count : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static BatchOperation makeOperation(String name, String argument) {
+		switch (name) {
+			case "validate":
+				return (file, jpeg) -> {
+					List<Exception> problems = jpeg.validate();
+					if (!problems.isEmpty()) {
+						throw problems.get(0);
+					}
+					return false;
+				};
+			case "headers":
+				return (file, jpeg) -> {
+					for (DataItem item : jpeg) {
+						if (item instanceof FrameSegment) {
+							FrameSegment frame = (FrameSegment) item;
+							System.out.println(file + ": " + frame.getImageWidth() + "x" + frame.getImageHeight() +
+									  ", " + frame.getComponentCount() + " components, " +
+									  frame.getSamplePrecision() + " bits, " + frame.getFrameMode());
+							break;
+						}
+					}
+					return false;
+				};
+			case "strip":
+				if (argument != null && !argument.equals("all")) {
+					return null;
+				}
+				boolean keepColor = argument == null;
+				return (file, jpeg) -> {
+					boolean changed = false;
+					for (int index = jpeg.getItemCount() - 1; index >= 0; index--) {
+						DataItem item = jpeg.getItem(index);
+						if (keepColor && item instanceof AppNSegment && ((AppNSegment) item).describesColor()) {
+							continue;
+						}
+						if (item instanceof AppNSegment || item instanceof JfxxSegment || item instanceof ComSegment) {
+							jpeg.deleteItem(index);
+							changed = true;
+						}
+					}
+					return changed;
+				};
+			case "comment":
+				if (argument == null) {
+					return null;
+				}
+				return (file, jpeg) -> {
+					if (jpeg.getItemCount() == 0 || !(jpeg.getItem(0) instanceof SoiMarker)) {
+						throw new IllegalArgumentException("Did not find a Start Of Image (SOI) marker at the start of the file");
+					}
+
+					// A JFIF segment (and its JFXX segments) must come straight after SOI
+					int position = 1;
+					while (position < jpeg.getItemCount() && (jpeg.getItem(position) instanceof JfifSegment ||
+							  jpeg.getItem(position) instanceof JfxxSegment)) {
+						position++;
+					}
+
+					ComSegment comment = new ComSegment();
+					comment.setStringComment(argument);
+					jpeg.insertItem(position, comment);
+					return true;
+				};
+			default:
+				return null;
+		}
+	}
+}
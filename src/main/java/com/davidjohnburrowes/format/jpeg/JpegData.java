@@ -15,9 +15,11 @@
  */
 package com.davidjohnburrowes.format.jpeg;
 
+import com.davidjohnburrowes.format.jpeg.component.ThumbnailJpeg;
 import com.davidjohnburrowes.format.jpeg.data.DataItem;
 import com.davidjohnburrowes.format.jpeg.data.EntropyData;
 import com.davidjohnburrowes.format.jpeg.data.ExtraFf;
+import com.davidjohnburrowes.format.jpeg.data.FrameSegment;
 import com.davidjohnburrowes.format.jpeg.data.Marker;
 import com.davidjohnburrowes.format.jpeg.marker.AppNSegment;
 import com.davidjohnburrowes.format.jpeg.marker.ComSegment;
@@ -45,19 +47,26 @@ import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
 import com.davidjohnburrowes.format.jpeg.support.MarkerId;
 import com.davidjohnburrowes.format.jpeg.support.MarkerIdRange;
 import com.davidjohnburrowes.format.jpeg.support.MarkerIdSet;
+import com.davidjohnburrowes.format.jpeg.support.ValidationProfile;
 import com.davidjohnburrowes.format.jpeg.validate.NonHierarchicalValidator;
 import com.davidjohnburrowes.format.jpeg.validate.Validator;
+import com.davidjohnburrowes.util.ContentDigest;
 import com.davidjohnburrowes.util.Util;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * This class represents an entire Jpeg file. It can read and write a jpeg file
@@ -74,6 +83,12 @@ import java.util.List;
  * within the frame defined by that SOF segment get the FrameMode of that segment.
  */
 public class JpegData extends DataItem implements Iterable<DataItem> {
+	/**
+	 * The largest number of items a single parallel validation task will
+	 * validate before splitting its work in two.
+	 */
+	private static final int PARALLEL_VALIDATION_THRESHOLD = 8;
+
 	/**
 	 * The list of DataItems this is managing
 	 */
@@ -198,6 +213,25 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 		return item;
 	}
 
+	/**
+	 * Replaces a range of DataItems with others, updating the modes of all
+	 * the items once. This is much quicker than deleting and inserting them
+	 * one at a time when there are many items.
+	 *
+	 * @param fromIndex The index of the first DataItem to replace
+	 * @param toIndex The index just after the last DataItem to replace
+	 * @param items The DataItems to put in their place
+	 */
+	public void replaceItems(int fromIndex, int toIndex, List<? extends DataItem> items) {
+		List<DataItem> range = dataItems.subList(fromIndex, toIndex);
+		range.clear();
+		range.addAll(items);
+		for (DataItem item : items) {
+			item.setDataMode(getDataMode());
+		}
+		setModes();
+	}
+
 	/**
 	 * @return An iterator that will iterate over all the segments in the file
 	 */
@@ -228,6 +262,27 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 	 */
 	@Override
 	public void read(RandomAccessFile file) throws IOException {
+		read(file, ValidationProfile.FULL);
+	}
+
+	/**
+	 * Populates this instance from a random access file, just as read() does.
+	 * However, in STRICT mode the syntax check run after reading is done with
+	 * the specified profile.
+	 *
+	 * The profile doesn't change the checks made on each field as segments
+	 * are parsed, so it saves only the cost of the check after reading. In
+	 * LAX mode there is no check after reading, so the profile has no effect.
+	 *
+	 * @param file The file to read from (not null)
+	 * @param profile How much of the data to check after reading
+	 *
+	 * @throws IOException If something really unexpected happens when reading.
+	 */
+	public void read(RandomAccessFile file, ValidationProfile profile) throws IOException {
+		if (profile == null) {
+			throw new IllegalArgumentException("Validation profile may not be null");
+		}
 		if (file == null) {
 			throw new IllegalArgumentException("Input file may not be null");
 		}
@@ -301,10 +356,7 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 		}
 
 		setModes();
-
-		if (getDataMode() == DataMode.STRICT && !validate().isEmpty()) {
-			throw new InvalidJpegFormat("The JPEG file is invalid.", validate().get(0));
-		}
+		throwIfInvalid(profile);
 	}
 
 
@@ -318,6 +370,27 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 	 */
 	@Override
 	public void read(InputStream stream) throws IOException {
+		read(stream, ValidationProfile.FULL);
+	}
+
+	/**
+	 * Populates this instance from a stream, just as read() does. However, in
+	 * STRICT mode the syntax check run after reading is done with the specified
+	 * profile.
+	 *
+	 * The profile doesn't change the checks made on each field as segments
+	 * are parsed, so it saves only the cost of the check after reading. In
+	 * LAX mode there is no check after reading, so the profile has no effect.
+	 *
+	 * @param stream The stream to read from (not null)
+	 * @param profile How much of the data to check after reading
+	 *
+	 * @throws IOException If something really unexpected happens when reading.
+	 */
+	public void read(InputStream stream, ValidationProfile profile) throws IOException {
+		if (profile == null) {
+			throw new IllegalArgumentException("Validation profile may not be null");
+		}
 		if (stream == null) {
 			throw new IllegalArgumentException("Input stream may not be null");
 		}
@@ -401,10 +474,7 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 		}
 
 		setModes();
-
-		if (getDataMode() == DataMode.STRICT && !validate().isEmpty()) {
-			throw new InvalidJpegFormat("The JPEG file is invalid.", validate().get(0));
-		}
+		throwIfInvalid(profile);
 	}
 
 	/**
@@ -422,15 +492,115 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 	 */
 	@Override
 	public List<Exception> validate() {
+		return validate(ValidationProfile.FULL);
+	}
+
+	/**
+	 * Validates this instance, only asking the items the profile covers to
+	 * validate themselves. The validator is always run.
+	 *
+	 * @param profile How much of the data to check
+	 * @return a list of exceptions, as described by validate()
+	 */
+	public List<Exception> validate(ValidationProfile profile) {
+		if (profile == null) {
+			throw new IllegalArgumentException("Validation profile may not be null");
+		}
+
 		List<Exception> results = super.validate();
 
 		for (DataItem item : dataItems) {
-			results.addAll(item.validate());
+			if (isCoveredBy(profile, item)) {
+				results.addAll(item.validate());
+			}
 		}
 		results.addAll(validator.validate(dataItems));
 		return results;
 	}
 
+	/**
+	 * Validates this instance just as validate() does, but does the work on the
+	 * provided pool.  Each item's own validate() may run concurrently with the
+	 * others, and the validator runs alongside them.  The results are merged
+	 * so that they are in the same order that validate() would return them:
+	 * problems with the items in document order, followed by the problems
+	 * found by the validator.
+	 *
+	 * The image of a JFXX thumbnail is validated as a task of its own too.
+	 *
+	 * The items in this instance must not be changed while this is running.
+	 *
+	 * @param pool The pool to run the validation work on
+	 * @return a list of exceptions, as described by validate()
+	 */
+	public List<Exception> validate(ForkJoinPool pool) {
+		return validate(pool, ValidationProfile.FULL);
+	}
+
+	/**
+	 * Validates this instance just as validate(ValidationProfile) does, but
+	 * does the work on the provided pool, as validate(ForkJoinPool) does.
+	 *
+	 * @param pool The pool to run the validation work on
+	 * @param profile How much of the data to check
+	 * @return a list of exceptions, as described by validate()
+	 */
+	public List<Exception> validate(ForkJoinPool pool, ValidationProfile profile) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool may not be null");
+		}
+		if (profile == null) {
+			throw new IllegalArgumentException("Validation profile may not be null");
+		}
+
+		return pool.invoke(new ValidationTask(this, profile));
+	}
+
+	/**
+	 * Works out a digest of the parts of this that make up the image:
+	 * everything but APPn and COM segments and fill bytes. As Adobe and ICC
+	 * profile segments, and whether there is a JFIF segment, change the colors
+	 * the samples stand for, those are part of the digest too. Images with the
+	 * same digest have the same image, though their metadata may differ.
+	 * Each EntropyData keeps the digest of its data from when it was read, so
+	 * this doesn't go over the data again.
+	 *
+	 * @return The digest
+	 */
+	public ContentDigest getContentDigest() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			for (DataItem item : this) {
+				if (item instanceof EntropyData) {
+					ContentDigest digest = ((EntropyData) item).getDigest();
+					// A segment always starts 0xFF, so the 0 keeps these apart
+					bytes.write(0);
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						bytes.write((int) (digest.getHigh() >>> shift));
+					}
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						bytes.write((int) (digest.getLow() >>> shift));
+					}
+				} else if (item instanceof JfifSegment) {
+					// Only that there is one matters, not what is in it
+					bytes.write(0xFF);
+					bytes.write(JfifSegment.MARKERID);
+				} else if (item instanceof AppNSegment) {
+					if (((AppNSegment) item).describesColor()) {
+						item.write(bytes);
+					}
+				} else if (!(item instanceof JfxxSegment || item instanceof ComSegment || item instanceof ExtraFf)) {
+					item.write(bytes);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return ContentDigest.of(bytes.toByteArray());
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -548,6 +718,36 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 		}
 	}
 
+	/**
+	 * In STRICT mode, validates this with the specified profile and throws an
+	 * InvalidJpegFormat wrapping the first problem found, if any.
+	 */
+	private void throwIfInvalid(ValidationProfile profile) {
+		if (getDataMode() != DataMode.STRICT) {
+			return;
+		}
+
+		List<Exception> problems = validate(profile);
+		if (!problems.isEmpty()) {
+			throw new InvalidJpegFormat("The JPEG file is invalid.", problems.get(0));
+		}
+	}
+
+	/**
+	 * Returns true if the item should validate its own properties under the
+	 * specified profile.
+	 */
+	private static boolean isCoveredBy(ValidationProfile profile, DataItem item) {
+		switch (profile) {
+			case STRUCTURAL:
+				return false;
+			case FAST:
+				return item instanceof FrameSegment;
+			default:
+				return true;
+		}
+	}
+
 	/**
 	 * Examines the set of markerTypes this JpegData can make use of, and compares
 	 * the provided markerId against them, returning the subset of marker types
@@ -589,6 +789,94 @@ public class JpegData extends DataItem implements Iterable<DataItem> {
 		return matches;
 	}
 
+	/**
+	 * Top level task for validate(ForkJoinPool).  Forks the validator's work,
+	 * validates the items, and then merges the two sets of results.
+	 */
+	private static class ValidationTask extends RecursiveTask<List<Exception>> {
+		private static final long serialVersionUID = 1L;
+		private final JpegData jpeg;
+		private final ValidationProfile profile;
+
+		ValidationTask(JpegData jpeg, ValidationProfile profile) {
+			this.jpeg = jpeg;
+			this.profile = profile;
+		}
+
+		@Override
+		protected List<Exception> compute() {
+			ForkJoinTask<List<Exception>> structure = new RecursiveTask<List<Exception>>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected List<Exception> compute() {
+					return jpeg.validator.validate(jpeg.dataItems);
+				}
+			}.fork();
+
+			List<Exception> results = new ArrayList<Exception>();
+			results.addAll(new ItemValidationTask(jpeg.dataItems, profile, 0, jpeg.dataItems.size()).compute());
+			results.addAll(structure.join());
+
+			return results;
+		}
+	}
+
+	/**
+	 * Validates a range of items, splitting the range in two until it is
+	 * small enough to be worth doing directly.  The results of the left half
+	 * always precede those of the right half. The image of a JFXX thumbnail
+	 * is forked as a ValidationTask of its own, and its results go where the
+	 * thumbnail's would.
+	 */
+	private static class ItemValidationTask extends RecursiveTask<List<Exception>> {
+		private static final long serialVersionUID = 1L;
+		private final List<DataItem> items;
+		private final ValidationProfile profile;
+		private final int start;
+		private final int end;
+
+		ItemValidationTask(List<DataItem> items, ValidationProfile profile, int start, int end) {
+			this.items = items;
+			this.profile = profile;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected List<Exception> compute() {
+			if (end - start <= PARALLEL_VALIDATION_THRESHOLD) {
+				List<Exception> results = new ArrayList<Exception>();
+				for (int index = start; index < end; index++) {
+					DataItem item = items.get(index);
+					if (!isCoveredBy(profile, item)) {
+						continue;
+					}
+					if (item instanceof JfxxSegment && ((JfxxSegment) item).getThumbnail() instanceof ThumbnailJpeg) {
+						JpegData thumbnail = ((ThumbnailJpeg) ((JfxxSegment) item).getThumbnail()).getJpegImage();
+						ForkJoinTask<List<Exception>> image =
+								  new ValidationTask(thumbnail, ValidationProfile.FULL).fork();
+						results.addAll(((JfxxSegment) item).validateSegment());
+						results.addAll(image.join());
+					} else {
+						results.addAll(item.validate());
+					}
+				}
+				return results;
+			}
+
+			int middle = (start + end) >>> 1;
+			ItemValidationTask left = new ItemValidationTask(items, profile, start, middle);
+			ItemValidationTask right = new ItemValidationTask(items, profile, middle, end);
+
+			right.fork();
+			List<Exception> results = left.compute();
+			results.addAll(right.join());
+
+			return results;
+		}
+	}
+
 	/**
 	 * Returns true if the specified markerID is in the range specifiedby the
 	 * MarkerIdRange annotation
@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for running a batch with a thread for each file in flight.
+ *
+ * On Java 21 and later these use virtual threads, which are cheap enough
+ * that tens of thousands of files can be waiting on slow storage at once,
+ * on a few carrier threads. This library builds for Java 8, so the virtual
+ * thread executor is looked up by reflection, and on older Javas a pool of
+ * ordinary threads is used instead.
+ */
+public final class BatchExecutors {
+	private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+	private BatchExecutors() {
+	}
+
+	/**
+	 * Finds the virtual thread executor factory, and makes sure it works by
+	 * making (and closing) an executor with it. On Java 19 and 20 the method
+	 * is there, but is a preview API that throws unless preview features are
+	 * enabled.
+	 */
+	private static Method findVirtualExecutorFactory() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			((ExecutorService) factory.invoke(null)).shutdown();
+			return factory;
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException |
+				  RuntimeException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return True if this Java has virtual threads that can be used (on Java
+	 * 19 and 20, only if preview features are enabled)
+	 */
+	public static boolean hasVirtualThreads() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * @return An executor that starts a new virtual thread for each task
+	 * @throws UnsupportedOperationException If this Java has no virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (NEW_VIRTUAL_EXECUTOR == null) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later " +
+					  "(or preview features on 19 and 20). This is Java " + System.getProperty("java.version"));
+		}
+
+		try {
+			return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException("Could not use virtual threads", e);
+		} catch (InvocationTargetException e) {
+			throw new UnsupportedOperationException("Could not use virtual threads", e.getCause());
+		}
+	}
+
+	/**
+	 * @param platformThreads The number of threads to use if there are no
+	 * virtual threads
+	 * @return An executor with a virtual thread for each task, if this Java has
+	 * them, or else a fixed pool of ordinary threads
+	 */
+	public static ExecutorService newPerFileExecutor(int platformThreads) {
+		if (platformThreads < 1) {
+			throw new IllegalArgumentException("There must be at least 1 thread. Found " + platformThreads);
+		}
+
+		if (hasVirtualThreads()) {
+			return newVirtualThreadPerTaskExecutor();
+		}
+		return Executors.newFixedThreadPool(platformThreads);
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+import java.nio.file.Path;
+
+/**
+ * A file of a batch that couldn't be processed, and why
+ */
+public final class BatchFailure {
+	private final Path file;
+	private final BatchStage stage;
+	private final Exception exception;
+
+	/**
+	 * @param file The file
+	 * @param stage The stage that failed
+	 * @param exception What went wrong
+	 */
+	public BatchFailure(Path file, BatchStage stage, Exception exception) {
+		this.file = file;
+		this.stage = stage;
+		this.exception = exception;
+	}
+
+	/**
+	 * @return The file
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return The stage that failed
+	 */
+	public BatchStage getStage() {
+		return stage;
+	}
+
+	/**
+	 * @return What went wrong
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	@Override
+	public String toString() {
+		return file + " (" + stage + "): " + exception;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import java.nio.file.Path;
+
+/**
+ * Something done to each file of a batch. One operation is used for all of
+ * the files, from several threads at once, so it must be thread safe.
+ */
+public interface BatchOperation {
+
+	/**
+	 * Does the operation to one file. Throwing anything marks the file as
+	 * failed, and it is not written.
+	 *
+	 * @param file The file the image was read from
+	 * @param jpeg The image
+	 * @return True if the image was changed and should be written out
+	 * @throws Exception If the operation failed for this file
+	 */
+	boolean process(Path file, JpegData jpeg) throws Exception;
+}
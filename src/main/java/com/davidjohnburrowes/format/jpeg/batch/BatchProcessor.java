@@ -0,0 +1,499 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.support.DataMode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Runs a BatchOperation over every JPEG file in a directory tree.
+ *
+ * Each directory and each file is a task on a ForkJoinPool, so idle threads
+ * steal work from busy ones, and large directories are shared out. A file is
+ * read into memory in one go, parsed, passed to the operation, and (if the
+ * operation changed it) written out, either over the original or to the
+ * same place in an output directory. Reading, listing and writing block in
+ * ForkJoinPool.managedBlock, so the pool starts extra threads while others
+ * wait for the disk, and one file's I/O overlaps another's parsing.
+ *
+ * Where the storage is slow (a network file system, say) and files spend
+ * most of their time waiting for it, a batch can instead be run with a
+ * thread for each file on an ExecutorService: one from
+ * BatchExecutors.newPerFileExecutor gives each file a virtual thread, on
+ * Javas that have them. The tree is then walked by the calling thread, and
+ * a limit on the files in flight bounds the memory used.
+ *
+ * Either way, links found in the tree are not followed: a link to a file is
+ * skipped, as is a link to a directory. The root of the batch may be a link.
+ *
+ * A file that can't be read, parsed, processed or written is recorded in
+ * the report, and the batch carries on with the others.
+ */
+public class BatchProcessor {
+	private final BatchOperation operation;
+	private DataMode dataMode;
+	private Path outputDirectory;
+	private Predicate<Path> filter;
+
+	/**
+	 * @param operation What to do to each file
+	 */
+	public BatchProcessor(BatchOperation operation) {
+		if (operation == null) {
+			throw new IllegalArgumentException("operation may not be null");
+		}
+
+		this.operation = operation;
+		this.dataMode = DataMode.STRICT;
+		this.outputDirectory = null;
+		this.filter = BatchProcessor::hasJpegExtension;
+	}
+
+	/**
+	 * @param mode The mode to read files in. STRICT (the default) makes
+	 * invalid files fail when they're parsed
+	 */
+	public void setDataMode(DataMode mode) {
+		if (mode == null) {
+			throw new IllegalArgumentException("mode may not be null");
+		}
+
+		this.dataMode = mode;
+	}
+
+	/**
+	 * @param directory Where to write changed files, at the same path relative
+	 * to it as they had to the batch's directory; or null (the default) to
+	 * replace the original files
+	 */
+	public void setOutputDirectory(Path directory) {
+		this.outputDirectory = directory;
+	}
+
+	/**
+	 * @param filter Says which files to process. The default takes files
+	 * ending .jpg or .jpeg, in any case
+	 */
+	public void setFilter(Predicate<Path> filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("filter may not be null");
+		}
+
+		this.filter = filter;
+	}
+
+	/**
+	 * Processes every file in a directory tree, on a new pool with a thread
+	 * for each processor.
+	 *
+	 * @param root The directory (or a single file)
+	 * @return What happened
+	 */
+	public BatchReport process(Path root) {
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			return process(root, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Processes every file in a directory tree.
+	 *
+	 * @param root The directory (or a single file)
+	 * @param pool The pool to do the work on
+	 * @return What happened
+	 */
+	public BatchReport process(Path root, ForkJoinPool pool) {
+		if (root == null || pool == null) {
+			throw new IllegalArgumentException("root and pool may not be null");
+		}
+		if (!Files.exists(root)) {
+			throw new IllegalArgumentException(root + " does not exist");
+		}
+
+		BatchStatistics statistics = new BatchStatistics();
+		long start = System.nanoTime();
+		if (Files.isDirectory(root)) {
+			pool.invoke(new DirectoryTask(root, root, statistics));
+		} else {
+			pool.invoke(new FileTask(root.toAbsolutePath().getParent(), root, statistics));
+		}
+
+		return statistics.report(System.nanoTime() - start);
+	}
+
+	/**
+	 * Processes every file in a directory tree, each as a task of its own on
+	 * an executor. The calling thread walks the tree, submitting files as it finds them, and waits while there are too many
+	 * in flight. Each file in flight holds its bytes in memory.
+	 *
+	 * This doesn't return, normally or not, until no submitted file is still
+	 * being processed. If the walk fails or this thread is interrupted, files
+	 * that haven't been started yet are skipped, and only those already being
+	 * processed are waited for.
+	 *
+	 * @param root The directory (or a single file)
+	 * @param executor The executor to process the files on
+	 * @param maxInFlight The most files to have submitted but not finished
+	 * @return What happened
+	 * @throws InterruptedException If this thread is interrupted while waiting
+	 * for files to finish
+	 */
+	public BatchReport process(Path root, ExecutorService executor, int maxInFlight) throws InterruptedException {
+		if (root == null || executor == null) {
+			throw new IllegalArgumentException("root and executor may not be null");
+		}
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least 1 file must be allowed in flight. Found " + maxInFlight);
+		}
+		if (!Files.exists(root)) {
+			throw new IllegalArgumentException(root + " does not exist");
+		}
+
+		BatchStatistics statistics = new BatchStatistics();
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		Path base = Files.isDirectory(root) ? root : root.toAbsolutePath().getParent();
+		long start = System.nanoTime();
+		boolean finished = false;
+
+		try {
+			if (Files.isDirectory(root)) {
+				submitDirectory(root, root, statistics, executor, inFlight, cancelled);
+			} else {
+				submit(base, root, statistics, executor, inFlight, cancelled);
+			}
+
+			inFlight.acquire(maxInFlight);
+			finished = true;
+		} catch (WalkInterrupted e) {
+			throw e.interruption;
+		} finally {
+			if (!finished) {
+				cancelled.set(true);
+				inFlight.acquireUninterruptibly(maxInFlight);
+			}
+		}
+
+		return statistics.report(System.nanoTime() - start);
+	}
+
+	/**
+	 * Lists a directory, submitting each file the batch takes and doing the
+	 * same for each directory below it (as DirectoryTask does)
+	 */
+	private void submitDirectory(Path root, Path directory, BatchStatistics statistics, ExecutorService executor,
+			  Semaphore inFlight, AtomicBoolean cancelled) {
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (Path entry : entries) {
+				if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+					submitDirectory(root, entry, statistics, executor, inFlight, cancelled);
+				} else if (isBatchFile(entry)) {
+					submit(root, entry, statistics, executor, inFlight, cancelled);
+				}
+			}
+		} catch (IOException e) {
+			statistics.addFailure(new BatchFailure(directory, BatchStage.READ, e));
+		}
+	}
+
+	/**
+	 * Says whether an entry found in a directory is to be processed: a regular
+	 * file (not a link to one) that the filter takes
+	 */
+	private boolean isBatchFile(Path entry) {
+		return Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS) && filter.test(entry);
+	}
+
+	/**
+	 * Submits one file to an executor, once there's room for it in flight.
+	 * The file is skipped if the batch is cancelled before it's started.
+	 */
+	private void submit(Path root, Path file, BatchStatistics statistics, ExecutorService executor,
+			  Semaphore inFlight, AtomicBoolean cancelled) {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			throw new WalkInterrupted(e);
+		}
+
+		try {
+			executor.execute(() -> {
+				try {
+					if (!cancelled.get()) {
+						processFile(root, file, statistics);
+					}
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Carries an interruption out of a file tree walk
+	 */
+	private static final class WalkInterrupted extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final InterruptedException interruption;
+
+		WalkInterrupted(InterruptedException interruption) {
+			this.interruption = interruption;
+		}
+	}
+
+	/**
+	 * Reads, processes and writes one file, recording how it went.
+	 *
+	 * @param root The directory of the batch
+	 * @param file The file
+	 * @param statistics Where to record how it went
+	 */
+	void processFile(Path root, Path file, BatchStatistics statistics) {
+		BatchStage stage = BatchStage.READ;
+		try {
+			long time = System.nanoTime();
+			byte[] bytes = blockOn(() -> Files.readAllBytes(file));
+			statistics.addBytesRead(bytes.length);
+			time = endStage(statistics, stage, time);
+
+			stage = BatchStage.PARSE;
+			JpegData jpeg = new JpegData();
+			jpeg.setDataMode(dataMode);
+			jpeg.read(new ByteArrayInputStream(bytes));
+			time = endStage(statistics, stage, time);
+
+			stage = BatchStage.OPERATION;
+			boolean changed = operation.process(file, jpeg);
+			time = endStage(statistics, stage, time);
+
+			if (changed) {
+				stage = BatchStage.WRITE;
+				ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length + 1024);
+				jpeg.write(output);
+				write(output, outputFor(root, file), file);
+				statistics.addWritten(output.size());
+				endStage(statistics, stage, time);
+			}
+		} catch (Exception e) {
+			statistics.addFailure(new BatchFailure(file, stage, e));
+		} finally {
+			statistics.addFile();
+		}
+	}
+
+	private static long endStage(BatchStatistics statistics, BatchStage stage, long start) {
+		long now = System.nanoTime();
+		statistics.addTime(stage, now - start);
+		return now;
+	}
+
+	/**
+	 * Works out where a changed file goes
+	 */
+	private Path outputFor(Path root, Path file) {
+		if (outputDirectory == null) {
+			return file;
+		}
+
+		return outputDirectory.resolve(root.relativize(file).toString());
+	}
+
+	/**
+	 * Writes bytes to a file. A file being replaced is written under another
+	 * name first, then moved into place, so it is never left half written.
+	 * Where the target is a link, the file it links to is replaced, not the
+	 * link. The new file gets the permissions of the one it replaces (or, if
+	 * there isn't one, of the original), rather than those of a temporary
+	 * file, which only its owner can read.
+	 *
+	 * @param bytes What to write
+	 * @param target Where to write it
+	 * @param original The file the bytes were made from
+	 */
+	private static void write(ByteArrayOutputStream bytes, Path target, Path original) throws IOException {
+		blockOn(() -> {
+			Path destination = Files.exists(target) ? target.toRealPath() : target.toAbsolutePath();
+			Path directory = destination.getParent();
+			Files.createDirectories(directory);
+			Path temporary = Files.createTempFile(directory, ".batch", ".tmp");
+			try {
+				try (OutputStream output = Files.newOutputStream(temporary)) {
+					bytes.writeTo(output);
+				}
+				copyPermissions(Files.exists(destination) ? destination : original, temporary);
+				Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Gives one file the POSIX permissions of another, where the file system
+	 * has them
+	 */
+	private static void copyPermissions(Path from, Path to) throws IOException {
+		PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+		if (view != null) {
+			view.setPermissions(Files.getPosixFilePermissions(from));
+		}
+	}
+
+	/**
+	 * The default filter: files ending .jpg or .jpeg
+	 */
+	static boolean hasJpegExtension(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+		return name.endsWith(".jpg") || name.endsWith(".jpeg");
+	}
+
+	/**
+	 * Some I/O that may block
+	 */
+	interface Io<T> {
+		T run() throws IOException;
+	}
+
+	/**
+	 * Does some I/O, telling the pool (if this is one of its threads) that
+	 * the thread may block, so that it can start another to keep busy.
+	 */
+	static <T> T blockOn(Io<T> io) throws IOException {
+		IoBlocker<T> blocker = new IoBlocker<T>(io);
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		}
+		if (blocker.exception != null) {
+			throw blocker.exception;
+		}
+		return blocker.result;
+	}
+
+	private static final class IoBlocker<T> implements ForkJoinPool.ManagedBlocker {
+		private final Io<T> io;
+		private boolean done;
+		private T result;
+		private IOException exception;
+
+		IoBlocker(Io<T> io) {
+			this.io = io;
+		}
+
+		@Override
+		public boolean block() {
+			try {
+				result = io.run();
+			} catch (IOException e) {
+				exception = e;
+			}
+			done = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+	}
+
+	/**
+	 * Lists a directory and processes what's in it: a task for each file the
+	 * filter takes and each directory below it (not following links).
+	 */
+	private class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path root;
+		private final Path directory;
+		private final BatchStatistics statistics;
+
+		DirectoryTask(Path root, Path directory, BatchStatistics statistics) {
+			this.root = root;
+			this.directory = directory;
+			this.statistics = statistics;
+		}
+
+		@Override
+		protected void compute() {
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			try {
+				blockOn(() -> {
+					try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+						for (Path entry : entries) {
+							if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+								tasks.add(new DirectoryTask(root, entry, statistics));
+							} else if (isBatchFile(entry)) {
+								tasks.add(new FileTask(root, entry, statistics));
+							}
+						}
+					}
+					return null;
+				});
+			} catch (IOException e) {
+				statistics.addFailure(new BatchFailure(directory, BatchStage.READ, e));
+			}
+
+			invokeAll(tasks);
+		}
+	}
+
+	private class FileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path root;
+		private final Path file;
+		private final BatchStatistics statistics;
+
+		FileTask(Path root, Path file, BatchStatistics statistics) {
+			this.root = root;
+			this.file = file;
+			this.statistics = statistics;
+		}
+
+		@Override
+		protected void compute() {
+			processFile(root, file, statistics);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What happened when a batch was run: how many files there were, how fast
+ * they went, which failed, and how long each stage took.
+ */
+public final class BatchReport {
+	private final long fileCount;
+	private final long writtenCount;
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final long elapsedNanos;
+	private final long[] stageCounts;
+	private final long[] stageTotalNanos;
+	private final long[] stageMaxNanos;
+	private final List<BatchFailure> failures;
+
+	BatchReport(long fileCount, long writtenCount, long bytesRead, long bytesWritten, long elapsedNanos,
+			  long[] stageCounts, long[] stageTotalNanos, long[] stageMaxNanos, List<BatchFailure> failures) {
+		this.fileCount = fileCount;
+		this.writtenCount = writtenCount;
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.elapsedNanos = elapsedNanos;
+		this.stageCounts = stageCounts;
+		this.stageTotalNanos = stageTotalNanos;
+		this.stageMaxNanos = stageMaxNanos;
+		this.failures = Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * @return The number of files processed, including those that failed
+	 */
+	public long getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * @return The number of files written out
+	 */
+	public long getWrittenCount() {
+		return writtenCount;
+	}
+
+	/**
+	 * @return The number of files that failed
+	 */
+	public long getFailureCount() {
+		return failures.size();
+	}
+
+	/**
+	 * @return The files that failed, in no particular order
+	 */
+	public List<BatchFailure> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return The number of bytes read from the files
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of bytes written out
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return How long the batch took, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return The number of files processed per second
+	 */
+	public double getFilesPerSecond() {
+		return perSecond(fileCount);
+	}
+
+	/**
+	 * @return The number of megabytes (of 1,000,000 bytes) read per second
+	 */
+	public double getMegabytesPerSecond() {
+		return perSecond(bytesRead) / 1e6;
+	}
+
+	/**
+	 * @param stage A stage
+	 * @return The number of files that went through the stage
+	 */
+	public long getStageCount(BatchStage stage) {
+		return stageCounts[stage.ordinal()];
+	}
+
+	/**
+	 * @param stage A stage
+	 * @return The total time spent in the stage by all files, in nanoseconds.
+	 * As files are processed at the same time, this can be more than the
+	 * elapsed time.
+	 */
+	public long getStageTotalNanos(BatchStage stage) {
+		return stageTotalNanos[stage.ordinal()];
+	}
+
+	/**
+	 * @param stage A stage
+	 * @return The average time a file spent in the stage, in nanoseconds
+	 */
+	public long getStageMeanNanos(BatchStage stage) {
+		long count = getStageCount(stage);
+		return count == 0 ? 0 : getStageTotalNanos(stage) / count;
+	}
+
+	/**
+	 * @param stage A stage
+	 * @return The longest time a file spent in the stage, in nanoseconds
+	 */
+	public long getStageMaxNanos(BatchStage stage) {
+		return stageMaxNanos[stage.ordinal()];
+	}
+
+	private double perSecond(long count) {
+		return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return A summary of the report, over several lines
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%d files (%d written, %d failed) in %.3f s: %.1f files/s, %.1f MB/s%n",
+				  fileCount, writtenCount, getFailureCount(), elapsedNanos / 1e9, getFilesPerSecond(),
+				  getMegabytesPerSecond()));
+		for (BatchStage stage : BatchStage.values()) {
+			builder.append(String.format("  %-9s %8d files, mean %9.3f ms, max %9.3f ms%n", stage,
+					  getStageCount(stage), getStageMeanNanos(stage) / 1e6, getStageMaxNanos(stage) / 1e6));
+		}
+		return builder.toString();
+	}
+}
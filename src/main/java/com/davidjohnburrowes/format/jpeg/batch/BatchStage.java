@@ -0,0 +1,41 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+/**
+ * The stages of the work done for each file of a batch
+ */
+public enum BatchStage {
+	/**
+	 * Reading the file's bytes
+	 */
+	READ,
+
+	/**
+	 * Parsing the bytes into a JpegData
+	 */
+	PARSE,
+
+	/**
+	 * Running the BatchOperation
+	 */
+	OPERATION,
+
+	/**
+	 * Writing the changed image out
+	 */
+	WRITE
+}
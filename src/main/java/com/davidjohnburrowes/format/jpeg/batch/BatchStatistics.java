@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.batch;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the counts and timings of a batch as its files are processed,
+ * from any number of threads at once.
+ */
+final class BatchStatistics {
+	private final LongAdder files = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder[] stageCounts = new LongAdder[BatchStage.values().length];
+	private final LongAdder[] stageNanos = new LongAdder[BatchStage.values().length];
+	private final LongAccumulator[] stageMaxNanos = new LongAccumulator[BatchStage.values().length];
+	private final ConcurrentLinkedQueue<BatchFailure> failures = new ConcurrentLinkedQueue<BatchFailure>();
+
+	BatchStatistics() {
+		for (int stage = 0; stage < stageCounts.length; stage++) {
+			stageCounts[stage] = new LongAdder();
+			stageNanos[stage] = new LongAdder();
+			stageMaxNanos[stage] = new LongAccumulator(Math::max, 0);
+		}
+	}
+
+	/**
+	 * Records that a file has been processed, successfully or not
+	 */
+	void addFile() {
+		files.increment();
+	}
+
+	void addBytesRead(long count) {
+		bytesRead.add(count);
+	}
+
+	void addWritten(long count) {
+		written.increment();
+		bytesWritten.add(count);
+	}
+
+	/**
+	 * Records how long one file spent in a stage
+	 */
+	void addTime(BatchStage stage, long nanos) {
+		stageCounts[stage.ordinal()].increment();
+		stageNanos[stage.ordinal()].add(nanos);
+		stageMaxNanos[stage.ordinal()].accumulate(nanos);
+	}
+
+	void addFailure(BatchFailure failure) {
+		failures.add(failure);
+	}
+
+	/**
+	 * @param elapsedNanos How long the whole batch took
+	 * @return A report of everything recorded so far
+	 */
+	BatchReport report(long elapsedNanos) {
+		long[] counts = new long[stageCounts.length];
+		long[] totals = new long[stageCounts.length];
+		long[] maximums = new long[stageCounts.length];
+		for (int stage = 0; stage < stageCounts.length; stage++) {
+			counts[stage] = stageCounts[stage].sum();
+			totals[stage] = stageNanos[stage].sum();
+			maximums[stage] = stageMaxNanos[stage].get();
+		}
+
+		return new BatchReport(files.sum(), written.sum(), bytesRead.sum(), bytesWritten.sum(), elapsedNanos,
+				  counts, totals, maximums, new ArrayList<BatchFailure>(failures));
+	}
+}
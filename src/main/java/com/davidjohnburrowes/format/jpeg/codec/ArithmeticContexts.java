@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.Arrays;
+
+/**
+ * The statistics areas and conditioning of an arithmetic coded DCT scan, and
+ * the DC state that carries from block to block, for each component of the
+ * scan. Components whose tables have the same selector share statistics, as
+ * section F.1.4.4 of the standard requires. ArithmeticScanDecoder and
+ * ArithmeticScanEncoder both use this, so their contexts always match.
+ *
+ * The statistics bins are laid out as in tables F.4 and F.5 of the standard.
+ */
+final class ArithmeticContexts {
+	/**
+	 * The number of DC statistics bins: 5 contexts of 4 bins, then the
+	 * magnitude category bins X1-X15 and magnitude bit bins M2-M15
+	 */
+	static final int DC_BINS = 64;
+
+	/**
+	 * The number of AC statistics bins: 3 bins for each of the 63 coefficients,
+	 * then the magnitude category and bit bins for low and high coefficients
+	 */
+	static final int AC_BINS = 256;
+
+	/**
+	 * The bin of the first DC magnitude category after X1
+	 */
+	static final int DC_MAGNITUDE = 20;
+
+	/**
+	 * The bin of the second AC magnitude category for coefficients at or below
+	 * Kx
+	 */
+	static final int AC_LOW_MAGNITUDE = 189;
+
+	/**
+	 * The bin of the second AC magnitude category for coefficients above Kx
+	 */
+	static final int AC_HIGH_MAGNITUDE = 217;
+
+	/**
+	 * How far the magnitude bit bins are past the magnitude category bins
+	 */
+	static final int MAGNITUDE_BITS = 14;
+
+	final byte[][] dcStats;
+	final byte[][] acStats;
+	final int[] dcSmall;
+	final int[] dcLarge;
+	final int[] acLimit;
+	final int[] lastDc;
+	final int[] dcContext;
+	final byte[] fixed = new byte[1];
+	private final byte[][] dcAreas = new byte[4][];
+	private final byte[][] acAreas = new byte[4][];
+
+	/**
+	 * @param header The header of the scan
+	 * @param dcConditioning The DC conditioning tables in effect, indexed by
+	 *			selector. Missing tables use the defaults (L = 0, U = 1).
+	 * @param acConditioning The AC conditioning tables in effect, indexed by
+	 *			selector. Missing tables use the default (Kx = 5).
+	 */
+	ArithmeticContexts(SosSegment header, DacConditioningTable[] dcConditioning,
+			  DacConditioningTable[] acConditioning) {
+		int count = header.getComponentSpecCount();
+
+		dcStats = new byte[count][];
+		acStats = new byte[count][];
+		dcSmall = new int[count];
+		dcLarge = new int[count];
+		acLimit = new int[count];
+		lastDc = new int[count];
+		dcContext = new int[count];
+
+		for (int index = 0; index < count; index++) {
+			SosComponentSpec spec = header.getComponentSpec(index);
+			int dcSelector = spec.getDcTableSelector();
+			int acSelector = spec.getAcTableSelector();
+
+			if (dcAreas[dcSelector] == null) {
+				dcAreas[dcSelector] = new byte[DC_BINS];
+			}
+			if (acAreas[acSelector] == null) {
+				acAreas[acSelector] = new byte[AC_BINS];
+			}
+			dcStats[index] = dcAreas[dcSelector];
+			acStats[index] = acAreas[acSelector];
+
+			DacConditioningTable dc = (dcConditioning == null) ? null : dcConditioning[dcSelector];
+			int lower = (dc == null) ? 0 : dc.getTableValue() & 0x0F;
+			int upper = (dc == null) ? 1 : dc.getTableValue() >> 4;
+			if (lower > upper) {
+				throw new InvalidJpegFormat("DC conditioning table " + dcSelector + " has L (" + lower +
+						  ") greater than U (" + upper + ")");
+			}
+			dcSmall[index] = (1 << lower) >> 1;
+			dcLarge[index] = (1 << upper) >> 1;
+
+			DacConditioningTable ac = (acConditioning == null) ? null : acConditioning[acSelector];
+			acLimit[index] = (ac == null) ? 5 : ac.getTableValue();
+			if (acLimit[index] < 1 || acLimit[index] > 63) {
+				throw new InvalidJpegFormat("AC conditioning table " + acSelector + " has Kx " +
+						  acLimit[index] + " which is outside [1,63]");
+			}
+		}
+
+		fixed[0] = (byte) ArithmeticDecoder.FIXED_STATE;
+	}
+
+	/**
+	 * Resets the statistics at the start of a restart interval (section
+	 * F.1.4.4 of the standard).
+	 *
+	 * @param dc True if the scan codes DC differences
+	 * @param ac True if the scan codes AC coefficients
+	 */
+	void reset(boolean dc, boolean ac) {
+		if (dc) {
+			for (byte[] area : dcAreas) {
+				if (area != null) {
+					Arrays.fill(area, (byte) 0);
+				}
+			}
+			Arrays.fill(lastDc, 0);
+			Arrays.fill(dcContext, 0);
+		}
+		if (ac) {
+			for (byte[] area : acAreas) {
+				if (area != null) {
+					Arrays.fill(area, (byte) 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out the DC context of the next block of a component from the
+	 * magnitude category of this one (section F.1.4.4.1.2 of the standard).
+	 *
+	 * @param index The index of the component in the scan
+	 * @param magnitude 2 to the power of the magnitude category, less 1, or 0
+	 * @param negative True if the difference was negative
+	 */
+	void setDcContext(int index, int magnitude, boolean negative) {
+		if (magnitude < dcSmall[index]) {
+			dcContext[index] = 0;
+		} else if (magnitude > dcLarge[index]) {
+			dcContext[index] = negative ? 16 : 12;
+		} else {
+			dcContext[index] = negative ? 8 : 4;
+		}
+	}
+}
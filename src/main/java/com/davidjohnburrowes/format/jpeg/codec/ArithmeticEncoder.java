@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import java.util.Arrays;
+
+/**
+ * The QM-coder's encoding procedures (Annex D.1 of the standard), producing
+ * the entropy coded data of one restart interval as EntropyData holds it:
+ * without 0x00 bytes stuffed after each 0xFF, since EntropyData adds those
+ * when it is written. Trailing 0x00 bytes are left off (section D.1.8 allows
+ * this, since the decoder supplies them once the data runs out), except for
+ * one if there would otherwise be no data at all.
+ *
+ * This uses the same statistics areas and state table as ArithmeticDecoder.
+ */
+final class ArithmeticEncoder {
+	private byte[] output = new byte[4096];
+	private int length;
+	private long c;
+	private int a;
+	private int stackedFfs;
+	private int pendingZeros;
+	private int ct;
+	private int buffer;
+
+	ArithmeticEncoder() {
+		reset();
+	}
+
+	/**
+	 * Starts encoding a new restart interval (section D.1.7 of the standard)
+	 */
+	void reset() {
+		length = 0;
+		c = 0;
+		a = 0x10000;
+		stackedFfs = 0;
+		pendingZeros = 0;
+		ct = 11;
+		buffer = -1;
+	}
+
+	/**
+	 * Encodes one decision, updating the estimate of its context (sections
+	 * D.1.4 and D.1.5 of the standard).
+	 *
+	 * @param states The statistics area
+	 * @param index The context within it
+	 * @param decision The decision, 0 or 1
+	 */
+	void encode(byte[] states, int index, int decision) {
+		int state = states[index] & 0xFF;
+		int packed = ArithmeticDecoder.STATES[state & 0x7F];
+		int qe = packed >>> 16;
+		int mostProbable = state & 0x80;
+
+		a -= qe;
+		if (decision != (state >> 7)) {
+			if (a >= qe) {
+				c += a;
+				a = qe;
+			}
+			states[index] = (byte) (mostProbable ^ (packed & 0xFF));
+		} else {
+			if (a >= 0x8000) {
+				return;
+			}
+			if (a < qe) {
+				c += a;
+				a = qe;
+			}
+			states[index] = (byte) (mostProbable ^ ((packed >> 8) & 0xFF));
+		}
+
+		// Renormalization and output, section D.1.6
+		do {
+			a <<= 1;
+			c <<= 1;
+			if (--ct == 0) {
+				int next = (int) (c >> 19);
+				if (next > 0xFF) {
+					carry();
+					// The spacer bits in C mean the new byte can't be 0xFF
+					buffer = next & 0xFF;
+				} else if (next == 0xFF) {
+					stackedFfs++;
+				} else {
+					flushStacked();
+					buffer = next;
+				}
+				c &= 0x7FFFF;
+				ct += 8;
+			}
+		} while (a < 0x8000);
+	}
+
+	/**
+	 * Ends the restart interval (section D.1.8 of the standard), placing C at
+	 * the value in the final interval with the most trailing zero bits.
+	 *
+	 * @return The entropy coded data of the interval
+	 */
+	byte[] finish() {
+		long temp = (a - 1 + c) & 0xFFFF0000L;
+		c = (temp < c) ? temp + 0x8000 : temp;
+		c <<= ct;
+		if ((c & 0xF8000000L) != 0) {
+			carry();
+		} else {
+			flushStacked();
+		}
+
+		if ((c & 0x7FFF800L) != 0) {
+			emitPendingZeros();
+			emit((int) (c >> 19) & 0xFF);
+			if ((c & 0x7F800L) != 0) {
+				emit((int) (c >> 11) & 0xFF);
+			}
+		}
+		if (length == 0) {
+			// Keep one of the 0x00 bytes, since a JpegData needs some data
+			emit(0);
+		}
+
+		return Arrays.copyOf(output, length);
+	}
+
+	/**
+	 * Propagates a carry into the buffered byte. Any stacked 0xFF bytes
+	 * become 0x00.
+	 */
+	private void carry() {
+		if (buffer >= 0) {
+			emitPendingZeros();
+			emit(buffer + 1);
+		}
+		pendingZeros += stackedFfs;
+		stackedFfs = 0;
+	}
+
+	/**
+	 * Outputs the buffered byte and any stacked 0xFF bytes, which can no
+	 * longer be changed by a carry. 0x00 bytes are held back in case they
+	 * end the data.
+	 */
+	private void flushStacked() {
+		if (buffer == 0) {
+			pendingZeros++;
+		} else if (buffer > 0) {
+			emitPendingZeros();
+			emit(buffer);
+		}
+		if (stackedFfs > 0) {
+			emitPendingZeros();
+			for (; stackedFfs > 0; stackedFfs--) {
+				emit(0xFF);
+			}
+		}
+	}
+
+	private void emitPendingZeros() {
+		for (; pendingZeros > 0; pendingZeros--) {
+			emit(0);
+		}
+	}
+
+	private void emit(int value) {
+		if (length == output.length) {
+			output = Arrays.copyOf(output, output.length * 2);
+		}
+		output[length++] = (byte) value;
+	}
+}
@@ -0,0 +1,410 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the arithmetic coded scans of sequential and progressive DCT
+ * frames, following the procedures in sections F.2.4 and G.2 of the
+ * standard, with the conditioning from any DAC segments in effect for each
+ * scan.
+ *
+ * Sequential scans can be decoded to any BlockSink. Each progressive scan
+ * only adds to the coefficients decoded by earlier scans, so the scans of a
+ * progressive image must be decoded, in order, into the same
+ * CoefficientStore.
+ */
+public class ArithmeticScanDecoder {
+	private final FrameLayout layout;
+	private final boolean progressive;
+
+	/**
+	 * @param structure The structure of the image whose scans will be decoded
+	 */
+	public ArithmeticScanDecoder(JpegStructure structure) {
+		this(structure.getLayout(), structure.getFrameMode());
+	}
+
+	/**
+	 * @param layout The layout of the frame whose scans will be decoded
+	 * @param mode The mode of that frame
+	 */
+	public ArithmeticScanDecoder(FrameLayout layout, FrameMode mode) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+		if (mode == null) {
+			throw new IllegalArgumentException("mode may not be null");
+		}
+		if (mode != FrameMode.AC_EXTENDED_SEQUENTIAL_DCT && mode != FrameMode.AC_PROGRESSIVE_DCT) {
+			throw new UnsupportedOperationException("Only arithmetic coded sequential and progressive DCT frames can be decoded. Found " + mode);
+		}
+
+		this.layout = layout;
+		this.progressive = mode == FrameMode.AC_PROGRESSIVE_DCT;
+	}
+
+	/**
+	 * @return The layout of the frame this decodes
+	 */
+	public FrameLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Decodes all the blocks of a sequential scan.
+	 *
+	 * @param scan The scan to decode
+	 * @param sink Where to send the decoded blocks
+	 */
+	public void decode(Scan scan, BlockSink sink) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null");
+		}
+		if (progressive) {
+			throw new UnsupportedOperationException("Progressive scans must be decoded into a CoefficientStore");
+		}
+
+		new IntervalDecoder(layout, scan, null, sink).decodeAll();
+	}
+
+	/**
+	 * Decodes a scan, adding what it holds to the coefficients in the store.
+	 *
+	 * @param scan The scan to decode
+	 * @param store The coefficients decoded by the earlier scans
+	 */
+	public void decode(Scan scan, CoefficientStore store) {
+		if (store == null) {
+			throw new IllegalArgumentException("store may not be null");
+		}
+
+		new IntervalDecoder(layout, scan, progressive ? store : null, store).decodeAll();
+	}
+
+	/**
+	 * @param scan A scan
+	 * @return The scan's DC conditioning tables, indexed by selector
+	 */
+	static DacConditioningTable[] getDcConditioning(Scan scan) {
+		DacConditioningTable[] tables = new DacConditioningTable[4];
+		for (int selector = 0; selector < tables.length; selector++) {
+			tables[selector] = scan.getDcConditioning(selector);
+		}
+		return tables;
+	}
+
+	/**
+	 * @param scan A scan
+	 * @return The scan's AC conditioning tables, indexed by selector
+	 */
+	static DacConditioningTable[] getAcConditioning(Scan scan) {
+		DacConditioningTable[] tables = new DacConditioningTable[4];
+		for (int selector = 0; selector < tables.length; selector++) {
+			tables[selector] = scan.getAcConditioning(selector);
+		}
+		return tables;
+	}
+
+	/**
+	 * Decodes the restart intervals of one scan.
+	 */
+	private static final class IntervalDecoder {
+		private final FrameLayout layout;
+		private final int[] components;
+		private final CoefficientStore store;
+		private final BlockSink sink;
+		private final List<EntropyData> intervals;
+		private final int mcuCount;
+		private final int restartInterval;
+		private final int start;
+		private final int end;
+		private final int high;
+		private final int low;
+		private final boolean codesDc;
+		private final boolean codesAc;
+		private final ArithmeticContexts contexts;
+		private final ArithmeticDecoder decoder = new ArithmeticDecoder();
+		private final short[] block = new short[64];
+
+		/**
+		 * @param store The store to read the earlier scans' coefficients from,
+		 *			or null for a sequential scan
+		 */
+		IntervalDecoder(FrameLayout layout, Scan scan, CoefficientStore store, BlockSink sink) {
+			SosSegment header = scan.getHeader();
+
+			this.layout = layout;
+			this.components = layout.getScanComponents(header);
+			this.store = store;
+			this.sink = sink;
+			this.intervals = scan.getIntervals();
+			this.mcuCount = layout.getScanMcuCount(components);
+			this.restartInterval = scan.getRestartInterval();
+			if (store != null) {
+				ProgressiveScanDecoder.checkScan(header, components.length);
+				this.start = header.getSpectralSelectionStart();
+				this.end = header.getSpectralSelectionEnd();
+				this.high = header.getSuccessiveApproximationHigh();
+				this.low = header.getSuccessiveApproximationLow();
+				this.codesDc = start == 0 && high == 0;
+				this.codesAc = start != 0;
+			} else {
+				this.start = 0;
+				this.end = 63;
+				this.high = 0;
+				this.low = 0;
+				this.codesDc = true;
+				this.codesAc = true;
+			}
+			this.contexts = new ArithmeticContexts(header, getDcConditioning(scan), getAcConditioning(scan));
+		}
+
+		void decodeAll() {
+			if (restartInterval == 0) {
+				if (!intervals.isEmpty()) {
+					decode(intervals.get(0), 0, mcuCount);
+				}
+				return;
+			}
+
+			int intervalCount = Math.min(intervals.size(), (mcuCount + restartInterval - 1) / restartInterval);
+			for (int interval = 0; interval < intervalCount; interval++) {
+				int firstMcu = interval * restartInterval;
+				decode(intervals.get(interval), firstMcu, Math.min(restartInterval, mcuCount - firstMcu));
+			}
+		}
+
+		private void decode(EntropyData data, int firstMcu, int count) {
+			decoder.reset(data.getData());
+			contexts.reset(codesDc, codesAc);
+
+			for (int mcu = firstMcu; mcu < firstMcu + count; mcu++) {
+				if (components.length == 1) {
+					int component = components[0];
+					int blocksWide = layout.getComponentBlocksWide(component);
+					decodeBlock(0, component, mcu / blocksWide, mcu % blocksWide);
+				} else {
+					int mcuRow = mcu / layout.getMcusPerRow();
+					int mcuColumn = mcu % layout.getMcusPerRow();
+					for (int index = 0; index < components.length; index++) {
+						int component = components[index];
+						int horizontal = layout.getHorizontalSampling(component);
+						int vertical = layout.getVerticalSampling(component);
+						for (int row = 0; row < vertical; row++) {
+							for (int column = 0; column < horizontal; column++) {
+								decodeBlock(index, component, mcuRow * vertical + row,
+										  mcuColumn * horizontal + column);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private void decodeBlock(int index, int component, int row, int column) {
+			if (store == null) {
+				Arrays.fill(block, (short) 0);
+				contexts.lastDc[index] += decodeDcDifference(index);
+				block[0] = (short) contexts.lastDc[index];
+				decodeSequentialAc(index);
+			} else {
+				store.getBlock(component, row, column, block);
+				if (start == 0) {
+					if (high == 0) {
+						contexts.lastDc[index] += decodeDcDifference(index);
+						block[0] = (short) (contexts.lastDc[index] << low);
+					} else if (decoder.decode(contexts.fixed, 0) != 0) {
+						block[0] |= (short) (1 << low);
+					}
+				} else if (high == 0) {
+					decodeAcFirst(index);
+				} else {
+					decodeAcRefine(index);
+				}
+			}
+
+			sink.putBlock(component, row, column, block);
+		}
+
+		/**
+		 * Figures F.19 and F.21 to F.24 of the standard
+		 */
+		private int decodeDcDifference(int index) {
+			byte[] stats = contexts.dcStats[index];
+			int bin = contexts.dcContext[index];
+
+			if (decoder.decode(stats, bin) == 0) {
+				contexts.dcContext[index] = 0;
+				return 0;
+			}
+
+			int sign = decoder.decode(stats, bin + 1);
+			bin += 2 + sign;
+			int magnitude = decoder.decode(stats, bin);
+			if (magnitude != 0) {
+				bin = ArithmeticContexts.DC_MAGNITUDE;
+				while (decoder.decode(stats, bin) != 0) {
+					magnitude = checkMagnitude(magnitude << 1);
+					bin++;
+				}
+			}
+			contexts.setDcContext(index, magnitude, sign != 0);
+
+			int value = decodeMagnitudeBits(stats, bin + ArithmeticContexts.MAGNITUDE_BITS, magnitude) + 1;
+			return (sign != 0) ? -value : value;
+		}
+
+		/**
+		 * Figure F.20 of the standard
+		 */
+		private void decodeSequentialAc(int index) {
+			byte[] stats = contexts.acStats[index];
+			int k = 0;
+
+			while (k < 63) {
+				int bin = 3 * k;
+				if (decoder.decode(stats, bin) != 0) {
+					break;
+				}
+				while (true) {
+					k++;
+					if (decoder.decode(stats, bin + 1) != 0) {
+						break;
+					}
+					bin += 3;
+					if (k >= 63) {
+						throw new InvalidJpegFormat("AC coefficients run past the end of a block");
+					}
+				}
+				block[ZigZag.NATURAL_ORDER[k]] = (short) decodeAcValue(index, stats, bin, k);
+			}
+		}
+
+		/**
+		 * Section G.1.3.2 of the standard
+		 */
+		private void decodeAcFirst(int index) {
+			byte[] stats = contexts.acStats[index];
+
+			for (int k = start; k <= end; k++) {
+				int bin = 3 * (k - 1);
+				if (decoder.decode(stats, bin) != 0) {
+					break;
+				}
+				while (decoder.decode(stats, bin + 1) == 0) {
+					bin += 3;
+					if (++k > end) {
+						throw new InvalidJpegFormat("AC coefficients run past the end of the band");
+					}
+				}
+				block[ZigZag.NATURAL_ORDER[k]] = (short) (decodeAcValue(index, stats, bin, k) << low);
+			}
+		}
+
+		/**
+		 * Section G.1.3.3 of the standard
+		 */
+		private void decodeAcRefine(int index) {
+			byte[] stats = contexts.acStats[index];
+			int plusOne = 1 << low;
+			int minusOne = -1 << low;
+
+			int lastNonZero = end;
+			while (lastNonZero > 0 && block[ZigZag.NATURAL_ORDER[lastNonZero]] == 0) {
+				lastNonZero--;
+			}
+
+			for (int k = start; k <= end; k++) {
+				int bin = 3 * (k - 1);
+				if (k > lastNonZero && decoder.decode(stats, bin) != 0) {
+					break;
+				}
+				while (true) {
+					int position = ZigZag.NATURAL_ORDER[k];
+					if (block[position] != 0) {
+						if (decoder.decode(stats, bin + 2) != 0) {
+							block[position] += (block[position] < 0) ? minusOne : plusOne;
+						}
+						break;
+					}
+					if (decoder.decode(stats, bin + 1) != 0) {
+						block[position] = (short) ((decoder.decode(contexts.fixed, 0) != 0) ? minusOne : plusOne);
+						break;
+					}
+					bin += 3;
+					if (++k > end) {
+						throw new InvalidJpegFormat("AC coefficients run past the end of the band");
+					}
+				}
+			}
+		}
+
+		/**
+		 * Decodes the sign and value of a non-zero AC coefficient (figures
+		 * F.21 to F.24 of the standard)
+		 *
+		 * @param bin The first bin of the coefficient's statistics
+		 * @param k The index of the coefficient in zig-zag order
+		 */
+		private int decodeAcValue(int index, byte[] stats, int bin, int k) {
+			int sign = decoder.decode(contexts.fixed, 0);
+
+			bin += 2;
+			int magnitude = decoder.decode(stats, bin);
+			if (magnitude != 0 && decoder.decode(stats, bin) != 0) {
+				magnitude <<= 1;
+				bin = (k <= contexts.acLimit[index]) ?
+						  ArithmeticContexts.AC_LOW_MAGNITUDE : ArithmeticContexts.AC_HIGH_MAGNITUDE;
+				while (decoder.decode(stats, bin) != 0) {
+					magnitude = checkMagnitude(magnitude << 1);
+					bin++;
+				}
+			}
+
+			int value = decodeMagnitudeBits(stats, bin + ArithmeticContexts.MAGNITUDE_BITS, magnitude) + 1;
+			return (sign != 0) ? -value : value;
+		}
+
+		/**
+		 * Decodes the bits below the top bit of a magnitude (figure F.24 of
+		 * the standard)
+		 */
+		private int decodeMagnitudeBits(byte[] stats, int bin, int magnitude) {
+			int value = magnitude;
+			while ((magnitude >>= 1) != 0) {
+				if (decoder.decode(stats, bin) != 0) {
+					value |= magnitude;
+				}
+			}
+			return value;
+		}
+
+		private static int checkMagnitude(int magnitude) {
+			if (magnitude == 0x8000) {
+				throw new InvalidJpegFormat("Arithmetic coded magnitude is too large");
+			}
+			return magnitude;
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes blocks of quantized DCT coefficients into the arithmetic coded data
+ * of a sequential or progressive DCT scan, following the procedures in
+ * sections F.1.4 and G.1.3 of the standard. Unlike Huffman coding, nothing
+ * needs to be counted first: the statistics adapt as the scan is coded.
+ *
+ * Conditioning tables are given as arrays indexed by table selector (0-3).
+ * Missing tables (or a null array) mean the defaults of the standard, which
+ * is what a decoder assumes when there's no DAC segment.
+ */
+public class ArithmeticScanEncoder {
+	private final FrameLayout layout;
+	private final boolean progressive;
+
+	/**
+	 * @param layout The layout of the frame whose scans will be encoded
+	 * @param mode The mode of that frame
+	 */
+	public ArithmeticScanEncoder(FrameLayout layout, FrameMode mode) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+		if (mode != FrameMode.AC_EXTENDED_SEQUENTIAL_DCT && mode != FrameMode.AC_PROGRESSIVE_DCT) {
+			throw new UnsupportedOperationException("Only arithmetic coded sequential and progressive DCT frames can be encoded. Found " + mode);
+		}
+
+		this.layout = layout;
+		this.progressive = mode == FrameMode.AC_PROGRESSIVE_DCT;
+	}
+
+	/**
+	 * Encodes the scan.
+	 *
+	 * @param header The header of the scan
+	 * @param restartInterval The number of MCUs in each restart interval, or 0
+	 * @param store The coefficients to encode
+	 * @param dcConditioning The DC conditioning tables to encode with
+	 * @param acConditioning The AC conditioning tables to encode with
+	 * @return The entropy coded data of each restart interval
+	 */
+	public List<byte[]> encode(SosSegment header, int restartInterval, CoefficientStore store,
+			  DacConditioningTable[] dcConditioning, DacConditioningTable[] acConditioning) {
+		int[] components = layout.getScanComponents(header);
+		if (progressive) {
+			ProgressiveScanDecoder.checkScan(header, components.length);
+		}
+
+		BlockEncoder encoder = new BlockEncoder(header, progressive,
+				  new ArithmeticContexts(header, dcConditioning, acConditioning));
+		int mcuCount = layout.getScanMcuCount(components);
+		short[] block = new short[64];
+
+		for (int mcu = 0; mcu < mcuCount; mcu++) {
+			if (restartInterval > 0 && mcu > 0 && (mcu % restartInterval) == 0) {
+				encoder.endInterval();
+			}
+
+			if (components.length == 1) {
+				int component = components[0];
+				int blocksWide = layout.getComponentBlocksWide(component);
+				store.getBlock(component, mcu / blocksWide, mcu % blocksWide, block);
+				encoder.encode(block, 0);
+			} else {
+				int mcuRow = mcu / layout.getMcusPerRow();
+				int mcuColumn = mcu % layout.getMcusPerRow();
+				for (int index = 0; index < components.length; index++) {
+					int component = components[index];
+					int horizontal = layout.getHorizontalSampling(component);
+					int vertical = layout.getVerticalSampling(component);
+					for (int row = 0; row < vertical; row++) {
+						for (int column = 0; column < horizontal; column++) {
+							store.getBlock(component, mcuRow * vertical + row,
+									  mcuColumn * horizontal + column, block);
+							encoder.encode(block, index);
+						}
+					}
+				}
+			}
+		}
+
+		encoder.endInterval();
+		return encoder.intervals;
+	}
+
+	/**
+	 * Encodes blocks, keeping the state that carries from block to block
+	 * within a restart interval.
+	 */
+	private static final class BlockEncoder {
+		final List<byte[]> intervals = new ArrayList<byte[]>();
+		private final ArithmeticContexts contexts;
+		private final ArithmeticEncoder encoder = new ArithmeticEncoder();
+		private final boolean progressive;
+		private final int start;
+		private final int end;
+		private final int high;
+		private final int low;
+		private final boolean codesDc;
+		private final boolean codesAc;
+
+		BlockEncoder(SosSegment header, boolean progressive, ArithmeticContexts contexts) {
+			this.contexts = contexts;
+			this.progressive = progressive;
+			if (progressive) {
+				this.start = header.getSpectralSelectionStart();
+				this.end = header.getSpectralSelectionEnd();
+				this.high = header.getSuccessiveApproximationHigh();
+				this.low = header.getSuccessiveApproximationLow();
+			} else {
+				this.start = 0;
+				this.end = 63;
+				this.high = 0;
+				this.low = 0;
+			}
+			this.codesDc = !progressive || (start == 0 && high == 0);
+			this.codesAc = !progressive || start != 0;
+			contexts.reset(codesDc, codesAc);
+		}
+
+		void encode(short[] block, int index) {
+			if (!progressive) {
+				encodeDcDifference(index, block[0]);
+				encodeSequentialAc(index, block);
+			} else if (start == 0) {
+				if (high == 0) {
+					encodeDcDifference(index, block[0] >> low);
+				} else {
+					encoder.encode(contexts.fixed, 0, (block[0] >> low) & 1);
+				}
+			} else if (high == 0) {
+				encodeAcFirst(index, block);
+			} else {
+				encodeAcRefine(index, block);
+			}
+		}
+
+		void endInterval() {
+			intervals.add(encoder.finish());
+			encoder.reset();
+			contexts.reset(codesDc, codesAc);
+		}
+
+		/**
+		 * Figures F.4 and F.6 to F.9 of the standard
+		 */
+		private void encodeDcDifference(int index, int value) {
+			byte[] stats = contexts.dcStats[index];
+			int bin = contexts.dcContext[index];
+			int difference = value - contexts.lastDc[index];
+
+			if (difference == 0) {
+				encoder.encode(stats, bin, 0);
+				contexts.dcContext[index] = 0;
+				return;
+			}
+
+			contexts.lastDc[index] = value;
+			encoder.encode(stats, bin, 1);
+			boolean negative = difference < 0;
+			encoder.encode(stats, bin + 1, negative ? 1 : 0);
+			bin += negative ? 3 : 2;
+
+			int rest = (negative ? -difference : difference) - 1;
+			int magnitude = 0;
+			if (rest != 0) {
+				encoder.encode(stats, bin, 1);
+				magnitude = 1;
+				bin = ArithmeticContexts.DC_MAGNITUDE;
+				for (int remaining = rest >> 1; remaining != 0; remaining >>= 1) {
+					encoder.encode(stats, bin, 1);
+					magnitude <<= 1;
+					bin++;
+				}
+			}
+			encoder.encode(stats, bin, 0);
+			contexts.setDcContext(index, magnitude, negative);
+
+			encodeMagnitudeBits(stats, bin + ArithmeticContexts.MAGNITUDE_BITS, magnitude, rest);
+		}
+
+		/**
+		 * Figure F.5 of the standard
+		 */
+		private void encodeSequentialAc(int index, short[] block) {
+			byte[] stats = contexts.acStats[index];
+
+			int last = 63;
+			while (last > 0 && block[ZigZag.NATURAL_ORDER[last]] == 0) {
+				last--;
+			}
+
+			int k = 0;
+			while (k < last) {
+				int bin = 3 * k;
+				encoder.encode(stats, bin, 0);
+				int coefficient;
+				while ((coefficient = block[ZigZag.NATURAL_ORDER[++k]]) == 0) {
+					encoder.encode(stats, bin + 1, 0);
+					bin += 3;
+				}
+				encoder.encode(stats, bin + 1, 1);
+				encoder.encode(contexts.fixed, 0, (coefficient < 0) ? 1 : 0);
+				encodeAcMagnitude(index, stats, bin, k, (coefficient < 0) ? -coefficient : coefficient);
+			}
+			if (k < 63) {
+				encoder.encode(stats, 3 * k, 1);
+			}
+		}
+
+		/**
+		 * Section G.1.3.2 of the standard. The point transform of AC
+		 * coefficients divides, rounding towards 0.
+		 */
+		private void encodeAcFirst(int index, short[] block) {
+			byte[] stats = contexts.acStats[index];
+			int last = lastNonZero(block, low);
+
+			int k = start;
+			for (; k <= last; k++) {
+				int bin = 3 * (k - 1);
+				encoder.encode(stats, bin, 0);
+				int coefficient;
+				int magnitude;
+				while (true) {
+					coefficient = block[ZigZag.NATURAL_ORDER[k]];
+					magnitude = ((coefficient < 0) ? -coefficient : coefficient) >> low;
+					if (magnitude != 0) {
+						break;
+					}
+					encoder.encode(stats, bin + 1, 0);
+					bin += 3;
+					k++;
+				}
+				encoder.encode(stats, bin + 1, 1);
+				encoder.encode(contexts.fixed, 0, (coefficient < 0) ? 1 : 0);
+				encodeAcMagnitude(index, stats, bin, k, magnitude);
+			}
+			if (k <= end) {
+				encoder.encode(stats, 3 * (k - 1), 1);
+			}
+		}
+
+		/**
+		 * Section G.1.3.3 of the standard
+		 */
+		private void encodeAcRefine(int index, short[] block) {
+			byte[] stats = contexts.acStats[index];
+			int last = lastNonZero(block, low);
+			int lastBefore = lastNonZero(block, high);
+
+			int k = start;
+			for (; k <= last; k++) {
+				int bin = 3 * (k - 1);
+				if (k > lastBefore) {
+					encoder.encode(stats, bin, 0);
+				}
+				while (true) {
+					int coefficient = block[ZigZag.NATURAL_ORDER[k]];
+					int magnitude = ((coefficient < 0) ? -coefficient : coefficient) >> low;
+					if (magnitude > 1) {
+						encoder.encode(stats, bin + 2, magnitude & 1);
+						break;
+					} else if (magnitude == 1) {
+						encoder.encode(stats, bin + 1, 1);
+						encoder.encode(contexts.fixed, 0, (coefficient < 0) ? 1 : 0);
+						break;
+					}
+					encoder.encode(stats, bin + 1, 0);
+					bin += 3;
+					k++;
+				}
+			}
+			if (k <= end) {
+				encoder.encode(stats, 3 * (k - 1), 1);
+			}
+		}
+
+		/**
+		 * @return The index, in zig-zag order, of the last coefficient in the
+		 *			band that is non-zero after the point transform, or one less
+		 *			than the start of the band if there is none
+		 */
+		private int lastNonZero(short[] block, int shift) {
+			int k = end;
+			while (k >= start) {
+				int coefficient = block[ZigZag.NATURAL_ORDER[k]];
+				if ((((coefficient < 0) ? -coefficient : coefficient) >> shift) != 0) {
+					break;
+				}
+				k--;
+			}
+			return k;
+		}
+
+		/**
+		 * Encodes the magnitude of a non-zero AC coefficient (figures F.8 and
+		 * F.9 of the standard)
+		 *
+		 * @param bin The first bin of the coefficient's statistics
+		 * @param k The index of the coefficient in zig-zag order
+		 * @param value The absolute value of the coefficient
+		 */
+		private void encodeAcMagnitude(int index, byte[] stats, int bin, int k, int value) {
+			int rest = value - 1;
+			int magnitude = 0;
+
+			bin += 2;
+			if (rest != 0) {
+				encoder.encode(stats, bin, 1);
+				magnitude = 1;
+				int remaining = rest >> 1;
+				if (remaining != 0) {
+					encoder.encode(stats, bin, 1);
+					magnitude <<= 1;
+					bin = (k <= contexts.acLimit[index]) ?
+							  ArithmeticContexts.AC_LOW_MAGNITUDE : ArithmeticContexts.AC_HIGH_MAGNITUDE;
+					for (remaining >>= 1; remaining != 0; remaining >>= 1) {
+						encoder.encode(stats, bin, 1);
+						magnitude <<= 1;
+						bin++;
+					}
+				}
+			}
+			encoder.encode(stats, bin, 0);
+
+			encodeMagnitudeBits(stats, bin + ArithmeticContexts.MAGNITUDE_BITS, magnitude, rest);
+		}
+
+		/**
+		 * Figure F.9 of the standard
+		 */
+		private void encodeMagnitudeBits(byte[] stats, int bin, int magnitude, int rest) {
+			while ((magnitude >>= 1) != 0) {
+				encoder.encode(stats, bin, ((magnitude & rest) != 0) ? 1 : 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.List;
+
+/**
+ * Converts DCT images between Huffman and arithmetic coding, keeping whether
+ * they are sequential or progressive. This is done entirely with the
+ * quantized coefficients, and the image keeps its scans and their restart
+ * intervals, so converting an image to arithmetic coding and back gives
+ * exactly the same coefficients. (The Huffman tables are rebuilt for each
+ * scan, so they may differ from the original ones.)
+ *
+ * An image that already has the coding asked for is left alone.
+ */
+public class ArithmeticTranscoder {
+
+	/**
+	 * Converts a Huffman coded image to arithmetic coding. Sequential images
+	 * (baseline or extended) become extended sequential ones (SOF9), and
+	 * progressive images stay progressive (SOF10).
+	 *
+	 * @param jpeg The image to convert
+	 */
+	public void toArithmetic(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameMode mode = structure.getFrameMode();
+
+		if (mode == FrameMode.AC_EXTENDED_SEQUENTIAL_DCT || mode == FrameMode.AC_PROGRESSIVE_DCT) {
+			return;
+		}
+		checkConvertible(mode);
+
+		transcode(jpeg, structure, mode.isProgressive() ?
+				  FrameMode.AC_PROGRESSIVE_DCT : FrameMode.AC_EXTENDED_SEQUENTIAL_DCT);
+	}
+
+	/**
+	 * Converts an arithmetic coded image to Huffman coding. Sequential images
+	 * become baseline ones if they can be (8 bit samples and quantization
+	 * tables), and extended ones otherwise. Progressive images stay
+	 * progressive.
+	 *
+	 * @param jpeg The image to convert
+	 */
+	public void toHuffman(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameMode mode = structure.getFrameMode();
+
+		if (mode != FrameMode.AC_EXTENDED_SEQUENTIAL_DCT && mode != FrameMode.AC_PROGRESSIVE_DCT) {
+			checkConvertible(mode);
+			return;
+		}
+
+		FrameMode newMode;
+		if (mode.isProgressive()) {
+			newMode = FrameMode.HUFF_PROGRESSIVE_DCT;
+		} else if (ProgressionTranscoder.canBeBaseline(jpeg, structure)) {
+			newMode = FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT;
+		} else {
+			newMode = FrameMode.HUFF_EXTENDED_SEQUENTIAL_DCT;
+		}
+		transcode(jpeg, structure, newMode);
+	}
+
+	private static void checkConvertible(FrameMode mode) {
+		if (!CoefficientWriter.isWritable(mode)) {
+			throw new UnsupportedOperationException("Only sequential and progressive DCT images can be converted. Found " + mode);
+		}
+	}
+
+	private void transcode(JpegData jpeg, JpegStructure structure, FrameMode mode) {
+		SofSegment frame = CoefficientWriter.makeFrame(mode, structure.getLayout());
+		ScanScript script = ScanScript.of(structure);
+		List<Scan> scans = structure.getScans();
+		int[] restartIntervals = new int[scans.size()];
+		for (int index = 0; index < restartIntervals.length; index++) {
+			restartIntervals[index] = scans.get(index).getRestartInterval();
+		}
+
+		CoefficientStore store = new CoefficientReader().read(structure);
+		try {
+			new CoefficientWriter().write(jpeg, frame, store, script, restartIntervals);
+		} finally {
+			store.close();
+		}
+	}
+}
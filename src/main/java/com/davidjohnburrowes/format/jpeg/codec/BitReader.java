@@ -0,0 +1,243 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+
+/**
+ * Reads the bits of entropy coded data, most significant bit first, through a
+ * 64 bit buffer so that most reads don't need to touch the underlying bytes.
+ *
+ * By default this reads bytes as EntropyData holds them: with the 0x00 bytes
+ * that were stuffed after each 0xFF on disk already removed. It can also read
+ * bytes as they appear on disk, in which case it drops the stuffed 0x00
+ * bytes itself and treats any other 0xFF## pair as a marker which ends the
+ * data.
+ *
+ * Once the data (or a marker) is reached, this supplies 0 bits, as the
+ * standard's decoding procedures expect. isOverrun() indicates whether any of
+ * those bits have been consumed.
+ */
+public class BitReader {
+	private final boolean stuffed;
+	private byte[] data;
+	private int position;
+	private int limit;
+	private boolean foundMarker;
+	private long buffer;
+	private int bitCount;
+	private int paddingBits;
+
+	/**
+	 * Creates a reader for data without stuffed bytes.
+	 */
+	public BitReader() {
+		this(false);
+	}
+
+	/**
+	 * @param stuffed True if the data will have a 0x00 byte after each 0xFF,
+	 *			as it does on disk
+	 */
+	public BitReader(boolean stuffed) {
+		this.stuffed = stuffed;
+		reset(new byte[0]);
+	}
+
+	/**
+	 * Starts reading a new set of bytes, discarding anything left over.
+	 *
+	 * @param bytes The bytes to read
+	 */
+	public void reset(byte[] bytes) {
+		reset(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Starts reading a new set of bytes, discarding anything left over.
+	 *
+	 * @param bytes The array holding the bytes to read
+	 * @param offset The index of the first byte to read
+	 * @param length The number of bytes to read
+	 */
+	public void reset(byte[] bytes, int offset, int length) {
+		if (bytes == null) {
+			throw new IllegalArgumentException("bytes may not be null");
+		}
+
+		this.data = bytes;
+		this.position = offset;
+		this.limit = offset + length;
+		this.foundMarker = false;
+		this.buffer = 0;
+		this.bitCount = 0;
+		this.paddingBits = 0;
+	}
+
+	/**
+	 * @param count The number of bits to read (0-16)
+	 * @return The bits, as an unsigned value
+	 */
+	public int readBits(int count) {
+		if (bitCount < count) {
+			fill();
+		}
+		bitCount -= count;
+
+		return (int) (buffer >>> bitCount) & ((1 << count) - 1);
+	}
+
+	/**
+	 * @return The next bit
+	 */
+	public int readBit() {
+		if (bitCount < 1) {
+			fill();
+		}
+		bitCount--;
+
+		return (int) (buffer >>> bitCount) & 1;
+	}
+
+	/**
+	 * Reads the bits of a value coded with the specified number of bits, and
+	 * converts them to a signed value as described by the EXTEND procedure on
+	 * page F-12 of the standard.
+	 *
+	 * @param count The number of bits (the magnitude category, 0-16)
+	 * @return The signed value
+	 */
+	public int receiveExtend(int count) {
+		if (count == 0) {
+			return 0;
+		}
+
+		return extend(readBits(count), count);
+	}
+
+	/**
+	 * @param count The number of bits to look at (0-16)
+	 * @return The next bits, without consuming them
+	 */
+	public int peekBits(int count) {
+		if (bitCount < count) {
+			fill();
+		}
+
+		return (int) (buffer >>> (bitCount - count)) & ((1 << count) - 1);
+	}
+
+	/**
+	 * @param count The number of bits to consume (0-16)
+	 */
+	public void skipBits(int count) {
+		if (bitCount < count) {
+			fill();
+		}
+		bitCount -= count;
+	}
+
+	/**
+	 * Decodes one Huffman coded symbol. Codes no longer than the table's
+	 * lookahead are decoded with a single table lookup.
+	 *
+	 * @param table The table to decode with
+	 * @return The symbol (0-255)
+	 */
+	public int decode(HuffmanDecodingTable table) {
+		if (bitCount < 16) {
+			fill();
+		}
+
+		int entry = table.lookup[(int) (buffer >>> (bitCount - HuffmanDecodingTable.LOOKAHEAD_BITS))
+				  & ((1 << HuffmanDecodingTable.LOOKAHEAD_BITS) - 1)];
+		if (entry != 0) {
+			bitCount -= entry >> 8;
+			return entry & 0xFF;
+		}
+
+		for (int length = HuffmanDecodingTable.LOOKAHEAD_BITS + 1; length <= 16; length++) {
+			int code = (int) (buffer >>> (bitCount - length)) & ((1 << length) - 1);
+			if (code <= table.maxCode[length]) {
+				bitCount -= length;
+				return table.values[table.valueOffset[length] + code];
+			}
+		}
+
+		throw new InvalidJpegFormat("Found an invalid Huffman code in entropy coded data");
+	}
+
+	/**
+	 * Discards any bits left in the current byte
+	 */
+	public void alignToByte() {
+		bitCount -= bitCount % 8;
+	}
+
+	/**
+	 * @return True if more bits have been read than the data holds
+	 */
+	public boolean isOverrun() {
+		return bitCount < paddingBits;
+	}
+
+	/**
+	 * @return True if reading stuffed data stopped at a marker
+	 */
+	public boolean foundMarker() {
+		return foundMarker;
+	}
+
+	/**
+	 * Converts a value coded in count bits to a signed value (the EXTEND
+	 * procedure on page F-12 of the standard)
+	 *
+	 * @param value The raw bits
+	 * @param count The number of bits
+	 * @return The signed value
+	 */
+	public static int extend(int value, int count) {
+		return (value < (1 << (count - 1))) ? value - (1 << count) + 1 : value;
+	}
+
+	/**
+	 * Loads bytes into the buffer until there's no room for another
+	 */
+	private void fill() {
+		while (bitCount <= 56) {
+			int aByte = 0;
+
+			if (position < limit && !foundMarker) {
+				aByte = data[position++] & 0xFF;
+				if (aByte == 0xFF && stuffed) {
+					if (position < limit && data[position] == 0) {
+						position++;
+					} else {
+						foundMarker = true;
+						position--;
+						aByte = 0;
+						paddingBits += 8;
+					}
+				}
+			} else {
+				paddingBits += 8;
+			}
+
+			buffer = (buffer << 8) | aByte;
+			bitCount += 8;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import java.util.Arrays;
+
+/**
+ * Collects bits, most significant bit first, into the bytes of entropy coded
+ * data. The bytes are not stuffed: EntropyData adds a 0x00 after each 0xFF
+ * when it is written.
+ */
+public class BitWriter {
+	private byte[] bytes;
+	private int size;
+	private long buffer;
+	private int bitCount;
+
+	public BitWriter() {
+		bytes = new byte[1024];
+	}
+
+	/**
+	 * @param value The bits to write, in the low count bits
+	 * @param count The number of bits to write (0-24)
+	 */
+	public void writeBits(int value, int count) {
+		buffer = (buffer << count) | (value & ((1 << count) - 1));
+		bitCount += count;
+
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, size * 2);
+			}
+			bytes[size++] = (byte) (buffer >>> bitCount);
+		}
+	}
+
+	/**
+	 * Writes the Huffman code for a symbol.
+	 *
+	 * @param table The table to encode with
+	 * @param symbol The symbol (0-255)
+	 */
+	public void encode(HuffmanEncodingTable table, int symbol) {
+		int length = table.lengths[symbol];
+		if (length == 0) {
+			throw new IllegalArgumentException("Huffman table has no code for symbol " + symbol);
+		}
+
+		writeBits(table.codes[symbol], length);
+	}
+
+	/**
+	 * Completes the last byte by padding it with 1 bits, as the standard
+	 * requires before a marker.
+	 */
+	public void padToByte() {
+		if (bitCount > 0) {
+			writeBits(0x7F, 8 - bitCount);
+		}
+	}
+
+	/**
+	 * Pads the last byte, and returns all the bytes written.
+	 *
+	 * @return The bytes
+	 */
+	public byte[] toByteArray() {
+		padToByte();
+
+		return Arrays.copyOf(bytes, size);
+	}
+
+	/**
+	 * Discards everything written so far.
+	 */
+	public void reset() {
+		size = 0;
+		buffer = 0;
+		bitCount = 0;
+	}
+
+	/**
+	 * @param value A value
+	 * @return The number of bits needed to hold the magnitude of the value
+	 *			(its magnitude category)
+	 */
+	public static int bitLength(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * Something that receives blocks of DCT coefficients as a scan is decoded.
+ */
+public interface BlockSink {
+
+	/**
+	 * Receives one decoded block. The coefficient array is reused for the next
+	 * block, so an implementation must copy anything it wants to keep.
+	 *
+	 * @param component The index of the component in the frame
+	 * @param blockRow The row of the block within the component
+	 * @param blockColumn The column of the block within the component
+	 * @param coefficients The 64 coefficients of the block, in natural order
+	 */
+	void putBlock(int component, int blockRow, int blockColumn, short[] coefficients);
+}
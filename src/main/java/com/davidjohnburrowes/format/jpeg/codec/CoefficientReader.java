@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes all the scans of a Huffman or arithmetic coded DCT image
+ * (sequential or progressive) into a CoefficientStore. The scans are decoded
+ * one after another, but if a pool is given, the restart intervals within
+ * each scan of a Huffman coded image are decoded in parallel.
+ */
+public class CoefficientReader {
+
+	/**
+	 * Decodes the image into directly allocated memory.
+	 *
+	 * @param jpeg The image to decode
+	 * @return The coefficients of the image
+	 */
+	public CoefficientStore read(JpegData jpeg) {
+		return read(new JpegStructure(jpeg));
+	}
+
+	/**
+	 * Decodes the image into directly allocated memory.
+	 *
+	 * @param structure The structure of the image to decode
+	 * @return The coefficients of the image
+	 */
+	public CoefficientStore read(JpegStructure structure) {
+		CoefficientStore store = new CoefficientStore(structure.getLayout());
+		try {
+			read(structure, store);
+		} catch (RuntimeException e) {
+			store.close();
+			throw e;
+		}
+		return store;
+	}
+
+	/**
+	 * Decodes the image into directly allocated memory, decoding restart
+	 * intervals in parallel on the pool.
+	 *
+	 * @param structure The structure of the image to decode
+	 * @param pool The pool to decode on
+	 * @return The coefficients of the image
+	 */
+	public CoefficientStore read(JpegStructure structure, ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool may not be null");
+		}
+
+		CoefficientStore store = new CoefficientStore(structure.getLayout());
+		try {
+			read(structure, store, pool);
+		} catch (RuntimeException e) {
+			store.close();
+			throw e;
+		}
+		return store;
+	}
+
+	/**
+	 * Decodes the image into the store provided.
+	 *
+	 * @param structure The structure of the image to decode
+	 * @param store Where to put the coefficients. It must have been created
+	 *			for the image's layout.
+	 */
+	public void read(JpegStructure structure, CoefficientStore store) {
+		read(structure, store, null);
+	}
+
+	/**
+	 * Decodes the image into the store provided.
+	 *
+	 * @param structure The structure of the image to decode
+	 * @param store Where to put the coefficients. It must have been created
+	 *			for the image's layout.
+	 * @param pool The pool to decode restart intervals on, or null to decode
+	 *			on the calling thread. Arithmetic coded images are always
+	 *			decoded on the calling thread.
+	 */
+	public void read(JpegStructure structure, CoefficientStore store, ForkJoinPool pool) {
+		FrameMode mode = structure.getFrameMode();
+
+		if (mode == FrameMode.AC_EXTENDED_SEQUENTIAL_DCT || mode == FrameMode.AC_PROGRESSIVE_DCT) {
+			ArithmeticScanDecoder decoder = new ArithmeticScanDecoder(structure);
+			for (Scan scan : structure.getScans()) {
+				decoder.decode(scan, store);
+			}
+		} else if (mode == FrameMode.HUFF_PROGRESSIVE_DCT) {
+			ProgressiveScanDecoder decoder = new ProgressiveScanDecoder(structure);
+			for (Scan scan : structure.getScans()) {
+				if (pool == null) {
+					decoder.decode(scan, store);
+				} else {
+					decoder.decode(scan, store, pool);
+				}
+			}
+		} else {
+			HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+			for (Scan scan : structure.getScans()) {
+				if (pool == null) {
+					decoder.decode(scan, store);
+				} else {
+					decoder.decode(scan, store, pool);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Holds the DCT coefficients of every block of a frame, indexed by component,
+ * block row and block column. Each component has getBlocksWide() by
+ * getBlocksHigh() blocks, enough for every block of an interleaved scan.
+ *
+ * The coefficients are kept outside of the Java heap, one block after
+ * another, so that even very large images don't need an object per block.
+ * By default the memory is allocated directly. For images that are too big
+ * for memory, the store can be backed by a file, which is mapped into memory
+ * a chunk at a time by the operating system (much like the virtual arrays
+ * of libjpeg).
+ *
+ * Different blocks may be read and written from different threads at the
+ * same time. All coefficients start out as 0.
+ */
+public class CoefficientStore implements BlockSink, Closeable {
+	/**
+	 * The number of blocks in each chunk of memory (64MB worth)
+	 */
+	private static final int CHUNK_SHIFT = 19;
+	private static final int CHUNK_BLOCKS = 1 << CHUNK_SHIFT;
+	private static final int BYTES_PER_BLOCK = 64 * 2;
+
+	private final FrameLayout layout;
+	private final long[] componentStart;
+	private final int[] blocksWide;
+	private final int[] blocksHigh;
+	private final ShortBuffer[] chunks;
+	private final RandomAccessFile backingFile;
+	private final File fileToDelete;
+
+	/**
+	 * Creates a store in directly allocated memory.
+	 *
+	 * @param layout The layout of the frame whose coefficients will be held
+	 */
+	public CoefficientStore(FrameLayout layout) {
+		this(layout, null, null);
+	}
+
+	/**
+	 * Sets up the store, in the file if there is one.
+	 */
+	private CoefficientStore(FrameLayout layout, RandomAccessFile file, File fileToDelete) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+
+		int count = layout.getComponentCount();
+		long totalBlocks = 0;
+
+		this.layout = layout;
+		this.componentStart = new long[count];
+		this.blocksWide = new int[count];
+		this.blocksHigh = new int[count];
+		for (int component = 0; component < count; component++) {
+			componentStart[component] = totalBlocks;
+			blocksWide[component] = layout.getBlocksWide(component);
+			blocksHigh[component] = layout.getBlocksHigh(component);
+			totalBlocks += (long) blocksWide[component] * blocksHigh[component];
+		}
+
+		this.backingFile = file;
+		this.fileToDelete = fileToDelete;
+		this.chunks = new ShortBuffer[(int) ((totalBlocks + CHUNK_BLOCKS - 1) >> CHUNK_SHIFT)];
+		try {
+			for (int chunk = 0; chunk < chunks.length; chunk++) {
+				long firstBlock = (long) chunk << CHUNK_SHIFT;
+				long size = Math.min(CHUNK_BLOCKS, totalBlocks - firstBlock) * BYTES_PER_BLOCK;
+				ByteBuffer bytes = (file == null) ?
+						  ByteBuffer.allocateDirect((int) size) :
+						  file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+									 firstBlock * BYTES_PER_BLOCK, size);
+				chunks[chunk] = bytes.order(ByteOrder.nativeOrder()).asShortBuffer();
+			}
+		} catch (IOException e) {
+			close();
+			throw new IllegalStateException("Unable to map coefficient file", e);
+		}
+	}
+
+	/**
+	 * Creates a store that's kept in the specified file. Anything in the file
+	 * already is discarded. The file is left behind when the store is closed.
+	 *
+	 * @param layout The layout of the frame whose coefficients will be held
+	 * @param file The file to keep the coefficients in
+	 * @return The new store
+	 * @throws IOException If the file can't be set up
+	 */
+	public static CoefficientStore createFileBacked(FrameLayout layout, File file) throws IOException {
+		return createFileBacked(layout, file, false);
+	}
+
+	/**
+	 * Creates a store that's kept in a temporary file, which is deleted when
+	 * the store is closed. Nothing else deletes it (not even the JVM
+	 * exiting), so the store must be closed.
+	 *
+	 * @param layout The layout of the frame whose coefficients will be held
+	 * @return The new store
+	 * @throws IOException If the file can't be set up
+	 */
+	public static CoefficientStore createTemporary(FrameLayout layout) throws IOException {
+		File file = File.createTempFile("coefficients", ".tmp");
+		return createFileBacked(layout, file, true);
+	}
+
+	/**
+	 * Sets up a store in a file. If that fails, the file is closed (and
+	 * deleted, if it would have been deleted on closing the store).
+	 */
+	private static CoefficientStore createFileBacked(FrameLayout layout, File file,
+			  boolean deleteOnClose) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file may not be null");
+		}
+
+		RandomAccessFile access = null;
+		CoefficientStore store = null;
+		try {
+			access = new RandomAccessFile(file, "rw");
+			access.setLength(0);
+			store = new CoefficientStore(layout, access, deleteOnClose ? file : null);
+			return store;
+		} catch (IllegalStateException e) {
+			throw (IOException) e.getCause();
+		} finally {
+			if (store == null) {
+				if (access != null) {
+					access.close();
+				}
+				if (deleteOnClose) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The layout of the frame this holds
+	 */
+	public FrameLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The number of blocks across the component
+	 */
+	public int getBlocksWide(int component) {
+		return blocksWide[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The number of blocks down the component
+	 */
+	public int getBlocksHigh(int component) {
+		return blocksHigh[component];
+	}
+
+	/**
+	 * Copies a block's coefficients into an array.
+	 *
+	 * @param component The index of the component in the frame
+	 * @param blockRow The row of the block
+	 * @param blockColumn The column of the block
+	 * @param coefficients Where to put the 64 coefficients, in natural order
+	 */
+	public void getBlock(int component, int blockRow, int blockColumn, short[] coefficients) {
+		long block = blockIndex(component, blockRow, blockColumn);
+		ShortBuffer chunk = chunks[(int) (block >> CHUNK_SHIFT)];
+		int offset = (int) (block & (CHUNK_BLOCKS - 1)) * 64;
+
+		for (int index = 0; index < 64; index++) {
+			coefficients[index] = chunk.get(offset + index);
+		}
+	}
+
+	/**
+	 * Replaces a block's coefficients.
+	 *
+	 * @param component The index of the component in the frame
+	 * @param blockRow The row of the block
+	 * @param blockColumn The column of the block
+	 * @param coefficients The 64 coefficients, in natural order
+	 */
+	@Override
+	public void putBlock(int component, int blockRow, int blockColumn, short[] coefficients) {
+		long block = blockIndex(component, blockRow, blockColumn);
+		ShortBuffer chunk = chunks[(int) (block >> CHUNK_SHIFT)];
+		int offset = (int) (block & (CHUNK_BLOCKS - 1)) * 64;
+
+		for (int index = 0; index < 64; index++) {
+			chunk.put(offset + index, coefficients[index]);
+		}
+	}
+
+	/**
+	 * @param component The index of the component in the frame
+	 * @param blockRow The row of the block
+	 * @param blockColumn The column of the block
+	 * @param index The index of the coefficient, in natural order
+	 * @return The coefficient
+	 */
+	public short getCoefficient(int component, int blockRow, int blockColumn, int index) {
+		long block = blockIndex(component, blockRow, blockColumn);
+
+		return chunks[(int) (block >> CHUNK_SHIFT)].get((int) (block & (CHUNK_BLOCKS - 1)) * 64 + index);
+	}
+
+	/**
+	 * @param component The index of the component in the frame
+	 * @param blockRow The row of the block
+	 * @param blockColumn The column of the block
+	 * @param index The index of the coefficient, in natural order
+	 * @param value The new value of the coefficient
+	 */
+	public void setCoefficient(int component, int blockRow, int blockColumn, int index, short value) {
+		long block = blockIndex(component, blockRow, blockColumn);
+
+		chunks[(int) (block >> CHUNK_SHIFT)].put((int) (block & (CHUNK_BLOCKS - 1)) * 64 + index, value);
+	}
+
+	/**
+	 * Releases the file backing the store, if there is one. Directly
+	 * allocated memory is released once the store is garbage collected.
+	 */
+	@Override
+	public void close() {
+		if (backingFile != null) {
+			try {
+				backingFile.close();
+			} catch (IOException e) {
+				// Nothing more can be done with it
+			}
+		}
+		if (fileToDelete != null) {
+			fileToDelete.delete();
+		}
+	}
+
+	/**
+	 * @return The position of the block in the store
+	 */
+	private long blockIndex(int component, int blockRow, int blockColumn) {
+		if (blockRow < 0 || blockRow >= blocksHigh[component] ||
+				  blockColumn < 0 || blockColumn >= blocksWide[component]) {
+			throw new IndexOutOfBoundsException("No block at row " + blockRow +
+					  ", column " + blockColumn + " of component " + component);
+		}
+
+		return componentStart[component] + (long) blockRow * blocksWide[component] + blockColumn;
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.data.ExtraFf;
+import com.davidjohnburrowes.format.jpeg.marker.DacSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DnlSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DriSegment;
+import com.davidjohnburrowes.format.jpeg.marker.RstMMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces the frame header and scans of a DCT image with ones holding the
+ * coefficients in a CoefficientStore. The first component of the frame uses
+ * tables 0, and the others share tables 1. For a Huffman coded frame, each
+ * scan is written with Huffman tables built for it, in a DHT segment just
+ * before it. For an arithmetic coded frame, a DAC segment holding the
+ * standard's default conditioning for those tables goes before the first
+ * scan.
+ *
+ * The original DHT, DAC and DRI segments are removed, and a DRI segment is
+ * written before any scan whose restart interval differs from the one in
+ * effect. Other items that were between the scans (such as COM segments) are
+ * moved to before the first scan, except for DNL segments, which are
+ * dropped: the frame header always holds the number of lines.
+ */
+public class CoefficientWriter {
+
+	/**
+	 * Writes the coefficients into the image, using the restart interval in
+	 * effect for the image's first scan for all the scans.
+	 *
+	 * @param jpeg The image to change
+	 * @param frame The new frame header. Its mode must be a Huffman or
+	 *			arithmetic coded sequential or progressive DCT mode.
+	 * @param store The coefficients. Its layout must match the frame header.
+	 * @param script The scans to write
+	 */
+	public void write(JpegData jpeg, SofSegment frame, CoefficientStore store, ScanScript script) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		int[] restartIntervals = new int[script.getScans().size()];
+
+		if (!structure.getScans().isEmpty()) {
+			Arrays.fill(restartIntervals, structure.getScans().get(0).getRestartInterval());
+		}
+		write(jpeg, structure, frame, store, script, restartIntervals);
+	}
+
+	/**
+	 * Writes the coefficients into the image.
+	 *
+	 * @param jpeg The image to change
+	 * @param frame The new frame header. Its mode must be a Huffman or
+	 *			arithmetic coded sequential or progressive DCT mode.
+	 * @param store The coefficients. Its layout must match the frame header.
+	 * @param script The scans to write
+	 * @param restartIntervals The restart interval (in MCUs, or 0 for none)
+	 *			for each scan of the script
+	 */
+	public void write(JpegData jpeg, SofSegment frame, CoefficientStore store, ScanScript script,
+			  int[] restartIntervals) {
+		write(jpeg, new JpegStructure(jpeg), frame, store, script, restartIntervals);
+	}
+
+	private void write(JpegData jpeg, JpegStructure structure, SofSegment frame, CoefficientStore store,
+			  ScanScript script, int[] restartIntervals) {
+		if (restartIntervals.length != script.getScans().size()) {
+			throw new IllegalArgumentException("There must be a restart interval for each scan");
+		}
+		for (int interval : restartIntervals) {
+			if (interval < 0 || interval > 65535) {
+				throw new IllegalArgumentException("Restart intervals must be [0,65535]. Found " + interval);
+			}
+		}
+
+		FrameMode mode = FrameMode.fromValue(frame.getMarkerId());
+		if (!isWritable(mode)) {
+			throw new UnsupportedOperationException("Can only write Huffman or arithmetic coded DCT frames. Found " + mode);
+		}
+		boolean progressive = mode.isProgressive();
+		if (structure.getScans().isEmpty()) {
+			throw new UnsupportedOperationException("Can only write images that already have scans");
+		}
+
+		FrameLayout layout = store.getLayout();
+		script.check(layout, progressive);
+
+		List<Scan> scans = structure.getScans();
+		int firstScan = scans.get(0).getHeaderIndex();
+		int endOfScans = scans.get(scans.size() - 1).getEndIndex();
+
+		List<DataItem> before = new ArrayList<DataItem>();
+		for (int index = 0; index < firstScan; index++) {
+			DataItem item = jpeg.getItem(index);
+			if (index == structure.getFrameIndex()) {
+				before.add(frame);
+			} else if (!(item instanceof DhtSegment || item instanceof DacSegment || item instanceof DriSegment)) {
+				before.add(item);
+			}
+		}
+		for (int index = firstScan; index < endOfScans; index++) {
+			DataItem item = jpeg.getItem(index);
+			if (item instanceof DqtSegment) {
+				throw new UnsupportedOperationException("Can't rewrite images that define quantization tables between scans");
+			}
+			if (!(item instanceof DhtSegment || item instanceof DacSegment || item instanceof DriSegment ||
+					  item instanceof DnlSegment ||
+					  item instanceof SosSegment || item instanceof EntropyData ||
+					  item instanceof RstMMarker || item instanceof ExtraFf)) {
+				before.add(item);
+			}
+		}
+
+		List<DataItem> newScans = new ArrayList<DataItem>();
+		if (isArithmetic(mode)) {
+			newScans.add(makeConditioning(mode, layout.getComponentCount() > 1));
+		}
+		int restartInterval = 0;
+		for (int index = 0; index < restartIntervals.length; index++) {
+			if (restartIntervals[index] != restartInterval) {
+				restartInterval = restartIntervals[index];
+				DriSegment restart = new DriSegment();
+				restart.setFrameMode(mode);
+				restart.setRestartInterval(restartInterval);
+				newScans.add(restart);
+			}
+			addScan(newScans, script.getScans().get(index), mode, layout, store, restartInterval);
+		}
+
+		int originalBefore = firstScan;
+		jpeg.replaceItems(firstScan, endOfScans, newScans);
+		jpeg.replaceItems(0, originalBefore, before);
+	}
+
+	/**
+	 * @param mode A frame mode
+	 * @return True if frames of that mode can be written
+	 */
+	static boolean isWritable(FrameMode mode) {
+		return mode == FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT || mode == FrameMode.HUFF_EXTENDED_SEQUENTIAL_DCT ||
+				  mode == FrameMode.HUFF_PROGRESSIVE_DCT || isArithmetic(mode);
+	}
+
+	/**
+	 * @param mode A frame mode
+	 * @return True if it's one of the arithmetic coded DCT modes that can be
+	 *			written
+	 */
+	static boolean isArithmetic(FrameMode mode) {
+		return mode == FrameMode.AC_EXTENDED_SEQUENTIAL_DCT || mode == FrameMode.AC_PROGRESSIVE_DCT;
+	}
+
+	/**
+	 * Makes a DAC segment holding the default conditioning for the DC and
+	 * AC tables the scans use.
+	 */
+	private static DacSegment makeConditioning(FrameMode mode, boolean secondTables) {
+		DacSegment segment = new DacSegment();
+		segment.setFrameMode(mode);
+		for (int tableClass = 0; tableClass < 2; tableClass++) {
+			for (int selector = 0; selector < (secondTables ? 2 : 1); selector++) {
+				DacConditioningTable table = new DacConditioningTable();
+				table.setFrameMode(mode);
+				table.setTableClass(tableClass);
+				table.setTableId(selector);
+				table.setTableValue(tableClass == 0 ? 0x10 : 5);
+				segment.addTable(table);
+			}
+		}
+		return segment;
+	}
+
+	/**
+	 * Makes a frame header describing a layout.
+	 *
+	 * @param mode The mode of the frame
+	 * @param layout The layout of the frame
+	 * @return The frame header
+	 */
+	public static SofSegment makeFrame(FrameMode mode, FrameLayout layout) {
+		SofSegment frame = new SofSegment(mode.getValue());
+		frame.setFrameMode(mode);
+		frame.setSamplePrecision(layout.getSamplePrecision());
+		frame.setImageWidth(layout.getImageWidth());
+		frame.setImageHeight(layout.getImageHeight());
+		for (int index = 0; index < layout.getComponentCount(); index++) {
+			FrameComponent component = new FrameComponent();
+			component.setComponentId(layout.getComponentId(index));
+			component.setHorizontalScaling(layout.getHorizontalSampling(index));
+			component.setVerticalScaling(layout.getVerticalSampling(index));
+			component.setQuantizationSelector(layout.getQuantizationSelector(index));
+			frame.addComponent(component);
+		}
+		return frame;
+	}
+
+	/**
+	 * Encodes one scan, adding its DHT segment (if Huffman coded), SOS
+	 * segment, entropy coded data and RST markers to the items.
+	 */
+	private static void addScan(List<DataItem> items, ScanSpec spec, FrameMode mode, FrameLayout layout,
+			  CoefficientStore store, int restartInterval) {
+		SosSegment header = new SosSegment();
+		header.setFrameMode(mode);
+		for (int component : spec.getComponents()) {
+			SosComponentSpec componentSpec = new SosComponentSpec();
+			componentSpec.setFrameMode(mode);
+			componentSpec.setComponentSelector(layout.getComponentId(component));
+			componentSpec.setDcTableSelector(component == 0 ? 0 : 1);
+			componentSpec.setAcTableSelector(component == 0 ? 0 : 1);
+			header.addComponentSpec(componentSpec);
+		}
+		header.setSpectralSelectionStart(spec.getSpectralStart());
+		header.setSpectralSelectionEnd(spec.getSpectralEnd());
+		header.setSuccessiveApproximationHigh(spec.getApproximationHigh());
+		header.setSuccessiveApproximationLow(spec.getApproximationLow());
+
+		if (isArithmetic(mode)) {
+			ArithmeticScanEncoder encoder = new ArithmeticScanEncoder(layout, mode);
+			items.add(header);
+			addIntervals(items, encoder.encode(header, restartInterval, store, null, null));
+			return;
+		}
+
+		boolean progressive = mode == FrameMode.HUFF_PROGRESSIVE_DCT;
+		boolean usesDc = !progressive || ProgressiveScanEncoder.usesDcTables(header);
+		boolean usesAc = !progressive || ProgressiveScanEncoder.usesAcTables(header);
+		HuffmanTableBuilder[] dcCounts = new HuffmanTableBuilder[4];
+		HuffmanTableBuilder[] acCounts = new HuffmanTableBuilder[4];
+		for (int component : spec.getComponents()) {
+			int selector = (component == 0) ? 0 : 1;
+			if (usesDc && dcCounts[selector] == null) {
+				dcCounts[selector] = new HuffmanTableBuilder();
+			}
+			if (usesAc && acCounts[selector] == null) {
+				acCounts[selector] = new HuffmanTableBuilder();
+			}
+		}
+
+		ProgressiveScanEncoder progressiveEncoder = progressive ? new ProgressiveScanEncoder(layout) : null;
+		HuffmanScanEncoder sequentialEncoder = progressive ? null : new HuffmanScanEncoder(layout);
+		if (progressive) {
+			progressiveEncoder.countSymbols(header, restartInterval, store, dcCounts, acCounts);
+		} else {
+			sequentialEncoder.countSymbols(header, restartInterval, store, dcCounts, acCounts);
+		}
+
+		DhtSegment tables = new DhtSegment();
+		tables.setFrameMode(mode);
+		HuffmanEncodingTable[] dcTables = buildTables(mode, 0, dcCounts, tables);
+		HuffmanEncodingTable[] acTables = buildTables(mode, 1, acCounts, tables);
+
+		List<byte[]> intervals = progressive ?
+				  progressiveEncoder.encode(header, restartInterval, store, dcTables, acTables) :
+				  sequentialEncoder.encode(header, restartInterval, store, dcTables, acTables);
+
+		if (tables.getTableCount() > 0) {
+			items.add(tables);
+		}
+		items.add(header);
+		addIntervals(items, intervals);
+	}
+
+	/**
+	 * Adds the entropy coded data of each restart interval, with the RST
+	 * markers between them, to the items.
+	 */
+	static void addIntervals(List<DataItem> items, List<byte[]> intervals) {
+		for (int interval = 0; interval < intervals.size(); interval++) {
+			if (interval > 0) {
+				items.add(new RstMMarker(RstMMarker.FIRST_MARKERID + ((interval - 1) % 8)));
+			}
+			EntropyData data = new EntropyData();
+			data.setData(intervals.get(interval));
+			items.add(data);
+		}
+	}
+
+	/**
+	 * Builds the tables of one class from the counts, adding them to the
+	 * segment.
+	 *
+	 * @return The tables for encoding, indexed by selector
+	 */
+	static HuffmanEncodingTable[] buildTables(FrameMode mode, int tableClass,
+			  HuffmanTableBuilder[] counts, DhtSegment segment) {
+		HuffmanEncodingTable[] tables = new HuffmanEncodingTable[4];
+
+		for (int selector = 0; selector < counts.length; selector++) {
+			if (counts[selector] != null) {
+				DhtHuffmanTable table = new DhtHuffmanTable();
+				table.setFrameMode(mode);
+				table.setTableClass(tableClass);
+				table.setTableId(selector);
+				counts[selector].build(table);
+				segment.addTable(table);
+				tables[selector] = new HuffmanEncodingTable(table);
+			}
+		}
+
+		return tables;
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * Turns the planes of a decoded frame into a PixelImage: upsampling the
+ * components to the size of the image, and converting YCbCr to RGB. Both
+ * are done the same way as the IJG's libjpeg does by default: "fancy"
+ * (triangle filter) upsampling for components that are half the width, or
+ * half the width and height, of the image, and fixed point colour
+ * conversion. (As in libjpeg, fancy upsampling isn't used for planes of one
+ * sample per block.)
+ *
+ * It also converts RGB to YCbCr for encoding, again as libjpeg does.
+ */
+final class ColorConverter {
+	private static final int SCALE_BITS = 16;
+	private static final int ONE_HALF = 1 << (SCALE_BITS - 1);
+	private static final int FIX_1_40200 = fix(1.40200);
+	private static final int FIX_1_77200 = fix(1.77200);
+	private static final int FIX_0_71414 = fix(0.71414);
+	private static final int FIX_0_34414 = fix(0.34414);
+	private static final int FIX_0_29900 = fix(0.29900);
+	private static final int FIX_0_58700 = fix(0.58700);
+	private static final int FIX_0_11400 = fix(0.11400);
+	private static final int FIX_0_16874 = fix(0.16874);
+	private static final int FIX_0_33126 = fix(0.33126);
+	private static final int FIX_0_50000 = fix(0.50000);
+	private static final int FIX_0_41869 = fix(0.41869);
+	private static final int FIX_0_08131 = fix(0.08131);
+	// The rounding for Cb and Cr is just under a half, so 255 can't become 256
+	private static final int CHROMA_OFFSET = (128 << SCALE_BITS) + ONE_HALF - 1;
+
+	private ColorConverter() {
+	}
+
+	/**
+	 * Checks that each component can be upsampled to the size of the image:
+	 * that the maximum sampling factors are whole multiples of its own.
+	 *
+	 * @param layout The layout of the frame
+	 */
+	static void checkSampling(FrameLayout layout) {
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			if (layout.getMaxHorizontalSampling() % layout.getHorizontalSampling(component) != 0 ||
+					  layout.getMaxVerticalSampling() % layout.getVerticalSampling(component) != 0) {
+				throw new UnsupportedOperationException("Component " + layout.getComponentId(component) +
+						  " can't be upsampled by a whole number");
+			}
+		}
+	}
+
+	/**
+	 * Makes a gray scale image from the first component
+	 *
+	 * @param planes The decoded samples
+	 * @return The image
+	 */
+	static PixelImage toGray(ComponentPlanes planes) {
+		int width = planes.getWidth();
+		int height = planes.getHeight();
+		byte[] samples = new byte[width * height];
+		byte[] plane = planes.getPlane(0);
+		int stride = planes.getStride(0);
+
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(plane, y * stride, samples, y * width, width);
+		}
+
+		return new PixelImage(width, height, 1, samples);
+	}
+
+	/**
+	 * Makes an RGB image from the first three components.
+	 *
+	 * @param planes The decoded samples
+	 * @param ycc True if the components are Y, Cb and Cr, false if they're
+	 *			already R, G and B
+	 * @return The image
+	 */
+	static PixelImage toRgb(ComponentPlanes planes, boolean ycc) {
+		int width = planes.getWidth();
+		int height = planes.getHeight();
+		byte[] samples = new byte[width * height * 3];
+		// One extra, as upsampling by 2 produces an even number of samples
+		int[] first = new int[width + 1];
+		int[] second = new int[width + 1];
+		int[] third = new int[width + 1];
+
+		for (int y = 0; y < height; y++) {
+			upsampleRow(planes, 0, y, first);
+			upsampleRow(planes, 1, y, second);
+			upsampleRow(planes, 2, y, third);
+			if (ycc) {
+				convertRow(first, second, third, samples, y * width * 3, width);
+			} else {
+				interleaveRow(first, second, third, samples, y * width * 3, width);
+			}
+		}
+
+		return new PixelImage(width, height, 3, samples);
+	}
+
+	/**
+	 * Converts a row of YCbCr samples to interleaved RGB (section 7 of the
+	 * JFIF specification)
+	 */
+	private static void convertRow(int[] luma, int[] blue, int[] red, byte[] output, int offset, int width) {
+		for (int x = 0; x < width; x++) {
+			int y = luma[x];
+			int cb = blue[x] - 128;
+			int cr = red[x] - 128;
+			int out = offset + x * 3;
+
+			output[out] = (byte) clamp(y + ((FIX_1_40200 * cr + ONE_HALF) >> SCALE_BITS));
+			output[out + 1] = (byte) clamp(y + ((-FIX_0_34414 * cb + ONE_HALF - FIX_0_71414 * cr) >> SCALE_BITS));
+			output[out + 2] = (byte) clamp(y + ((FIX_1_77200 * cb + ONE_HALF) >> SCALE_BITS));
+		}
+	}
+
+	/**
+	 * Converts a row of interleaved RGB samples to YCbCr (section 7 of the
+	 * JFIF specification), the same way as the IJG's libjpeg.
+	 *
+	 * @param input The RGB samples
+	 * @param offset The index in input of the first pixel
+	 * @param width The number of pixels to convert
+	 * @param luma Where to put the Y samples
+	 * @param blue Where to put the Cb samples
+	 * @param red Where to put the Cr samples
+	 * @param outputOffset The index in each output of the first pixel
+	 */
+	static void fromRgbRow(byte[] input, int offset, int width, int[] luma, int[] blue, int[] red,
+			  int outputOffset) {
+		for (int x = 0; x < width; x++) {
+			int in = offset + x * 3;
+			int r = input[in] & 0xFF;
+			int g = input[in + 1] & 0xFF;
+			int b = input[in + 2] & 0xFF;
+			int out = outputOffset + x;
+
+			luma[out] = (FIX_0_29900 * r + FIX_0_58700 * g + FIX_0_11400 * b + ONE_HALF) >> SCALE_BITS;
+			blue[out] = (-FIX_0_16874 * r - FIX_0_33126 * g + FIX_0_50000 * b + CHROMA_OFFSET) >> SCALE_BITS;
+			red[out] = (FIX_0_50000 * r - FIX_0_41869 * g - FIX_0_08131 * b + CHROMA_OFFSET) >> SCALE_BITS;
+		}
+	}
+
+	/**
+	 * Interleaves a row of R, G and B samples
+	 */
+	private static void interleaveRow(int[] red, int[] green, int[] blue, byte[] output, int offset, int width) {
+		for (int x = 0; x < width; x++) {
+			int out = offset + x * 3;
+			output[out] = (byte) red[x];
+			output[out + 1] = (byte) green[x];
+			output[out + 2] = (byte) blue[x];
+		}
+	}
+
+	/**
+	 * Makes one row of a component at the size of the image.
+	 *
+	 * @param planes The decoded samples
+	 * @param component The index of the component in the frame
+	 * @param y The row of the image (at the planes' size)
+	 * @param output Where to put the samples. It must have room for the width
+	 *			of the image, plus one.
+	 */
+	static void upsampleRow(ComponentPlanes planes, int component, int y, int[] output) {
+		FrameLayout layout = planes.getLayout();
+		byte[] plane = planes.getPlane(component);
+		int stride = planes.getStride(component);
+		int horizontal = layout.getMaxHorizontalSampling() / layout.getHorizontalSampling(component);
+		int vertical = layout.getMaxVerticalSampling() / layout.getVerticalSampling(component);
+		int componentWidth = planes.getComponentWidth(component);
+		int componentHeight = planes.getComponentHeight(component);
+		int width = planes.getWidth();
+		int row = y / vertical;
+		boolean fancy = planes.getBlockSize() > 1 && componentWidth > 2;
+
+		if (horizontal == 1 && vertical == 1) {
+			int start = row * stride;
+			for (int x = 0; x < width; x++) {
+				output[x] = plane[start + x] & 0xFF;
+			}
+		} else if (horizontal == 2 && vertical == 1 && fancy) {
+			fancyRow(plane, row * stride, componentWidth, output);
+		} else if (horizontal == 2 && vertical == 2 && fancy) {
+			int near = row;
+			int far = ((y & 1) == 0) ? Math.max(row - 1, 0) : Math.min(row + 1, componentHeight - 1);
+			fancyRows(plane, near * stride, far * stride, componentWidth, output);
+		} else {
+			int start = row * stride;
+			for (int x = 0; x < width; x++) {
+				output[x] = plane[start + x / horizontal] & 0xFF;
+			}
+		}
+	}
+
+	/**
+	 * Doubles the width of a row: each output sample is 3/4 of the nearer
+	 * input sample and 1/4 of the further one
+	 */
+	private static void fancyRow(byte[] plane, int start, int count, int[] output) {
+		int current = plane[start] & 0xFF;
+		int next = plane[start + 1] & 0xFF;
+		output[0] = current;
+		output[1] = (current * 3 + next + 2) >> 2;
+
+		for (int index = 1; index < count - 1; index++) {
+			int previous = current;
+			current = next;
+			next = plane[start + index + 1] & 0xFF;
+			output[index * 2] = (current * 3 + previous + 1) >> 2;
+			output[index * 2 + 1] = (current * 3 + next + 2) >> 2;
+		}
+
+		output[count * 2 - 2] = (next * 3 + current + 1) >> 2;
+		output[count * 2 - 1] = next;
+	}
+
+	/**
+	 * Doubles the width and height of a row: each output sample is 9/16 of
+	 * the nearest input sample, 3/16 of each of the next nearest two, and
+	 * 1/16 of the furthest
+	 */
+	private static void fancyRows(byte[] plane, int near, int far, int count, int[] output) {
+		int current = (plane[near] & 0xFF) * 3 + (plane[far] & 0xFF);
+		int next = (plane[near + 1] & 0xFF) * 3 + (plane[far + 1] & 0xFF);
+		output[0] = (current * 4 + 8) >> 4;
+		output[1] = (current * 3 + next + 7) >> 4;
+
+		for (int index = 1; index < count - 1; index++) {
+			int previous = current;
+			current = next;
+			next = (plane[near + index + 1] & 0xFF) * 3 + (plane[far + index + 1] & 0xFF);
+			output[index * 2] = (current * 3 + previous + 8) >> 4;
+			output[index * 2 + 1] = (current * 3 + next + 7) >> 4;
+		}
+
+		output[count * 2 - 2] = (next * 3 + current + 8) >> 4;
+		output[count * 2 - 1] = (next * 4 + 7) >> 4;
+	}
+
+	private static int clamp(int value) {
+		return Math.min(Math.max(value, 0), 255);
+	}
+
+	private static int fix(double value) {
+		return (int) (value * (1 << SCALE_BITS) + 0.5);
+	}
+}
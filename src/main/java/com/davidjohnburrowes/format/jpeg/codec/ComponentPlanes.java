@@ -0,0 +1,250 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.Arrays;
+
+/**
+ * The samples of each component of a frame, at the component's own
+ * resolution. Blocks are dequantized and inverse transformed as they are
+ * received, so a sequential scan can be decoded straight into the planes
+ * without keeping its coefficients.
+ *
+ * The planes may be at a reduced size: each block is transformed into 8x8,
+ * 4x4, 2x2 or 1x1 samples. They may also keep only the first few
+ * components, in which case blocks of the others are ignored.
+ */
+final class ComponentPlanes implements BlockSink {
+	private final FrameLayout layout;
+	private final byte[][] planes;
+	private final int[] strides;
+	private final int[][] quantization;
+	private final Idct idct;
+	private final int blockSize;
+
+	/**
+	 * @param layout The layout of the frame
+	 */
+	ComponentPlanes(FrameLayout layout) {
+		this(layout, 8);
+	}
+
+	/**
+	 * @param layout The layout of the frame
+	 * @param blockSize The number of samples across each block: 8, 4, 2 or 1
+	 */
+	ComponentPlanes(FrameLayout layout, int blockSize) {
+		this(layout, blockSize, layout.getComponentCount());
+	}
+
+	/**
+	 * @param layout The layout of the frame
+	 * @param blockSize The number of samples across each block: 8, 4, 2 or 1
+	 * @param keptComponents The number of components, from the first, to keep
+	 */
+	ComponentPlanes(FrameLayout layout, int blockSize, int keptComponents) {
+		if (blockSize != 8 && blockSize != 4 && blockSize != 2 && blockSize != 1) {
+			throw new IllegalArgumentException("The block size must be 8, 4, 2 or 1. Found " + blockSize);
+		}
+		int count = layout.getComponentCount();
+		if (keptComponents < 1 || keptComponents > count) {
+			throw new IllegalArgumentException("Between 1 and " + count + " components may be kept. Found " +
+					  keptComponents);
+		}
+
+		this.layout = layout;
+		this.blockSize = blockSize;
+		this.planes = new byte[count][];
+		this.strides = new int[count];
+		this.quantization = new int[count][];
+		this.idct = new Idct(layout.getSamplePrecision());
+
+		for (int component = 0; component < keptComponents; component++) {
+			strides[component] = layout.getBlocksWide(component) * blockSize;
+			planes[component] = new byte[strides[component] * layout.getBlocksHigh(component) * blockSize];
+		}
+	}
+
+	/**
+	 * @return The layout of the frame
+	 */
+	FrameLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return The number of samples across each block
+	 */
+	int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @return The width of the image at the planes' size
+	 */
+	int getWidth() {
+		return scale(layout.getImageWidth(), 1);
+	}
+
+	/**
+	 * @return The height of the image at the planes' size
+	 */
+	int getHeight() {
+		return scale(layout.getImageHeight(), 1);
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The width of the component's samples in its plane
+	 */
+	int getComponentWidth(int component) {
+		return scale(layout.getImageWidth() * layout.getHorizontalSampling(component),
+				  layout.getMaxHorizontalSampling());
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The height of the component's samples in its plane
+	 */
+	int getComponentHeight(int component) {
+		return scale(layout.getImageHeight() * layout.getVerticalSampling(component),
+				  layout.getMaxVerticalSampling());
+	}
+
+	/**
+	 * Scales a size (divided by the denominator) to the size of the blocks,
+	 * rounding up
+	 */
+	private int scale(int size, int denominator) {
+		long scaled = (long) size * blockSize;
+		long divisor = (long) denominator * 8;
+		return (int) ((scaled + divisor - 1) / divisor);
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return True if the planes keep the component's samples
+	 */
+	boolean isKept(int component) {
+		return planes[component] != null;
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The samples of the component, row by row, or null if the
+	 * component isn't kept
+	 */
+	byte[] getPlane(int component) {
+		return planes[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The distance in the plane from one row to the next
+	 */
+	int getStride(int component) {
+		return strides[component];
+	}
+
+	/**
+	 * Sets the quantization table used for the blocks of a component. This
+	 * does nothing for a component that isn't kept.
+	 *
+	 * @param component The index of a component in the frame
+	 * @param table The table
+	 */
+	void setQuantization(int component, DqtQuantizationTable table) {
+		if (!isKept(component)) {
+			return;
+		}
+		if (table == null) {
+			throw new InvalidJpegFormat("Component " + layout.getComponentId(component) +
+					  " uses quantization table " + layout.getQuantizationSelector(component) +
+					  " which was never defined");
+		}
+
+		int[] natural = new int[64];
+		for (int index = 0; index < 64; index++) {
+			natural[ZigZag.NATURAL_ORDER[index]] = table.getElement(index);
+		}
+		quantization[component] = natural;
+	}
+
+	/**
+	 * Sets the quantization tables of the components in a scan to those in
+	 * effect for it.
+	 *
+	 * @param scan The scan
+	 */
+	void setQuantization(Scan scan) {
+		for (int component : layout.getScanComponents(scan.getHeader())) {
+			setQuantization(component, scan.getQuantizationTable(layout.getQuantizationSelector(component)));
+		}
+	}
+
+	@Override
+	public void putBlock(int component, int blockRow, int blockColumn, short[] coefficients) {
+		if (!isKept(component)) {
+			return;
+		}
+		int stride = strides[component];
+		int offset = (blockRow * stride + blockColumn) * blockSize;
+
+		switch (blockSize) {
+			case 8:
+				idct.transform(coefficients, quantization[component], planes[component], offset, stride);
+				break;
+			case 4:
+				idct.transform4x4(coefficients, quantization[component], planes[component], offset, stride);
+				break;
+			case 2:
+				idct.transform2x2(coefficients, quantization[component], planes[component], offset, stride);
+				break;
+			default:
+				idct.transform1x1(coefficients, quantization[component], planes[component], offset);
+				break;
+		}
+	}
+
+	/**
+	 * Transforms every block of a store into the planes. A component with no
+	 * quantization table set (because none of its scans have been decoded)
+	 * is filled with the middle value.
+	 *
+	 * @param store The coefficients. Its layout must be the planes' one.
+	 */
+	void render(CoefficientStore store) {
+		short[] block = new short[64];
+
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			if (!isKept(component)) {
+				continue;
+			}
+			if (quantization[component] == null) {
+				Arrays.fill(planes[component], (byte) 128);
+				continue;
+			}
+			for (int row = 0; row < store.getBlocksHigh(component); row++) {
+				for (int column = 0; column < store.getBlocksWide(component); column++) {
+					store.getBlock(component, row, column, block);
+					putBlock(component, row, column, block);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * How LosslessTransformer treats the edges of an image that don't fill a
+ * whole MCU. Blocks can only be moved whole, so when such an edge is mirrored,
+ * its partial MCUs can't be moved to the opposite edge.
+ */
+public enum EdgeHandling {
+	/**
+	 * Drop the partial MCUs from each edge that is mirrored, so the rest of
+	 * the image is transformed exactly. (An image smaller than one MCU is not
+	 * trimmed.)
+	 */
+	TRIM,
+
+	/**
+	 * Keep the partial MCUs, leaving them where they are along the mirrored
+	 * edge (but transposed, if the rest of the image is). The image keeps its
+	 * size, but its edge is not properly transformed. This is what the IJG's
+	 * jpegtran does by default.
+	 */
+	KEEP
+}
@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * The forward DCT used to turn samples into quantized coefficients. This is
+ * the fast integer Arai-Agui-Nakajima algorithm used by the IJG's libjpeg
+ * (jfdctfst.c): 5 multiplies and 29 adds for each row or column, in 8 bit
+ * fixed point. Its outputs are scaled differently for each coefficient, and
+ * the scaling is undone as part of quantization, by dividing each one by
+ * its quantization value times its scale factor.
+ */
+final class Fdct {
+	private static final int CONST_BITS = 8;
+
+	private static final int FIX_0_382683433 = 98;
+	private static final int FIX_0_541196100 = 139;
+	private static final int FIX_0_707106781 = 181;
+	private static final int FIX_1_306562965 = 334;
+
+	/**
+	 * The scale factor of each output, in natural order, with 14 fractional
+	 * bits: 1 for row or column 0, cos(k * pi / 16) * sqrt(2) for row or
+	 * column k.
+	 */
+	private static final int[] AAN_SCALES = new int[64];
+
+	static {
+		double[] factors = new double[8];
+		factors[0] = 1.0;
+		for (int k = 1; k < 8; k++) {
+			factors[k] = Math.cos(k * Math.PI / 16) * Math.sqrt(2);
+		}
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				AAN_SCALES[row * 8 + column] = (int) Math.round(factors[row] * factors[column] * (1 << 14));
+			}
+		}
+	}
+
+	private Fdct() {
+	}
+
+	/**
+	 * Makes the divisors that quantize the outputs of transform.
+	 *
+	 * @param quantization The quantization table, in natural order
+	 * @return The divisors, in natural order
+	 */
+	static int[] makeDivisors(int[] quantization) {
+		int[] divisors = new int[64];
+		for (int index = 0; index < 64; index++) {
+			// The outputs are also 8 times too big
+			divisors[index] = (quantization[index] * AAN_SCALES[index] + (1 << 10)) >> 11;
+		}
+
+		return divisors;
+	}
+
+	/**
+	 * Transforms and quantizes one block.
+	 *
+	 * @param samples The samples, less half their range (so -128 to 127),
+	 *			in natural order. They are overwritten.
+	 * @param divisors The divisors from makeDivisors
+	 * @param output Where to put the quantized coefficients, in natural order
+	 */
+	static void transform(int[] samples, int[] divisors, short[] output) {
+		int[] data = samples;
+
+		// Pass 1: the rows
+		for (int row = 0; row < 64; row += 8) {
+			pass(data, row, 1);
+		}
+
+		// Pass 2: the columns
+		for (int column = 0; column < 8; column++) {
+			pass(data, column, 8);
+		}
+
+		for (int index = 0; index < 64; index++) {
+			int divisor = divisors[index];
+			int value = data[index];
+			if (value < 0) {
+				output[index] = (short) -((divisor / 2 - value) / divisor);
+			} else {
+				output[index] = (short) ((value + divisor / 2) / divisor);
+			}
+		}
+	}
+
+	/**
+	 * Transforms one row or column in place.
+	 *
+	 * @param data The block
+	 * @param start The index of the first value
+	 * @param step The distance from one value to the next
+	 */
+	private static void pass(int[] data, int start, int step) {
+		int d0 = data[start];
+		int d1 = data[start + step];
+		int d2 = data[start + step * 2];
+		int d3 = data[start + step * 3];
+		int d4 = data[start + step * 4];
+		int d5 = data[start + step * 5];
+		int d6 = data[start + step * 6];
+		int d7 = data[start + step * 7];
+
+		int tmp0 = d0 + d7;
+		int tmp7 = d0 - d7;
+		int tmp1 = d1 + d6;
+		int tmp6 = d1 - d6;
+		int tmp2 = d2 + d5;
+		int tmp5 = d2 - d5;
+		int tmp3 = d3 + d4;
+		int tmp4 = d3 - d4;
+
+		// Even part
+		int tmp10 = tmp0 + tmp3;
+		int tmp13 = tmp0 - tmp3;
+		int tmp11 = tmp1 + tmp2;
+		int tmp12 = tmp1 - tmp2;
+
+		data[start] = tmp10 + tmp11;
+		data[start + step * 4] = tmp10 - tmp11;
+
+		int z1 = ((tmp12 + tmp13) * FIX_0_707106781) >> CONST_BITS;
+		data[start + step * 2] = tmp13 + z1;
+		data[start + step * 6] = tmp13 - z1;
+
+		// Odd part
+		tmp10 = tmp4 + tmp5;
+		tmp11 = tmp5 + tmp6;
+		tmp12 = tmp6 + tmp7;
+
+		int z5 = ((tmp10 - tmp12) * FIX_0_382683433) >> CONST_BITS;
+		int z2 = ((tmp10 * FIX_0_541196100) >> CONST_BITS) + z5;
+		int z4 = ((tmp12 * FIX_1_306562965) >> CONST_BITS) + z5;
+		int z3 = (tmp11 * FIX_0_707106781) >> CONST_BITS;
+
+		int z11 = tmp7 + z3;
+		int z13 = tmp7 - z3;
+
+		data[start + step * 5] = z13 + z2;
+		data[start + step * 3] = z13 - z2;
+		data[start + step] = z11 + z4;
+		data[start + step * 7] = z11 - z4;
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.data.FrameSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+
+/**
+ * The geometry of a frame: how many blocks each component has, and how they
+ * are grouped into MCUs (minimum coded units). This is worked out from the
+ * image size and the sampling factors of the components, as described on
+ * pages A-1 to A-7 of the standard.
+ *
+ * Each component is given enough blocks to fill a whole number of MCUs, which
+ * is what an interleaved scan codes. A scan of a single component only codes
+ * the blocks that cover the component's samples (see
+ * getComponentBlocksWide()), which may be fewer.
+ */
+public class FrameLayout {
+	private final int imageWidth;
+	private final int imageHeight;
+	private final int samplePrecision;
+	private final int[] componentIds;
+	private final int[] horizontal;
+	private final int[] vertical;
+	private final int[] quantizationSelectors;
+	private final int maxHorizontal;
+	private final int maxVertical;
+	private final int mcusPerRow;
+	private final int mcuRows;
+
+	/**
+	 * Works out the layout of the frame. The frame must have a non-zero
+	 * height.
+	 *
+	 * @param frame The frame to work out the layout of
+	 */
+	public FrameLayout(FrameSegment frame) {
+		this(frame, (frame == null) ? 0 : frame.getImageHeight());
+	}
+
+	/**
+	 * Works out the layout of the frame, using the provided height rather
+	 * than that of the frame. This is for frames whose height is given by a
+	 * DNL segment.
+	 *
+	 * @param frame The frame to work out the layout of
+	 * @param imageHeight The number of lines in the image
+	 */
+	public FrameLayout(FrameSegment frame, int imageHeight) {
+		if (frame == null) {
+			throw new IllegalArgumentException("frame may not be null");
+		}
+		if (frame.getComponentCount() == 0) {
+			throw new InvalidJpegFormat("Frame has no components");
+		}
+		if (imageHeight <= 0 || frame.getImageWidth() <= 0) {
+			throw new InvalidJpegFormat("Frame has no lines or no columns");
+		}
+
+		int count = frame.getComponentCount();
+		int maxH = 1;
+		int maxV = 1;
+
+		this.imageWidth = frame.getImageWidth();
+		this.imageHeight = imageHeight;
+		this.samplePrecision = frame.getSamplePrecision();
+		this.componentIds = new int[count];
+		this.horizontal = new int[count];
+		this.vertical = new int[count];
+		this.quantizationSelectors = new int[count];
+
+		for (int index = 0; index < count; index++) {
+			FrameComponent component = frame.getComponent(index);
+			if (component.getHorizontalScaling() < 1 || component.getVerticalScaling() < 1) {
+				throw new InvalidJpegFormat("Component sampling factors must be at least 1");
+			}
+			componentIds[index] = component.getComponentId();
+			horizontal[index] = component.getHorizontalScaling();
+			vertical[index] = component.getVerticalScaling();
+			quantizationSelectors[index] = component.getQuantizationSelector();
+			maxH = Math.max(maxH, horizontal[index]);
+			maxV = Math.max(maxV, vertical[index]);
+		}
+
+		this.maxHorizontal = maxH;
+		this.maxVertical = maxV;
+		this.mcusPerRow = ceilDiv(imageWidth, 8 * maxH);
+		this.mcuRows = ceilDiv(imageHeight, 8 * maxV);
+	}
+
+	/**
+	 * @return The width of the image in samples
+	 */
+	public int getImageWidth() {
+		return imageWidth;
+	}
+
+	/**
+	 * @return The height of the image in lines
+	 */
+	public int getImageHeight() {
+		return imageHeight;
+	}
+
+	/**
+	 * @return The number of bits in each sample
+	 */
+	public int getSamplePrecision() {
+		return samplePrecision;
+	}
+
+	/**
+	 * @return The number of components in the frame
+	 */
+	public int getComponentCount() {
+		return componentIds.length;
+	}
+
+	/**
+	 * @param componentId A component identifier, as used in SOS segments
+	 * @return The index of the component in the frame, or -1 if there is none
+	 */
+	public int getComponentIndex(int componentId) {
+		for (int index = 0; index < componentIds.length; index++) {
+			if (componentIds[index] == componentId) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The identifier of the component
+	 */
+	public int getComponentId(int component) {
+		return componentIds[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The horizontal sampling factor of the component
+	 */
+	public int getHorizontalSampling(int component) {
+		return horizontal[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The vertical sampling factor of the component
+	 */
+	public int getVerticalSampling(int component) {
+		return vertical[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The quantization table selector of the component
+	 */
+	public int getQuantizationSelector(int component) {
+		return quantizationSelectors[component];
+	}
+
+	/**
+	 * @return The largest horizontal sampling factor of all the components
+	 */
+	public int getMaxHorizontalSampling() {
+		return maxHorizontal;
+	}
+
+	/**
+	 * @return The largest vertical sampling factor of all the components
+	 */
+	public int getMaxVerticalSampling() {
+		return maxVertical;
+	}
+
+	/**
+	 * @return The number of MCUs across the image in an interleaved scan
+	 */
+	public int getMcusPerRow() {
+		return mcusPerRow;
+	}
+
+	/**
+	 * @return The number of rows of MCUs in an interleaved scan
+	 */
+	public int getMcuRows() {
+		return mcuRows;
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The number of blocks across the component, padded out to fill
+	 *			a whole number of MCUs
+	 */
+	public int getBlocksWide(int component) {
+		return mcusPerRow * horizontal[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The number of rows of blocks in the component, padded out to
+	 *			fill a whole number of MCUs
+	 */
+	public int getBlocksHigh(int component) {
+		return mcuRows * vertical[component];
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The width of the component in samples
+	 */
+	public int getComponentWidth(int component) {
+		return ceilDiv(imageWidth * horizontal[component], maxHorizontal);
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The height of the component in samples
+	 */
+	public int getComponentHeight(int component) {
+		return ceilDiv(imageHeight * vertical[component], maxVertical);
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The number of blocks across the component in a scan of just
+	 *			that component
+	 */
+	public int getComponentBlocksWide(int component) {
+		return ceilDiv(getComponentWidth(component), 8);
+	}
+
+	/**
+	 * @param component The index of a component in the frame
+	 * @return The number of rows of blocks in the component in a scan of just
+	 *			that component
+	 */
+	public int getComponentBlocksHigh(int component) {
+		return ceilDiv(getComponentHeight(component), 8);
+	}
+
+	/**
+	 * Finds the frame components that a scan codes, in the order the scan
+	 * codes them.
+	 *
+	 * @param header The header of the scan
+	 * @return The index in the frame of each component in the scan
+	 */
+	public int[] getScanComponents(SosSegment header) {
+		int[] result = new int[header.getComponentSpecCount()];
+
+		for (int index = 0; index < result.length; index++) {
+			int id = header.getComponentSpec(index).getComponentSelector();
+			result[index] = getComponentIndex(id);
+			if (result[index] == -1) {
+				throw new InvalidJpegFormat("Scan refers to component " + id + " which is not in the frame");
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param components The components coded by a scan, as returned by
+	 *			getScanComponents()
+	 * @return The number of MCUs the scan codes
+	 */
+	public int getScanMcuCount(int[] components) {
+		if (components.length == 1) {
+			return getComponentBlocksWide(components[0]) * getComponentBlocksHigh(components[0]);
+		}
+
+		return mcusPerRow * mcuRows;
+	}
+
+	/**
+	 * Integer division rounding up
+	 */
+	private static int ceilDiv(int numerator, int denominator) {
+		return (numerator + denominator - 1) / denominator;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+
+/**
+ * A DhtHuffmanTable rearranged for decoding. The canonical codes are
+ * generated as described in Annex C of the standard, and the tables used by
+ * the DECODE procedure (figure F.16) are built from them. In addition, there
+ * is a lookup table indexed by the next LOOKAHEAD_BITS bits of the data, so
+ * that the short codes, which are most of the codes found in practice, are
+ * decoded in a single step.
+ */
+public class HuffmanDecodingTable {
+	/**
+	 * The number of bits of lookahead used for the single step decode
+	 */
+	static final int LOOKAHEAD_BITS = 9;
+
+	/**
+	 * For each possible value of the next LOOKAHEAD_BITS bits, the code length
+	 * in the upper bits and the symbol in the low 8 bits. 0 if the code is
+	 * longer than LOOKAHEAD_BITS.
+	 */
+	final int[] lookup = new int[1 << LOOKAHEAD_BITS];
+
+	/**
+	 * For each code length, the largest code of that length, or -1 if there
+	 * are none
+	 */
+	final int[] maxCode = new int[17];
+
+	/**
+	 * For each code length, the amount to add to a code of that length to
+	 * get the index of its symbol in values
+	 */
+	final int[] valueOffset = new int[17];
+
+	/**
+	 * The symbols, in order of their codes
+	 */
+	final int[] values;
+
+	/**
+	 * @param table The table to build the decoding tables from
+	 */
+	public HuffmanDecodingTable(DhtHuffmanTable table) {
+		if (table == null) {
+			throw new IllegalArgumentException("table may not be null");
+		}
+
+		int total = 0;
+		for (int length = 1; length <= 16; length++) {
+			total += table.getElement(length - 1).length;
+		}
+		values = new int[total];
+
+		int code = 0;
+		int symbolIndex = 0;
+		for (int length = 1; length <= 16; length++) {
+			short[] symbols = table.getElement(length - 1);
+
+			valueOffset[length] = symbolIndex - code;
+			for (short symbol : symbols) {
+				if (code >= (1 << length)) {
+					throw new InvalidJpegFormat("Huffman table has too many codes of length " + length);
+				}
+				values[symbolIndex++] = symbol;
+				if (length <= LOOKAHEAD_BITS) {
+					int shift = LOOKAHEAD_BITS - length;
+					int first = code << shift;
+					for (int fill = 0; fill < (1 << shift); fill++) {
+						lookup[first + fill] = (length << 8) | symbol;
+					}
+				}
+				code++;
+			}
+			maxCode[length] = (symbols.length == 0) ? -1 : code - 1;
+			code <<= 1;
+		}
+	}
+}
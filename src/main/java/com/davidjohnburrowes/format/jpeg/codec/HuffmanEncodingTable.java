@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+
+/**
+ * A DhtHuffmanTable rearranged for encoding: the code and code length for
+ * each symbol, generated as described in Annex C of the standard.
+ */
+public class HuffmanEncodingTable {
+	final int[] codes = new int[256];
+	final int[] lengths = new int[256];
+
+	/**
+	 * @param table The table to build the codes from
+	 */
+	public HuffmanEncodingTable(DhtHuffmanTable table) {
+		if (table == null) {
+			throw new IllegalArgumentException("table may not be null");
+		}
+
+		int code = 0;
+		for (int length = 1; length <= 16; length++) {
+			for (short symbol : table.getElement(length - 1)) {
+				if (code >= (1 << length)) {
+					throw new InvalidJpegFormat("Huffman table has too many codes of length " + length);
+				}
+				codes[symbol] = code++;
+				lengths[symbol] = length;
+			}
+			code <<= 1;
+		}
+	}
+
+	/**
+	 * @param symbol A symbol (0-255)
+	 * @return The code for the symbol
+	 */
+	public int getCode(int symbol) {
+		return codes[symbol];
+	}
+
+	/**
+	 * @param symbol A symbol (0-255)
+	 * @return The length of the code for the symbol, or 0 if the table has
+	 *			no code for it
+	 */
+	public int getLength(int symbol) {
+		return lengths[symbol];
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the Huffman tables of a sequential JPEG image with tables that are
+ * optimal for its data, and re-encodes its scans with them. The coefficients
+ * (and so the image) are unchanged; only the size of the entropy coded data
+ * is. This is what "jpegtran -optimize" does.
+ *
+ * Each scan gets its own DHT segment, immediately before its SOS segment,
+ * holding just the tables it uses. All of the original DHT segments are
+ * removed. A scan with no entropy coded data (which LAX reading allows) isn't
+ * re-encoded: its DHT segment holds copies of the original tables it used.
+ */
+public class HuffmanOptimizer {
+
+	/**
+	 * Optimizes the image in place. If this fails, the image is unchanged.
+	 *
+	 * @param jpeg The image to optimize
+	 */
+	public void optimize(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+		HuffmanScanEncoder encoder = new HuffmanScanEncoder(structure.getLayout());
+		List<Scan> scans = structure.getScans();
+		List<DhtSegment> newTables = new ArrayList<DhtSegment>();
+		List<List<byte[]>> newData = new ArrayList<List<byte[]>>();
+
+		CoefficientStore store = new CoefficientStore(structure.getLayout());
+		try {
+			for (Scan scan : scans) {
+				if (scan.getIntervals().isEmpty()) {
+					newTables.add(copyTables(scan));
+					newData.add(null);
+					continue;
+				}
+
+				decoder.decode(scan, store);
+
+				SosSegment header = scan.getHeader();
+				HuffmanTableBuilder[] dcCounts = new HuffmanTableBuilder[4];
+				HuffmanTableBuilder[] acCounts = new HuffmanTableBuilder[4];
+				for (int index = 0; index < header.getComponentSpecCount(); index++) {
+					SosComponentSpec spec = header.getComponentSpec(index);
+					dcCounts[spec.getDcTableSelector()] = new HuffmanTableBuilder();
+					acCounts[spec.getAcTableSelector()] = new HuffmanTableBuilder();
+				}
+				encoder.countSymbols(header, scan.getRestartInterval(), store, dcCounts, acCounts);
+
+				DhtSegment segment = new DhtSegment();
+				segment.setFrameMode(header.getFrameMode());
+				HuffmanEncodingTable[] dcTables = CoefficientWriter.buildTables(header.getFrameMode(), 0, dcCounts, segment);
+				HuffmanEncodingTable[] acTables = CoefficientWriter.buildTables(header.getFrameMode(), 1, acCounts, segment);
+
+				List<byte[]> intervals = encoder.encode(header, scan.getRestartInterval(),
+						  store, dcTables, acTables);
+				if (intervals.size() != scan.getIntervals().size()) {
+					throw new InvalidJpegFormat("Scan has " + scan.getIntervals().size() +
+							  " restart intervals, but its MCUs need " + intervals.size());
+				}
+				newTables.add(segment);
+				newData.add(intervals);
+			}
+		} finally {
+			store.close();
+		}
+
+		for (int index = 0; index < scans.size(); index++) {
+			if (newData.get(index) != null) {
+				List<EntropyData> intervals = scans.get(index).getIntervals();
+				for (int interval = 0; interval < intervals.size(); interval++) {
+					intervals.get(interval).setData(newData.get(index).get(interval));
+				}
+			}
+		}
+
+		List<DataItem> items = new ArrayList<DataItem>(jpeg.getItemCount() + scans.size());
+		int scan = 0;
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			DataItem item = jpeg.getItem(index);
+			if (scan < scans.size() && index == scans.get(scan).getHeaderIndex()) {
+				if (newTables.get(scan) != null) {
+					items.add(newTables.get(scan));
+				}
+				scan++;
+			}
+			if (!(item instanceof DhtSegment)) {
+				items.add(item);
+			}
+		}
+		jpeg.replaceItems(0, jpeg.getItemCount(), items);
+	}
+
+	/**
+	 * Copies the tables that were in effect for a scan into a new segment.
+	 *
+	 * @return The segment, or null if the scan had no tables
+	 */
+	private static DhtSegment copyTables(Scan scan) {
+		SosSegment header = scan.getHeader();
+		DhtSegment segment = new DhtSegment();
+		segment.setFrameMode(header.getFrameMode());
+		DhtHuffmanTable[] dcTables = new DhtHuffmanTable[4];
+		DhtHuffmanTable[] acTables = new DhtHuffmanTable[4];
+
+		for (int index = 0; index < header.getComponentSpecCount(); index++) {
+			SosComponentSpec spec = header.getComponentSpec(index);
+			dcTables[spec.getDcTableSelector()] = scan.getDcTable(spec.getDcTableSelector());
+			acTables[spec.getAcTableSelector()] = scan.getAcTable(spec.getAcTableSelector());
+		}
+
+		boolean empty = true;
+		for (DhtHuffmanTable[] tables : new DhtHuffmanTable[][] { dcTables, acTables }) {
+			for (DhtHuffmanTable original : tables) {
+				if (original != null) {
+					DhtHuffmanTable table = new DhtHuffmanTable();
+					table.setFrameMode(header.getFrameMode());
+					table.setTableClass(original.getTableClass());
+					table.setTableId(original.getTableId());
+					for (int length = 0; length < 16; length++) {
+						table.setElement(length, original.getElement(length).clone());
+					}
+					segment.addTable(table);
+					empty = false;
+				}
+			}
+		}
+
+		return empty ? null : segment;
+	}
+}
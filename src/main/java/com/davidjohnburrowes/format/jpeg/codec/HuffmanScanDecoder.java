@@ -0,0 +1,395 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the Huffman coded scans of sequential DCT frames (baseline and
+ * extended) into blocks of quantized DCT coefficients, following the
+ * procedures in Annex F.2 of the standard.
+ *
+ * Each restart interval is held in its own EntropyData, so the decoder moves
+ * to the next one (and resets the DC predictions) after each interval's
+ * worth of MCUs. Missing or truncated intervals are not an error: the blocks
+ * they would have held are simply not passed to the sink (or are passed with
+ * the zeros that pad the end of the data).
+ *
+ * Since the DC predictions reset at the start of each restart interval, the
+ * intervals can be decoded independently, and so in parallel.
+ *
+ * A scan can also be decoded for just its DC coefficients. The AC codes
+ * still have to be read to find where each block ends, but their extra
+ * bits are skipped without being turned into values or placed in the block.
+ */
+public class HuffmanScanDecoder {
+	/**
+	 * The number of restart intervals below which a task decodes them itself
+	 * rather than splitting them between two tasks
+	 */
+	private static final int PARALLEL_DECODE_THRESHOLD = 4;
+
+	private final FrameLayout layout;
+
+	/**
+	 * @param structure The structure of the image whose scans will be decoded
+	 */
+	public HuffmanScanDecoder(JpegStructure structure) {
+		this(structure.getLayout(), structure.getFrameMode());
+	}
+
+	/**
+	 * @param layout The layout of the frame whose scans will be decoded
+	 * @param mode The mode of that frame
+	 */
+	public HuffmanScanDecoder(FrameLayout layout, FrameMode mode) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+		if (mode == null) {
+			throw new IllegalArgumentException("mode may not be null");
+		}
+		if (mode.isProgressive() || mode.isLossless()) {
+			throw new UnsupportedOperationException("Only sequential DCT frames can be decoded. Found " + mode);
+		}
+		if (mode.getValue() >= 0xC8) {
+			throw new UnsupportedOperationException("Arithmetic coded frames can not be decoded with Huffman tables");
+		}
+
+		this.layout = layout;
+	}
+
+	/**
+	 * @return The layout of the frame this decodes
+	 */
+	public FrameLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Decodes all the blocks of a scan.
+	 *
+	 * @param scan The scan to decode
+	 * @param sink Where to send the decoded blocks
+	 */
+	public void decode(Scan scan, BlockSink sink) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null");
+		}
+
+		ScanPlan plan = new ScanPlan(layout, scan);
+		decodeMcus(plan, scan.getIntervals(), 0, plan.mcuCount, sink);
+	}
+
+	/**
+	 * Decodes just the DC coefficients of a scan. The blocks passed to the
+	 * sink hold their DC coefficient, and zeros for the rest.
+	 *
+	 * @param scan The scan to decode
+	 * @param sink Where to send the decoded blocks
+	 */
+	public void decodeDc(Scan scan, BlockSink sink) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null");
+		}
+
+		ScanPlan plan = new ScanPlan(layout, scan, true);
+		decodeMcus(plan, scan.getIntervals(), 0, plan.mcuCount, sink);
+	}
+
+	/**
+	 * Decodes the MCUs of a scan in a range. Restart intervals that end
+	 * before the range are skipped, and decoding stops at the end of the
+	 * range. The MCUs of a restart interval must be decoded in order though,
+	 * so the blocks before the range in the interval it starts in are also
+	 * passed to the sink.
+	 *
+	 * @param scan The scan to decode
+	 * @param sink Where to send the decoded blocks
+	 * @param firstMcu The first MCU to decode
+	 * @param endMcu The MCU after the last one to decode
+	 */
+	public void decode(Scan scan, BlockSink sink, int firstMcu, int endMcu) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null");
+		}
+		if (firstMcu < 0 || endMcu < firstMcu) {
+			throw new IllegalArgumentException("Bad range of MCUs: " + firstMcu + " to " + endMcu);
+		}
+
+		ScanPlan plan = new ScanPlan(layout, scan);
+		decodeMcus(plan, scan.getIntervals(), firstMcu, Math.min(endMcu, plan.mcuCount), sink);
+	}
+
+	/**
+	 * Decodes the restart intervals that hold the MCUs in the range, stopping
+	 * at the end of the range
+	 */
+	private static void decodeMcus(ScanPlan plan, List<EntropyData> intervals, int firstMcu, int endMcu,
+			  BlockSink sink) {
+		if (intervals.isEmpty() || firstMcu >= endMcu) {
+			return;
+		}
+
+		BitReader reader = new BitReader();
+		short[] block = new short[64];
+
+		if (plan.restartInterval == 0) {
+			decodeInterval(plan, intervals.get(0), 0, endMcu, reader, block, sink);
+			return;
+		}
+
+		for (int interval = firstMcu / plan.restartInterval; interval < intervals.size(); interval++) {
+			int intervalStart = interval * plan.restartInterval;
+			if (intervalStart >= endMcu) {
+				break;
+			}
+			int mcuCount = Math.min(plan.restartInterval, endMcu - intervalStart);
+			decodeInterval(plan, intervals.get(interval), intervalStart, mcuCount, reader, block, sink);
+		}
+	}
+
+	/**
+	 * Decodes all the blocks of a scan, decoding its restart intervals in
+	 * parallel on the pool. Blocks are passed to the sink from several
+	 * threads at once (though never the same block twice), so the sink must
+	 * cope with that. CoefficientStore does. Scans without restart intervals
+	 * are decoded on the calling thread.
+	 *
+	 * @param scan The scan to decode
+	 * @param sink Where to send the decoded blocks
+	 * @param pool The pool to decode on
+	 */
+	public void decode(Scan scan, BlockSink sink, ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool may not be null");
+		}
+
+		ScanPlan plan = new ScanPlan(layout, scan);
+		List<EntropyData> intervals = scan.getIntervals();
+		if (plan.restartInterval == 0 || intervals.size() < 2) {
+			decode(scan, sink);
+			return;
+		}
+
+		int count = Math.min(intervals.size(),
+				  (plan.mcuCount + plan.restartInterval - 1) / plan.restartInterval);
+		pool.invoke(new IntervalTask(plan, intervals, 0, count, sink));
+	}
+
+	/**
+	 * Decodes the MCUs of one restart interval
+	 */
+	static void decodeInterval(ScanPlan plan, EntropyData data, int firstMcu, int mcuCount,
+			  BitReader reader, short[] block, BlockSink sink) {
+		FrameLayout layout = plan.layout;
+		int[] predictions = new int[plan.components.length];
+
+		reader.reset(data.getData());
+		if (plan.dcOnly) {
+			Arrays.fill(block, (short) 0);
+		}
+
+		for (int mcu = firstMcu; mcu < firstMcu + mcuCount; mcu++) {
+			if (plan.components.length == 1) {
+				int component = plan.components[0];
+				int blocksWide = layout.getComponentBlocksWide(component);
+				predictions[0] = plan.dcOnly ?
+						  decodeDcOnly(reader, plan.dcTables[0], plan.acTables[0], predictions[0], block) :
+						  decodeBlock(reader, plan.dcTables[0], plan.acTables[0], predictions[0], block);
+				sink.putBlock(component, mcu / blocksWide, mcu % blocksWide, block);
+			} else {
+				int mcuRow = mcu / layout.getMcusPerRow();
+				int mcuColumn = mcu % layout.getMcusPerRow();
+				for (int index = 0; index < plan.components.length; index++) {
+					int component = plan.components[index];
+					int horizontal = layout.getHorizontalSampling(component);
+					int vertical = layout.getVerticalSampling(component);
+					for (int row = 0; row < vertical; row++) {
+						for (int column = 0; column < horizontal; column++) {
+							predictions[index] = plan.dcOnly ?
+									  decodeDcOnly(reader, plan.dcTables[index], plan.acTables[index],
+									  predictions[index], block) :
+									  decodeBlock(reader, plan.dcTables[index], plan.acTables[index],
+									  predictions[index], block);
+							sink.putBlock(component, mcuRow * vertical + row,
+									  mcuColumn * horizontal + column, block);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes one block (figures F.12 and F.13 of the standard)
+	 *
+	 * @return The new DC prediction
+	 */
+	static int decodeBlock(BitReader reader, HuffmanDecodingTable dcTable,
+			  HuffmanDecodingTable acTable, int prediction, short[] block) {
+		Arrays.fill(block, (short) 0);
+
+		int dc = prediction + reader.receiveExtend(reader.decode(dcTable));
+		block[0] = (short) dc;
+
+		for (int k = 1; k < 64; k++) {
+			int symbol = reader.decode(acTable);
+			int run = symbol >> 4;
+			int size = symbol & 0x0F;
+
+			if (size == 0) {
+				if (run != 15) {
+					break;
+				}
+				k += 15;
+			} else {
+				k += run;
+				if (k > 63) {
+					throw new InvalidJpegFormat("AC coefficients run past the end of a block");
+				}
+				block[ZigZag.NATURAL_ORDER[k]] = (short) reader.receiveExtend(size);
+			}
+		}
+
+		return dc;
+	}
+
+	/**
+	 * Decodes the DC coefficient of one block into the first entry of the
+	 * block, and reads past the codes of its AC coefficients.
+	 *
+	 * @return The new DC prediction
+	 */
+	static int decodeDcOnly(BitReader reader, HuffmanDecodingTable dcTable,
+			  HuffmanDecodingTable acTable, int prediction, short[] block) {
+		int dc = prediction + reader.receiveExtend(reader.decode(dcTable));
+		block[0] = (short) dc;
+
+		for (int k = 1; k < 64; k++) {
+			int symbol = reader.decode(acTable);
+			int size = symbol & 0x0F;
+
+			if (size == 0) {
+				if (symbol != 0xF0) {
+					break;
+				}
+				k += 15;
+			} else {
+				k += symbol >> 4;
+				if (k > 63) {
+					throw new InvalidJpegFormat("AC coefficients run past the end of a block");
+				}
+				reader.skipBits(size);
+			}
+		}
+
+		return dc;
+	}
+
+	/**
+	 * Decodes a range of restart intervals, splitting them between tasks if
+	 * there are enough.
+	 */
+	private static final class IntervalTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ScanPlan plan;
+		private final List<EntropyData> intervals;
+		private final int start;
+		private final int end;
+		private final BlockSink sink;
+
+		IntervalTask(ScanPlan plan, List<EntropyData> intervals, int start, int end, BlockSink sink) {
+			this.plan = plan;
+			this.intervals = intervals;
+			this.start = start;
+			this.end = end;
+			this.sink = sink;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= PARALLEL_DECODE_THRESHOLD) {
+				BitReader reader = new BitReader();
+				short[] block = new short[64];
+				for (int interval = start; interval < end; interval++) {
+					int firstMcu = interval * plan.restartInterval;
+					int mcuCount = Math.min(plan.restartInterval, plan.mcuCount - firstMcu);
+					decodeInterval(plan, intervals.get(interval), firstMcu, mcuCount, reader, block, sink);
+				}
+				return;
+			}
+
+			int middle = (start + end) >>> 1;
+			invokeAll(new IntervalTask(plan, intervals, start, middle, sink),
+					  new IntervalTask(plan, intervals, middle, end, sink));
+		}
+	}
+
+	/**
+	 * What's needed to decode one scan: the frame components in the scan, the
+	 * decoding tables for each of them, and whether only the DC coefficients
+	 * are wanted.
+	 */
+	static final class ScanPlan {
+		final FrameLayout layout;
+		final int[] components;
+		final HuffmanDecodingTable[] dcTables;
+		final HuffmanDecodingTable[] acTables;
+		final int mcuCount;
+		final int restartInterval;
+		final boolean dcOnly;
+
+		ScanPlan(FrameLayout layout, Scan scan) {
+			this(layout, scan, false);
+		}
+
+		ScanPlan(FrameLayout layout, Scan scan, boolean dcOnly) {
+			SosSegment header = scan.getHeader();
+
+			this.layout = layout;
+			this.dcOnly = dcOnly;
+			this.components = layout.getScanComponents(header);
+			this.dcTables = new HuffmanDecodingTable[components.length];
+			this.acTables = new HuffmanDecodingTable[components.length];
+			this.mcuCount = layout.getScanMcuCount(components);
+			this.restartInterval = scan.getRestartInterval();
+
+			for (int index = 0; index < components.length; index++) {
+				SosComponentSpec spec = header.getComponentSpec(index);
+				dcTables[index] = makeTable(scan.getDcTable(spec.getDcTableSelector()), "DC", spec.getDcTableSelector());
+				acTables[index] = makeTable(scan.getAcTable(spec.getAcTableSelector()), "AC", spec.getAcTableSelector());
+			}
+		}
+
+		private static HuffmanDecodingTable makeTable(DhtHuffmanTable table, String kind, int selector) {
+			if (table == null) {
+				throw new InvalidJpegFormat("Scan uses " + kind + " table " + selector + " which was never defined");
+			}
+
+			return new HuffmanDecodingTable(table);
+		}
+	}
+}
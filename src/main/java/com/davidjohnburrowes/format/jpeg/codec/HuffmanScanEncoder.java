@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes blocks of quantized DCT coefficients into the Huffman coded data of
+ * a sequential DCT scan, following the procedures in Annex F.1 of the
+ * standard. It can also just count the symbols a scan would use, so that
+ * optimal tables can be built for it (see HuffmanTableBuilder).
+ *
+ * Tables and counts are given as arrays indexed by table selector (0-3).
+ */
+public class HuffmanScanEncoder {
+	private final FrameLayout layout;
+
+	/**
+	 * @param layout The layout of the frame whose scans will be encoded
+	 */
+	public HuffmanScanEncoder(FrameLayout layout) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+
+		this.layout = layout;
+	}
+
+	/**
+	 * Counts the symbols the scan would need.
+	 *
+	 * @param header The header of the scan
+	 * @param restartInterval The number of MCUs in each restart interval, or 0
+	 * @param store The coefficients to encode
+	 * @param dcCounts Where to count the DC symbols of each DC table
+	 * @param acCounts Where to count the AC symbols of each AC table
+	 */
+	public void countSymbols(SosSegment header, int restartInterval, CoefficientStore store,
+			  HuffmanTableBuilder[] dcCounts, HuffmanTableBuilder[] acCounts) {
+		walk(header, restartInterval, store, new SymbolOutput.Counter(header, dcCounts, acCounts, true, true));
+	}
+
+	/**
+	 * Encodes the scan.
+	 *
+	 * @param header The header of the scan
+	 * @param restartInterval The number of MCUs in each restart interval, or 0
+	 * @param store The coefficients to encode
+	 * @param dcTables The DC tables to encode with
+	 * @param acTables The AC tables to encode with
+	 * @return The entropy coded data of each restart interval
+	 */
+	public List<byte[]> encode(SosSegment header, int restartInterval, CoefficientStore store,
+			  HuffmanEncodingTable[] dcTables, HuffmanEncodingTable[] acTables) {
+		SymbolOutput.Writer writer = new SymbolOutput.Writer(header, dcTables, acTables, true, true);
+		walk(header, restartInterval, store, writer);
+		return writer.intervals;
+	}
+
+	/**
+	 * Goes through the blocks of the scan in order, passing the symbols that
+	 * encode them to the output.
+	 */
+	private void walk(SosSegment header, int restartInterval, CoefficientStore store, SymbolOutput output) {
+		int[] components = layout.getScanComponents(header);
+		int mcuCount = layout.getScanMcuCount(components);
+		int[] predictions = new int[components.length];
+		short[] block = new short[64];
+
+		for (int mcu = 0; mcu < mcuCount; mcu++) {
+			if (restartInterval > 0 && mcu > 0 && (mcu % restartInterval) == 0) {
+				output.endInterval();
+				Arrays.fill(predictions, 0);
+			}
+
+			if (components.length == 1) {
+				int component = components[0];
+				int blocksWide = layout.getComponentBlocksWide(component);
+				store.getBlock(component, mcu / blocksWide, mcu % blocksWide, block);
+				predictions[0] = encodeBlock(block, predictions[0], 0, output);
+			} else {
+				int mcuRow = mcu / layout.getMcusPerRow();
+				int mcuColumn = mcu % layout.getMcusPerRow();
+				for (int index = 0; index < components.length; index++) {
+					int component = components[index];
+					int horizontal = layout.getHorizontalSampling(component);
+					int vertical = layout.getVerticalSampling(component);
+					for (int row = 0; row < vertical; row++) {
+						for (int column = 0; column < horizontal; column++) {
+							store.getBlock(component, mcuRow * vertical + row,
+									  mcuColumn * horizontal + column, block);
+							predictions[index] = encodeBlock(block, predictions[index], index, output);
+						}
+					}
+				}
+			}
+		}
+
+		output.endInterval();
+	}
+
+	/**
+	 * Encodes one block (figures F.2 to F.5 of the standard)
+	 *
+	 * @return The new DC prediction
+	 */
+	static int encodeBlock(short[] block, int prediction, int scanComponent, SymbolOutput output) {
+		int difference = block[0] - prediction;
+		int size = BitWriter.bitLength(difference);
+		output.dc(scanComponent, size);
+		if (size != 0) {
+			output.bits(difference < 0 ? difference - 1 : difference, size);
+		}
+
+		int run = 0;
+		for (int k = 1; k < 64; k++) {
+			int value = block[ZigZag.NATURAL_ORDER[k]];
+			if (value == 0) {
+				run++;
+				continue;
+			}
+
+			while (run > 15) {
+				output.ac(scanComponent, 0xF0);
+				run -= 16;
+			}
+			size = BitWriter.bitLength(value);
+			output.ac(scanComponent, (run << 4) | size);
+			output.bits(value < 0 ? value - 1 : value, size);
+			run = 0;
+		}
+		if (run > 0) {
+			output.ac(scanComponent, 0x00);
+		}
+
+		return block[0];
+	}
+}
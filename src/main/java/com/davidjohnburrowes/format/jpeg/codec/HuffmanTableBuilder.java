@@ -0,0 +1,184 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import java.util.Arrays;
+
+/**
+ * Builds Huffman tables which are optimal for a set of symbol frequencies,
+ * following the procedure in section K.2 of the standard: codes are limited
+ * to 16 bits, and no symbol is given a code of all 1 bits.
+ */
+public class HuffmanTableBuilder {
+	private final long[] frequencies = new long[256];
+
+	/**
+	 * Counts one occurrence of a symbol.
+	 *
+	 * @param symbol The symbol (0-255)
+	 */
+	public void count(int symbol) {
+		frequencies[symbol]++;
+	}
+
+	/**
+	 * @param symbol A symbol (0-255)
+	 * @return The number of times it has been counted
+	 */
+	public long getFrequency(int symbol) {
+		return frequencies[symbol];
+	}
+
+	/**
+	 * @return True if no symbols have been counted
+	 */
+	public boolean isEmpty() {
+		for (long frequency : frequencies) {
+			if (frequency != 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Forgets all the counts.
+	 */
+	public void clear() {
+		Arrays.fill(frequencies, 0);
+	}
+
+	/**
+	 * Builds the table.
+	 *
+	 * @param table The table to set the code lengths and symbols of
+	 */
+	public void build(DhtHuffmanTable table) {
+		int[] codeSize = new int[257];
+		int[] bits = countCodeLengths(codeSize);
+		int[] order = sortedSymbols(codeSize);
+		int next = 0;
+
+		for (int length = 1; length <= 16; length++) {
+			short[] symbols = new short[bits[length]];
+			for (int index = 0; index < symbols.length; index++) {
+				symbols[index] = (short) order[next++];
+			}
+			table.setElement(length - 1, symbols);
+		}
+	}
+
+	/**
+	 * Figures K.1 and K.2: finds the code size of each symbol, then limits
+	 * the sizes to 16 bits.
+	 *
+	 * @param codeSize Where to put the code size of each symbol
+	 * @return The number of codes of each length
+	 */
+	private int[] countCodeLengths(int[] codeSize) {
+		long[] freq = new long[257];
+		int[] others = new int[257];
+
+		System.arraycopy(frequencies, 0, freq, 0, 256);
+		freq[256] = 1;
+		Arrays.fill(others, -1);
+
+		while (true) {
+			int v1 = -1;
+			int v2 = -1;
+			for (int symbol = 0; symbol <= 256; symbol++) {
+				if (freq[symbol] != 0 && (v1 < 0 || freq[symbol] <= freq[v1])) {
+					v1 = symbol;
+				}
+			}
+			for (int symbol = 0; symbol <= 256; symbol++) {
+				if (freq[symbol] != 0 && symbol != v1 && (v2 < 0 || freq[symbol] <= freq[v2])) {
+					v2 = symbol;
+				}
+			}
+			if (v2 < 0) {
+				break;
+			}
+
+			freq[v1] += freq[v2];
+			freq[v2] = 0;
+
+			codeSize[v1]++;
+			while (others[v1] >= 0) {
+				v1 = others[v1];
+				codeSize[v1]++;
+			}
+			others[v1] = v2;
+
+			codeSize[v2]++;
+			while (others[v2] >= 0) {
+				v2 = others[v2];
+				codeSize[v2]++;
+			}
+		}
+
+		int[] bits = new int[258];
+		for (int symbol = 0; symbol <= 256; symbol++) {
+			if (codeSize[symbol] != 0) {
+				bits[codeSize[symbol]]++;
+			}
+		}
+
+		// Figure K.3: move codes longer than 16 bits up the tree
+		for (int length = 257; length > 16; length--) {
+			while (bits[length] > 0) {
+				int shorter = length - 2;
+				while (bits[shorter] == 0) {
+					shorter--;
+				}
+				bits[length] -= 2;
+				bits[length - 1]++;
+				bits[shorter + 1] += 2;
+				bits[shorter]--;
+			}
+		}
+
+		// Remove the code reserved for symbol 256, which is the longest
+		int longest = 16;
+		while (longest > 0 && bits[longest] == 0) {
+			longest--;
+		}
+		if (longest > 0) {
+			bits[longest]--;
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Figure K.4: the symbols in order of increasing code size, which is the
+	 * order they are given codes in.
+	 */
+	private static int[] sortedSymbols(int[] codeSize) {
+		int[] order = new int[256];
+		int count = 0;
+		for (int size = 1; size <= 256; size++) {
+			for (int symbol = 0; symbol < 256; symbol++) {
+				if (codeSize[symbol] == size) {
+					order[count++] = symbol;
+				}
+			}
+		}
+		return Arrays.copyOf(order, count);
+	}
+}
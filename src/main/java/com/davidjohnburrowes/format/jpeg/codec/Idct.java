@@ -0,0 +1,339 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * The inverse DCT used to turn dequantized coefficients back into samples.
+ * This is the integer Loeffler-Ligtenberg-Moschytz algorithm used by the
+ * IJG's libjpeg (jidctint.c), so its results match libjpeg's exactly: 12
+ * multiplies and 32 adds for each row or column, in 13 bit fixed point, with
+ * extra precision kept between the column and row passes.
+ *
+ * There are also reduced size transforms that output 4x4, 2x2 or 1x1
+ * samples for a block, for decoding at 1/2, 1/4 or 1/8 of the size. They
+ * are libjpeg's too (jidctred.c): they ignore the coefficients that are
+ * above the highest frequency the smaller block can hold.
+ */
+final class Idct {
+	private static final int CONST_BITS = 13;
+
+	private static final int FIX_0_211164243 = 1730;
+	private static final int FIX_0_298631336 = 2446;
+	private static final int FIX_0_390180644 = 3196;
+	private static final int FIX_0_509795579 = 4176;
+	private static final int FIX_0_541196100 = 4433;
+	private static final int FIX_0_601344887 = 4926;
+	private static final int FIX_0_720959822 = 5906;
+	private static final int FIX_0_765366865 = 6270;
+	private static final int FIX_0_850430095 = 6967;
+	private static final int FIX_0_899976223 = 7373;
+	private static final int FIX_1_061594337 = 8697;
+	private static final int FIX_1_175875602 = 9633;
+	private static final int FIX_1_272758580 = 10426;
+	private static final int FIX_1_451774981 = 11893;
+	private static final int FIX_1_501321110 = 12299;
+	private static final int FIX_1_847759065 = 15137;
+	private static final int FIX_1_961570560 = 16069;
+	private static final int FIX_2_053119869 = 16819;
+	private static final int FIX_2_172734803 = 17799;
+	private static final int FIX_2_562915447 = 20995;
+	private static final int FIX_3_072711026 = 25172;
+	private static final int FIX_3_624509785 = 29692;
+
+	private final int passOneBits;
+	private final int center;
+	private final int maxSample;
+	private final int outputShift;
+	private final int[] workspace = new int[64];
+
+	/**
+	 * @param precision The sample precision of the frame (8 or 12). Samples
+	 *			are always output with 8 bits.
+	 */
+	Idct(int precision) {
+		this.passOneBits = (precision == 8) ? 2 : 1;
+		this.center = 1 << (precision - 1);
+		this.maxSample = (1 << precision) - 1;
+		this.outputShift = precision - 8;
+	}
+
+	/**
+	 * Dequantizes and inverse transforms one block.
+	 *
+	 * @param coefficients The quantized coefficients, in natural order
+	 * @param quantization The quantization table, in natural order
+	 * @param output Where to put the 8x8 samples
+	 * @param offset The index in output of the top left sample
+	 * @param stride The distance in output from one row to the next
+	 */
+	void transform(short[] coefficients, int[] quantization, byte[] output, int offset, int stride) {
+		int[] ws = workspace;
+
+		// Pass 1: the columns, from the coefficients into the workspace
+		for (int column = 0; column < 8; column++) {
+			if (coefficients[column + 8] == 0 && coefficients[column + 16] == 0 &&
+					  coefficients[column + 24] == 0 && coefficients[column + 32] == 0 &&
+					  coefficients[column + 40] == 0 && coefficients[column + 48] == 0 &&
+					  coefficients[column + 56] == 0) {
+				int dc = (coefficients[column] * quantization[column]) << passOneBits;
+				for (int row = 0; row < 64; row += 8) {
+					ws[column + row] = dc;
+				}
+				continue;
+			}
+
+			int z2 = coefficients[column + 16] * quantization[column + 16];
+			int z3 = coefficients[column + 48] * quantization[column + 48];
+			int z1 = (z2 + z3) * FIX_0_541196100;
+			int tmp2 = z1 - z3 * FIX_1_847759065;
+			int tmp3 = z1 + z2 * FIX_0_765366865;
+
+			z2 = coefficients[column] * quantization[column];
+			z3 = coefficients[column + 32] * quantization[column + 32];
+			int tmp0 = (z2 + z3) << CONST_BITS;
+			int tmp1 = (z2 - z3) << CONST_BITS;
+
+			int tmp10 = tmp0 + tmp3;
+			int tmp13 = tmp0 - tmp3;
+			int tmp11 = tmp1 + tmp2;
+			int tmp12 = tmp1 - tmp2;
+
+			tmp0 = coefficients[column + 56] * quantization[column + 56];
+			tmp1 = coefficients[column + 40] * quantization[column + 40];
+			tmp2 = coefficients[column + 24] * quantization[column + 24];
+			tmp3 = coefficients[column + 8] * quantization[column + 8];
+
+			int shift = CONST_BITS - passOneBits;
+			int round = 1 << (shift - 1);
+			oddPart(ws, column, 8, tmp0, tmp1, tmp2, tmp3, tmp10, tmp11, tmp12, tmp13, shift, round);
+		}
+
+		// Pass 2: the rows, from the workspace into the output
+		int shift = CONST_BITS + passOneBits + 3;
+		int round = 1 << (shift - 1);
+		for (int row = 0; row < 64; row += 8) {
+			int z2 = ws[row + 2];
+			int z3 = ws[row + 6];
+			int z1 = (z2 + z3) * FIX_0_541196100;
+			int tmp2 = z1 - z3 * FIX_1_847759065;
+			int tmp3 = z1 + z2 * FIX_0_765366865;
+
+			int tmp0 = (ws[row] + ws[row + 4]) << CONST_BITS;
+			int tmp1 = (ws[row] - ws[row + 4]) << CONST_BITS;
+
+			int tmp10 = tmp0 + tmp3;
+			int tmp13 = tmp0 - tmp3;
+			int tmp11 = tmp1 + tmp2;
+			int tmp12 = tmp1 - tmp2;
+
+			oddPart(ws, row, 1, ws[row + 7], ws[row + 5], ws[row + 3], ws[row + 1],
+					  tmp10, tmp11, tmp12, tmp13, shift, round);
+
+			int out = offset + (row >> 3) * stride;
+			for (int column = 0; column < 8; column++) {
+				output[out + column] = (byte) clamp(ws[row + column]);
+			}
+		}
+	}
+
+	/**
+	 * Dequantizes and inverse transforms one block to 4x4 samples.
+	 *
+	 * @param coefficients The quantized coefficients, in natural order
+	 * @param quantization The quantization table, in natural order
+	 * @param output Where to put the 4x4 samples
+	 * @param offset The index in output of the top left sample
+	 * @param stride The distance in output from one row to the next
+	 */
+	void transform4x4(short[] coefficients, int[] quantization, byte[] output, int offset, int stride) {
+		int[] ws = workspace;
+
+		// Pass 1: the columns, from the coefficients into the workspace
+		for (int column = 0; column < 8; column++) {
+			if (column == 4) {
+				continue;
+			}
+			if (coefficients[column + 8] == 0 && coefficients[column + 16] == 0 &&
+					  coefficients[column + 24] == 0 && coefficients[column + 40] == 0 &&
+					  coefficients[column + 48] == 0 && coefficients[column + 56] == 0) {
+				int dc = (coefficients[column] * quantization[column]) << passOneBits;
+				for (int row = 0; row < 32; row += 8) {
+					ws[column + row] = dc;
+				}
+				continue;
+			}
+
+			int tmp0 = (coefficients[column] * quantization[column]) << (CONST_BITS + 1);
+			int tmp2 = coefficients[column + 16] * quantization[column + 16] * FIX_1_847759065 -
+					  coefficients[column + 48] * quantization[column + 48] * FIX_0_765366865;
+
+			int shift = CONST_BITS - passOneBits + 1;
+			oddPart4(ws, column, 8, tmp0 + tmp2, tmp0 - tmp2,
+					  coefficients[column + 56] * quantization[column + 56],
+					  coefficients[column + 40] * quantization[column + 40],
+					  coefficients[column + 24] * quantization[column + 24],
+					  coefficients[column + 8] * quantization[column + 8],
+					  shift, 1 << (shift - 1));
+		}
+
+		// Pass 2: the first 4 rows, from the workspace into the output
+		int shift = CONST_BITS + passOneBits + 3 + 1;
+		int round = 1 << (shift - 1);
+		for (int row = 0; row < 32; row += 8) {
+			int tmp0 = ws[row] << (CONST_BITS + 1);
+			int tmp2 = ws[row + 2] * FIX_1_847759065 - ws[row + 6] * FIX_0_765366865;
+
+			oddPart4(ws, row, 1, tmp0 + tmp2, tmp0 - tmp2, ws[row + 7], ws[row + 5], ws[row + 3], ws[row + 1],
+					  shift, round);
+
+			int out = offset + (row >> 3) * stride;
+			for (int column = 0; column < 4; column++) {
+				output[out + column] = (byte) clamp(ws[row + column]);
+			}
+		}
+	}
+
+	/**
+	 * Dequantizes and inverse transforms one block to 2x2 samples.
+	 *
+	 * @param coefficients The quantized coefficients, in natural order
+	 * @param quantization The quantization table, in natural order
+	 * @param output Where to put the 2x2 samples
+	 * @param offset The index in output of the top left sample
+	 * @param stride The distance in output from one row to the next
+	 */
+	void transform2x2(short[] coefficients, int[] quantization, byte[] output, int offset, int stride) {
+		int[] ws = workspace;
+
+		// Pass 1: the odd columns and column 0, from the coefficients into the
+		// workspace
+		for (int column = 0; column < 8; column++) {
+			if (column == 2 || column == 4 || column == 6) {
+				continue;
+			}
+			if (coefficients[column + 8] == 0 && coefficients[column + 24] == 0 &&
+					  coefficients[column + 40] == 0 && coefficients[column + 56] == 0) {
+				int dc = (coefficients[column] * quantization[column]) << passOneBits;
+				ws[column] = dc;
+				ws[column + 8] = dc;
+				continue;
+			}
+
+			int tmp10 = (coefficients[column] * quantization[column]) << (CONST_BITS + 2);
+			int tmp0 = oddPart2(coefficients[column + 56] * quantization[column + 56],
+					  coefficients[column + 40] * quantization[column + 40],
+					  coefficients[column + 24] * quantization[column + 24],
+					  coefficients[column + 8] * quantization[column + 8]);
+
+			int shift = CONST_BITS - passOneBits + 2;
+			int round = 1 << (shift - 1);
+			ws[column] = (tmp10 + tmp0 + round) >> shift;
+			ws[column + 8] = (tmp10 - tmp0 + round) >> shift;
+		}
+
+		// Pass 2: the first 2 rows, from the workspace into the output
+		int shift = CONST_BITS + passOneBits + 3 + 2;
+		int round = 1 << (shift - 1);
+		for (int row = 0; row < 16; row += 8) {
+			int tmp10 = ws[row] << (CONST_BITS + 2);
+			int tmp0 = oddPart2(ws[row + 7], ws[row + 5], ws[row + 3], ws[row + 1]);
+
+			int out = offset + (row >> 3) * stride;
+			output[out] = (byte) clamp((tmp10 + tmp0 + round) >> shift);
+			output[out + 1] = (byte) clamp((tmp10 - tmp0 + round) >> shift);
+		}
+	}
+
+	/**
+	 * Dequantizes one block's DC coefficient, to make one sample for the
+	 * whole block.
+	 *
+	 * @param coefficients The quantized coefficients, in natural order
+	 * @param quantization The quantization table, in natural order
+	 * @param output Where to put the sample
+	 * @param offset The index in output of the sample
+	 */
+	void transform1x1(short[] coefficients, int[] quantization, byte[] output, int offset) {
+		output[offset] = (byte) clamp((coefficients[0] * quantization[0] + 4) >> 3);
+	}
+
+	/**
+	 * Does the odd part of one row or column of the 4x4 transform, and
+	 * combines it with the even part, putting the 4 descaled results back
+	 * into the workspace.
+	 */
+	private static void oddPart4(int[] ws, int start, int step, int tmp10, int tmp12,
+			  int z1, int z2, int z3, int z4, int shift, int round) {
+		int tmp0 = z1 * -FIX_0_211164243 + z2 * FIX_1_451774981 + z3 * -FIX_2_172734803 + z4 * FIX_1_061594337;
+		int tmp2 = z1 * -FIX_0_509795579 + z2 * -FIX_0_601344887 + z3 * FIX_0_899976223 + z4 * FIX_2_562915447;
+
+		ws[start] = (tmp10 + tmp2 + round) >> shift;
+		ws[start + 3 * step] = (tmp10 - tmp2 + round) >> shift;
+		ws[start + step] = (tmp12 + tmp0 + round) >> shift;
+		ws[start + 2 * step] = (tmp12 - tmp0 + round) >> shift;
+	}
+
+	/**
+	 * The odd part of one row or column of the 2x2 transform
+	 */
+	private static int oddPart2(int z7, int z5, int z3, int z1) {
+		return z7 * -FIX_0_720959822 + z5 * FIX_0_850430095 + z3 * -FIX_1_272758580 + z1 * FIX_3_624509785;
+	}
+
+	/**
+	 * Does the odd part of one row or column, and combines it with the even
+	 * part, putting the 8 descaled results back into the workspace.
+	 */
+	private static void oddPart(int[] ws, int start, int step, int tmp0, int tmp1, int tmp2, int tmp3,
+			  int tmp10, int tmp11, int tmp12, int tmp13, int shift, int round) {
+		int z1 = tmp0 + tmp3;
+		int z2 = tmp1 + tmp2;
+		int z3 = tmp0 + tmp2;
+		int z4 = tmp1 + tmp3;
+		int z5 = (z3 + z4) * FIX_1_175875602;
+
+		tmp0 *= FIX_0_298631336;
+		tmp1 *= FIX_2_053119869;
+		tmp2 *= FIX_3_072711026;
+		tmp3 *= FIX_1_501321110;
+		z1 *= -FIX_0_899976223;
+		z2 *= -FIX_2_562915447;
+		z3 = z3 * -FIX_1_961570560 + z5;
+		z4 = z4 * -FIX_0_390180644 + z5;
+
+		tmp0 += z1 + z3;
+		tmp1 += z2 + z4;
+		tmp2 += z2 + z3;
+		tmp3 += z1 + z4;
+
+		ws[start] = (tmp10 + tmp3 + round) >> shift;
+		ws[start + 7 * step] = (tmp10 - tmp3 + round) >> shift;
+		ws[start + step] = (tmp11 + tmp2 + round) >> shift;
+		ws[start + 6 * step] = (tmp11 - tmp2 + round) >> shift;
+		ws[start + 2 * step] = (tmp12 + tmp1 + round) >> shift;
+		ws[start + 5 * step] = (tmp12 - tmp1 + round) >> shift;
+		ws[start + 3 * step] = (tmp13 + tmp0 + round) >> shift;
+		ws[start + 4 * step] = (tmp13 - tmp0 + round) >> shift;
+	}
+
+	/**
+	 * Level shifts a sample, limits it to the range of the precision, and
+	 * reduces it to 8 bits
+	 */
+	private int clamp(int value) {
+		return Math.min(Math.max(value + center, 0), maxSample) >> outputShift;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Decodes an image one scan at a time, keeping the coefficients decoded so
+ * far so that a snapshot of the image can be made after any scan. This is
+ * most useful for progressive images, where the first few scans give a
+ * rough version of the whole image: a preview can be made from just those,
+ * without decoding the rest. Sequential images whose components are in
+ * separate scans can be decoded this way too.
+ *
+ * A component that none of the decoded scans include is shown at its
+ * middle value (so if only the luminance has been decoded, the snapshot is
+ * gray scale).
+ *
+ * To preview an image that is still arriving (or was cut short), read what
+ * there is of it in LAX mode, since STRICT mode rejects a stream that
+ * doesn't end with EOI:
+ *
+ * <pre>
+ *	JpegData jpeg = new JpegData();
+ *	jpeg.setDataMode(DataMode.LAX);
+ *	jpeg.read(partialStream);
+ *	IncrementalDecoder decoder = new IncrementalDecoder(jpeg);
+ *	decoder.decodeAll();
+ *	PixelImage preview = decoder.snapshot();
+ *	decoder.close();
+ * </pre>
+ *
+ * Only the scans whose headers have arrived are counted. The last of them
+ * may have been cut off part way through: its missing data is read as 0
+ * bits (as it is wherever entropy coded data ends early), so the blocks it
+ * didn't reach may come out a little wrong. If the last item read isn't an
+ * EOI marker, decoding getScanCount() - 1 scans uses only whole ones. As
+ * more of the stream arrives, read it again and make a new decoder.
+ *
+ * Must be closed when finished with, to free the coefficients.
+ */
+public class IncrementalDecoder implements Closeable {
+	private final FrameLayout layout;
+	private final List<Scan> scans;
+	private final boolean ycc;
+	private final CoefficientStore store;
+	private final ProgressiveScanDecoder progressiveDecoder;
+	private final HuffmanScanDecoder sequentialDecoder;
+	private final DqtQuantizationTable[] quantization;
+	private final boolean[] hasDc;
+	private int nextScan;
+
+	/**
+	 * @param jpeg The image to decode
+	 */
+	public IncrementalDecoder(JpegData jpeg) {
+		this(jpeg, new JpegStructure(jpeg));
+	}
+
+	/**
+	 * @param jpeg The image to decode
+	 * @param structure The image's structure
+	 */
+	public IncrementalDecoder(JpegData jpeg, JpegStructure structure) {
+		boolean progressive = PixelDecoder.checkSupported(structure) == FrameMode.HUFF_PROGRESSIVE_DCT;
+
+		this.layout = structure.getLayout();
+		this.scans = structure.getScans();
+		this.ycc = PixelDecoder.isYCbCr(jpeg, layout);
+		this.progressiveDecoder = progressive ? new ProgressiveScanDecoder(structure) : null;
+		this.sequentialDecoder = progressive ? null : new HuffmanScanDecoder(structure);
+		this.quantization = new DqtQuantizationTable[layout.getComponentCount()];
+		this.hasDc = new boolean[layout.getComponentCount()];
+		this.store = new CoefficientStore(layout);
+	}
+
+	/**
+	 * @return The number of scans in the image
+	 */
+	public int getScanCount() {
+		return scans.size();
+	}
+
+	/**
+	 * @return The number of scans decoded so far
+	 */
+	public int getScansDecoded() {
+		return nextScan;
+	}
+
+	/**
+	 * @return True if there are scans left to decode
+	 */
+	public boolean hasNextScan() {
+		return nextScan < scans.size();
+	}
+
+	/**
+	 * Decodes the next scan.
+	 *
+	 * @return The scan decoded
+	 */
+	public Scan decodeNextScan() {
+		if (!hasNextScan()) {
+			throw new IllegalStateException("All the scans have been decoded");
+		}
+
+		Scan scan = scans.get(nextScan);
+		SosSegment header = scan.getHeader();
+		for (int component : layout.getScanComponents(header)) {
+			if (quantization[component] == null) {
+				quantization[component] = scan.getQuantizationTable(layout.getQuantizationSelector(component));
+			}
+			if (header.getSpectralSelectionStart() == 0) {
+				hasDc[component] = true;
+			}
+		}
+
+		if (progressiveDecoder != null) {
+			progressiveDecoder.decode(scan, store);
+		} else {
+			sequentialDecoder.decode(scan, store);
+		}
+		nextScan++;
+
+		return scan;
+	}
+
+	/**
+	 * @return True if every component has had (at least the first part of)
+	 *			its DC coefficients decoded, so a snapshot shows the whole
+	 *			image, if only roughly
+	 */
+	public boolean coversAllComponents() {
+		for (boolean decoded : hasDc) {
+			if (!decoded) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes scans until every component has had some of its DC
+	 * coefficients decoded, or there are no more scans.
+	 *
+	 * @return True if every component has been covered
+	 */
+	public boolean decodeUntilAllComponentsCovered() {
+		while (!coversAllComponents() && hasNextScan()) {
+			decodeNextScan();
+		}
+		return coversAllComponents();
+	}
+
+	/**
+	 * Decodes all the remaining scans.
+	 */
+	public void decodeAll() {
+		while (hasNextScan()) {
+			decodeNextScan();
+		}
+	}
+
+	/**
+	 * Makes an image from the coefficients decoded so far.
+	 *
+	 * @return The image
+	 */
+	public PixelImage snapshot() {
+		return snapshot(1);
+	}
+
+	/**
+	 * Makes an image from the coefficients decoded so far, at a reduced
+	 * size. Early snapshots of a progressive image hold little detail, so
+	 * they lose little by being made smaller.
+	 *
+	 * @param scale How many times smaller to make the image: 1, 2, 4 or 8
+	 * @return The image
+	 */
+	public PixelImage snapshot(int scale) {
+		if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+			throw new IllegalArgumentException("The scale must be 1, 2, 4 or 8. Found " + scale);
+		}
+
+		ComponentPlanes planes = new ComponentPlanes(layout, 8 / scale);
+		for (int component = 0; component < quantization.length; component++) {
+			if (quantization[component] != null) {
+				planes.setQuantization(component, quantization[component]);
+			}
+		}
+		planes.render(store);
+
+		return PixelDecoder.toImage(planes, ycc);
+	}
+
+	/**
+	 * Frees the coefficients
+	 */
+	@Override
+	public void close() {
+		store.close();
+	}
+}
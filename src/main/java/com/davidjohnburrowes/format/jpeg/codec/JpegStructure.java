@@ -0,0 +1,195 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.data.ExtraFf;
+import com.davidjohnburrowes.format.jpeg.marker.DacSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DhpSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DnlSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DriSegment;
+import com.davidjohnburrowes.format.jpeg.marker.RstMMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The coding structure of a single frame JPEG image: its frame header, the
+ * layout of its blocks, and its scans, each with the tables in effect for it.
+ * This is the starting point for anything that works with the entropy coded
+ * data of a JpegData.
+ *
+ * Hierarchical images (those with a DHP segment) have several frames, and
+ * are not supported.
+ */
+public class JpegStructure {
+	private final SofSegment frame;
+	private final int frameIndex;
+	private final FrameLayout layout;
+	private final List<Scan> scans;
+
+	/**
+	 * Examines the items of the JpegData.
+	 *
+	 * @param jpeg The JPEG image to examine
+	 */
+	public JpegStructure(JpegData jpeg) {
+		if (jpeg == null) {
+			throw new IllegalArgumentException("jpeg may not be null");
+		}
+
+		DhtHuffmanTable[] dcTables = new DhtHuffmanTable[4];
+		DhtHuffmanTable[] acTables = new DhtHuffmanTable[4];
+		DqtQuantizationTable[] quantizationTables = new DqtQuantizationTable[4];
+		DacConditioningTable[] dcConditioning = new DacConditioningTable[4];
+		DacConditioningTable[] acConditioning = new DacConditioningTable[4];
+		int restartInterval = 0;
+		int numberOfLines = 0;
+		SofSegment foundFrame = null;
+		int foundFrameIndex = -1;
+		Scan currentScan = null;
+		List<Scan> foundScans = new ArrayList<Scan>();
+
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			DataItem item = jpeg.getItem(index);
+
+			if (item instanceof EntropyData) {
+				if (currentScan != null) {
+					currentScan.addInterval((EntropyData) item, index);
+				}
+				continue;
+			} else if (item instanceof RstMMarker) {
+				if (currentScan != null) {
+					currentScan.addRestart(index);
+				}
+				continue;
+			}
+
+			if (!(item instanceof ExtraFf)) {
+				currentScan = null;
+			}
+
+			if (item instanceof DhpSegment) {
+				throw new UnsupportedOperationException("Hierarchical JPEG images are not supported");
+			} else if (item instanceof SofSegment) {
+				if (foundFrame != null) {
+					throw new UnsupportedOperationException("JPEG images with more than one frame are not supported");
+				}
+				foundFrame = (SofSegment) item;
+				foundFrameIndex = index;
+			} else if (item instanceof DqtSegment) {
+				for (DqtQuantizationTable table : (DqtSegment) item) {
+					quantizationTables[checkTableId(table.getTableId())] = table;
+				}
+			} else if (item instanceof DhtSegment) {
+				for (DhtHuffmanTable table : (DhtSegment) item) {
+					if (table.getTableClass() == 0) {
+						dcTables[checkTableId(table.getTableId())] = table;
+					} else {
+						acTables[checkTableId(table.getTableId())] = table;
+					}
+				}
+			} else if (item instanceof DacSegment) {
+				for (DacConditioningTable table : (DacSegment) item) {
+					if (table.getTableClass() == 0) {
+						dcConditioning[checkTableId(table.getTableId())] = table;
+					} else {
+						acConditioning[checkTableId(table.getTableId())] = table;
+					}
+				}
+			} else if (item instanceof DriSegment) {
+				restartInterval = ((DriSegment) item).getRestartInterval();
+			} else if (item instanceof DnlSegment) {
+				numberOfLines = ((DnlSegment) item).getNumberOfLines();
+			} else if (item instanceof SosSegment) {
+				if (foundFrame == null) {
+					throw new InvalidJpegFormat("Found a scan before the frame header");
+				}
+				currentScan = new Scan((SosSegment) item, index, restartInterval,
+						  dcTables, acTables, quantizationTables, dcConditioning, acConditioning);
+				foundScans.add(currentScan);
+			}
+		}
+
+		if (foundFrame == null) {
+			throw new InvalidJpegFormat("No frame header found");
+		}
+
+		this.frame = foundFrame;
+		this.frameIndex = foundFrameIndex;
+		this.layout = (frame.getImageHeight() == 0) ?
+				  new FrameLayout(frame, numberOfLines) :
+				  new FrameLayout(frame);
+		this.scans = Collections.unmodifiableList(foundScans);
+	}
+
+	/**
+	 * @return The frame header
+	 */
+	public SofSegment getFrame() {
+		return frame;
+	}
+
+	/**
+	 * @return The index of the frame header in the JpegData
+	 */
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * @return The mode of the frame
+	 */
+	public FrameMode getFrameMode() {
+		return FrameMode.fromValue(frame.getMarkerId());
+	}
+
+	/**
+	 * @return The layout of the blocks of the frame
+	 */
+	public FrameLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return The scans of the frame, in the order they appear
+	 */
+	public List<Scan> getScans() {
+		return scans;
+	}
+
+	/**
+	 * Table ids are 0-3 in all the modes this deals with.
+	 */
+	private static int checkTableId(int tableId) {
+		if (tableId < 0 || tableId > 3) {
+			throw new InvalidJpegFormat("Table id must be [0,3]. Found " + tableId);
+		}
+
+		return tableId;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.Arrays;
+
+/**
+ * Crops Huffman coded DCT images without decoding them to pixels. Blocks are
+ * copied unchanged, so nothing is lost, but this means the top left corner
+ * of the crop has to be on an MCU boundary: it is moved up and left to the
+ * nearest one (and the crop made bigger to keep its bottom right corner
+ * where it was).
+ *
+ * Only the rows of MCUs down to the bottom of the crop are decoded from
+ * sequential scans, and if the scans have restart markers, only the restart
+ * intervals from the top of the crop. (RestartInserter can add restart
+ * markers to an image that will be cropped often.) Progressive scans are
+ * decoded completely. The cropped image is re-coded with the same scans, and
+ * new Huffman tables.
+ */
+public class LosslessCropper {
+
+	/**
+	 * Crops the image, keeping the restart interval of its first scan.
+	 *
+	 * @param jpeg The image to change
+	 * @param x The left edge of the crop
+	 * @param y The top edge of the crop
+	 * @param width The width of the crop
+	 * @param height The height of the crop
+	 */
+	public void crop(JpegData jpeg, int x, int y, int width, int height) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		int restartInterval = structure.getScans().isEmpty() ? 0 : structure.getScans().get(0).getRestartInterval();
+
+		crop(jpeg, structure, x, y, width, height, restartInterval);
+	}
+
+	/**
+	 * Crops the image.
+	 *
+	 * @param jpeg The image to change
+	 * @param x The left edge of the crop
+	 * @param y The top edge of the crop
+	 * @param width The width of the crop
+	 * @param height The height of the crop
+	 * @param restartInterval The restart interval for the cropped image's
+	 *			scans, [0,65535]
+	 */
+	public void crop(JpegData jpeg, int x, int y, int width, int height, int restartInterval) {
+		crop(jpeg, new JpegStructure(jpeg), x, y, width, height, restartInterval);
+	}
+
+	private void crop(JpegData jpeg, JpegStructure structure, int x, int y, int width, int height,
+			  int restartInterval) {
+		FrameLayout layout = structure.getLayout();
+
+		if (x < 0 || y < 0 || width <= 0 || height <= 0 ||
+				  x + width > layout.getImageWidth() || y + height > layout.getImageHeight()) {
+			throw new IllegalArgumentException("The crop " + width + "x" + height + "+" + x + "+" + y +
+					  " is not within the " + layout.getImageWidth() + "x" + layout.getImageHeight() + " image");
+		}
+		if (restartInterval < 0 || restartInterval > 65535) {
+			throw new IllegalArgumentException("The restart interval must be [0,65535]. Found " + restartInterval);
+		}
+
+		int mcuWidth = 8 * layout.getMaxHorizontalSampling();
+		int mcuHeight = 8 * layout.getMaxVerticalSampling();
+		int mcuColumn = x / mcuWidth;
+		int mcuRow = y / mcuHeight;
+
+		SofSegment frame = CoefficientWriter.makeFrame(structure.getFrameMode(), layout);
+		frame.setImageWidth(x + width - mcuColumn * mcuWidth);
+		frame.setImageHeight(y + height - mcuRow * mcuHeight);
+		FrameLayout cropLayout = new FrameLayout(frame);
+		ScanScript script = ScanScript.of(structure);
+		int[] restartIntervals = new int[script.getScans().size()];
+		Arrays.fill(restartIntervals, restartInterval);
+
+		CoefficientStore target = new CoefficientStore(cropLayout);
+		try {
+			CropSink sink = new CropSink(target, mcuRow, mcuColumn);
+			if (structure.getFrameMode() == FrameMode.HUFF_PROGRESSIVE_DCT) {
+				readProgressive(structure, sink);
+			} else {
+				readSequential(structure, sink, mcuRow, mcuRow + cropLayout.getMcuRows());
+			}
+			new CoefficientWriter().write(jpeg, frame, target, script, restartIntervals);
+		} finally {
+			target.close();
+		}
+	}
+
+	/**
+	 * Decodes the rows of MCUs from the first to (but not including) the end
+	 * one from each scan
+	 */
+	private static void readSequential(JpegStructure structure, BlockSink sink, int firstMcuRow, int endMcuRow) {
+		FrameLayout layout = structure.getLayout();
+		HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+
+		for (Scan scan : structure.getScans()) {
+			int[] components = layout.getScanComponents(scan.getHeader());
+			if (components.length == 1) {
+				int vertical = layout.getVerticalSampling(components[0]);
+				int blocksWide = layout.getComponentBlocksWide(components[0]);
+				decoder.decode(scan, sink, firstMcuRow * vertical * blocksWide, endMcuRow * vertical * blocksWide);
+			} else {
+				int mcusPerRow = layout.getMcusPerRow();
+				decoder.decode(scan, sink, firstMcuRow * mcusPerRow, endMcuRow * mcusPerRow);
+			}
+		}
+	}
+
+	/**
+	 * Decodes all the scans, then copies the blocks in the crop
+	 */
+	private static void readProgressive(JpegStructure structure, CropSink sink) {
+		CoefficientStore store = new CoefficientReader().read(structure);
+		try {
+			FrameLayout layout = store.getLayout();
+			short[] block = new short[64];
+			for (int component = 0; component < layout.getComponentCount(); component++) {
+				for (int row = 0; row < store.getBlocksHigh(component); row++) {
+					for (int column = 0; column < store.getBlocksWide(component); column++) {
+						store.getBlock(component, row, column, block);
+						sink.putBlock(component, row, column, block);
+					}
+				}
+			}
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * Passes on the blocks in the crop to a store, moving them to the top
+	 * left of it, and drops all the others.
+	 */
+	private static final class CropSink implements BlockSink {
+		private final CoefficientStore target;
+		private final int mcuRow;
+		private final int mcuColumn;
+
+		CropSink(CoefficientStore target, int mcuRow, int mcuColumn) {
+			this.target = target;
+			this.mcuRow = mcuRow;
+			this.mcuColumn = mcuColumn;
+		}
+
+		@Override
+		public void putBlock(int component, int blockRow, int blockColumn, short[] coefficients) {
+			FrameLayout layout = target.getLayout();
+			int row = blockRow - mcuRow * layout.getVerticalSampling(component);
+			int column = blockColumn - mcuColumn * layout.getHorizontalSampling(component);
+
+			if (row >= 0 && row < target.getBlocksHigh(component) &&
+					  column >= 0 && column < target.getBlocksWide(component)) {
+				target.putBlock(component, row, column, coefficients);
+			}
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.List;
+
+/**
+ * Decodes the scans of a Huffman coded lossless frame (SOF3), following
+ * Annex H of the standard, with 2 to 16 bit samples. Each scan's samples are
+ * predicted from their neighbours with the predictor selected by the scan's
+ * spectral selection start, and scaled up by its point transform (its
+ * successive approximation low).
+ *
+ * The rows of each component are passed to a SampleRowSink as they are
+ * decoded, so only one row of MCUs (and the row above it) of each component
+ * in the scan is held at a time. Restart intervals must hold whole rows of
+ * MCUs.
+ *
+ * Differential lossless frames (SOF7) only appear in hierarchical images,
+ * which JpegStructure does not support, and arithmetic coded lossless frames
+ * (SOF11) are not supported either.
+ */
+public class LosslessDecoder {
+	private final FrameLayout layout;
+	private final List<Scan> scans;
+
+	/**
+	 * @param structure The structure of the image to decode
+	 */
+	public LosslessDecoder(JpegStructure structure) {
+		FrameMode mode = structure.getFrameMode();
+		if (mode == FrameMode.AC_LOSSLESS) {
+			throw new UnsupportedOperationException("Arithmetic coded lossless frames can not be decoded");
+		}
+		if (mode != FrameMode.HUFF_LOSSLESS) {
+			throw new UnsupportedOperationException("Only lossless frames can be decoded. Found " + mode);
+		}
+
+		this.layout = structure.getLayout();
+		this.scans = structure.getScans();
+	}
+
+	/**
+	 * @return The layout of the frame this decodes
+	 */
+	public FrameLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Decodes all the scans of the image.
+	 *
+	 * @param sink Where to send the rows of samples
+	 */
+	public void decode(SampleRowSink sink) {
+		for (Scan scan : scans) {
+			decode(scan, sink);
+		}
+	}
+
+	/**
+	 * Decodes one scan of the image.
+	 *
+	 * @param scan The scan to decode
+	 * @param sink Where to send the rows of samples of its components
+	 */
+	public void decode(Scan scan, SampleRowSink sink) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null");
+		}
+
+		ScanRows rows = new ScanRows(layout, scan.getHeader(), scan.getRestartInterval());
+		HuffmanDecodingTable[] tables = new HuffmanDecodingTable[rows.components.length];
+		for (int index = 0; index < tables.length; index++) {
+			int selector = scan.getHeader().getComponentSpec(index).getDcTableSelector();
+			DhtHuffmanTable table = scan.getDcTable(selector);
+			if (table == null) {
+				throw new InvalidJpegFormat("Scan uses DC table " + selector + " which was never defined");
+			}
+			tables[index] = new HuffmanDecodingTable(table);
+		}
+
+		List<EntropyData> intervals = scan.getIntervals();
+		BitReader reader = new BitReader();
+
+		for (int mcuRow = 0; mcuRow < rows.mcuRows; mcuRow++) {
+			boolean firstLine = (mcuRow % rows.restartRows) == 0;
+			if (firstLine) {
+				int interval = mcuRow / rows.restartRows;
+				if (interval >= intervals.size()) {
+					throw new InvalidJpegFormat("Scan is missing restart interval " + interval);
+				}
+				reader.reset(intervals.get(interval).getData());
+			}
+
+			for (int mcu = 0; mcu < rows.mcusPerRow; mcu++) {
+				for (int index = 0; index < rows.components.length; index++) {
+					for (int row = 0; row < rows.mcuHeight[index]; row++) {
+						int[] current = rows.samples[index][row + 1];
+						int[] above = rows.samples[index][row];
+						int column = mcu * rows.mcuWidth[index];
+						for (int end = column + rows.mcuWidth[index]; column < end; column++) {
+							int predicted = rows.predict(current, above, column, firstLine && row == 0);
+							int size = reader.decode(tables[index]);
+							int difference = (size == 16) ? 32768 : reader.receiveExtend(size);
+							current[column] = (predicted + difference) & 0xFFFF;
+						}
+					}
+				}
+			}
+
+			rows.endMcuRow(mcuRow, sink);
+		}
+	}
+
+	/**
+	 * Works out the predictor for a sample (section H.1.2.1 of the standard)
+	 *
+	 * @param predictor The predictor selection value (1-7)
+	 * @param left The sample to the left (Ra)
+	 * @param above The sample above (Rb)
+	 * @param aboveLeft The sample above and to the left (Rc)
+	 * @return The prediction
+	 */
+	static int predict(int predictor, int left, int above, int aboveLeft) {
+		switch (predictor) {
+		case 1:
+			return left;
+		case 2:
+			return above;
+		case 3:
+			return aboveLeft;
+		case 4:
+			return left + above - aboveLeft;
+		case 5:
+			return left + ((above - aboveLeft) >> 1);
+		case 6:
+			return above + ((left - aboveLeft) >> 1);
+		default:
+			return (left + above) >> 1;
+		}
+	}
+
+	/**
+	 * The geometry of a lossless scan, and the rows of samples it is
+	 * working on: for each component, the last row of the previous row of
+	 * MCUs, followed by the rows of the current one. In an interleaved scan
+	 * an MCU holds H by V samples of each component, and rows are padded out
+	 * to whole MCUs. Otherwise an MCU is a single sample.
+	 */
+	static final class ScanRows {
+		final FrameLayout layout;
+		final int[] components;
+		final int predictor;
+		final int pointTransform;
+		final int initialPrediction;
+		final int mcusPerRow;
+		final int mcuRows;
+		final int restartRows;
+		final int[] mcuWidth;
+		final int[] mcuHeight;
+		final int[][][] samples;
+		private final int[][] output;
+
+		ScanRows(FrameLayout layout, SosSegment header, int restartInterval) {
+			this.layout = layout;
+			this.components = layout.getScanComponents(header);
+			this.predictor = header.getSpectralSelectionStart();
+			this.pointTransform = header.getSuccessiveApproximationLow();
+
+			int precision = layout.getSamplePrecision();
+			if (predictor < 1 || predictor > 7) {
+				throw new InvalidJpegFormat("Lossless scans must use predictors 1-7. Found " + predictor);
+			}
+			if (precision < 2 || precision > 16) {
+				throw new InvalidJpegFormat("Lossless samples must have 2-16 bits. Found " + precision);
+			}
+			if (pointTransform >= precision) {
+				throw new InvalidJpegFormat("Point transform " + pointTransform + " leaves no bits of " +
+						  precision + " bit samples");
+			}
+			this.initialPrediction = 1 << (precision - pointTransform - 1);
+
+			boolean interleaved = components.length > 1;
+			this.mcusPerRow = interleaved ?
+					  (layout.getImageWidth() + layout.getMaxHorizontalSampling() - 1) / layout.getMaxHorizontalSampling() :
+					  layout.getComponentWidth(components[0]);
+			this.mcuRows = interleaved ?
+					  (layout.getImageHeight() + layout.getMaxVerticalSampling() - 1) / layout.getMaxVerticalSampling() :
+					  layout.getComponentHeight(components[0]);
+			if (restartInterval % mcusPerRow != 0) {
+				throw new UnsupportedOperationException("Lossless restart intervals must hold whole rows of MCUs");
+			}
+			this.restartRows = (restartInterval == 0) ? mcuRows : restartInterval / mcusPerRow;
+
+			this.mcuWidth = new int[components.length];
+			this.mcuHeight = new int[components.length];
+			this.samples = new int[components.length][][];
+			this.output = new int[components.length][];
+			for (int index = 0; index < components.length; index++) {
+				int component = components[index];
+				mcuWidth[index] = interleaved ? layout.getHorizontalSampling(component) : 1;
+				mcuHeight[index] = interleaved ? layout.getVerticalSampling(component) : 1;
+				samples[index] = new int[mcuHeight[index] + 1][mcusPerRow * mcuWidth[index]];
+				output[index] = new int[layout.getComponentWidth(component)];
+			}
+		}
+
+		/**
+		 * @param current The row the sample is in
+		 * @param above The row above
+		 * @param column The column of the sample
+		 * @param firstLine True if the sample is in the first line of the
+		 *			scan or of a restart interval
+		 * @return The prediction for the sample
+		 */
+		int predict(int[] current, int[] above, int column, boolean firstLine) {
+			if (firstLine) {
+				return (column == 0) ? initialPrediction : current[column - 1];
+			} else if (column == 0) {
+				return above[0];
+			}
+
+			return LosslessDecoder.predict(predictor, current[column - 1], above[column], above[column - 1]);
+		}
+
+		/**
+		 * Passes the rows of the MCU row that are in the image to the sink,
+		 * and keeps the last one for predicting the next MCU row.
+		 */
+		void endMcuRow(int mcuRow, SampleRowSink sink) {
+			for (int index = 0; index < components.length; index++) {
+				int component = components[index];
+				int[][] rows = samples[index];
+				int[] row = output[index];
+				for (int line = 0; line < mcuHeight[index]; line++) {
+					int sampleRow = mcuRow * mcuHeight[index] + line;
+					if (sampleRow < layout.getComponentHeight(component)) {
+						for (int column = 0; column < row.length; column++) {
+							row[column] = rows[line + 1][column] << pointTransform;
+						}
+						sink.putRow(component, sampleRow, row);
+					}
+				}
+
+				int[] last = rows[0];
+				rows[0] = rows[mcuHeight[index]];
+				rows[mcuHeight[index]] = last;
+			}
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DriSegment;
+import com.davidjohnburrowes.format.jpeg.marker.EoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes samples into a Huffman coded lossless image (SOF3), following
+ * Annex H of the standard. All the components are full size, and are coded
+ * in one interleaved scan with Huffman tables built for it. The first
+ * component uses table 0 and the others share table 1.
+ *
+ * The samples are read a row at a time from a SampleRowSource, so only two
+ * rows of each component are held at once. The source is read twice: once
+ * to count the differences for the Huffman tables, and once to code them.
+ */
+public class LosslessEncoder {
+	private final int predictor;
+	private final int pointTransform;
+	private final int restartRows;
+
+	/**
+	 * @param predictor The predictor selection value (1-7, see table H.1 of
+	 *			the standard)
+	 * @param pointTransform The number of low bits to drop from each sample
+	 */
+	public LosslessEncoder(int predictor, int pointTransform) {
+		this(predictor, pointTransform, 0);
+	}
+
+	/**
+	 * @param predictor The predictor selection value (1-7, see table H.1 of
+	 *			the standard)
+	 * @param pointTransform The number of low bits to drop from each sample
+	 * @param restartRows The number of rows in each restart interval, or 0
+	 *			for none
+	 */
+	public LosslessEncoder(int predictor, int pointTransform, int restartRows) {
+		if (predictor < 1 || predictor > 7) {
+			throw new IllegalArgumentException("The predictor must be 1-7. Found " + predictor);
+		}
+		if (pointTransform < 0 || pointTransform > 15) {
+			throw new IllegalArgumentException("The point transform must be 0-15. Found " + pointTransform);
+		}
+		if (restartRows < 0) {
+			throw new IllegalArgumentException("The restart rows may not be negative. Found " + restartRows);
+		}
+
+		this.predictor = predictor;
+		this.pointTransform = pointTransform;
+		this.restartRows = restartRows;
+	}
+
+	/**
+	 * Encodes an image.
+	 *
+	 * @param width The width of the image (1-65535)
+	 * @param height The height of the image (1-65535)
+	 * @param precision The number of bits in each sample (2-16)
+	 * @param componentCount The number of components (1-4)
+	 * @param source Where to read the samples from
+	 * @return The image
+	 */
+	public JpegData encode(int width, int height, int precision, int componentCount, SampleRowSource source) {
+		if (width < 1 || width > 65535 || height < 1 || height > 65535) {
+			throw new IllegalArgumentException("The image must be 1-65535 samples in each direction. Found " +
+					  width + "x" + height);
+		}
+		if (precision < 2 || precision > 16) {
+			throw new IllegalArgumentException("The precision must be 2-16 bits. Found " + precision);
+		}
+		if (pointTransform >= precision) {
+			throw new IllegalArgumentException("The point transform must be less than the precision");
+		}
+		if (componentCount < 1 || componentCount > 4) {
+			throw new IllegalArgumentException("There must be 1-4 components. Found " + componentCount);
+		}
+		if ((long) restartRows * width > 65535) {
+			throw new IllegalArgumentException("A restart interval of " + restartRows + " rows is too long");
+		}
+		if (source == null) {
+			throw new IllegalArgumentException("source may not be null");
+		}
+
+		FrameMode mode = FrameMode.HUFF_LOSSLESS;
+		SofSegment frame = new SofSegment(mode.getValue());
+		frame.setFrameMode(mode);
+		frame.setSamplePrecision(precision);
+		frame.setImageWidth(width);
+		frame.setImageHeight(height);
+		SosSegment header = new SosSegment();
+		header.setFrameMode(mode);
+		for (int index = 0; index < componentCount; index++) {
+			FrameComponent component = new FrameComponent();
+			component.setFrameMode(mode);
+			component.setComponentId(index + 1);
+			component.setHorizontalScaling(1);
+			component.setVerticalScaling(1);
+			component.setQuantizationSelector(0);
+			frame.addComponent(component);
+
+			SosComponentSpec spec = new SosComponentSpec();
+			spec.setFrameMode(mode);
+			spec.setComponentSelector(index + 1);
+			spec.setDcTableSelector(index == 0 ? 0 : 1);
+			spec.setAcTableSelector(0);
+			header.addComponentSpec(spec);
+		}
+		header.setSpectralSelectionStart(predictor);
+		header.setSpectralSelectionEnd(0);
+		header.setSuccessiveApproximationHigh(0);
+		header.setSuccessiveApproximationLow(pointTransform);
+
+		FrameLayout layout = new FrameLayout(frame);
+		int restartInterval = restartRows * width;
+		HuffmanTableBuilder[] counts = new HuffmanTableBuilder[4];
+		for (int index = 0; index < componentCount; index++) {
+			int selector = (index == 0) ? 0 : 1;
+			if (counts[selector] == null) {
+				counts[selector] = new HuffmanTableBuilder();
+			}
+		}
+		walk(layout, header, restartInterval, source, counts, null);
+
+		DhtSegment tables = new DhtSegment();
+		tables.setFrameMode(mode);
+		HuffmanEncodingTable[] encodingTables = CoefficientWriter.buildTables(mode, 0, counts, tables);
+		List<byte[]> intervals = walk(layout, header, restartInterval, source, null, encodingTables);
+
+		List<DataItem> items = new ArrayList<DataItem>();
+		items.add(new SoiMarker());
+		items.add(frame);
+		items.add(tables);
+		if (restartInterval != 0) {
+			DriSegment restart = new DriSegment();
+			restart.setFrameMode(mode);
+			restart.setRestartInterval(restartInterval);
+			items.add(restart);
+		}
+		items.add(header);
+		CoefficientWriter.addIntervals(items, intervals);
+		items.add(new EoiMarker());
+
+		JpegData jpeg = new JpegData();
+		jpeg.replaceItems(0, 0, items);
+		return jpeg;
+	}
+
+	/**
+	 * Goes through the samples of the scan, either counting the magnitude
+	 * categories of their differences, or coding them.
+	 *
+	 * @param counts Where to count the categories, indexed by table selector,
+	 *			or null to code the differences
+	 * @param tables The tables to code with, indexed by table selector
+	 * @return The entropy coded data of each restart interval, if coding
+	 */
+	private List<byte[]> walk(FrameLayout layout, SosSegment header, int restartInterval,
+			  SampleRowSource source, HuffmanTableBuilder[] counts, HuffmanEncodingTable[] tables) {
+		LosslessDecoder.ScanRows rows = new LosslessDecoder.ScanRows(layout, header, restartInterval);
+		int componentCount = rows.components.length;
+		int width = layout.getImageWidth();
+		int limit = 1 << layout.getSamplePrecision();
+		int[][] differences = new int[componentCount][width];
+		List<byte[]> intervals = new ArrayList<byte[]>();
+		BitWriter writer = new BitWriter();
+
+		for (int row = 0; row < rows.mcuRows; row++) {
+			boolean firstLine = (row % rows.restartRows) == 0;
+			if (firstLine && row > 0 && counts == null) {
+				intervals.add(writer.toByteArray());
+				writer.reset();
+			}
+
+			for (int index = 0; index < componentCount; index++) {
+				int[] above = rows.samples[index][0];
+				int[] current = rows.samples[index][1];
+				source.getRow(index, row, current);
+				for (int column = 0; column < width; column++) {
+					int sample = current[column];
+					if (sample < 0 || sample >= limit) {
+						throw new IllegalArgumentException("Sample " + sample + " at " + column + "," + row +
+								  " of component " + index + " does not fit in " + layout.getSamplePrecision() + " bits");
+					}
+					current[column] = sample >> pointTransform;
+				}
+				for (int column = 0; column < width; column++) {
+					differences[index][column] = (current[column] -
+							  rows.predict(current, above, column, firstLine)) & 0xFFFF;
+				}
+				rows.samples[index][0] = current;
+				rows.samples[index][1] = above;
+			}
+
+			for (int column = 0; column < width; column++) {
+				for (int index = 0; index < componentCount; index++) {
+					int selector = (index == 0) ? 0 : 1;
+					int difference = differences[index][column];
+					if (difference >= 0x8000) {
+						difference -= 0x10000;
+					}
+					int size = (difference == -0x8000) ? 16 : BitWriter.bitLength(difference);
+					if (counts != null) {
+						counts[selector].count(size);
+					} else {
+						writer.encode(tables[selector], size);
+						if (size != 0 && size != 16) {
+							writer.writeBits(difference < 0 ? difference - 1 : difference, size);
+						}
+					}
+				}
+			}
+		}
+
+		if (counts == null) {
+			intervals.add(writer.toByteArray());
+		}
+		return intervals;
+	}
+}
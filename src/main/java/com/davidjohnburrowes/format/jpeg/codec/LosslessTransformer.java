@@ -0,0 +1,211 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+
+/**
+ * Rotates, flips and transposes Huffman coded DCT images without decoding
+ * them to pixels. Blocks are moved whole, and within each block the
+ * coefficients are transposed and the signs of the odd frequencies in a
+ * mirrored direction are negated, so nothing is lost.
+ *
+ * When the image is transposed, its width and height, the sampling factors
+ * of its components, its quantization tables and its JFIF pixel density are
+ * all swapped to match. The scans are kept as they were, but are re-coded
+ * with new Huffman tables. Other metadata (such as thumbnails or Exif
+ * orientation) is not changed.
+ */
+public class LosslessTransformer {
+
+	/**
+	 * Transforms the image, trimming any partial MCUs from edges that are
+	 * mirrored.
+	 *
+	 * @param jpeg The image to change
+	 * @param transform The transformation to make
+	 */
+	public void transform(JpegData jpeg, Transform transform) {
+		transform(jpeg, transform, EdgeHandling.TRIM);
+	}
+
+	/**
+	 * Transforms the image.
+	 *
+	 * @param jpeg The image to change
+	 * @param transform The transformation to make
+	 * @param edges How to treat partial MCUs on edges that are mirrored
+	 */
+	public void transform(JpegData jpeg, Transform transform, EdgeHandling edges) {
+		if (transform == null || edges == null) {
+			throw new IllegalArgumentException("The transform and edge handling must be given");
+		}
+
+		JpegStructure structure = new JpegStructure(jpeg);
+		SofSegment frame = makeFrame(structure, transform, edges);
+		FrameLayout layout = new FrameLayout(frame);
+		ScanScript script = ScanScript.of(structure);
+
+		CoefficientStore source = new CoefficientReader().read(structure);
+		try {
+			CoefficientStore target = new CoefficientStore(layout);
+			try {
+				transformBlocks(source, target, transform);
+				new CoefficientWriter().write(jpeg, frame, target, script);
+			} finally {
+				target.close();
+			}
+		} finally {
+			source.close();
+		}
+
+		if (transform.transposes()) {
+			transposeTablesAndDensity(jpeg);
+		}
+	}
+
+	/**
+	 * Makes the frame header of the transformed image
+	 */
+	private static SofSegment makeFrame(JpegStructure structure, Transform transform, EdgeHandling edges) {
+		FrameLayout layout = structure.getLayout();
+		SofSegment frame = CoefficientWriter.makeFrame(structure.getFrameMode(), layout);
+		boolean transposes = transform.transposes();
+
+		int width = transposes ? layout.getImageHeight() : layout.getImageWidth();
+		int height = transposes ? layout.getImageWidth() : layout.getImageHeight();
+		int mcuWidth = 8 * (transposes ? layout.getMaxVerticalSampling() : layout.getMaxHorizontalSampling());
+		int mcuHeight = 8 * (transposes ? layout.getMaxHorizontalSampling() : layout.getMaxVerticalSampling());
+
+		if (edges == EdgeHandling.TRIM) {
+			if (transform.mirrorsHorizontally() && width >= mcuWidth) {
+				width -= width % mcuWidth;
+			}
+			if (transform.mirrorsVertically() && height >= mcuHeight) {
+				height -= height % mcuHeight;
+			}
+		}
+
+		frame.setImageWidth(width);
+		frame.setImageHeight(height);
+		if (transposes) {
+			for (int index = 0; index < frame.getComponentCount(); index++) {
+				FrameComponent component = frame.getComponent(index);
+				int horizontal = component.getHorizontalScaling();
+				component.setHorizontalScaling(component.getVerticalScaling());
+				component.setVerticalScaling(horizontal);
+			}
+		}
+
+		return frame;
+	}
+
+	/**
+	 * Fills the target with the transformed blocks of the source. Only the
+	 * blocks in whole MCUs are mirrored; any beyond them stay where they are.
+	 */
+	private static void transformBlocks(CoefficientStore source, CoefficientStore target, Transform transform) {
+		FrameLayout layout = target.getLayout();
+		boolean transposes = transform.transposes();
+		short[] sourceBlock = new short[64];
+		short[] targetBlock = new short[64];
+
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			int mirroredWide = (layout.getImageWidth() / (8 * layout.getMaxHorizontalSampling())) *
+					  layout.getHorizontalSampling(component);
+			int mirroredHigh = (layout.getImageHeight() / (8 * layout.getMaxVerticalSampling())) *
+					  layout.getVerticalSampling(component);
+
+			for (int row = 0; row < target.getBlocksHigh(component); row++) {
+				boolean mirrorRow = transform.mirrorsVertically() && row < mirroredHigh;
+				int fromRow = mirrorRow ? mirroredHigh - 1 - row : row;
+
+				for (int column = 0; column < target.getBlocksWide(component); column++) {
+					boolean mirrorColumn = transform.mirrorsHorizontally() && column < mirroredWide;
+					int fromColumn = mirrorColumn ? mirroredWide - 1 - column : column;
+
+					if (transposes) {
+						source.getBlock(component, fromColumn, fromRow, sourceBlock);
+					} else {
+						source.getBlock(component, fromRow, fromColumn, sourceBlock);
+					}
+					transformBlock(sourceBlock, targetBlock, transposes, mirrorColumn, mirrorRow);
+					target.putBlock(component, row, column, targetBlock);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transforms the coefficients of one block. Mirroring a block negates the
+	 * coefficients with odd frequencies in that direction.
+	 *
+	 * @param source The block, in natural order
+	 * @param target Where to put the transformed block
+	 * @param transposes True to swap the rows and columns
+	 * @param mirrorHorizontally True to mirror the block left to right
+	 * @param mirrorVertically True to mirror the block top to bottom
+	 */
+	static void transformBlock(short[] source, short[] target, boolean transposes,
+			  boolean mirrorHorizontally, boolean mirrorVertically) {
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				int value = transposes ? source[column * 8 + row] : source[row * 8 + column];
+
+				if (mirrorHorizontally && (column & 1) != 0) {
+					value = -value;
+				}
+				if (mirrorVertically && (row & 1) != 0) {
+					value = -value;
+				}
+				target[row * 8 + column] = (short) value;
+			}
+		}
+	}
+
+	/**
+	 * Transposes the quantization tables, and swaps the JFIF pixel density
+	 */
+	private static void transposeTablesAndDensity(JpegData jpeg) {
+		int[] elements = new int[64];
+
+		for (DataItem item : jpeg) {
+			if (item instanceof DqtSegment) {
+				for (DqtQuantizationTable table : (DqtSegment) item) {
+					for (int index = 0; index < 64; index++) {
+						elements[index] = table.getElement(index);
+					}
+					for (int index = 0; index < 64; index++) {
+						int natural = ZigZag.NATURAL_ORDER[index];
+						int transposed = (natural % 8) * 8 + natural / 8;
+						table.setElement(ZigZag.ZIGZAG_ORDER[transposed], elements[index]);
+					}
+				}
+			} else if (item instanceof JfifSegment) {
+				JfifSegment jfif = (JfifSegment) item;
+				int xDensity = jfif.getXDensity();
+				jfif.setXDensity(jfif.getYDensity());
+				jfif.setYDensity(xDensity);
+			}
+		}
+	}
+}
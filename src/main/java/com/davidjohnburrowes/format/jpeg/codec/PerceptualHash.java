@@ -0,0 +1,198 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import java.util.Arrays;
+
+/**
+ * Computes a 64 bit perceptual hash (pHash) of an image, for finding near
+ * duplicates: images that differ only in size, quality or small edits have
+ * hashes a few bits apart.
+ *
+ * The hash is the usual DCT hash: the image's luminance is shrunk to 32x32,
+ * transformed with a DCT, and each of the 8x8 lowest frequencies (leaving
+ * out the row and column of the DC term) gives a bit saying whether it is
+ * above their median.
+ *
+ * The 32x32 luminance is made from the image's coefficients rather than
+ * its pixels. When the image is at least 32 blocks each way, which is
+ * anything of 256 pixels or more, it comes from just the DC coefficient of
+ * each block: the AC coefficients are only read past, and nothing is
+ * inverse transformed or colour converted. Smaller images use the DC and
+ * lowest AC terms to give 2x2 samples per block.
+ *
+ * For gray and YCbCr images, only the first component (the luminance) is
+ * decoded: scans of the others are skipped. For RGB images, all three are
+ * decoded, and the luminance is worked out from them once they are shrunk.
+ */
+public final class PerceptualHash {
+	private static final int SIZE = 32;
+	private static final int FREQUENCIES = 8;
+	private static final double RED_WEIGHT = 0.299;
+	private static final double GREEN_WEIGHT = 0.587;
+	private static final double BLUE_WEIGHT = 0.114;
+
+	/**
+	 * COSINES[u][x] is cos((2x + 1)u pi / 64), for the frequencies used
+	 */
+	private static final double[][] COSINES = new double[FREQUENCIES + 1][SIZE];
+
+	static {
+		for (int frequency = 0; frequency <= FREQUENCIES; frequency++) {
+			for (int x = 0; x < SIZE; x++) {
+				COSINES[frequency][x] = Math.cos((2 * x + 1) * frequency * Math.PI / (2 * SIZE));
+			}
+		}
+	}
+
+	private PerceptualHash() {
+	}
+
+	/**
+	 * Computes the hash of a Huffman coded DCT image with one or three
+	 * components.
+	 *
+	 * @param jpeg The image
+	 * @return The hash
+	 */
+	public static long hash(JpegData jpeg) {
+		return hash(jpeg, new JpegStructure(jpeg));
+	}
+
+	/**
+	 * Computes the hash of a Huffman coded DCT image with one or three
+	 * components.
+	 *
+	 * @param jpeg The image
+	 * @param structure The image's structure
+	 * @return The hash
+	 */
+	public static long hash(JpegData jpeg, JpegStructure structure) {
+		PixelDecoder.checkSupported(structure);
+		FrameLayout layout = structure.getLayout();
+		int lumaWidth = ceilDiv(layout.getImageWidth() * layout.getHorizontalSampling(0),
+				  layout.getMaxHorizontalSampling());
+		int lumaHeight = ceilDiv(layout.getImageHeight() * layout.getVerticalSampling(0),
+				  layout.getMaxVerticalSampling());
+		int scale = (ceilDiv(lumaWidth, 8) >= SIZE && ceilDiv(lumaHeight, 8) >= SIZE) ? 8 : 4;
+
+		if (layout.getComponentCount() == 3 && !PixelDecoder.isYCbCr(jpeg, layout)) {
+			ComponentPlanes planes = PixelDecoder.decodePlanes(structure, scale, 3);
+			double[] red = shrink(planes, 0);
+			double[] green = shrink(planes, 1);
+			double[] blue = shrink(planes, 2);
+
+			double[] samples = new double[SIZE * SIZE];
+			for (int index = 0; index < samples.length; index++) {
+				samples[index] = RED_WEIGHT * red[index] + GREEN_WEIGHT * green[index] + BLUE_WEIGHT * blue[index];
+			}
+			return hash(samples);
+		}
+
+		return hash(shrink(PixelDecoder.decodePlanes(structure, scale, 1), 0));
+	}
+
+	/**
+	 * @param first One hash
+	 * @param second Another hash
+	 * @return The number of bits that differ between the hashes: 0 for the
+	 * same image, and about 32 for unrelated images
+	 */
+	public static int distance(long first, long second) {
+		return Long.bitCount(first ^ second);
+	}
+
+	private static double[] shrink(ComponentPlanes planes, int component) {
+		return shrink(planes.getPlane(component), planes.getStride(component),
+				  planes.getComponentWidth(component), planes.getComponentHeight(component));
+	}
+
+	/**
+	 * Averages samples to 32x32. Each result is the average of the samples
+	 * it covers (or the nearest sample, where there are fewer than 32).
+	 */
+	private static double[] shrink(byte[] plane, int stride, int width, int height) {
+		double[] result = new double[SIZE * SIZE];
+
+		for (int y = 0; y < SIZE; y++) {
+			int top = y * height / SIZE;
+			int bottom = Math.max(top + 1, (y + 1) * height / SIZE);
+			for (int x = 0; x < SIZE; x++) {
+				int left = x * width / SIZE;
+				int right = Math.max(left + 1, (x + 1) * width / SIZE);
+
+				int sum = 0;
+				for (int row = top; row < bottom; row++) {
+					for (int column = left; column < right; column++) {
+						sum += plane[row * stride + column] & 0xFF;
+					}
+				}
+				result[y * SIZE + x] = (double) sum / ((bottom - top) * (right - left));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Transforms the 32x32 samples and makes the hash from the frequencies
+	 * 1-8 each way. Bit 63 is for the lowest frequencies.
+	 */
+	private static long hash(double[] samples) {
+		double[] rows = new double[SIZE * FREQUENCIES];
+		for (int y = 0; y < SIZE; y++) {
+			for (int u = 0; u < FREQUENCIES; u++) {
+				double[] cosines = COSINES[u + 1];
+				double sum = 0;
+				for (int x = 0; x < SIZE; x++) {
+					sum += cosines[x] * samples[y * SIZE + x];
+				}
+				rows[y * FREQUENCIES + u] = sum;
+			}
+		}
+
+		double[] frequencies = new double[FREQUENCIES * FREQUENCIES];
+		for (int v = 0; v < FREQUENCIES; v++) {
+			double[] cosines = COSINES[v + 1];
+			for (int u = 0; u < FREQUENCIES; u++) {
+				double sum = 0;
+				for (int y = 0; y < SIZE; y++) {
+					sum += cosines[y] * rows[y * FREQUENCIES + u];
+				}
+				frequencies[v * FREQUENCIES + u] = sum;
+			}
+		}
+
+		double[] sorted = frequencies.clone();
+		Arrays.sort(sorted);
+		double median = (sorted[31] + sorted[32]) / 2;
+
+		long hash = 0;
+		for (int index = 0; index < frequencies.length; index++) {
+			hash <<= 1;
+			if (frequencies[index] > median) {
+				hash |= 1;
+			}
+		}
+
+		return hash;
+	}
+
+	private static int ceilDiv(int value, int divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.AppNSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+
+/**
+ * Decodes Huffman coded DCT images to pixels: gray scale for images with
+ * one component, and RGB for images with three. The results are the same as
+ * the IJG's libjpeg gives with its default settings (accurate integer IDCT,
+ * fancy upsampling).
+ *
+ * Sequential scans are decoded straight into the samples of each component,
+ * without keeping their coefficients. Progressive images are decoded into a
+ * CoefficientStore first.
+ *
+ * Images can also be decoded at 1/2, 1/4 or 1/8 of their size, using
+ * smaller inverse transforms for each block. This makes decoding cheaper,
+ * and the memory needed falls with the square of the scale. At 1/8, each
+ * block is just its DC coefficient, so the AC coefficients aren't decoded
+ * at all: in sequential scans their codes are only read past, and the AC
+ * scans of progressive images are skipped.
+ *
+ * A PixelDecoder keeps no state, so one can be shared between threads.
+ */
+public class PixelDecoder {
+	private static final int ADOBE_TRANSFORM_OFFSET = 11;
+
+	/**
+	 * Decodes the image.
+	 *
+	 * @param jpeg The image to decode
+	 * @return The pixels
+	 */
+	public PixelImage decode(JpegData jpeg) {
+		return decode(jpeg, new JpegStructure(jpeg));
+	}
+
+	/**
+	 * Decodes the image at a reduced size.
+	 *
+	 * @param jpeg The image to decode
+	 * @param scale How many times smaller to make the image: 1, 2, 4 or 8
+	 * @return The pixels
+	 */
+	public PixelImage decode(JpegData jpeg, int scale) {
+		return decode(jpeg, new JpegStructure(jpeg), scale);
+	}
+
+	/**
+	 * Decodes the image at the smallest of the reduced sizes that is at least
+	 * as big as a target size.
+	 *
+	 * @param jpeg The image to decode
+	 * @param width The smallest width wanted
+	 * @param height The smallest height wanted
+	 * @return The pixels
+	 */
+	public PixelImage decodeToFit(JpegData jpeg, int width, int height) {
+		JpegStructure structure = new JpegStructure(jpeg);
+
+		return decode(jpeg, structure, chooseScale(structure.getLayout(), width, height));
+	}
+
+	/**
+	 * Decodes the image.
+	 *
+	 * @param jpeg The image to decode
+	 * @param structure The image's structure
+	 * @return The pixels
+	 */
+	public PixelImage decode(JpegData jpeg, JpegStructure structure) {
+		return decode(jpeg, structure, 1);
+	}
+
+	/**
+	 * Decodes the image at a reduced size.
+	 *
+	 * @param jpeg The image to decode
+	 * @param structure The image's structure
+	 * @param scale How many times smaller to make the image: 1, 2, 4 or 8
+	 * @return The pixels
+	 */
+	public PixelImage decode(JpegData jpeg, JpegStructure structure, int scale) {
+		ComponentPlanes planes = decodePlanes(structure, scale);
+
+		return toImage(planes, isYCbCr(jpeg, structure.getLayout()));
+	}
+
+	/**
+	 * Decodes the samples of each component of an image, at a reduced size,
+	 * without converting them to pixels.
+	 *
+	 * @param structure The image's structure
+	 * @param scale How many times smaller to make the image: 1, 2, 4 or 8
+	 * @return The samples
+	 */
+	static ComponentPlanes decodePlanes(JpegStructure structure, int scale) {
+		return decodePlanes(structure, scale, structure.getLayout().getComponentCount());
+	}
+
+	/**
+	 * Decodes the samples of the first few components of an image, at a
+	 * reduced size, without converting them to pixels. Scans of only the
+	 * other components are skipped, and their blocks in other scans are
+	 * decoded but not transformed.
+	 *
+	 * @param structure The image's structure
+	 * @param scale How many times smaller to make the image: 1, 2, 4 or 8
+	 * @param keptComponents The number of components, from the first, to decode
+	 * @return The samples
+	 */
+	static ComponentPlanes decodePlanes(JpegStructure structure, int scale, int keptComponents) {
+		if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+			throw new IllegalArgumentException("The scale must be 1, 2, 4 or 8. Found " + scale);
+		}
+
+		FrameLayout layout = structure.getLayout();
+		boolean progressive = checkSupported(structure) == FrameMode.HUFF_PROGRESSIVE_DCT;
+
+		ComponentPlanes planes = new ComponentPlanes(layout, 8 / scale, keptComponents);
+		if (progressive) {
+			setFirstQuantization(structure, planes);
+			CoefficientStore store = new CoefficientStore(layout);
+			try {
+				if (scale == 8) {
+					ProgressiveScanDecoder decoder = new ProgressiveScanDecoder(structure);
+					for (Scan scan : structure.getScans()) {
+						if (scan.getHeader().getSpectralSelectionStart() == 0 && hasKeptComponent(layout, scan, planes)) {
+							decoder.decode(scan, store);
+						}
+					}
+				} else {
+					new CoefficientReader().read(structure, store);
+				}
+				planes.render(store);
+			} finally {
+				store.close();
+			}
+		} else {
+			HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+			for (Scan scan : structure.getScans()) {
+				if (!hasKeptComponent(layout, scan, planes)) {
+					continue;
+				}
+				planes.setQuantization(scan);
+				if (scale == 8) {
+					decoder.decodeDc(scan, planes);
+				} else {
+					decoder.decode(scan, planes);
+				}
+			}
+		}
+
+		return planes;
+	}
+
+	private static boolean hasKeptComponent(FrameLayout layout, Scan scan, ComponentPlanes planes) {
+		for (int component : layout.getScanComponents(scan.getHeader())) {
+			if (planes.isKept(component)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks that an image can be decoded to pixels: that it is Huffman coded
+	 * DCT, with 1 or 3 components that can be upsampled by whole numbers.
+	 *
+	 * @param structure The image's structure
+	 * @return The image's frame mode
+	 */
+	static FrameMode checkSupported(JpegStructure structure) {
+		FrameLayout layout = structure.getLayout();
+		FrameMode mode = structure.getFrameMode();
+
+		if (mode == null || !(mode.isSequentialBaseline() || mode == FrameMode.HUFF_EXTENDED_SEQUENTIAL_DCT ||
+				  mode == FrameMode.HUFF_PROGRESSIVE_DCT)) {
+			throw new UnsupportedOperationException("Only Huffman coded DCT images can be decoded to pixels");
+		}
+		if (layout.getComponentCount() != 1 && layout.getComponentCount() != 3) {
+			throw new UnsupportedOperationException("Only images with 1 or 3 components can be decoded to pixels. Found " +
+					  layout.getComponentCount());
+		}
+		ColorConverter.checkSampling(layout);
+
+		return mode;
+	}
+
+	/**
+	 * Makes the image from decoded planes
+	 *
+	 * @param planes The planes
+	 * @param ycc True if three components are YCbCr, rather than RGB
+	 * @return The image
+	 */
+	static PixelImage toImage(ComponentPlanes planes, boolean ycc) {
+		if (planes.getLayout().getComponentCount() == 1) {
+			return ColorConverter.toGray(planes);
+		}
+		return ColorConverter.toRgb(planes, ycc);
+	}
+
+	/**
+	 * Chooses the most that an image can be reduced while staying at least
+	 * as big as a target size.
+	 *
+	 * @param layout The layout of the image's frame
+	 * @param width The smallest width wanted
+	 * @param height The smallest height wanted
+	 * @return How many times smaller to make the image: 1, 2, 4 or 8
+	 */
+	public static int chooseScale(FrameLayout layout, int width, int height) {
+		for (int scale = 8; scale > 1; scale /= 2) {
+			if ((layout.getImageWidth() + scale - 1) / scale >= width &&
+					  (layout.getImageHeight() + scale - 1) / scale >= height) {
+				return scale;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Sets the quantization table of each component to the one in effect for
+	 * the first scan that includes it
+	 */
+	static void setFirstQuantization(JpegStructure structure, ComponentPlanes planes) {
+		FrameLayout layout = structure.getLayout();
+		boolean[] done = new boolean[layout.getComponentCount()];
+
+		for (Scan scan : structure.getScans()) {
+			for (int component : layout.getScanComponents(scan.getHeader())) {
+				if (!done[component]) {
+					planes.setQuantization(component,
+							  scan.getQuantizationTable(layout.getQuantizationSelector(component)));
+					done[component] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out whether the three components of an image are YCbCr or RGB,
+	 * the same way libjpeg does: JFIF images are YCbCr; otherwise an Adobe
+	 * APP14 segment says which, and failing that, components with the ids
+	 * 'R', 'G' and 'B' are RGB.
+	 */
+	static boolean isYCbCr(JpegData jpeg, FrameLayout layout) {
+		for (DataItem item : jpeg) {
+			if (item instanceof JfifSegment) {
+				return true;
+			}
+		}
+
+		for (DataItem item : jpeg) {
+			if (item instanceof AppNSegment && ((AppNSegment) item).isAdobe()) {
+				byte[] bytes = ((AppNSegment) item).getBytes();
+				if (bytes.length > ADOBE_TRANSFORM_OFFSET) {
+					return bytes[ADOBE_TRANSFORM_OFFSET] != 0;
+				}
+			}
+		}
+
+		return !(layout.getComponentId(0) == 'R' && layout.getComponentId(1) == 'G' &&
+				  layout.getComponentId(2) == 'B');
+	}
+}
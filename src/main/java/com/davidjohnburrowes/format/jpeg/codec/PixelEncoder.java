@@ -0,0 +1,331 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.EoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes gray scale or RGB pixels into a baseline JPEG image: SOI, a JFIF
+ * segment, DQT, SOF0, DHT, one interleaved scan, and EOI.
+ *
+ * Colour images are converted to YCbCr and their chrominance is subsampled
+ * (4:4:4, 4:2:2 or 4:2:0) by averaging, as the IJG's libjpeg does. Each
+ * block is transformed with a fast integer forward DCT (see Fdct),
+ * quantized, and coded with the example Huffman tables of Annex K.3.
+ *
+ * The image is encoded an MCU row at a time: only that strip of each
+ * component is held, and the buffers are made once for each image, so
+ * nothing is allocated for each MCU. A PixelEncoder keeps no state between
+ * images, so one can be shared between threads.
+ */
+public class PixelEncoder {
+	private static final FrameMode MODE = FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT;
+
+	private final int[] luminance;
+	private final int[] chrominance;
+	private final Subsampling subsampling;
+
+	/**
+	 * Makes an encoder that uses the example quantization tables scaled for a
+	 * quality, and 4:2:0 subsampling.
+	 *
+	 * @param quality The quality (1-100, see QuantizationTables)
+	 */
+	public PixelEncoder(int quality) {
+		this(quality, Subsampling.YCC_420);
+	}
+
+	/**
+	 * Makes an encoder that uses the example quantization tables scaled for a
+	 * quality.
+	 *
+	 * @param quality The quality (1-100, see QuantizationTables)
+	 * @param subsampling The subsampling of colour images
+	 */
+	public PixelEncoder(int quality, Subsampling subsampling) {
+		this(QuantizationTables.makeTable(0, quality, false),
+				  QuantizationTables.makeTable(1, quality, true), subsampling);
+	}
+
+	/**
+	 * Makes an encoder that uses given quantization tables. Their values must
+	 * fit in 8 bits, as a baseline frame requires.
+	 *
+	 * @param luminance The table for the Y (or gray) component
+	 * @param chrominance The table for the Cb and Cr components
+	 * @param subsampling The subsampling of colour images
+	 */
+	public PixelEncoder(DqtQuantizationTable luminance, DqtQuantizationTable chrominance, Subsampling subsampling) {
+		if (luminance == null || chrominance == null) {
+			throw new IllegalArgumentException("The quantization tables may not be null");
+		}
+		if (subsampling == null) {
+			throw new IllegalArgumentException("subsampling may not be null");
+		}
+
+		this.luminance = toNatural(luminance);
+		this.chrominance = toNatural(chrominance);
+		this.subsampling = subsampling;
+	}
+
+	/**
+	 * Encodes an image.
+	 *
+	 * @param image The pixels to encode
+	 * @return The image
+	 */
+	public JpegData encode(PixelImage image) {
+		if (image == null) {
+			throw new IllegalArgumentException("image may not be null");
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width < 1 || width > 65535 || height < 1 || height > 65535) {
+			throw new IllegalArgumentException("The image must be 1-65535 pixels in each direction. Found " +
+					  width + "x" + height);
+		}
+
+		boolean colour = image.getChannels() == 3;
+		int horizontal = colour ? subsampling.getHorizontalFactor() : 1;
+		int vertical = colour ? subsampling.getVerticalFactor() : 1;
+
+		SofSegment frame = new SofSegment(MODE.getValue());
+		frame.setFrameMode(MODE);
+		frame.setSamplePrecision(8);
+		frame.setImageWidth(width);
+		frame.setImageHeight(height);
+		SosSegment header = new SosSegment();
+		header.setFrameMode(MODE);
+		for (int index = 0; index < image.getChannels(); index++) {
+			FrameComponent component = new FrameComponent();
+			component.setFrameMode(MODE);
+			component.setComponentId(index + 1);
+			component.setHorizontalScaling(index == 0 ? horizontal : 1);
+			component.setVerticalScaling(index == 0 ? vertical : 1);
+			component.setQuantizationSelector(index == 0 ? 0 : 1);
+			frame.addComponent(component);
+
+			SosComponentSpec spec = new SosComponentSpec();
+			spec.setFrameMode(MODE);
+			spec.setComponentSelector(index + 1);
+			spec.setDcTableSelector(index == 0 ? 0 : 1);
+			spec.setAcTableSelector(index == 0 ? 0 : 1);
+			header.addComponentSpec(spec);
+		}
+		header.setSpectralSelectionStart(0);
+		header.setSpectralSelectionEnd(63);
+		header.setSuccessiveApproximationHigh(0);
+		header.setSuccessiveApproximationLow(0);
+
+		DqtSegment quantization = new DqtSegment();
+		quantization.setFrameMode(MODE);
+		quantization.addTable(makeTable(0, luminance));
+		DhtSegment huffman = new DhtSegment();
+		huffman.setFrameMode(MODE);
+		HuffmanEncodingTable[] dcTables = new HuffmanEncodingTable[4];
+		HuffmanEncodingTable[] acTables = new HuffmanEncodingTable[4];
+		addHuffmanTables(huffman, 0, dcTables, acTables);
+		if (colour) {
+			quantization.addTable(makeTable(1, chrominance));
+			addHuffmanTables(huffman, 1, dcTables, acTables);
+		}
+
+		SymbolOutput.Writer writer = new SymbolOutput.Writer(header, dcTables, acTables, true, true);
+		encodeScan(image, horizontal, vertical, writer);
+		writer.endInterval();
+
+		List<DataItem> items = new ArrayList<DataItem>();
+		items.add(new SoiMarker());
+		items.add(new JfifSegment());
+		items.add(quantization);
+		items.add(frame);
+		items.add(huffman);
+		items.add(header);
+		CoefficientWriter.addIntervals(items, writer.intervals);
+		items.add(new EoiMarker());
+
+		JpegData jpeg = new JpegData();
+		jpeg.replaceItems(0, 0, items);
+		return jpeg;
+	}
+
+	/**
+	 * Converts, transforms and codes the image, an MCU row at a time.
+	 */
+	private void encodeScan(PixelImage image, int horizontal, int vertical, SymbolOutput output) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int channels = image.getChannels();
+		byte[] samples = image.getSamples();
+		int mcuWidth = horizontal * 8;
+		int mcuHeight = vertical * 8;
+		int mcusPerRow = (width + mcuWidth - 1) / mcuWidth;
+		int mcuRows = (height + mcuHeight - 1) / mcuHeight;
+		int paddedWidth = mcusPerRow * mcuWidth;
+		boolean subsampled = horizontal != 1 || vertical != 1;
+
+		// Each component at full size, then the chrominance at its own size
+		int[][] strips = new int[channels][paddedWidth * mcuHeight];
+		int[][] planes = new int[channels][];
+		planes[0] = strips[0];
+		for (int index = 1; index < channels; index++) {
+			planes[index] = subsampled ? new int[mcusPerRow * 64] : strips[index];
+		}
+		int[][] divisors = {Fdct.makeDivisors(luminance), Fdct.makeDivisors(chrominance)};
+		int[] predictions = new int[channels];
+		int[] block = new int[64];
+		short[] coefficients = new short[64];
+
+		for (int mcuRow = 0; mcuRow < mcuRows; mcuRow++) {
+			for (int row = 0; row < mcuHeight; row++) {
+				// Rows past the bottom of the image repeat its last row
+				int y = Math.min(mcuRow * mcuHeight + row, height - 1);
+				int offset = row * paddedWidth;
+				if (channels == 3) {
+					ColorConverter.fromRgbRow(samples, y * width * 3, width, strips[0], strips[1], strips[2], offset);
+				} else {
+					for (int x = 0; x < width; x++) {
+						strips[0][offset + x] = samples[y * width + x] & 0xFF;
+					}
+				}
+				for (int index = 0; index < channels; index++) {
+					int[] strip = strips[index];
+					int last = strip[offset + width - 1];
+					for (int x = width; x < paddedWidth; x++) {
+						strip[x + offset] = last;
+					}
+				}
+			}
+			if (subsampled) {
+				for (int index = 1; index < channels; index++) {
+					downsample(strips[index], paddedWidth, horizontal, vertical, planes[index]);
+				}
+			}
+
+			for (int mcu = 0; mcu < mcusPerRow; mcu++) {
+				for (int row = 0; row < vertical; row++) {
+					for (int column = 0; column < horizontal; column++) {
+						loadBlock(planes[0], row * 8 * paddedWidth + mcu * mcuWidth + column * 8, paddedWidth, block);
+						Fdct.transform(block, divisors[0], coefficients);
+						predictions[0] = HuffmanScanEncoder.encodeBlock(coefficients, predictions[0], 0, output);
+					}
+				}
+				for (int index = 1; index < channels; index++) {
+					loadBlock(planes[index], mcu * 8, mcusPerRow * 8, block);
+					Fdct.transform(block, divisors[1], coefficients);
+					predictions[index] = HuffmanScanEncoder.encodeBlock(coefficients, predictions[index], index, output);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies an 8x8 block of samples, taking away half their range.
+	 */
+	private static void loadBlock(int[] plane, int offset, int stride, int[] block) {
+		for (int row = 0; row < 8; row++) {
+			int start = offset + row * stride;
+			for (int column = 0; column < 8; column++) {
+				block[row * 8 + column] = plane[start + column] - 128;
+			}
+		}
+	}
+
+	/**
+	 * Averages each horizontal x vertical group of samples into one. As in
+	 * libjpeg, the rounding alternates between up and down across a row, so
+	 * that it doesn't shift the whole image one way.
+	 */
+	private static void downsample(int[] strip, int stripWidth, int horizontal, int vertical, int[] output) {
+		int outputWidth = stripWidth / horizontal;
+		int shift = (horizontal == 2 ? 1 : 0) + (vertical == 2 ? 1 : 0);
+		int bias = (shift == 2) ? 1 : 0;
+
+		for (int row = 0; row < 8; row++) {
+			int first = row * vertical * stripWidth;
+			int second = first + (vertical - 1) * stripWidth;
+			int out = row * outputWidth;
+			for (int x = 0; x < outputWidth; x++) {
+				int column = x * horizontal;
+				int sum = strip[first + column];
+				if (horizontal == 2) {
+					sum += strip[first + column + 1];
+				}
+				if (vertical == 2) {
+					sum += strip[second + column];
+					if (horizontal == 2) {
+						sum += strip[second + column + 1];
+					}
+				}
+				output[out + x] = (sum + bias + (x & 1)) >> shift;
+			}
+		}
+	}
+
+	/**
+	 * Adds the example DC and AC tables for luminance (0) or chrominance (1).
+	 */
+	private static void addHuffmanTables(DhtSegment segment, int id,
+			  HuffmanEncodingTable[] dcTables, HuffmanEncodingTable[] acTables) {
+		DhtHuffmanTable dc = StandardHuffmanTables.make(MODE, 0, id, id != 0);
+		DhtHuffmanTable ac = StandardHuffmanTables.make(MODE, 1, id, id != 0);
+		segment.addTable(dc);
+		segment.addTable(ac);
+		dcTables[id] = new HuffmanEncodingTable(dc);
+		acTables[id] = new HuffmanEncodingTable(ac);
+	}
+
+	private static DqtQuantizationTable makeTable(int id, int[] natural) {
+		DqtQuantizationTable table = new DqtQuantizationTable();
+		table.setFrameMode(MODE);
+		table.setElementPrecision(0);
+		table.setTableId(id);
+		for (int index = 0; index < 64; index++) {
+			table.setElement(index, natural[ZigZag.NATURAL_ORDER[index]]);
+		}
+
+		return table;
+	}
+
+	private static int[] toNatural(DqtQuantizationTable table) {
+		int[] natural = new int[64];
+		for (int index = 0; index < 64; index++) {
+			int value = table.getElement(index);
+			if (value < 1 || value > 255) {
+				throw new IllegalArgumentException("Quantization values must be 1-255 for a baseline frame. Found " +
+						  value);
+			}
+			natural[ZigZag.NATURAL_ORDER[index]] = value;
+		}
+
+		return natural;
+	}
+}
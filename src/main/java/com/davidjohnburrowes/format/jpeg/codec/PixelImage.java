@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * An image decoded to 8 bit samples: either gray scale, with one sample per
+ * pixel, or RGB, with three. The samples are interleaved, row by row, with
+ * no padding between rows.
+ */
+public class PixelImage {
+	private final int width;
+	private final int height;
+	private final int channels;
+	private final byte[] samples;
+
+	/**
+	 * @param width The width of the image in pixels
+	 * @param height The height of the image in pixels
+	 * @param channels The number of samples per pixel: 1 for gray scale, or
+	 *			3 for RGB
+	 * @param samples The samples. The array is used, not copied.
+	 */
+	public PixelImage(int width, int height, int channels, byte[] samples) {
+		if (channels != 1 && channels != 3) {
+			throw new IllegalArgumentException("An image must have 1 or 3 channels. Found " + channels);
+		}
+		if (samples.length != width * height * channels) {
+			throw new IllegalArgumentException("Expected " + (width * height * channels) +
+					  " samples. Found " + samples.length);
+		}
+
+		this.width = width;
+		this.height = height;
+		this.channels = channels;
+		this.samples = samples;
+	}
+
+	/**
+	 * @return The width of the image in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return The height of the image in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The number of samples per pixel: 1 for gray scale, or 3 for
+	 *			RGB (in that order)
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * @return The samples of the image. This is the image's own array, not a
+	 *			copy.
+	 */
+	public byte[] getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @param x The column of the pixel
+	 * @param y The row of the pixel
+	 * @param channel The channel of the sample
+	 * @return The sample, 0-255
+	 */
+	public int getSample(int x, int y, int channel) {
+		if (x < 0 || x >= width || y < 0 || y >= height || channel < 0 || channel >= channels) {
+			throw new IndexOutOfBoundsException("No sample " + channel + " at " + x + "," + y);
+		}
+
+		return samples[(y * width + x) * channels + channel] & 0xFF;
+	}
+}
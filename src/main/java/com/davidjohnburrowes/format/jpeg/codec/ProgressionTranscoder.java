@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+
+/**
+ * Converts Huffman coded DCT images between sequential and progressive modes.
+ * This is done entirely with the quantized coefficients, so the image is not
+ * changed at all; only the way it is coded is.
+ */
+public class ProgressionTranscoder {
+
+	/**
+	 * Converts the image to a progressive one, with the standard scan script
+	 * (see ScanScript.progressive()).
+	 *
+	 * @param jpeg The image to convert
+	 */
+	public void toProgressive(JpegData jpeg) {
+		toProgressive(jpeg, null);
+	}
+
+	/**
+	 * Converts the image to a progressive one.
+	 *
+	 * @param jpeg The image to convert
+	 * @param script The scans to write, or null for the standard script
+	 */
+	public void toProgressive(JpegData jpeg, ScanScript script) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameLayout layout = structure.getLayout();
+
+		transcode(jpeg, structure, FrameMode.HUFF_PROGRESSIVE_DCT,
+				  (script == null) ? ScanScript.progressive(layout) : script);
+	}
+
+	/**
+	 * Converts the image to a sequential one. It will be a baseline image if
+	 * it can be (8 bit samples and quantization tables), and an extended one
+	 * otherwise.
+	 *
+	 * @param jpeg The image to convert
+	 */
+	public void toSequential(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameMode mode = canBeBaseline(jpeg, structure) ?
+				  FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT :
+				  FrameMode.HUFF_EXTENDED_SEQUENTIAL_DCT;
+
+		transcode(jpeg, structure, mode, ScanScript.sequential(structure.getLayout()));
+	}
+
+	private void transcode(JpegData jpeg, JpegStructure structure, FrameMode mode, ScanScript script) {
+		FrameLayout layout = structure.getLayout();
+		SofSegment frame = CoefficientWriter.makeFrame(mode, layout);
+
+		CoefficientStore store = new CoefficientReader().read(structure);
+		try {
+			new CoefficientWriter().write(jpeg, frame, store, script);
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * A baseline image has 8 bit samples, and 8 bit quantization tables
+	 */
+	static boolean canBeBaseline(JpegData jpeg, JpegStructure structure) {
+		if (structure.getLayout().getSamplePrecision() != 8) {
+			return false;
+		}
+
+		for (DataItem item : jpeg) {
+			if (item instanceof DqtSegment) {
+				for (DqtQuantizationTable table : (DqtSegment) item) {
+					if (table.getElementPrecision() != null && table.getElementPrecision() != 0) {
+						return false;
+					}
+					for (int index = 0; index < 64; index++) {
+						if (table.getElement(index) > 255) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,400 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the Huffman coded scans of progressive DCT frames, following the
+ * procedures in Annex G.2 of the standard. Each scan only adds to the
+ * coefficients decoded by earlier scans (a band of coefficients, or one more
+ * bit of them), so the scans of an image must be decoded, in order, into the
+ * same CoefficientStore.
+ *
+ * Within a scan, the DC predictions and end-of-band runs reset at the start
+ * of each restart interval, so the intervals can be decoded in parallel.
+ */
+public class ProgressiveScanDecoder {
+	/**
+	 * The number of restart intervals below which a task decodes them itself
+	 * rather than splitting them between two tasks
+	 */
+	private static final int PARALLEL_DECODE_THRESHOLD = 4;
+
+	private final FrameLayout layout;
+
+	/**
+	 * @param structure The structure of the image whose scans will be decoded
+	 */
+	public ProgressiveScanDecoder(JpegStructure structure) {
+		this(structure.getLayout());
+	}
+
+	/**
+	 * @param layout The layout of the frame whose scans will be decoded
+	 */
+	public ProgressiveScanDecoder(FrameLayout layout) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+
+		this.layout = layout;
+	}
+
+	/**
+	 * Decodes a scan, adding what it holds to the coefficients in the store.
+	 *
+	 * @param scan The scan to decode
+	 * @param store The coefficients decoded by the earlier scans
+	 */
+	public void decode(Scan scan, CoefficientStore store) {
+		ScanPlan plan = new ScanPlan(layout, scan, store);
+		IntervalDecoder decoder = new IntervalDecoder(plan);
+
+		if (plan.restartInterval == 0) {
+			if (!plan.intervals.isEmpty()) {
+				decoder.decode(plan.intervals.get(0), 0, plan.mcuCount);
+			}
+			return;
+		}
+		for (int interval = 0; interval < plan.intervalCount; interval++) {
+			decoder.decodeInterval(interval);
+		}
+	}
+
+	/**
+	 * Decodes a scan, adding what it holds to the coefficients in the store,
+	 * and decoding its restart intervals in parallel on the pool. Scans
+	 * without restart intervals are decoded on the calling thread.
+	 *
+	 * @param scan The scan to decode
+	 * @param store The coefficients decoded by the earlier scans
+	 * @param pool The pool to decode on
+	 */
+	public void decode(Scan scan, CoefficientStore store, ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("pool may not be null");
+		}
+
+		ScanPlan plan = new ScanPlan(layout, scan, store);
+		if (plan.restartInterval == 0 || plan.intervalCount < 2) {
+			decode(scan, store);
+			return;
+		}
+
+		pool.invoke(new IntervalTask(plan, 0, plan.intervalCount));
+	}
+
+	/**
+	 * Checks that the scan's parameters are ones a progressive scan may have
+	 * (section G.1.1.1.1 of the standard).
+	 *
+	 * @param header The header of the scan
+	 * @param componentCount The number of components in the scan
+	 */
+	static void checkScan(SosSegment header, int componentCount) {
+		int start = header.getSpectralSelectionStart();
+		int end = header.getSpectralSelectionEnd();
+
+		if (start > end || end > 63) {
+			throw new InvalidJpegFormat("Invalid spectral selection " + start + "-" + end);
+		}
+		if (start == 0 && end != 0) {
+			throw new InvalidJpegFormat("A progressive scan can not code DC and AC coefficients together");
+		}
+		if (start != 0 && componentCount != 1) {
+			throw new InvalidJpegFormat("A progressive scan of AC coefficients must have only one component");
+		}
+		if (header.getSuccessiveApproximationHigh() != 0 &&
+				  header.getSuccessiveApproximationHigh() != header.getSuccessiveApproximationLow() + 1) {
+			throw new InvalidJpegFormat("A refining scan must refine by exactly one bit");
+		}
+	}
+
+	private static HuffmanDecodingTable makeTable(DhtHuffmanTable table, String kind, int selector) {
+		if (table == null) {
+			throw new InvalidJpegFormat("Scan uses " + kind + " table " + selector + " which was never defined");
+		}
+
+		return new HuffmanDecodingTable(table);
+	}
+
+	/**
+	 * What's needed to decode one scan: its parameters, the frame components
+	 * in it, and the decoding tables for each of them.
+	 */
+	private static final class ScanPlan {
+		final FrameLayout layout;
+		final CoefficientStore store;
+		final int[] components;
+		final HuffmanDecodingTable[] tables;
+		final List<EntropyData> intervals;
+		final int start;
+		final int end;
+		final int high;
+		final int low;
+		final int mcuCount;
+		final int restartInterval;
+		final int intervalCount;
+
+		ScanPlan(FrameLayout layout, Scan scan, CoefficientStore store) {
+			if (store == null) {
+				throw new IllegalArgumentException("store may not be null");
+			}
+
+			SosSegment header = scan.getHeader();
+			this.layout = layout;
+			this.store = store;
+			this.components = layout.getScanComponents(header);
+			checkScan(header, components.length);
+
+			this.start = header.getSpectralSelectionStart();
+			this.end = header.getSpectralSelectionEnd();
+			this.high = header.getSuccessiveApproximationHigh();
+			this.low = header.getSuccessiveApproximationLow();
+			this.tables = new HuffmanDecodingTable[components.length];
+			for (int index = 0; index < components.length; index++) {
+				SosComponentSpec spec = header.getComponentSpec(index);
+				if (start == 0 && high == 0) {
+					tables[index] = makeTable(scan.getDcTable(spec.getDcTableSelector()), "DC", spec.getDcTableSelector());
+				} else if (start != 0) {
+					tables[index] = makeTable(scan.getAcTable(spec.getAcTableSelector()), "AC", spec.getAcTableSelector());
+				}
+			}
+
+			this.intervals = scan.getIntervals();
+			this.mcuCount = layout.getScanMcuCount(components);
+			this.restartInterval = scan.getRestartInterval();
+			this.intervalCount = (restartInterval == 0) ? Math.min(1, intervals.size()) :
+					  Math.min(intervals.size(), (mcuCount + restartInterval - 1) / restartInterval);
+		}
+	}
+
+	/**
+	 * Decodes a range of restart intervals, splitting them between tasks if
+	 * there are enough.
+	 */
+	private static final class IntervalTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ScanPlan plan;
+		private final int first;
+		private final int last;
+
+		IntervalTask(ScanPlan plan, int first, int last) {
+			this.plan = plan;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first <= PARALLEL_DECODE_THRESHOLD) {
+				IntervalDecoder decoder = new IntervalDecoder(plan);
+				for (int interval = first; interval < last; interval++) {
+					decoder.decodeInterval(interval);
+				}
+				return;
+			}
+
+			int middle = (first + last) >>> 1;
+			invokeAll(new IntervalTask(plan, first, middle), new IntervalTask(plan, middle, last));
+		}
+	}
+
+	/**
+	 * Decodes the restart intervals of one scan.
+	 */
+	private static final class IntervalDecoder {
+		private final FrameLayout layout;
+		private final int[] components;
+		private final HuffmanDecodingTable[] tables;
+		private final CoefficientStore store;
+		private final ScanPlan plan;
+		private final int start;
+		private final int end;
+		private final int high;
+		private final int low;
+		private final BitReader reader = new BitReader();
+		private final short[] block = new short[64];
+		private final int[] predictions;
+		private int endOfBandRun;
+
+		IntervalDecoder(ScanPlan plan) {
+			this.plan = plan;
+			this.layout = plan.layout;
+			this.components = plan.components;
+			this.tables = plan.tables;
+			this.store = plan.store;
+			this.start = plan.start;
+			this.end = plan.end;
+			this.high = plan.high;
+			this.low = plan.low;
+			this.predictions = new int[components.length];
+		}
+
+		void decodeInterval(int interval) {
+			int firstMcu = interval * plan.restartInterval;
+			decode(plan.intervals.get(interval), firstMcu, Math.min(plan.restartInterval, plan.mcuCount - firstMcu));
+		}
+
+		void decode(EntropyData data, int firstMcu, int mcuCount) {
+			reader.reset(data.getData());
+			for (int index = 0; index < predictions.length; index++) {
+				predictions[index] = 0;
+			}
+			endOfBandRun = 0;
+
+			for (int mcu = firstMcu; mcu < firstMcu + mcuCount; mcu++) {
+				if (components.length == 1) {
+					int component = components[0];
+					int blocksWide = layout.getComponentBlocksWide(component);
+					decodeBlock(0, component, mcu / blocksWide, mcu % blocksWide);
+				} else {
+					int mcuRow = mcu / layout.getMcusPerRow();
+					int mcuColumn = mcu % layout.getMcusPerRow();
+					for (int index = 0; index < components.length; index++) {
+						int component = components[index];
+						int horizontal = layout.getHorizontalSampling(component);
+						int vertical = layout.getVerticalSampling(component);
+						for (int row = 0; row < vertical; row++) {
+							for (int column = 0; column < horizontal; column++) {
+								decodeBlock(index, component, mcuRow * vertical + row,
+										  mcuColumn * horizontal + column);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private void decodeBlock(int index, int component, int row, int column) {
+			store.getBlock(component, row, column, block);
+
+			if (start == 0) {
+				if (high == 0) {
+					predictions[index] += reader.receiveExtend(reader.decode(tables[index]));
+					block[0] = (short) (predictions[index] << low);
+				} else if (reader.readBit() != 0) {
+					block[0] |= (short) (1 << low);
+				}
+			} else if (high == 0) {
+				decodeAcFirst(tables[index]);
+			} else {
+				decodeAcRefine(tables[index]);
+			}
+
+			store.putBlock(component, row, column, block);
+		}
+
+		/**
+		 * Figure G.3 and section G.1.2.2 of the standard
+		 */
+		private void decodeAcFirst(HuffmanDecodingTable table) {
+			if (endOfBandRun > 0) {
+				endOfBandRun--;
+				return;
+			}
+
+			for (int k = start; k <= end; k++) {
+				int symbol = reader.decode(table);
+				int run = symbol >> 4;
+				int size = symbol & 0x0F;
+
+				if (size != 0) {
+					k += run;
+					if (k > end) {
+						throw new InvalidJpegFormat("AC coefficients run past the end of the band");
+					}
+					block[ZigZag.NATURAL_ORDER[k]] = (short) (reader.receiveExtend(size) << low);
+				} else if (run == 15) {
+					k += 15;
+				} else {
+					endOfBandRun = (1 << run) - 1;
+					if (run != 0) {
+						endOfBandRun += reader.readBits(run);
+					}
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Section G.1.2.3 of the standard
+		 */
+		private void decodeAcRefine(HuffmanDecodingTable table) {
+			int plusOne = 1 << low;
+			int minusOne = -1 << low;
+			int k = start;
+
+			if (endOfBandRun == 0) {
+				for (; k <= end; k++) {
+					int symbol = reader.decode(table);
+					int run = symbol >> 4;
+					int value = 0;
+
+					if ((symbol & 0x0F) != 0) {
+						value = (reader.readBit() != 0) ? plusOne : minusOne;
+					} else if (run != 15) {
+						endOfBandRun = 1 << run;
+						if (run != 0) {
+							endOfBandRun += reader.readBits(run);
+						}
+						break;
+					}
+
+					while (k <= end) {
+						int position = ZigZag.NATURAL_ORDER[k];
+						if (block[position] != 0) {
+							refine(position, plusOne, minusOne);
+						} else if (--run < 0) {
+							break;
+						}
+						k++;
+					}
+					if (value != 0 && k <= end) {
+						block[ZigZag.NATURAL_ORDER[k]] = (short) value;
+					}
+				}
+			}
+
+			if (endOfBandRun > 0) {
+				for (; k <= end; k++) {
+					int position = ZigZag.NATURAL_ORDER[k];
+					if (block[position] != 0) {
+						refine(position, plusOne, minusOne);
+					}
+				}
+				endOfBandRun--;
+			}
+		}
+
+		/**
+		 * Reads the correction bit of a coefficient that's already non-zero
+		 */
+		private void refine(int position, int plusOne, int minusOne) {
+			if (reader.readBit() != 0 && (block[position] & plusOne) == 0) {
+				block[position] += (block[position] >= 0) ? plusOne : minusOne;
+			}
+		}
+	}
+}
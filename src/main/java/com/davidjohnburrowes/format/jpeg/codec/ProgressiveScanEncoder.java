@@ -0,0 +1,330 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import java.util.List;
+
+/**
+ * Encodes blocks of quantized DCT coefficients into the Huffman coded data of
+ * a progressive DCT scan, following the procedures in Annex G.1 of the
+ * standard. Like HuffmanScanEncoder, it can also just count the symbols a
+ * scan would use. Progressive scans use end-of-band runs, which the standard
+ * Huffman tables of Annex K don't have codes for, so tables for them
+ * generally need to be built from the counts.
+ *
+ * Tables and counts are given as arrays indexed by table selector (0-3).
+ */
+public class ProgressiveScanEncoder {
+	/**
+	 * The longest end-of-band run that can be coded
+	 */
+	private static final int MAX_END_OF_BAND_RUN = 0x7FFF;
+
+	/**
+	 * The most correction bits to hold back while counting an end-of-band run
+	 */
+	private static final int MAX_CORRECTION_BITS = 1000 - 64 + 1;
+
+	private final FrameLayout layout;
+
+	/**
+	 * @param layout The layout of the frame whose scans will be encoded
+	 */
+	public ProgressiveScanEncoder(FrameLayout layout) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout may not be null");
+		}
+
+		this.layout = layout;
+	}
+
+	/**
+	 * Counts the symbols the scan would need.
+	 *
+	 * @param header The header of the scan
+	 * @param restartInterval The number of MCUs in each restart interval, or 0
+	 * @param store The coefficients to encode
+	 * @param dcCounts Where to count the DC symbols of each DC table
+	 * @param acCounts Where to count the AC symbols of each AC table
+	 */
+	public void countSymbols(SosSegment header, int restartInterval, CoefficientStore store,
+			  HuffmanTableBuilder[] dcCounts, HuffmanTableBuilder[] acCounts) {
+		walk(header, restartInterval, store, new SymbolOutput.Counter(header, dcCounts, acCounts,
+				  usesDcTables(header), usesAcTables(header)));
+	}
+
+	/**
+	 * Encodes the scan.
+	 *
+	 * @param header The header of the scan
+	 * @param restartInterval The number of MCUs in each restart interval, or 0
+	 * @param store The coefficients to encode
+	 * @param dcTables The DC tables to encode with
+	 * @param acTables The AC tables to encode with
+	 * @return The entropy coded data of each restart interval
+	 */
+	public List<byte[]> encode(SosSegment header, int restartInterval, CoefficientStore store,
+			  HuffmanEncodingTable[] dcTables, HuffmanEncodingTable[] acTables) {
+		SymbolOutput.Writer writer = new SymbolOutput.Writer(header, dcTables, acTables,
+				  usesDcTables(header), usesAcTables(header));
+		walk(header, restartInterval, store, writer);
+		return writer.intervals;
+	}
+
+	/**
+	 * @param header The header of a scan
+	 * @return True if the scan codes with DC tables
+	 */
+	public static boolean usesDcTables(SosSegment header) {
+		return header.getSpectralSelectionStart() == 0 && header.getSuccessiveApproximationHigh() == 0;
+	}
+
+	/**
+	 * @param header The header of a scan
+	 * @return True if the scan codes with AC tables
+	 */
+	public static boolean usesAcTables(SosSegment header) {
+		return header.getSpectralSelectionStart() != 0;
+	}
+
+	/**
+	 * Goes through the blocks of the scan in order, passing the symbols that
+	 * encode them to the output.
+	 */
+	private void walk(SosSegment header, int restartInterval, CoefficientStore store, SymbolOutput output) {
+		int[] components = layout.getScanComponents(header);
+		ProgressiveScanDecoder.checkScan(header, components.length);
+
+		BlockEncoder encoder = new BlockEncoder(header, components.length, output);
+		int mcuCount = layout.getScanMcuCount(components);
+		short[] block = new short[64];
+
+		for (int mcu = 0; mcu < mcuCount; mcu++) {
+			if (restartInterval > 0 && mcu > 0 && (mcu % restartInterval) == 0) {
+				encoder.endInterval();
+			}
+
+			if (components.length == 1) {
+				int component = components[0];
+				int blocksWide = layout.getComponentBlocksWide(component);
+				store.getBlock(component, mcu / blocksWide, mcu % blocksWide, block);
+				encoder.encode(block, 0);
+			} else {
+				int mcuRow = mcu / layout.getMcusPerRow();
+				int mcuColumn = mcu % layout.getMcusPerRow();
+				for (int index = 0; index < components.length; index++) {
+					int component = components[index];
+					int horizontal = layout.getHorizontalSampling(component);
+					int vertical = layout.getVerticalSampling(component);
+					for (int row = 0; row < vertical; row++) {
+						for (int column = 0; column < horizontal; column++) {
+							store.getBlock(component, mcuRow * vertical + row,
+									  mcuColumn * horizontal + column, block);
+							encoder.encode(block, index);
+						}
+					}
+				}
+			}
+		}
+
+		encoder.endInterval();
+	}
+
+	/**
+	 * Encodes blocks, keeping the state that carries from block to block
+	 * within a restart interval.
+	 */
+	private static final class BlockEncoder {
+		private final SymbolOutput output;
+		private final int start;
+		private final int end;
+		private final int high;
+		private final int low;
+		private final int[] predictions;
+		private final int[] absolute = new int[64];
+		private int endOfBandRun;
+		private final int[] blockBits = new int[64];
+		private int blockBitCount;
+		private final int[] runBits = new int[MAX_CORRECTION_BITS + 64];
+		private int runBitCount;
+
+		BlockEncoder(SosSegment header, int componentCount, SymbolOutput output) {
+			this.output = output;
+			this.start = header.getSpectralSelectionStart();
+			this.end = header.getSpectralSelectionEnd();
+			this.high = header.getSuccessiveApproximationHigh();
+			this.low = header.getSuccessiveApproximationLow();
+			this.predictions = new int[componentCount];
+		}
+
+		void encode(short[] block, int scanComponent) {
+			if (start == 0) {
+				if (high == 0) {
+					encodeDcFirst(block, scanComponent);
+				} else {
+					output.bits((block[0] >> low) & 1, 1);
+				}
+			} else if (high == 0) {
+				encodeAcFirst(block);
+			} else {
+				encodeAcRefine(block);
+			}
+		}
+
+		void endInterval() {
+			emitEndOfBandRun();
+			output.endInterval();
+			for (int index = 0; index < predictions.length; index++) {
+				predictions[index] = 0;
+			}
+		}
+
+		/**
+		 * Section G.1.2.1 of the standard
+		 */
+		private void encodeDcFirst(short[] block, int scanComponent) {
+			int value = block[0] >> low;
+			int difference = value - predictions[scanComponent];
+			int size = BitWriter.bitLength(difference);
+
+			predictions[scanComponent] = value;
+			output.dc(scanComponent, size);
+			if (size != 0) {
+				output.bits(difference < 0 ? difference - 1 : difference, size);
+			}
+		}
+
+		/**
+		 * Section G.1.2.2 of the standard
+		 */
+		private void encodeAcFirst(short[] block) {
+			int run = 0;
+
+			for (int k = start; k <= end; k++) {
+				int coefficient = block[ZigZag.NATURAL_ORDER[k]];
+				int magnitude = ((coefficient < 0) ? -coefficient : coefficient) >> low;
+				if (magnitude == 0) {
+					run++;
+					continue;
+				}
+
+				emitEndOfBandRun();
+				while (run > 15) {
+					output.ac(0, 0xF0);
+					run -= 16;
+				}
+				int size = BitWriter.bitLength(magnitude);
+				output.ac(0, (run << 4) | size);
+				output.bits(coefficient < 0 ? ~magnitude : magnitude, size);
+				run = 0;
+			}
+
+			if (run > 0) {
+				endOfBandRun++;
+				if (endOfBandRun == MAX_END_OF_BAND_RUN) {
+					emitEndOfBandRun();
+				}
+			}
+		}
+
+		/**
+		 * Section G.1.2.3 of the standard. The correction bits for
+		 * coefficients that were already non-zero are written after the next
+		 * symbol, which is where the decoder expects them. If that symbol is
+		 * an end-of-band run, the bits of every block in the run follow it.
+		 */
+		private void encodeAcRefine(short[] block) {
+			int lastNewlyOne = 0;
+			for (int k = start; k <= end; k++) {
+				int coefficient = block[ZigZag.NATURAL_ORDER[k]];
+				absolute[k] = ((coefficient < 0) ? -coefficient : coefficient) >> low;
+				if (absolute[k] == 1) {
+					lastNewlyOne = k;
+				}
+			}
+
+			int run = 0;
+			blockBitCount = 0;
+			for (int k = start; k <= end; k++) {
+				int magnitude = absolute[k];
+				if (magnitude == 0) {
+					run++;
+					continue;
+				}
+
+				while (run > 15 && k <= lastNewlyOne) {
+					emitEndOfBandRun();
+					output.ac(0, 0xF0);
+					run -= 16;
+					emitBlockBits();
+				}
+
+				if (magnitude > 1) {
+					blockBits[blockBitCount++] = magnitude & 1;
+					continue;
+				}
+
+				emitEndOfBandRun();
+				output.ac(0, (run << 4) | 1);
+				output.bits(block[ZigZag.NATURAL_ORDER[k]] < 0 ? 0 : 1, 1);
+				emitBlockBits();
+				run = 0;
+			}
+
+			if (run > 0 || blockBitCount > 0) {
+				endOfBandRun++;
+				System.arraycopy(blockBits, 0, runBits, runBitCount, blockBitCount);
+				runBitCount += blockBitCount;
+				if (endOfBandRun == MAX_END_OF_BAND_RUN || runBitCount > MAX_CORRECTION_BITS) {
+					emitEndOfBandRun();
+				}
+			}
+		}
+
+		/**
+		 * Writes any end-of-band run, followed by the correction bits of the
+		 * blocks in it.
+		 */
+		private void emitEndOfBandRun() {
+			if (endOfBandRun == 0) {
+				return;
+			}
+
+			int size = BitWriter.bitLength(endOfBandRun) - 1;
+			output.ac(0, size << 4);
+			if (size != 0) {
+				output.bits(endOfBandRun, size);
+			}
+			endOfBandRun = 0;
+
+			for (int index = 0; index < runBitCount; index++) {
+				output.bits(runBits[index], 1);
+			}
+			runBitCount = 0;
+		}
+
+		/**
+		 * Writes the correction bits held back in the current block.
+		 */
+		private void emitBlockBits() {
+			for (int index = 0; index < blockBitCount; index++) {
+				output.bits(blockBits[index], 1);
+			}
+			blockBitCount = 0;
+		}
+	}
+}
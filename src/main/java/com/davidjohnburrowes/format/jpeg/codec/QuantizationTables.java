@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+
+/**
+ * The example quantization tables of Annex K.1 of the standard, scaled for a
+ * quality the way the IJG's libjpeg does it (jcparam.c), so that a quality
+ * here gives the same tables as libjpeg and the tools built on it.
+ */
+public final class QuantizationTables {
+	/**
+	 * Table K.1, for luminance, in natural order
+	 */
+	private static final int[] LUMINANCE = {
+		16,  11,  10,  16,  24,  40,  51,  61,
+		12,  12,  14,  19,  26,  58,  60,  55,
+		14,  13,  16,  24,  40,  57,  69,  56,
+		14,  17,  22,  29,  51,  87,  80,  62,
+		18,  22,  37,  56,  68, 109, 103,  77,
+		24,  35,  55,  64,  81, 104, 113,  92,
+		49,  64,  78,  87, 103, 121, 120, 101,
+		72,  92,  95,  98, 112, 100, 103,  99
+	};
+
+	/**
+	 * Table K.2, for chrominance, in natural order
+	 */
+	private static final int[] CHROMINANCE = {
+		17,  18,  24,  47,  99,  99,  99,  99,
+		18,  21,  26,  66,  99,  99,  99,  99,
+		24,  26,  56,  99,  99,  99,  99,  99,
+		47,  66,  99,  99,  99,  99,  99,  99,
+		99,  99,  99,  99,  99,  99,  99,  99,
+		99,  99,  99,  99,  99,  99,  99,  99,
+		99,  99,  99,  99,  99,  99,  99,  99,
+		99,  99,  99,  99,  99,  99,  99,  99
+	};
+
+	private QuantizationTables() {
+	}
+
+	/**
+	 * Scales one of the example tables for a quality. Quality 50 gives the
+	 * table as printed in the standard, 100 gives all 1s, and lower values
+	 * give coarser tables. The values are limited to 1-255, so the table can
+	 * be used in a baseline frame.
+	 *
+	 * @param quality The quality (1-100)
+	 * @param chrominance True for the chrominance table, false for luminance
+	 * @return The 64 values, in natural order
+	 */
+	public static int[] scale(int quality, boolean chrominance) {
+		if (quality < 1 || quality > 100) {
+			throw new IllegalArgumentException("The quality must be 1-100. Found " + quality);
+		}
+
+		int percent = (quality < 50) ? 5000 / quality : 200 - quality * 2;
+		int[] base = chrominance ? CHROMINANCE : LUMINANCE;
+		int[] values = new int[64];
+		for (int index = 0; index < 64; index++) {
+			values[index] = Math.min(Math.max((base[index] * percent + 50) / 100, 1), 255);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Makes a DQT table from one of the example tables scaled for a quality.
+	 *
+	 * @param tableId The id of the table (0-3)
+	 * @param quality The quality (1-100)
+	 * @param chrominance True for the chrominance table, false for luminance
+	 * @return The table, set up for a baseline frame
+	 */
+	public static DqtQuantizationTable makeTable(int tableId, int quality, boolean chrominance) {
+		int[] values = scale(quality, chrominance);
+		DqtQuantizationTable table = new DqtQuantizationTable();
+		table.setFrameMode(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT);
+		table.setElementPrecision(0);
+		table.setTableId(tableId);
+		for (int index = 0; index < 64; index++) {
+			table.setElement(index, values[ZigZag.NATURAL_ORDER[index]]);
+		}
+
+		return table;
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Makes a DCT image smaller by quantizing it more coarsely, working directly
+ * on its quantized coefficients. Each coefficient is multiplied back up by
+ * its old quantization value and divided by the new one, rounding to the
+ * nearest whole number (halves away from zero). This is the only loss: the
+ * image is never turned back into samples, so there's none of the extra
+ * loss of an inverse and forward DCT, colour conversion and resampling.
+ *
+ * The image keeps its frame mode, scans and restart intervals. Its scans
+ * are rewritten with Huffman tables built for them (see CoefficientWriter),
+ * and only then are DQT segments with the new tables put in place of the
+ * old ones. Everything is worked out before the image is changed, so if
+ * anything goes wrong it is left as it was.
+ *
+ * A new quantization value finer than the old one would only cost bits, as
+ * the detail it could hold is already gone, so each new value is at least
+ * the old one.
+ */
+public class Requantizer {
+	private static final double EPSILON = 1.0 / (1 << 20);
+
+	/**
+	 * Requantizes an image with the example tables scaled for a quality (see
+	 * QuantizationTables). The table of the first component gets the
+	 * luminance table, and any others get the chrominance table.
+	 *
+	 * @param jpeg The image to change
+	 * @param quality The quality (1-100)
+	 */
+	public void requantize(JpegData jpeg, int quality) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameLayout layout = structure.getLayout();
+		DqtQuantizationTable[] targets = new DqtQuantizationTable[4];
+
+		for (int component = layout.getComponentCount() - 1; component >= 0; component--) {
+			int selector = layout.getQuantizationSelector(component);
+			targets[selector] = QuantizationTables.makeTable(selector, quality, component != 0);
+		}
+		requantize(jpeg, structure, targets);
+	}
+
+	/**
+	 * Requantizes an image with given tables.
+	 *
+	 * @param jpeg The image to change
+	 * @param targets The new tables, indexed by table id. A table that is
+	 *			null (or missing) is left as it is.
+	 */
+	public void requantize(JpegData jpeg, DqtQuantizationTable[] targets) {
+		if (targets == null) {
+			throw new IllegalArgumentException("targets may not be null");
+		}
+
+		requantize(jpeg, new JpegStructure(jpeg), targets);
+	}
+
+	private void requantize(JpegData jpeg, JpegStructure structure, DqtQuantizationTable[] targets) {
+		FrameMode mode = structure.getFrameMode();
+		if (!CoefficientWriter.isWritable(mode)) {
+			throw new UnsupportedOperationException("Only sequential and progressive DCT images can be requantized. Found " + mode);
+		}
+		List<Scan> scans = structure.getScans();
+		if (scans.isEmpty()) {
+			throw new UnsupportedOperationException("Can only requantize images that have scans");
+		}
+		for (int index = scans.get(0).getHeaderIndex(); index < scans.get(scans.size() - 1).getEndIndex(); index++) {
+			if (jpeg.getItem(index) instanceof DqtSegment) {
+				throw new UnsupportedOperationException("Can't requantize images that define quantization tables between scans");
+			}
+		}
+
+		FrameLayout layout = structure.getLayout();
+		Scan first = scans.get(0);
+		int[][] oldValues = new int[4][];
+		int[][] newValues = new int[4][];
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			int selector = layout.getQuantizationSelector(component);
+			DqtQuantizationTable table = first.getQuantizationTable(selector);
+			if (table == null) {
+				throw new UnsupportedOperationException("Component " + layout.getComponentId(component) +
+						  " uses quantization table " + selector + ", which isn't defined");
+			}
+			if (selector < targets.length && targets[selector] != null && oldValues[selector] == null) {
+				oldValues[selector] = toNatural(table);
+				newValues[selector] = toNatural(targets[selector]);
+				for (int index = 0; index < 64; index++) {
+					newValues[selector][index] = Math.max(newValues[selector][index], oldValues[selector][index]);
+					if (mode.isSequentialBaseline() && newValues[selector][index] > 255) {
+						throw new IllegalArgumentException("Quantization values must be 1-255 for a baseline frame. Found " +
+								  newValues[selector][index]);
+					}
+				}
+			}
+		}
+
+		List<DqtSegment> oldSegments = new ArrayList<DqtSegment>();
+		List<DqtSegment> newSegments = new ArrayList<DqtSegment>();
+		for (int index = 0; index < first.getHeaderIndex(); index++) {
+			DataItem item = jpeg.getItem(index);
+			if (item instanceof DqtSegment) {
+				DqtSegment segment = (DqtSegment) item;
+				DqtSegment replacement = makeSegment(segment, first, newValues);
+				if (replacement != null) {
+					oldSegments.add(segment);
+					newSegments.add(replacement);
+				}
+			}
+		}
+
+		int[] restartIntervals = new int[scans.size()];
+		for (int index = 0; index < restartIntervals.length; index++) {
+			restartIntervals[index] = scans.get(index).getRestartInterval();
+		}
+		ScanScript script = ScanScript.of(structure);
+
+		CoefficientStore store = new CoefficientReader().read(structure);
+		try {
+			short[] block = new short[64];
+			for (int component = 0; component < layout.getComponentCount(); component++) {
+				int selector = layout.getQuantizationSelector(component);
+				if (oldValues[selector] != null) {
+					requantize(store, component, oldValues[selector], newValues[selector], block);
+				}
+			}
+
+			new CoefficientWriter().write(jpeg, CoefficientWriter.makeFrame(mode, layout), store, script,
+					  restartIntervals);
+		} finally {
+			store.close();
+		}
+
+		for (int segment = 0; segment < oldSegments.size(); segment++) {
+			int index = indexOf(jpeg, oldSegments.get(segment));
+			jpeg.replaceItems(index, index + 1, Collections.singletonList(newSegments.get(segment)));
+		}
+	}
+
+	/**
+	 * Makes a copy of a DQT segment with the new values in the tables that
+	 * are in effect for the first scan.
+	 *
+	 * @return The copy, or null if none of the segment's tables change
+	 */
+	private static DqtSegment makeSegment(DqtSegment segment, Scan first, int[][] newValues) {
+		DqtSegment replacement = new DqtSegment();
+		replacement.setDataMode(segment.getDataMode());
+		replacement.setFrameMode(segment.getFrameMode());
+		boolean changed = false;
+
+		for (DqtQuantizationTable table : segment) {
+			int selector = table.getTableId();
+			if (selector < newValues.length && newValues[selector] != null &&
+					  first.getQuantizationTable(selector) == table) {
+				replacement.addTable(makeTable(table, newValues[selector]));
+				changed = true;
+			} else {
+				replacement.addTable(makeTable(table, toNatural(table)));
+			}
+		}
+
+		return changed ? replacement : null;
+	}
+
+	/**
+	 * Makes a table like another but with new values, widening it to 16 bit
+	 * values if they need it.
+	 */
+	private static DqtQuantizationTable makeTable(DqtQuantizationTable table, int[] natural) {
+		DqtQuantizationTable result = new DqtQuantizationTable();
+		result.setDataMode(table.getDataMode());
+		result.setFrameMode(table.getFrameMode());
+		result.setTableId(table.getTableId());
+		result.setElementPrecision(table.getElementPrecision());
+		for (int index = 0; index < 64; index++) {
+			if (natural[index] > 255 && result.getElementPrecision() != null && result.getElementPrecision() == 0) {
+				result.setElementPrecision(1);
+			}
+		}
+		for (int index = 0; index < 64; index++) {
+			result.setElement(index, natural[ZigZag.NATURAL_ORDER[index]]);
+		}
+
+		return result;
+	}
+
+	private static int indexOf(JpegData jpeg, DataItem item) {
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (jpeg.getItem(index) == item) {
+				return index;
+			}
+		}
+
+		throw new IllegalStateException("The item is no longer in the image");
+	}
+
+	/**
+	 * Requantizes every block of a component.
+	 */
+	private static void requantize(CoefficientStore store, int component, int[] oldValues, int[] newValues,
+			  short[] block) {
+		// Multiplying by the reciprocal is much quicker than dividing. The
+		// quotients are below 2^31, so the double's error is below 2^-21, while
+		// a quotient that isn't whole is at least 1/65535 below the next one:
+		// adding 2^-20 can only lift a quotient that is whole (or just under)
+		// back to its true value, so the result is exact.
+		double[] reciprocals = new double[64];
+		int[] halves = new int[64];
+		for (int index = 0; index < 64; index++) {
+			reciprocals[index] = 1.0 / newValues[index];
+			halves[index] = newValues[index] / 2;
+		}
+
+		for (int row = 0; row < store.getBlocksHigh(component); row++) {
+			for (int column = 0; column < store.getBlocksWide(component); column++) {
+				store.getBlock(component, row, column, block);
+				for (int index = 0; index < 64; index++) {
+					int coefficient = block[index];
+					if (coefficient != 0) {
+						long product = (long) (coefficient < 0 ? -coefficient : coefficient) * oldValues[index] +
+								  halves[index];
+						int magnitude = (int) (product * reciprocals[index] + EPSILON);
+						block[index] = (short) ((coefficient < 0) ? -magnitude : magnitude);
+					}
+				}
+				store.putBlock(component, row, column, block);
+			}
+		}
+	}
+
+	private static int[] toNatural(DqtQuantizationTable table) {
+		int[] natural = new int[64];
+		for (int index = 0; index < 64; index++) {
+			natural[ZigZag.NATURAL_ORDER[index]] = table.getElement(index);
+		}
+
+		return natural;
+	}
+}
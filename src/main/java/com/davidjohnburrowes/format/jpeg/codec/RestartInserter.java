@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Re-codes Huffman coded DCT images with restart markers, so that the
+ * intervals between them can be decoded independently (for example, in
+ * parallel). This is done entirely with the quantized coefficients, so the
+ * image is not changed, and the scans are kept as they were. The Huffman
+ * tables are rebuilt for each scan, since resetting the predictions and
+ * end-of-band runs at each restart can need codes the original tables did
+ * not have.
+ */
+public class RestartInserter {
+
+	/**
+	 * Re-codes the image with the same restart interval for every scan.
+	 *
+	 * @param jpeg The image to change
+	 * @param restartInterval The number of MCUs in each interval, [0,65535].
+	 *			0 removes the restart markers.
+	 */
+	public void insertRestarts(JpegData jpeg, int restartInterval) {
+		if (restartInterval < 0 || restartInterval > 65535) {
+			throw new IllegalArgumentException("The restart interval must be [0,65535]. Found " + restartInterval);
+		}
+
+		JpegStructure structure = new JpegStructure(jpeg);
+		int[] restartIntervals = new int[structure.getScans().size()];
+		Arrays.fill(restartIntervals, restartInterval);
+
+		rewrite(jpeg, structure, restartIntervals);
+	}
+
+	/**
+	 * Re-codes the image with a restart marker at the end of each row of
+	 * MCUs of every scan. (In a scan of one component, a row of MCUs is a
+	 * row of that component's blocks.)
+	 *
+	 * @param jpeg The image to change
+	 */
+	public void insertRestartsPerRow(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameLayout layout = structure.getLayout();
+		List<Scan> scans = structure.getScans();
+
+		int[] restartIntervals = new int[scans.size()];
+		for (int index = 0; index < restartIntervals.length; index++) {
+			int[] components = layout.getScanComponents(scans.get(index).getHeader());
+			restartIntervals[index] = (components.length == 1) ?
+					  layout.getComponentBlocksWide(components[0]) : layout.getMcusPerRow();
+		}
+
+		rewrite(jpeg, structure, restartIntervals);
+	}
+
+	private void rewrite(JpegData jpeg, JpegStructure structure, int[] restartIntervals) {
+		CoefficientStore store = new CoefficientReader().read(structure);
+		try {
+			new CoefficientWriter().write(jpeg, structure.getFrame(), store, ScanScript.of(structure),
+					  restartIntervals);
+		} finally {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * Something that receives rows of samples as a lossless scan is decoded.
+ */
+public interface SampleRowSink {
+
+	/**
+	 * Receives one decoded row of a component. The sample array is reused
+	 * for the next row, so an implementation must copy anything it wants to
+	 * keep.
+	 *
+	 * @param component The index of the component in the frame
+	 * @param row The row within the component
+	 * @param samples The samples of the row, as many as the component is wide
+	 */
+	void putRow(int component, int row, int[] samples);
+}
@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One scan of a frame: its SOS segment, the entropy coded data that follows
+ * it, and the tables and restart interval that were in effect when the scan
+ * started.
+ *
+ * The entropy coded data is held as one EntropyData per restart interval, in
+ * the order they appear in the file (the RST markers between them having
+ * already been separated out when the file was read).
+ */
+public class Scan {
+	private final SosSegment header;
+	private final int headerIndex;
+	private int endIndex;
+	private final int restartInterval;
+	private final DhtHuffmanTable[] dcTables;
+	private final DhtHuffmanTable[] acTables;
+	private final DqtQuantizationTable[] quantizationTables;
+	private final DacConditioningTable[] dcConditioning;
+	private final DacConditioningTable[] acConditioning;
+	private final List<EntropyData> intervals = new ArrayList<EntropyData>();
+
+	/**
+	 * Creates a scan. The table arrays are indexed by table id and are copied.
+	 *
+	 * @param header The SOS segment that starts the scan
+	 * @param headerIndex The index of the SOS segment in its JpegData
+	 * @param restartInterval The restart interval in effect (0 for none)
+	 * @param dcTables The DC Huffman tables in effect
+	 * @param acTables The AC Huffman tables in effect
+	 * @param quantizationTables The quantization tables in effect
+	 * @param dcConditioning The DC arithmetic conditioning tables in effect
+	 * @param acConditioning The AC arithmetic conditioning tables in effect
+	 */
+	public Scan(SosSegment header, int headerIndex, int restartInterval,
+			  DhtHuffmanTable[] dcTables, DhtHuffmanTable[] acTables,
+			  DqtQuantizationTable[] quantizationTables,
+			  DacConditioningTable[] dcConditioning, DacConditioningTable[] acConditioning) {
+		this.header = header;
+		this.headerIndex = headerIndex;
+		this.endIndex = headerIndex + 1;
+		this.restartInterval = restartInterval;
+		this.dcTables = dcTables.clone();
+		this.acTables = acTables.clone();
+		this.quantizationTables = quantizationTables.clone();
+		this.dcConditioning = dcConditioning.clone();
+		this.acConditioning = acConditioning.clone();
+	}
+
+	/**
+	 * @return The SOS segment that starts this scan
+	 */
+	public SosSegment getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return The index of the SOS segment in the JpegData it came from
+	 */
+	public int getHeaderIndex() {
+		return headerIndex;
+	}
+
+	/**
+	 * @return The index just after the last item of this scan (its last
+	 *			EntropyData or RST marker) in the JpegData it came from
+	 */
+	public int getEndIndex() {
+		return endIndex;
+	}
+
+	/**
+	 * @return The restart interval in effect for this scan, in MCUs. 0 means
+	 *			there are no restart intervals.
+	 */
+	public int getRestartInterval() {
+		return restartInterval;
+	}
+
+	/**
+	 * @param tableId A DC table selector (0-3)
+	 * @return The DC Huffman table with that id, or null if there is none
+	 */
+	public DhtHuffmanTable getDcTable(int tableId) {
+		return dcTables[tableId];
+	}
+
+	/**
+	 * @param tableId An AC table selector (0-3)
+	 * @return The AC Huffman table with that id, or null if there is none
+	 */
+	public DhtHuffmanTable getAcTable(int tableId) {
+		return acTables[tableId];
+	}
+
+	/**
+	 * @param tableId A quantization table selector (0-3)
+	 * @return The quantization table with that id, or null if there is none
+	 */
+	public DqtQuantizationTable getQuantizationTable(int tableId) {
+		return quantizationTables[tableId];
+	}
+
+	/**
+	 * @param tableId A DC conditioning table selector (0-3)
+	 * @return The DC arithmetic conditioning table with that id, or null
+	 */
+	public DacConditioningTable getDcConditioning(int tableId) {
+		return dcConditioning[tableId];
+	}
+
+	/**
+	 * @param tableId An AC conditioning table selector (0-3)
+	 * @return The AC arithmetic conditioning table with that id, or null
+	 */
+	public DacConditioningTable getAcConditioning(int tableId) {
+		return acConditioning[tableId];
+	}
+
+	/**
+	 * @return The entropy coded data of this scan, one item per restart
+	 *			interval
+	 */
+	public List<EntropyData> getIntervals() {
+		return Collections.unmodifiableList(intervals);
+	}
+
+	/**
+	 * Adds the next restart interval's worth of entropy coded data.
+	 *
+	 * @param data The entropy coded data
+	 * @param itemIndex The index of the data in the JpegData it came from
+	 */
+	void addInterval(EntropyData data, int itemIndex) {
+		intervals.add(data);
+		endIndex = itemIndex + 1;
+	}
+
+	/**
+	 * Records that an RST marker at the specified index belongs to this scan.
+	 */
+	void addRestart(int itemIndex) {
+		endIndex = itemIndex + 1;
+	}
+}
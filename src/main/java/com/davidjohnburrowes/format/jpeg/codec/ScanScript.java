@@ -0,0 +1,234 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The sequence of scans used to write an image. The standard scripts are
+ * the same as those used by the IJG's libjpeg.
+ */
+public class ScanScript {
+	/**
+	 * The most blocks an MCU may have (section B.2.3 of the standard)
+	 */
+	private static final int MAX_BLOCKS_IN_MCU = 10;
+
+	private final List<ScanSpec> scans;
+
+	/**
+	 * @param scans The scans, in the order they'll be written
+	 */
+	public ScanScript(List<ScanSpec> scans) {
+		if (scans == null || scans.isEmpty()) {
+			throw new IllegalArgumentException("A scan script must have at least one scan");
+		}
+
+		this.scans = Collections.unmodifiableList(new ArrayList<ScanSpec>(scans));
+	}
+
+	/**
+	 * @return The scans, in the order they'll be written
+	 */
+	public List<ScanSpec> getScans() {
+		return scans;
+	}
+
+	/**
+	 * Makes the script that an image is currently coded with.
+	 *
+	 * @param structure The image's structure
+	 * @return The script
+	 */
+	public static ScanScript of(JpegStructure structure) {
+		FrameLayout layout = structure.getLayout();
+		List<ScanSpec> scans = new ArrayList<ScanSpec>();
+
+		for (Scan scan : structure.getScans()) {
+			SosSegment header = scan.getHeader();
+			scans.add(new ScanSpec(layout.getScanComponents(header),
+					  header.getSpectralSelectionStart(), header.getSpectralSelectionEnd(),
+					  header.getSuccessiveApproximationHigh(), header.getSuccessiveApproximationLow()));
+		}
+
+		return new ScanScript(scans);
+	}
+
+	/**
+	 * Makes the script for a sequential image: one interleaved scan of all
+	 * the components, or, if they don't fit in an MCU, a scan of each.
+	 *
+	 * @param layout The layout of the frame
+	 * @return The script
+	 */
+	public static ScanScript sequential(FrameLayout layout) {
+		List<ScanSpec> scans = new ArrayList<ScanSpec>();
+
+		if (canInterleave(layout)) {
+			scans.add(new ScanSpec(allComponents(layout), 0, 63, 0, 0));
+		} else {
+			for (int component = 0; component < layout.getComponentCount(); component++) {
+				scans.add(new ScanSpec(new int[] { component }, 0, 63, 0, 0));
+			}
+		}
+
+		return new ScanScript(scans);
+	}
+
+	/**
+	 * Makes the script for a progressive image. For three component (YCbCr)
+	 * images, the first component's low frequencies come first, and the
+	 * color components are sent with less precision early on.
+	 *
+	 * @param layout The layout of the frame
+	 * @return The script
+	 */
+	public static ScanScript progressive(FrameLayout layout) {
+		int count = layout.getComponentCount();
+		List<ScanSpec> scans = new ArrayList<ScanSpec>();
+
+		addDcScans(layout, scans, 0, 1);
+		if (count == 3) {
+			scans.add(new ScanSpec(new int[] { 0 }, 1, 5, 0, 2));
+			scans.add(new ScanSpec(new int[] { 2 }, 1, 63, 0, 1));
+			scans.add(new ScanSpec(new int[] { 1 }, 1, 63, 0, 1));
+			scans.add(new ScanSpec(new int[] { 0 }, 6, 63, 0, 2));
+			scans.add(new ScanSpec(new int[] { 0 }, 1, 63, 2, 1));
+			addDcScans(layout, scans, 1, 0);
+			scans.add(new ScanSpec(new int[] { 2 }, 1, 63, 1, 0));
+			scans.add(new ScanSpec(new int[] { 1 }, 1, 63, 1, 0));
+			scans.add(new ScanSpec(new int[] { 0 }, 1, 63, 1, 0));
+		} else {
+			for (int component = 0; component < count; component++) {
+				scans.add(new ScanSpec(new int[] { component }, 1, 5, 0, 2));
+			}
+			for (int component = 0; component < count; component++) {
+				scans.add(new ScanSpec(new int[] { component }, 6, 63, 0, 2));
+			}
+			for (int component = 0; component < count; component++) {
+				scans.add(new ScanSpec(new int[] { component }, 1, 63, 2, 1));
+			}
+			addDcScans(layout, scans, 1, 0);
+			for (int component = 0; component < count; component++) {
+				scans.add(new ScanSpec(new int[] { component }, 1, 63, 1, 0));
+			}
+		}
+
+		return new ScanScript(scans);
+	}
+
+	/**
+	 * Checks that the script codes every coefficient of every component of
+	 * the frame exactly once (sequential), or each bit of them exactly once,
+	 * in an order the standard allows (progressive).
+	 *
+	 * @param layout The layout of the frame
+	 * @param progressive True if the script is for a progressive frame
+	 */
+	public void check(FrameLayout layout, boolean progressive) {
+		int count = layout.getComponentCount();
+		// The point transform each coefficient was last coded with, or -1
+		int[][] coded = new int[count][64];
+		for (int[] component : coded) {
+			Arrays.fill(component, -1);
+		}
+
+		for (ScanSpec scan : scans) {
+			int[] components = scan.getComponents();
+			int blocks = 0;
+			for (int component : components) {
+				if (component < 0 || component >= count) {
+					throw new InvalidJpegFormat("Scan " + scan + " has a component not in the frame");
+				}
+				blocks += layout.getHorizontalSampling(component) * layout.getVerticalSampling(component);
+			}
+			if (components.length > 1 && blocks > MAX_BLOCKS_IN_MCU) {
+				throw new InvalidJpegFormat("Scan " + scan + " has too many blocks in each MCU");
+			}
+
+			if (!progressive) {
+				if (scan.getSpectralStart() != 0 || scan.getSpectralEnd() != 63 ||
+						  scan.getApproximationHigh() != 0 || scan.getApproximationLow() != 0) {
+					throw new InvalidJpegFormat("Scan " + scan + " is not a sequential scan");
+				}
+			} else if ((scan.getSpectralStart() == 0) != (scan.getSpectralEnd() == 0) ||
+					  (scan.getSpectralStart() != 0 && components.length != 1)) {
+				throw new InvalidJpegFormat("Scan " + scan + " is not a valid progressive scan");
+			}
+
+			for (int component : components) {
+				if (scan.getSpectralStart() > 0 && coded[component][0] < 0) {
+					throw new InvalidJpegFormat("Scan " + scan + " comes before the component's DC scan");
+				}
+				for (int k = scan.getSpectralStart(); k <= scan.getSpectralEnd(); k++) {
+					int expected = (scan.getApproximationHigh() == 0) ? -1 : scan.getApproximationHigh();
+					if (coded[component][k] != expected ||
+							  (expected >= 0 && scan.getApproximationLow() != expected - 1)) {
+						throw new InvalidJpegFormat("Scan " + scan + " codes coefficients out of order");
+					}
+					coded[component][k] = scan.getApproximationLow();
+				}
+			}
+		}
+
+		for (int component = 0; component < count; component++) {
+			for (int k = 0; k < 64; k++) {
+				if (coded[component][k] != 0) {
+					throw new InvalidJpegFormat("Script doesn't code every bit of component " + component);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the DC scans, interleaved if possible
+	 */
+	private static void addDcScans(FrameLayout layout, List<ScanSpec> scans, int high, int low) {
+		if (canInterleave(layout)) {
+			scans.add(new ScanSpec(allComponents(layout), 0, 0, high, low));
+		} else {
+			for (int component = 0; component < layout.getComponentCount(); component++) {
+				scans.add(new ScanSpec(new int[] { component }, 0, 0, high, low));
+			}
+		}
+	}
+
+	private static boolean canInterleave(FrameLayout layout) {
+		if (layout.getComponentCount() > 4) {
+			return false;
+		}
+
+		int blocks = 0;
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			blocks += layout.getHorizontalSampling(component) * layout.getVerticalSampling(component);
+		}
+
+		return layout.getComponentCount() == 1 || blocks <= MAX_BLOCKS_IN_MCU;
+	}
+
+	private static int[] allComponents(FrameLayout layout) {
+		int[] components = new int[layout.getComponentCount()];
+		for (int index = 0; index < components.length; index++) {
+			components[index] = index;
+		}
+		return components;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import java.util.Arrays;
+
+/**
+ * Describes one scan to be written: the components it holds, the band of
+ * coefficients (spectral selection) and the bits of them (successive
+ * approximation) it codes.
+ */
+public class ScanSpec {
+	private final int[] components;
+	private final int spectralStart;
+	private final int spectralEnd;
+	private final int approximationHigh;
+	private final int approximationLow;
+
+	/**
+	 * @param components The indices, in the frame, of the components in the
+	 *			scan
+	 * @param spectralStart The first coefficient coded, in zig-zag order
+	 * @param spectralEnd The last coefficient coded, in zig-zag order
+	 * @param approximationHigh The point transform of the previous scan of
+	 *			these coefficients, or 0 if this is the first
+	 * @param approximationLow The point transform of this scan
+	 */
+	public ScanSpec(int[] components, int spectralStart, int spectralEnd,
+			  int approximationHigh, int approximationLow) {
+		if (components == null || components.length < 1 || components.length > 4) {
+			throw new IllegalArgumentException("A scan must have 1 to 4 components");
+		}
+		if (spectralStart < 0 || spectralStart > spectralEnd || spectralEnd > 63) {
+			throw new IllegalArgumentException("Invalid spectral selection " + spectralStart + "-" + spectralEnd);
+		}
+		if (approximationHigh < 0 || approximationHigh > 13 || approximationLow < 0 || approximationLow > 13) {
+			throw new IllegalArgumentException("Successive approximation values must be [0,13]");
+		}
+
+		this.components = components.clone();
+		this.spectralStart = spectralStart;
+		this.spectralEnd = spectralEnd;
+		this.approximationHigh = approximationHigh;
+		this.approximationLow = approximationLow;
+	}
+
+	/**
+	 * @return The indices, in the frame, of the components in the scan
+	 */
+	public int[] getComponents() {
+		return components.clone();
+	}
+
+	/**
+	 * @return The first coefficient coded, in zig-zag order
+	 */
+	public int getSpectralStart() {
+		return spectralStart;
+	}
+
+	/**
+	 * @return The last coefficient coded, in zig-zag order
+	 */
+	public int getSpectralEnd() {
+		return spectralEnd;
+	}
+
+	/**
+	 * @return The point transform of the previous scan of the coefficients
+	 */
+	public int getApproximationHigh() {
+		return approximationHigh;
+	}
+
+	/**
+	 * @return The point transform of this scan
+	 */
+	public int getApproximationLow() {
+		return approximationLow;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == null || !(other instanceof ScanSpec)) {
+			return false;
+		}
+
+		ScanSpec spec = (ScanSpec) other;
+		return Arrays.equals(components, spec.components) &&
+				  spectralStart == spec.spectralStart &&
+				  spectralEnd == spec.spectralEnd &&
+				  approximationHigh == spec.approximationHigh &&
+				  approximationLow == spec.approximationLow;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 7;
+		hash = 41 * hash + Arrays.hashCode(components);
+		hash = 41 * hash + spectralStart;
+		hash = 41 * hash + spectralEnd;
+		hash = 41 * hash + approximationHigh;
+		hash = 41 * hash + approximationLow;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(components) + ": " + spectralStart + "-" + spectralEnd +
+				  ", " + approximationHigh + ", " + approximationLow;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * The chroma subsampling a PixelEncoder uses for colour images: how many
+ * luminance samples there are for each chrominance sample, across and down.
+ */
+public enum Subsampling {
+	/**
+	 * Full size chrominance (4:4:4)
+	 */
+	YCC_444(1, 1),
+
+	/**
+	 * Chrominance at half the width (4:2:2)
+	 */
+	YCC_422(2, 1),
+
+	/**
+	 * Chrominance at half the width and half the height (4:2:0)
+	 */
+	YCC_420(2, 2);
+
+	private final int horizontal;
+	private final int vertical;
+
+	private Subsampling(int horizontal, int vertical) {
+		this.horizontal = horizontal;
+		this.vertical = vertical;
+	}
+
+	/**
+	 * @return The horizontal sampling factor of the luminance component
+	 */
+	public int getHorizontalFactor() {
+		return horizontal;
+	}
+
+	/**
+	 * @return The vertical sampling factor of the luminance component
+	 */
+	public int getVerticalFactor() {
+		return vertical;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where the encoders send the symbols and extra bits of a scan: either to be
+ * counted, so that tables can be built for the scan, or to be written.
+ * Symbols are sent with the position of the component in the scan, which
+ * the implementations map to a table through the scan's table selectors.
+ */
+interface SymbolOutput {
+	void dc(int scanComponent, int symbol);
+	void ac(int scanComponent, int symbol);
+	void bits(int value, int count);
+	void endInterval();
+
+	/**
+	 * Counts symbols.
+	 */
+	static final class Counter implements SymbolOutput {
+		private final HuffmanTableBuilder[] dc;
+		private final HuffmanTableBuilder[] ac;
+
+		Counter(SosSegment header, HuffmanTableBuilder[] dcCounts, HuffmanTableBuilder[] acCounts,
+				  boolean usesDc, boolean usesAc) {
+			dc = new HuffmanTableBuilder[header.getComponentSpecCount()];
+			ac = new HuffmanTableBuilder[header.getComponentSpecCount()];
+			for (int index = 0; index < dc.length; index++) {
+				SosComponentSpec spec = header.getComponentSpec(index);
+				if (usesDc) {
+					dc[index] = dcCounts[spec.getDcTableSelector()];
+					if (dc[index] == null) {
+						throw new IllegalArgumentException("No counts given for DC table " + spec.getDcTableSelector());
+					}
+				}
+				if (usesAc) {
+					ac[index] = acCounts[spec.getAcTableSelector()];
+					if (ac[index] == null) {
+						throw new IllegalArgumentException("No counts given for AC table " + spec.getAcTableSelector());
+					}
+				}
+			}
+		}
+
+		@Override
+		public void dc(int scanComponent, int symbol) {
+			dc[scanComponent].count(symbol);
+		}
+
+		@Override
+		public void ac(int scanComponent, int symbol) {
+			ac[scanComponent].count(symbol);
+		}
+
+		@Override
+		public void bits(int value, int count) {
+		}
+
+		@Override
+		public void endInterval() {
+		}
+	}
+
+	/**
+	 * Writes symbols, a restart interval at a time.
+	 */
+	static final class Writer implements SymbolOutput {
+		private final HuffmanEncodingTable[] dc;
+		private final HuffmanEncodingTable[] ac;
+		private final BitWriter bits = new BitWriter();
+		final List<byte[]> intervals = new ArrayList<byte[]>();
+
+		Writer(SosSegment header, HuffmanEncodingTable[] dcTables, HuffmanEncodingTable[] acTables,
+				  boolean usesDc, boolean usesAc) {
+			dc = new HuffmanEncodingTable[header.getComponentSpecCount()];
+			ac = new HuffmanEncodingTable[header.getComponentSpecCount()];
+			for (int index = 0; index < dc.length; index++) {
+				SosComponentSpec spec = header.getComponentSpec(index);
+				if (usesDc) {
+					dc[index] = dcTables[spec.getDcTableSelector()];
+					if (dc[index] == null) {
+						throw new IllegalArgumentException("No DC table " + spec.getDcTableSelector() + " given");
+					}
+				}
+				if (usesAc) {
+					ac[index] = acTables[spec.getAcTableSelector()];
+					if (ac[index] == null) {
+						throw new IllegalArgumentException("No AC table " + spec.getAcTableSelector() + " given");
+					}
+				}
+			}
+		}
+
+		@Override
+		public void dc(int scanComponent, int symbol) {
+			bits.encode(dc[scanComponent], symbol);
+		}
+
+		@Override
+		public void ac(int scanComponent, int symbol) {
+			bits.encode(ac[scanComponent], symbol);
+		}
+
+		@Override
+		public void bits(int value, int count) {
+			bits.writeBits(value, count);
+		}
+
+		@Override
+		public void endInterval() {
+			intervals.add(bits.toByteArray());
+			bits.reset();
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.Thumbnail;
+import com.davidjohnburrowes.format.jpeg.component.Thumbnail3BytesPerPixel;
+import com.davidjohnburrowes.format.jpeg.component.ThumbnailJpeg;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfxxSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+
+/**
+ * Makes a thumbnail of a DCT image from its own scans, and stores it in the
+ * image's JFIF segment or in a JFXX segment, so that a reader can show it
+ * from the first few KB of the file.
+ *
+ * The image is decoded at the smallest of PixelDecoder's reduced sizes that
+ * is still at least as big as the thumbnail. For the usual thumbnail sizes
+ * that's 1/8, where only the DC coefficients are decoded. The result is then
+ * averaged down to the thumbnail's size, keeping the image's shape.
+ *
+ * The JFIF specification wants the JFIF segment straight after SOI, and any
+ * JFXX segment straight after that. An image without a JFIF segment gets
+ * one, unless it has three components that aren't YCbCr, since a JFIF
+ * segment would change how they're read. An image's existing JFXX segment
+ * is reused.
+ */
+public class ThumbnailEmbedder {
+	/**
+	 * The most pixels an uncompressed thumbnail can have and still fit, with
+	 * the other fields of a JFIF segment, in a segment's 65535 bytes
+	 */
+	private static final int MAX_RGB_PIXELS = (65535 - 16) / 3;
+
+	/**
+	 * The most bytes a JPEG thumbnail can have, to fit in a JFXX segment
+	 */
+	private static final int MAX_JPEG_BYTES = 65535 - 8;
+
+	private static final int JPEG_QUALITY = 75;
+
+	private final int maxWidth;
+	private final int maxHeight;
+
+	/**
+	 * Makes thumbnails that fit in 160x120 pixels
+	 */
+	public ThumbnailEmbedder() {
+		this(160, 120);
+	}
+
+	/**
+	 * @param maxWidth The widest a thumbnail may be (1-255)
+	 * @param maxHeight The highest a thumbnail may be (1-255)
+	 */
+	public ThumbnailEmbedder(int maxWidth, int maxHeight) {
+		if (maxWidth < 1 || maxWidth > 255 || maxHeight < 1 || maxHeight > 255) {
+			throw new IllegalArgumentException("Thumbnails must be 1-255 pixels in each direction. Found " +
+					  maxWidth + "x" + maxHeight);
+		}
+
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+	}
+
+	/**
+	 * Makes an RGB thumbnail of an image, as big as will fit in the maximum
+	 * size while keeping the image's shape.
+	 *
+	 * @param jpeg The image
+	 * @return The thumbnail
+	 */
+	public PixelImage makeThumbnail(JpegData jpeg) {
+		return makeThumbnail(jpeg, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Makes a thumbnail of an image and stores it in the image, replacing any
+	 * thumbnail already stored in the same place.
+	 *
+	 * @param jpeg The image
+	 * @param format Where and how to store the thumbnail
+	 */
+	public void embed(JpegData jpeg, ThumbnailFormat format) {
+		if (format == null) {
+			throw new IllegalArgumentException("format may not be null");
+		}
+
+		int jfifIndex = indexOf(jpeg, JfifSegment.class);
+		if (jfifIndex < 0) {
+			if (jpeg.getItemCount() == 0 || !(jpeg.getItem(0) instanceof SoiMarker)) {
+				throw new UnsupportedOperationException("Can only add a JFIF segment to an image that starts with SOI");
+			}
+			FrameLayout layout = new JpegStructure(jpeg).getLayout();
+			if (layout.getComponentCount() == 3 && !PixelDecoder.isYCbCr(jpeg, layout)) {
+				throw new UnsupportedOperationException("Adding a JFIF segment would make this image's RGB components be read as YCbCr");
+			}
+		}
+
+		Thumbnail thumbnail;
+		if (format == ThumbnailFormat.JFXX_JPEG) {
+			thumbnail = makeJpegThumbnail(jpeg);
+		} else {
+			thumbnail = toThumbnail(makeThumbnail(jpeg, MAX_RGB_PIXELS));
+		}
+
+		if (jfifIndex < 0) {
+			jfifIndex = 1;
+			jpeg.insertItem(jfifIndex, new JfifSegment());
+		}
+		JfifSegment jfif = (JfifSegment) jpeg.getItem(jfifIndex);
+		if (format == ThumbnailFormat.JFIF) {
+			jfif.setThumbnail((Thumbnail3BytesPerPixel) thumbnail);
+			return;
+		}
+
+		int jfxxIndex = indexOf(jpeg, JfxxSegment.class);
+		if (jfxxIndex < 0) {
+			jfxxIndex = jfifIndex + 1;
+			JfxxSegment jfxx = new JfxxSegment();
+			jpeg.insertItem(jfxxIndex, jfxx);
+		}
+		((JfxxSegment) jpeg.getItem(jfxxIndex)).setThumbnail(thumbnail);
+	}
+
+	/**
+	 * Makes a baseline JPEG thumbnail, without a JFIF segment of its own (as
+	 * the JFIF specification requires), shrinking it until it fits in a
+	 * segment.
+	 */
+	private ThumbnailJpeg makeJpegThumbnail(JpegData jpeg) {
+		int limit = Integer.MAX_VALUE;
+		while (true) {
+			PixelImage image = makeThumbnail(jpeg, limit);
+			JpegData encoded = new PixelEncoder(JPEG_QUALITY).encode(image);
+			for (int index = 0; index < encoded.getItemCount(); index++) {
+				if (encoded.getItem(index) instanceof JfifSegment) {
+					encoded.deleteItem(index);
+					break;
+				}
+			}
+
+			ThumbnailJpeg thumbnail = new ThumbnailJpeg();
+			thumbnail.setJpegImage(encoded);
+			if (thumbnail.getSizeOnDisk() <= MAX_JPEG_BYTES || image.getWidth() * image.getHeight() == 1) {
+				return thumbnail;
+			}
+			limit = image.getWidth() * image.getHeight() / 2;
+		}
+	}
+
+	/**
+	 * Makes an RGB thumbnail that fits in the maximum size, and has no more
+	 * than a number of pixels.
+	 */
+	private PixelImage makeThumbnail(JpegData jpeg, int maxPixels) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameLayout layout = structure.getLayout();
+		int imageWidth = layout.getImageWidth();
+		int imageHeight = layout.getImageHeight();
+
+		double scale = Math.min(1.0, Math.min((double) maxWidth / imageWidth, (double) maxHeight / imageHeight));
+		int width = Math.max(1, (int) Math.round(imageWidth * scale));
+		int height = Math.max(1, (int) Math.round(imageHeight * scale));
+		if ((long) width * height > maxPixels) {
+			double shrink = Math.sqrt((double) maxPixels / ((long) width * height));
+			width = Math.max(1, (int) (width * shrink));
+			height = Math.max(1, (int) (height * shrink));
+		}
+
+		PixelDecoder decoder = new PixelDecoder();
+		PixelImage decoded = decoder.decode(jpeg, structure, PixelDecoder.chooseScale(layout, width, height));
+
+		return shrink(decoded, width, height);
+	}
+
+	/**
+	 * Averages an image down to a smaller size, as RGB. Each pixel of the
+	 * result is the average of the block of pixels it covers.
+	 */
+	static PixelImage shrink(PixelImage image, int width, int height) {
+		int sourceWidth = image.getWidth();
+		int sourceHeight = image.getHeight();
+		int channels = image.getChannels();
+		byte[] source = image.getSamples();
+		byte[] samples = new byte[width * height * 3];
+		int[] sums = new int[channels];
+
+		for (int y = 0; y < height; y++) {
+			int top = (int) ((long) y * sourceHeight / height);
+			int bottom = Math.max(top + 1, (int) ((long) (y + 1) * sourceHeight / height));
+			for (int x = 0; x < width; x++) {
+				int left = (int) ((long) x * sourceWidth / width);
+				int right = Math.max(left + 1, (int) ((long) (x + 1) * sourceWidth / width));
+				int count = (bottom - top) * (right - left);
+
+				for (int channel = 0; channel < channels; channel++) {
+					sums[channel] = 0;
+				}
+				for (int row = top; row < bottom; row++) {
+					int start = (row * sourceWidth + left) * channels;
+					int end = (row * sourceWidth + right) * channels;
+					for (int index = start; index < end; index += channels) {
+						for (int channel = 0; channel < channels; channel++) {
+							sums[channel] += source[index + channel] & 0xFF;
+						}
+					}
+				}
+
+				int out = (y * width + x) * 3;
+				for (int channel = 0; channel < 3; channel++) {
+					int sum = sums[channels == 3 ? channel : 0];
+					samples[out + channel] = (byte) ((sum + count / 2) / count);
+				}
+			}
+		}
+
+		return new PixelImage(width, height, 3, samples);
+	}
+
+	private static Thumbnail3BytesPerPixel toThumbnail(PixelImage image) {
+		Thumbnail3BytesPerPixel thumbnail = new Thumbnail3BytesPerPixel();
+		thumbnail.setWidth(image.getWidth());
+		thumbnail.setHeight(image.getHeight());
+		thumbnail.setPixelBytes(image.getSamples());
+		return thumbnail;
+	}
+
+	private static int indexOf(JpegData jpeg, Class<? extends DataItem> type) {
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (type.isInstance(jpeg.getItem(index))) {
+				return index;
+			}
+		}
+		return -1;
+	}
+}
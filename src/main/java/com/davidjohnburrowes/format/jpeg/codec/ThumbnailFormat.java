@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * Where and how ThumbnailEmbedder stores a thumbnail.
+ */
+public enum ThumbnailFormat {
+	/**
+	 * Uncompressed RGB pixels in the JFIF segment itself. Every JFIF reader
+	 * understands this, but it's the largest.
+	 */
+	JFIF,
+
+	/**
+	 * Uncompressed RGB pixels in a JFXX extension segment (extension code
+	 * 0x13)
+	 */
+	JFXX_RGB,
+
+	/**
+	 * A baseline JPEG image in a JFXX extension segment (extension code 0x10).
+	 * This is the smallest, so it allows the largest thumbnails.
+	 */
+	JFXX_JPEG
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * The lossless transformations that LosslessTransformer can make. Each is a
+ * transposition (swapping rows and columns) or not, followed by mirroring
+ * the result left to right, top to bottom, or both.
+ */
+public enum Transform {
+	/**
+	 * Mirror the image left to right
+	 */
+	FLIP_HORIZONTAL(false, true, false),
+
+	/**
+	 * Mirror the image top to bottom
+	 */
+	FLIP_VERTICAL(false, false, true),
+
+	/**
+	 * Swap the rows and columns (mirror across the top-left to bottom-right
+	 * diagonal)
+	 */
+	TRANSPOSE(true, false, false),
+
+	/**
+	 * Mirror across the top-right to bottom-left diagonal
+	 */
+	TRANSVERSE(true, true, true),
+
+	/**
+	 * Rotate the image 90 degrees clockwise
+	 */
+	ROTATE_90(true, true, false),
+
+	/**
+	 * Rotate the image 180 degrees
+	 */
+	ROTATE_180(false, true, true),
+
+	/**
+	 * Rotate the image 270 degrees clockwise (90 degrees anticlockwise)
+	 */
+	ROTATE_270(true, false, true);
+
+	private final boolean transposes;
+	private final boolean mirrorsHorizontally;
+	private final boolean mirrorsVertically;
+
+	private Transform(boolean transposes, boolean mirrorsHorizontally, boolean mirrorsVertically) {
+		this.transposes = transposes;
+		this.mirrorsHorizontally = mirrorsHorizontally;
+		this.mirrorsVertically = mirrorsVertically;
+	}
+
+	/**
+	 * @return True if the rows and columns are swapped
+	 */
+	public boolean transposes() {
+		return transposes;
+	}
+
+	/**
+	 * @return True if, after any transposition, the image is mirrored left
+	 *			to right
+	 */
+	public boolean mirrorsHorizontally() {
+		return mirrorsHorizontally;
+	}
+
+	/**
+	 * @return True if, after any transposition, the image is mirrored top to
+	 *			bottom
+	 */
+	public boolean mirrorsVertically() {
+		return mirrorsVertically;
+	}
+
+	/**
+	 * Finds the transformation that displays an image the right way up, given
+	 * the value of its Exif Orientation tag.
+	 *
+	 * @param orientation The value of the tag (1-8)
+	 * @return The transformation, or null if the image is already the right
+	 *			way up (an orientation of 1)
+	 */
+	public static Transform forExifOrientation(int orientation) {
+		switch (orientation) {
+			case 1: return null;
+			case 2: return FLIP_HORIZONTAL;
+			case 3: return ROTATE_180;
+			case 4: return FLIP_VERTICAL;
+			case 5: return TRANSPOSE;
+			case 6: return ROTATE_90;
+			case 7: return TRANSVERSE;
+			case 8: return ROTATE_270;
+			default:
+				throw new IllegalArgumentException("Exif orientation must be [1,8]. Found " + orientation);
+		}
+	}
+}
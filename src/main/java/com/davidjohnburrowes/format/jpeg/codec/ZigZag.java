@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
+
+/**
+ * Conversions between the zig-zag order that coefficients are coded in (and
+ * that DqtQuantizationTable holds its elements in) and the natural row by row
+ * order of an 8x8 block.  See figure A.6 on page A-8 of the standard.
+ */
+public class ZigZag {
+	/**
+	 * For each zig-zag position, the position in natural order. There are 16
+	 * extra entries so a corrupt run length can't index outside a block.
+	 */
+	static final int[] NATURAL_ORDER = {
+		 0,  1,  8, 16,  9,  2,  3, 10,
+		17, 24, 32, 25, 18, 11,  4,  5,
+		12, 19, 26, 33, 40, 48, 41, 34,
+		27, 20, 13,  6,  7, 14, 21, 28,
+		35, 42, 49, 56, 57, 50, 43, 36,
+		29, 22, 15, 23, 30, 37, 44, 51,
+		58, 59, 52, 45, 38, 31, 39, 46,
+		53, 60, 61, 54, 47, 55, 62, 63,
+		63, 63, 63, 63, 63, 63, 63, 63,
+		63, 63, 63, 63, 63, 63, 63, 63
+	};
+
+	/**
+	 * For each natural position, the position in zig-zag order.
+	 */
+	static final int[] ZIGZAG_ORDER = new int[64];
+
+	static {
+		for (int index = 0; index < 64; index++) {
+			ZIGZAG_ORDER[NATURAL_ORDER[index]] = index;
+		}
+	}
+
+	/**
+	 * @param zigZagIndex A position in zig-zag order (0-63)
+	 * @return The same position in natural order
+	 */
+	public static int toNatural(int zigZagIndex) {
+		if (zigZagIndex < 0 || zigZagIndex >= 64) {
+			throw new IndexOutOfBoundsException("index must be [0,63]");
+		}
+
+		return NATURAL_ORDER[zigZagIndex];
+	}
+
+	/**
+	 * @param naturalIndex A position in natural order (0-63)
+	 * @return The same position in zig-zag order
+	 */
+	public static int toZigZag(int naturalIndex) {
+		if (naturalIndex < 0 || naturalIndex >= 64) {
+			throw new IndexOutOfBoundsException("index must be [0,63]");
+		}
+
+		return ZIGZAG_ORDER[naturalIndex];
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Classes that work with the entropy coded data of a JPEG file: decoding the
+ * scans into blocks of DCT coefficients, and encoding blocks back into scans.
+ *
+ * Blocks of coefficients are always held in natural (row by row) order, not
+ * in the zig-zag order used on disk and in the quantization tables.
+ */
+package com.davidjohnburrowes.format.jpeg.codec;
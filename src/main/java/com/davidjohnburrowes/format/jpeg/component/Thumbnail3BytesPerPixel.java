@@ -119,7 +119,7 @@ public class Thumbnail3BytesPerPixel extends Thumbnail {
 	@Override
 	public List<Exception> validate() {
 		List<Exception> invalids = super.validate();
-		if ((getWidth() + getHeight() * 3) != getPixelBytes().length) {
+		if ((getWidth() * getHeight() * 3) != getPixelBytes().length) {
 			invalids.add(new InvalidJpegFormat("Height and width don't match the pixel byte count."));
 		}
 
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.List;
 
 /**
  * A thumbnail which is a jpeg image
@@ -82,6 +83,17 @@ public class ThumbnailJpeg extends Thumbnail  {
 		jpegImage.write(stream);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * This includes the problems with the thumbnail's image.
+	 */
+	@Override
+	public List<Exception> validate() {
+		List<Exception> results = super.validate();
+		results.addAll(jpegImage.validate());
+		return results;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -18,6 +18,7 @@ package com.davidjohnburrowes.format.jpeg.data;
 import com.davidjohnburrowes.format.jpeg.support.DataMode;
 import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
 import com.davidjohnburrowes.util.ByteArrayBuilder;
+import com.davidjohnburrowes.util.ContentDigest;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,11 +34,17 @@ import java.util.List;
  * this is jpeg data without a trailing marker, this will simply store the
  * 0xFF and write it back out.  If clearPassthrough() is called, this indication
  * will be reset, and the 0xFF will be written out as 0xFF and 0x00
+ *
+ * A digest of the data is worked out as it's read (or on first use, for
+ * data that was set), and kept until the data is read or set again. equals()
+ * and hashCode() use it, so they don't go over all of the data each time.
+ * Because of that, the array from getData() must not be changed in place.
  */
 public class EntropyData extends DataItem {
 	private ByteArrayBuilder builder;
 	private boolean trailingFF;
 	private byte[] data;
+	private ContentDigest digest;
 
 	/*
 	 * Ordinary constructor.
@@ -48,6 +55,9 @@ public class EntropyData extends DataItem {
 	}
 
 	/**
+	 * The array is the one this holds, not a copy, so it must not be changed.
+	 * To change the data, change a copy and pass that to setData(), so that
+	 * the digest is worked out again.
 	 * @return a byte array of the entropy coded data
 	 */
 	public byte[] getData() {
@@ -61,13 +71,38 @@ public class EntropyData extends DataItem {
 	/**
 	 * Note that this takes the bytes literally as presented. These should not
 	 * have 0xFF bytes escaped with a 0x00 byte as happens on disk.
+	 * The array is kept, not copied, so it must not be changed afterwards.
 	 * @param data the data to be stored as entropy coded data
 	 */
 	public void setData(byte[] data) {
 		this.data = data;
+		this.digest = null;
 		builder = new ByteArrayBuilder();
 	}
 
+	/**
+	 * @return A digest of the entropy coded data (as getData() gives it), so
+	 * that images with the same data can be found without comparing the data
+	 */
+	public ContentDigest getDigest() {
+		if (digest == null) {
+			digest = ContentDigest.of(getData());
+		}
+
+		return digest;
+	}
+
+	/**
+	 * Keeps the data just read, and works out its digest while it's still
+	 * in the processor's cache. The builder is dropped once its bytes are
+	 * copied out, so that they aren't held twice.
+	 */
+	private void setReadData(ByteArrayBuilder localBuilder) {
+		builder = new ByteArrayBuilder();
+		data = localBuilder.toArray();
+		digest = ContentDigest.of(data);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -109,7 +144,7 @@ public class EntropyData extends DataItem {
 			}
 		}
 
-		builder = localBuilder;
+		setReadData(localBuilder);
 	}
 
 	/**
@@ -156,7 +191,7 @@ public class EntropyData extends DataItem {
 			}
 		}
 
-		builder = localBuilder;
+		setReadData(localBuilder);
 	}
 
 	/**
@@ -177,6 +212,25 @@ public class EntropyData extends DataItem {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * This counts the 0x00 byte written after each 0xFF byte.
+	 */
+	@Override
+	public int getSizeOnDisk() {
+		byte[] bytes = getData();
+		int size = bytes.length;
+
+		for (int index = 0; index < bytes.length; index++) {
+			if (bytes[index] == (byte)0xFF &&
+					  (index != bytes.length - 1 || !trailingFF)) {
+				size++;
+			}
+		}
+
+		return size;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -211,14 +265,22 @@ public class EntropyData extends DataItem {
 		if (other == null || (! (other instanceof EntropyData))) {
 			return false;
 		}
-		return Arrays.equals(this.getData(), ((EntropyData)other).getData());
+		EntropyData otherData = (EntropyData) other;
+		if (!getDigest().equals(otherData.getDigest())) {
+			return false;
+		}
+		return Arrays.equals(this.getData(), otherData.getData());
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * This comes from the digest, so like equals() it depends only on the
+	 * data.
+	 */
 	@Override
 	public int hashCode() {
 		int hash = 3;
-		hash = 67 * hash + (this.trailingFF ? 1 : 0);
-		hash = 67 * hash + Arrays.hashCode(this.getData());
+		hash = 67 * hash + getDigest().hashCode();
 		return hash;
 	}
 
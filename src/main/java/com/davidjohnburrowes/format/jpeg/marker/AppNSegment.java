@@ -18,6 +18,7 @@ package com.davidjohnburrowes.format.jpeg.marker;
 
 import com.davidjohnburrowes.format.jpeg.data.GenericSegment;
 import com.davidjohnburrowes.format.jpeg.support.MarkerIdRange;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Application data
@@ -36,6 +37,19 @@ public class AppNSegment extends GenericSegment {
 	 */
 	public static final int LAST_MARKERID = 0xEF;
 
+	/**
+	 * The marker id of Adobe's APP14 segment
+	 */
+	public static final int ADOBE_MARKERID = 0xEE;
+
+	/**
+	 * The marker id of the APP2 segments that hold an ICC profile
+	 */
+	public static final int ICC_PROFILE_MARKERID = 0xE2;
+
+	private static final byte[] ADOBE_IDENTIFIER = "Adobe".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ICC_PROFILE_IDENTIFIER = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+
 	/**
 	 * Constructs an instance with all properties empty
     * @param markerId The MarkerID
@@ -60,4 +74,39 @@ public class AppNSegment extends GenericSegment {
 	public byte[] getBytes() {
 		return getByteArray();
 	}
+
+	/**
+	 * @return True if this is an Adobe APP14 segment, which (among other
+	 * things) says whether the components are YCbCr or RGB
+	 */
+	public boolean isAdobe() {
+		return getMarkerId() == ADOBE_MARKERID && startsWith(getBytes(), ADOBE_IDENTIFIER);
+	}
+
+	/**
+	 * @return True if this is an APP2 segment holding (part of) an ICC profile
+	 */
+	public boolean isIccProfile() {
+		return getMarkerId() == ICC_PROFILE_MARKERID && startsWith(getBytes(), ICC_PROFILE_IDENTIFIER);
+	}
+
+	/**
+	 * @return True if this changes the colors the image's samples stand for:
+	 * that is, if it is an Adobe or ICC profile segment
+	 */
+	public boolean describesColor() {
+		return isAdobe() || isIccProfile();
+	}
+
+	private static boolean startsWith(byte[] bytes, byte[] prefix) {
+		if (bytes == null || bytes.length < prefix.length) {
+			return false;
+		}
+		for (int index = 0; index < prefix.length; index++) {
+			if (bytes[index] != prefix[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -146,6 +146,22 @@ public class JfxxSegment extends MarkerSegment {
 	 */
 	@Override
 	public List<Exception> validate() {
+		List<Exception> results = validateSegment();
+
+		List<Exception> subResults = thumbnail.validate();
+		if (!subResults.isEmpty()) {
+			results.addAll(subResults);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Validates this segment as validate() does, but leaves out its thumbnail
+	 *
+	 * @return a list of exceptions, as described by validate()
+	 */
+	public List<Exception> validateSegment() {
 		List<Exception> results = super.validate();
 		extensionCodeBounds.accumulateOnViolation(getExtensionCode(), getFrameMode(), results);
 		if (getExtensionCode() == 0x12) {
@@ -175,11 +191,6 @@ public class JfxxSegment extends MarkerSegment {
 				break;
 		}
 
-		List<Exception> subResults = thumbnail.validate();
-		if (!subResults.isEmpty()) {
-			results.addAll(subResults);
-		}
-
 		return results;
 	}
 
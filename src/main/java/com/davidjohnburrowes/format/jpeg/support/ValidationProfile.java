@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.format.jpeg.support;
+
+/**
+ * Identifies how much checking JpegData does when validating. Every profile
+ * runs the JpegData's validator over the list of items. They differ in which
+ * of the items are asked to validate their own properties. The default is
+ * FULL.
+ *
+ * Note that this does not change the checks that are made as each item is
+ * read. Those are governed by the DataMode (in STRICT mode, they decide which
+ * kind of segment a marker is read as), so a profile doesn't make parsing any
+ * cheaper: it only changes the check run once everything has been read. In
+ * LAX mode that check isn't run, so the profile passed to read() has no
+ * effect.
+ */
+public enum ValidationProfile {
+	/**
+	 * Only check the structure of the file (the order of the markers)
+	 */
+	STRUCTURAL,
+
+	/**
+	 * Check the structure of the file and the properties of the frame headers
+	 * (the SOF and DHP segments)
+	 */
+	FAST,
+
+	/**
+	 * Check the structure of the file and the properties of every item
+	 */
+	FULL
+}
@@ -0,0 +1,197 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.format.jpeg.validate;
+
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfxxSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Validator which works out what kind of JPEG file it is looking at as it
+ * goes. If a DHP segment appears before the first frame, the rest of the file
+ * is checked against the hierarchical syntax (page B-19 of the standard),
+ * otherwise it is checked against the non-hierarchical syntax (page B-5).
+ * If the first segment after the SOI is a JFIF segment, then the JFIF rules
+ * that JfifValidator checks are applied as well.
+ *
+ * All of this is done in a single walk over the list of DataItems, so this
+ * can be used in place of the other validators without having to know
+ * beforehand what kind of file is being validated.
+ */
+public class AutoDetectingValidator extends Validator {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Exception> validate(List<DataItem> elements) {
+		return new Walk().validate(elements);
+	}
+
+	/**
+	 * The state of a single validation. This is kept apart from the validator
+	 * so that one validator can be used for several validations at once.
+	 */
+	private static class Walk extends HasFrameValidator {
+
+		/**
+		 * States that the validation process goes through
+		 */
+		private enum State {
+			WANT_SOI,
+			WANT_TABLES_OR_DHP_OR_SOF,
+			WANT_FRAME,
+			WANT_FRAME_OR_EOI,
+			WANT_EOI,
+			DONE
+		};
+
+		/**
+		 * Source of the JFIF specific rules
+		 */
+		private final JfifValidator jfifRules = new JfifValidator();
+
+		/**
+		 * True once a JFIF segment has been found right after the SOI
+		 */
+		private boolean isJfif = false;
+
+		/**
+		 * True if the JFIF segment's version allows a JFXX segment to follow it
+		 */
+		private boolean allowsJfxx = false;
+
+		/**
+		 * True once the first frame header has been examined
+		 */
+		private boolean foundFrame = false;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public List<Exception> validate(List<DataItem> elements) {
+			List<Exception> problems = new ArrayList<Exception>();
+			State state = State.WANT_SOI;
+			int headerPosition = 0;
+
+			for (int index = 0; index < elements.size(); index++) {
+				DataItem element = elements.get(index);
+				if (isIgnored(element)) {
+					continue;
+				}
+
+				switch (state) {
+					case WANT_SOI:
+						if (isSOI(element)) {
+							state = State.WANT_TABLES_OR_DHP_OR_SOF;
+						} else {
+							addUnexpectedProblem(problems, "SOI", element);
+						}
+						break;
+					case WANT_TABLES_OR_DHP_OR_SOF:
+						checkJfifHeader(element, headerPosition++, problems);
+						if (isDHP(element)) {
+							state = State.WANT_FRAME;
+						} else if (isSOF(element)) {
+							index = validateFrame(elements, index, false, problems);
+							state = State.WANT_EOI;
+						} else if (!isTablesMisc(element)) {
+							addUnexpectedProblem(problems, "Tables, DHP or SOF", element);
+						}
+						break;
+					case WANT_FRAME:
+						if (isSOF(element) || isEXP(element) || isTablesMisc(element)) {
+							index = validateFrame(elements, index, true, problems);
+							state = State.WANT_FRAME_OR_EOI;
+						} else {
+							addUnexpectedProblem(problems, "Tables or SOF", element);
+						}
+						break;
+					case WANT_FRAME_OR_EOI:
+						if (isSOF(element) || isEXP(element) || isTablesMisc(element)) {
+							index = validateFrame(elements, index, true, problems);
+						} else if (isEOI(element)) {
+							state = State.DONE;
+						} else {
+							addUnexpectedProblem(problems, "Tables, SOF or EOI", element);
+						}
+						break;
+					case WANT_EOI:
+						if (isEOI(element)) {
+							state = State.DONE;
+						} else {
+							addUnexpectedProblem(problems, "EOI", element);
+						}
+						break;
+					case DONE:
+						addUnexpectedProblem(problems, null, element);
+						break;
+				}
+			}
+
+			switch (state) {
+				case WANT_SOI:
+					addUnexpectedProblem(problems, "SOI", null);
+					break;
+				case WANT_TABLES_OR_DHP_OR_SOF:
+					addUnexpectedProblem(problems, "Tables, DHP or SOF", null);
+					break;
+				case WANT_FRAME:
+					addUnexpectedProblem(problems, "Tables or SOF", null);
+					break;
+				case WANT_FRAME_OR_EOI:
+					addUnexpectedProblem(problems, "Tables, SOF or EOI", null);
+					break;
+				case WANT_EOI:
+					addUnexpectedProblem(problems, "EOI", null);
+					break;
+			}
+
+			return problems;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * In a JFIF file, the first frame header must meet the JFIF
+		 * requirements.
+		 */
+		@Override
+		protected void frameHeaderFound(DataItem header, List<Exception> problems) {
+			if (isJfif && !foundFrame && header instanceof SofSegment) {
+				jfifRules.checkComponents((SofSegment) header, problems, false);
+			}
+			foundFrame = true;
+		}
+
+		/**
+		 * Looks at the segments immediately after the SOI to decide if this
+		 * is a JFIF file, and if so, check the JFXX segment if there is one.
+		 */
+		private void checkJfifHeader(DataItem element, int position, List<Exception> problems) {
+			if (position == 0 && element instanceof JfifSegment) {
+				isJfif = true;
+				allowsJfxx = ((JfifSegment) element).getVersion() == 0x0102;
+			} else if (position == 1 && allowsJfxx && element instanceof JfxxSegment) {
+				jfifRules.checkThumbnail((JfxxSegment) element, problems);
+			}
+		}
+	}
+}
@@ -72,6 +72,7 @@ public class HasFrameValidator extends Validator {
 			switch (state) {
 				case WANT_TABLES_OR_SOF:
 					if (isSOF(element)) {
+						frameHeaderFound(element, problems);
 						state = State.WANT_TABLES_OR_SOS;
 						sosCount = 0;
 					} else if (isEXP(element)) {
@@ -154,4 +155,15 @@ public class HasFrameValidator extends Validator {
 
 		return index;
 	}
+
+	/**
+	 * Called by validateFrame() each time it finds the SOF segment that starts
+	 * a frame. This does nothing, but subclasses can override it to check the
+	 * frame header without walking the elements a second time.
+	 *
+	 * @param header The SOF segment found
+	 * @param problems Where to add any problems found
+	 */
+	protected void frameHeaderFound(DataItem header, List<Exception> problems) {
+	}
 }
@@ -83,18 +83,7 @@ public class JfifValidator extends NonHierarchicalValidator {
 					break;
 				case FOUND_JFIF:
 					if (element instanceof JfxxSegment) {
-						JfxxSegment jfxx = (JfxxSegment) element;
-						if (jfxx.getExtensionCode() == JfxxSegment.JPEG &&
-								  jfxx.getThumbnail() instanceof ThumbnailJpeg) {
-							JpegData jpegImage = ((ThumbnailJpeg)jfxx.getThumbnail()).getJpegImage();
-							for (DataItem item : jpegImage) {
-								if (item instanceof JfifSegment) {
-									problems.add(new InvalidJpegFormat("Thumbnail should not hava a Jfif segment"));
-								} else if (item instanceof SofSegment) {
-									checkComponents((SofSegment) item, problems, true);
-								}
-							}
-						}
+						checkThumbnail((JfxxSegment) element, problems);
 					}
 					index--; // try again.
 					state = State.WANT_SOF;
@@ -111,6 +100,27 @@ public class JfifValidator extends NonHierarchicalValidator {
 		return problems;
 	}
 
+	/**
+	 * If the JFXX segment has a JPEG thumbnail, check that the thumbnail does
+	 * not have its own JFIF segment and that its SOF matches the spec
+	 * requirements for parameter values
+	 * @param jfxx The JFXX segment to examine
+	 * @param problems Where to add any problems found
+	 */
+	protected void checkThumbnail(JfxxSegment jfxx, List<Exception> problems) {
+		if (jfxx.getExtensionCode() == JfxxSegment.JPEG &&
+				  jfxx.getThumbnail() instanceof ThumbnailJpeg) {
+			JpegData jpegImage = ((ThumbnailJpeg)jfxx.getThumbnail()).getJpegImage();
+			for (DataItem item : jpegImage) {
+				if (item instanceof JfifSegment) {
+					problems.add(new InvalidJpegFormat("Thumbnail should not hava a Jfif segment"));
+				} else if (item instanceof SofSegment) {
+					checkComponents((SofSegment) item, problems, true);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Check that the SOF component matches the spec requirements for parameter values
     * @param sof The SOF Component to examine
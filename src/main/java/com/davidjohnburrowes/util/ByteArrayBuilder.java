@@ -23,7 +23,8 @@ import java.util.Arrays;
  */
 public class ByteArrayBuilder {
 	/**
-	 * Amount to realloc the buffer by
+	 * The least amount to grow the buffer by. It otherwise doubles, so that
+	 * appending n bytes one at a time copies O(n) bytes, not O(n^2)
 	 */
 	private static final int REALLOC_SIZE = 1024;
 
@@ -58,7 +59,7 @@ public class ByteArrayBuilder {
 	 */
 	public void append(byte value) {
 		if (dataLength >= buffer.length) {
-			buffer = Arrays.copyOf(buffer, buffer.length + ByteArrayBuilder.REALLOC_SIZE);
+			buffer = Arrays.copyOf(buffer, buffer.length + Math.max(buffer.length, ByteArrayBuilder.REALLOC_SIZE));
 		}
 		buffer[dataLength] = value;
 		dataLength++;
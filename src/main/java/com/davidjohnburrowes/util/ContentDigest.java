@@ -0,0 +1,160 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A 128 bit digest of some bytes, for telling whether two large arrays of
+ * bytes are the same without comparing them. This is MurmurHash3 (the
+ * x64 128 bit variant, with a seed of 0): it's fast, and different bytes
+ * are very unlikely to give the same digest, but it is not cryptographic,
+ * so it shouldn't be relied on where someone might craft a collision.
+ */
+public final class ContentDigest {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final long high;
+	private final long low;
+
+	/**
+	 * @param high The first 64 bits of the digest
+	 * @param low The last 64 bits of the digest
+	 */
+	public ContentDigest(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * @param bytes The bytes to digest
+	 * @return The digest of all of the bytes
+	 */
+	public static ContentDigest of(byte[] bytes) {
+		return of(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @param bytes The bytes to digest
+	 * @param offset The index of the first byte to digest
+	 * @param length The number of bytes to digest
+	 * @return The digest of the bytes
+	 */
+	public static ContentDigest of(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IllegalArgumentException("Bytes " + offset + "-" + (offset + length) +
+					  " are outside an array of " + bytes.length);
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		long h1 = 0;
+		long h2 = 0;
+
+		int end = offset + (length & ~15);
+		for (int index = offset; index < end; index += 16) {
+			h1 ^= mixFirst(buffer.getLong(index));
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			h2 ^= mixSecond(buffer.getLong(index + 8));
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		int remaining = length & 15;
+		long k1 = 0;
+		long k2 = 0;
+		for (int index = remaining - 1; index >= 8; index--) {
+			k2 = (k2 << 8) | (bytes[end + index] & 0xFF);
+		}
+		for (int index = Math.min(remaining, 8) - 1; index >= 0; index--) {
+			k1 = (k1 << 8) | (bytes[end + index] & 0xFF);
+		}
+		if (remaining > 8) {
+			h2 ^= mixSecond(k2);
+		}
+		if (remaining > 0) {
+			h1 ^= mixFirst(k1);
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = finish(h1);
+		h2 = finish(h2);
+		h1 += h2;
+		h2 += h1;
+
+		return new ContentDigest(h1, h2);
+	}
+
+	private static long mixFirst(long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+	private static long mixSecond(long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+	private static long finish(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	/**
+	 * @return The first 64 bits of the digest
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return The last 64 bits of the digest
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ContentDigest)) {
+			return false;
+		}
+
+		ContentDigest digest = (ContentDigest) other;
+		return high == digest.high && low == digest.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) high;
+	}
+
+	/**
+	 * @return The digest as 32 hex digits
+	 */
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+}
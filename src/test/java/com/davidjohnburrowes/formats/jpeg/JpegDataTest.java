@@ -20,6 +20,7 @@ import com.davidjohnburrowes.format.jpeg.JpegData;
 import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
 import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
 import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.component.ThumbnailJpeg;
 import com.davidjohnburrowes.format.jpeg.data.DataItem;
 import com.davidjohnburrowes.format.jpeg.data.EntropyData;
 import com.davidjohnburrowes.format.jpeg.data.ExtraFf;
@@ -29,6 +30,7 @@ import com.davidjohnburrowes.format.jpeg.marker.ComSegment;
 import com.davidjohnburrowes.format.jpeg.marker.DnlSegment;
 import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
 import com.davidjohnburrowes.format.jpeg.marker.EoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.JfxxSegment;
 import com.davidjohnburrowes.format.jpeg.marker.RstMMarker;
 import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
 import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
@@ -36,6 +38,7 @@ import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
 import com.davidjohnburrowes.format.jpeg.support.DataMode;
 import com.davidjohnburrowes.format.jpeg.support.FrameMode;
 import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import com.davidjohnburrowes.format.jpeg.support.ValidationProfile;
 import com.davidjohnburrowes.format.jpeg.validate.HierarchicalValidator;
 import com.davidjohnburrowes.format.jpeg.validate.Validator;
 import com.davidjohnburrowes.formats.jpeg.mocks.B2;
@@ -49,6 +52,7 @@ import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -73,6 +77,9 @@ public class JpegDataTest {
 				  "FFD0" +										// RST
 				  "01 02 03 04 05" +							// Entropy
 				  "FFD9";										// EOI
+	private String ADOBE_SEGMENT = "FFEE 000E 41 64 6F 62 65 00 64 00 00 00 00 ";	// APP14, less its transform
+	private String ICC_SEGMENT = "FFE2 0011 49 43 43 5F 50 52 4F 46 49 4C 45 00 01 01 ";	// APP2, less its profile
+	private String JFIF_SEGMENT = "FFE0 0010 4A 46 49 46 00 01 01 00 0001 0001 00 00 ";	// APP0
 	private String MULTI_FRAME = "FFD8" +					// SOI
 				  "FFFE 0004 FF 00" +						// COM
 				  "FFDE 000B 08 0000 0001 01 01 11 00" +	// DHP
@@ -87,6 +94,16 @@ public class JpegDataTest {
 				  "FFDA 0008 01 00 11 00 3F 00" +		// SOS
 				  "FF 00 FE 00" +								// Entropy
 				  "FFD9";										// EOI
+	private String BAD_SOS_JPEG = "FFD8" +				// SOI
+				  "FFC0 000B 08 0000 0001 01 01 11 00" +	// SOF
+				  "FFDA 0008 01 00 11 00 3E 00" +		// SOS (bad spectral end for baseline)
+				  "01 02 03 04 05" +							// Entropy
+				  "FFD9";										// EOI
+	private String BAD_SOF_JPEG = "FFD8" +				// SOI
+				  "FFC0 000B 0C 0000 0001 01 01 11 00" +	// SOF (bad precision for baseline)
+				  "FFDA 0008 01 00 11 00 3E 00" +		// SOS (bad spectral end for baseline)
+				  "01 02 03 04 05" +							// Entropy
+				  "FFD9";										// EOI
 	private JpegData full_jpeg;
 
 	@Before
@@ -239,6 +256,25 @@ public class JpegDataTest {
 		assertEquals(expected, jpeg.getItem(0));
 	}
 
+	@Test
+	public void replaceItems_replacesTheRange() {
+		DataItem first = new ComSegment();
+		DataItem second = new ComSegment();
+		List<DataItem> replacements = new ArrayList<DataItem>();
+		replacements.add(first);
+		replacements.add(second);
+		jpeg.addItem(new SoiMarker());
+		jpeg.addItem(new ExtraFf());
+		jpeg.addItem(new EoiMarker());
+
+		jpeg.replaceItems(1, 2, replacements);
+
+		assertEquals(4, jpeg.getItemCount());
+		assertSame(first, jpeg.getItem(1));
+		assertSame(second, jpeg.getItem(2));
+		assertTrue(jpeg.getItem(3) instanceof EoiMarker);
+	}
+
 	@Test
 	public void iterator_returnsAnIterator() {
 		DataItem expected = new EoiMarker();
@@ -595,6 +631,223 @@ public class JpegDataTest {
 		assertEquals(1, jpeg.validate().size());
 	}
 
+	@Test(expected=IllegalArgumentException.class)
+	public void validateWithPool_givenNull_throwsException() {
+		full_jpeg.validate((ForkJoinPool) null);
+	}
+
+	@Test
+	public void validateWithPool_reportsNoProblemsOnValidJpeg() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(0, full_jpeg.validate(pool).size());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void validateWithPool_reportsSameProblemsInSameOrderAsValidate() {
+		jpeg.setDataMode(DataMode.LAX);
+		for (int index = 0; index < 40; index++) {
+			SofSegment sof = new SofSegment(0xC0);
+			sof.setDataMode(DataMode.LAX);
+			sof.setSamplePrecision(8 + (index % 5));
+			jpeg.addItem(sof);
+		}
+
+		List<Exception> expected = jpeg.validate();
+		List<Exception> actual;
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			actual = jpeg.validate(pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(expected.size(), actual.size());
+		for (int index = 0; index < expected.size(); index++) {
+			assertEquals(expected.get(index).getMessage(), actual.get(index).getMessage());
+		}
+	}
+
+	@Test
+	public void validateWithPool_withProfile_onlyValidatesCoveredItems() throws IOException {
+		jpeg.setDataMode(DataMode.LAX);
+		jpeg.read(utils.makeInputStream(BAD_SOF_JPEG));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(0, jpeg.validate(pool, ValidationProfile.STRUCTURAL).size());
+			assertEquals(1, jpeg.validate(pool, ValidationProfile.FAST).size());
+			assertEquals(2, jpeg.validate(pool, ValidationProfile.FULL).size());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void validateWithPool_givenNullProfile_throwsException() {
+		ForkJoinPool pool = new ForkJoinPool(1);
+		try {
+			full_jpeg.validate(pool, null);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void validateWithPool_jfxxThumbnail_reportsItsProblemsInPlace() throws IOException {
+		JpegData image = new JpegData();
+		image.setDataMode(DataMode.LAX);
+		image.read(utils.makeInputStream(BAD_SOF_JPEG));
+		ThumbnailJpeg thumbnail = new ThumbnailJpeg();
+		thumbnail.setDataMode(DataMode.LAX);
+		thumbnail.setJpegImage(image);
+		JfxxSegment jfxx = new JfxxSegment();
+		jfxx.setDataMode(DataMode.LAX);
+		jfxx.setExtensionCode(JfxxSegment.JPEG);
+		jfxx.setThumbnail(thumbnail);
+		jpeg.setDataMode(DataMode.LAX);
+		jpeg.read(utils.makeInputStream(BAD_SOF_JPEG));
+		jpeg.insertItem(1, jfxx);
+
+		List<Exception> expected = jpeg.validate();
+		List<Exception> actual;
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			actual = jpeg.validate(pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(4, expected.size());
+		assertEquals(expected.size(), actual.size());
+		for (int index = 0; index < expected.size(); index++) {
+			assertEquals(expected.get(index).getMessage(), actual.get(index).getMessage());
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void validateWithProfile_givenNull_throwsException() {
+		full_jpeg.validate((ValidationProfile) null);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void read_withBadSos_throwsException() throws IOException {
+		jpeg.read(utils.makeInputStream(BAD_SOS_JPEG));
+	}
+
+	@Test
+	public void read_withBadSos_withFastProfile_readsItems() throws IOException {
+		jpeg.read(utils.makeInputStream(BAD_SOS_JPEG), ValidationProfile.FAST);
+
+		assertEquals(5, jpeg.getItemCount());
+	}
+
+	@Test
+	public void readFile_withBadSos_withStructuralProfile_readsItems() throws IOException {
+		jpeg.read(utils.makeRandomAccessFile(BAD_SOS_JPEG), ValidationProfile.STRUCTURAL);
+
+		assertEquals(5, jpeg.getItemCount());
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void read_withBadSof_withFastProfile_throwsException() throws IOException {
+		jpeg.read(utils.makeInputStream(BAD_SOF_JPEG), ValidationProfile.FAST);
+	}
+
+	@Test
+	public void read_laxMode_profileHasNoEffect() throws IOException {
+		jpeg.setDataMode(DataMode.LAX);
+		jpeg.read(utils.makeInputStream(BAD_SOF_JPEG), ValidationProfile.FULL);
+		JpegData structural = new JpegData();
+		structural.setDataMode(DataMode.LAX);
+		structural.read(utils.makeRandomAccessFile(BAD_SOF_JPEG), ValidationProfile.STRUCTURAL);
+
+		assertEquals(jpeg.getItemCount(), structural.getItemCount());
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			assertEquals(jpeg.getItem(index), structural.getItem(index));
+		}
+		assertEquals(2, jpeg.validate(ValidationProfile.FULL).size());
+		assertEquals(2, structural.validate(ValidationProfile.FULL).size());
+	}
+
+	@Test
+	public void validateWithProfile_onlyValidatesCoveredItems() throws IOException {
+		jpeg.setDataMode(DataMode.LAX);
+		jpeg.read(utils.makeInputStream(BAD_SOF_JPEG));
+
+		assertEquals(0, jpeg.validate(ValidationProfile.STRUCTURAL).size());
+		assertEquals(1, jpeg.validate(ValidationProfile.FAST).size());
+		assertEquals(2, jpeg.validate(ValidationProfile.FULL).size());
+	}
+
+	@Test
+	public void getContentDigest_ignoresMetadata() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("FFE6 0008 01 02 03 04 05 06", "")
+				  .replace("FFFE 0004 FF 00", "FFFE 0005 41 42 43")));
+
+		assertEquals(jpeg.getContentDigest(), other.getContentDigest());
+	}
+
+	@Test
+	public void getContentDigest_differentEntropyData_differs() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("FF 00 FE 00", "FF 00 FD 00")));
+
+		assertFalse(jpeg.getContentDigest().equals(other.getContentDigest()));
+	}
+
+	@Test
+	public void getContentDigest_differentTables_differs() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("3D 3E 3F 40", "3D 3E 3F 41")));
+
+		assertFalse(jpeg.getContentDigest().equals(other.getContentDigest()));
+	}
+
+	@Test
+	public void getContentDigest_differentAdobeTransform_differs() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG.replace("FFE6", ADOBE_SEGMENT + "01 FFE6")));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("FFE6", ADOBE_SEGMENT + "00 FFE6")));
+
+		assertFalse(jpeg.getContentDigest().equals(other.getContentDigest()));
+	}
+
+	@Test
+	public void getContentDigest_differentIccProfile_differs() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG.replace("FFE6", ICC_SEGMENT + "AA FFE6")));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("FFE6", ICC_SEGMENT + "AB FFE6")));
+
+		assertFalse(jpeg.getContentDigest().equals(other.getContentDigest()));
+	}
+
+	@Test
+	public void getContentDigest_withJfif_differs() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("FFE6", JFIF_SEGMENT + "FFE6")));
+
+		assertFalse(jpeg.getContentDigest().equals(other.getContentDigest()));
+	}
+
+	@Test
+	public void getContentDigest_differentJfifDensity_same() throws IOException {
+		jpeg.read(utils.makeInputStream(FULL_JPEG.replace("FFE6", JFIF_SEGMENT + "FFE6")));
+		JpegData other = new JpegData();
+		other.read(utils.makeInputStream(FULL_JPEG.replace("FFE6",
+				  JFIF_SEGMENT.replace("0001 0001", "0048 0048") + "FFE6")));
+
+		assertEquals(jpeg.getContentDigest(), other.getContentDigest());
+	}
+
 	@Test
 	public void clearPassthrough_removesExtraFfAndCruftInMarkers() throws IOException {
 		InputStream stream = utils.makeInputStream("FFFF FFD8 FFDC 0005 0045 00 FF FFD9");
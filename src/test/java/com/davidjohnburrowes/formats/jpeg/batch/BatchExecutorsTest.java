@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.formats.jpeg.batch;
+
+import com.davidjohnburrowes.format.jpeg.batch.BatchExecutors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+public class BatchExecutorsTest {
+
+	private static boolean javaHasVirtualThreads() {
+		// On Java 19 and 20, ofVirtual() is there but throws without --enable-preview
+		try {
+			Thread.class.getMethod("ofVirtual").invoke(null);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	@Test
+	public void hasVirtualThreads_matchesJava() {
+		assertEquals(javaHasVirtualThreads(), BatchExecutors.hasVirtualThreads());
+	}
+
+	@Test
+	public void newPerFileExecutor_runsTasks() throws Exception {
+		ExecutorService executor = BatchExecutors.newPerFileExecutor(2);
+		try {
+			Future<Integer> result = executor.submit(() -> 6 * 7);
+
+			assertEquals(Integer.valueOf(42), result.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void newPerFileExecutor_noThreads_throwsException() {
+		BatchExecutors.newPerFileExecutor(0);
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void newVirtualThreadPerTaskExecutor_withoutVirtualThreads_throwsException() {
+		assumeTrue(!javaHasVirtualThreads());
+
+		BatchExecutors.newVirtualThreadPerTaskExecutor();
+	}
+
+	@Test
+	public void newVirtualThreadPerTaskExecutor_withVirtualThreads_usesThem() throws Exception {
+		assumeTrue(javaHasVirtualThreads());
+
+		ExecutorService executor = BatchExecutors.newVirtualThreadPerTaskExecutor();
+		try {
+			Future<Object> virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+
+			assertEquals(Boolean.TRUE, virtual.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
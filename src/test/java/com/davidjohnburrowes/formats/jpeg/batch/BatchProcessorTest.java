@@ -0,0 +1,340 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.formats.jpeg.batch;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.batch.BatchExecutors;
+import com.davidjohnburrowes.format.jpeg.batch.BatchFailure;
+import com.davidjohnburrowes.format.jpeg.batch.BatchProcessor;
+import com.davidjohnburrowes.format.jpeg.batch.BatchReport;
+import com.davidjohnburrowes.format.jpeg.batch.BatchStage;
+import com.davidjohnburrowes.format.jpeg.marker.ComSegment;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import static org.junit.Assert.*;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchProcessorTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path root;
+	private byte[] image;
+
+	@Before
+	public void setUp() throws IOException {
+		root = folder.getRoot().toPath();
+		image = SampleJpegs.encode(SampleJpegs.makePattern(40, 30), 0.8f, false, 0);
+		Files.createDirectories(root.resolve("a/b"));
+		Files.write(root.resolve("one.jpg"), image);
+		Files.write(root.resolve("a/two.JPEG"), image);
+		Files.write(root.resolve("a/b/three.jpg"), image);
+		Files.write(root.resolve("a/notes.txt"), new byte[] {1, 2, 3});
+	}
+
+	private static JpegData read(Path file) throws IOException {
+		return SampleJpegs.read(Files.readAllBytes(file));
+	}
+
+	private static boolean hasComment(JpegData jpeg, String text) throws IOException {
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (jpeg.getItem(index) instanceof ComSegment &&
+					  ((ComSegment) jpeg.getItem(index)).getStringComment().equals(text)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean addComment(JpegData jpeg) {
+		ComSegment comment = new ComSegment();
+		comment.setStringComment("batch");
+		jpeg.insertItem(2, comment);
+		return true;
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_nullOperation_throwsException() {
+		new BatchProcessor(null);
+	}
+
+	@Test
+	public void process_visitsEveryJpegInTree() {
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+
+		BatchReport report = new BatchProcessor((file, jpeg) -> {
+			seen.add(root.relativize(file).toString().replace('\\', '/'));
+			return false;
+		}).process(root);
+
+		assertEquals(3, seen.size());
+		assertTrue(seen.contains("one.jpg"));
+		assertTrue(seen.contains("a/two.JPEG"));
+		assertTrue(seen.contains("a/b/three.jpg"));
+		assertEquals(3, report.getFileCount());
+		assertEquals(0, report.getFailureCount());
+		assertEquals(0, report.getWrittenCount());
+		assertEquals(3L * image.length, report.getBytesRead());
+		assertEquals(3, report.getStageCount(BatchStage.PARSE));
+		assertEquals(0, report.getStageCount(BatchStage.WRITE));
+		assertTrue(report.getStageMaxNanos(BatchStage.READ) >= report.getStageMeanNanos(BatchStage.READ));
+	}
+
+	@Test
+	public void process_withOutputDirectory_writesChangedFilesThere() throws IOException {
+		Path output = root.resolve("out");
+		BatchProcessor processor = new BatchProcessor((file, jpeg) -> addComment(jpeg));
+		processor.setOutputDirectory(output);
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		BatchReport report;
+		try {
+			report = processor.process(root.resolve("a"), pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(2, report.getWrittenCount());
+		assertTrue(hasComment(read(output.resolve("two.JPEG")), "batch"));
+		assertTrue(hasComment(read(output.resolve("b/three.jpg")), "batch"));
+		assertFalse(hasComment(read(root.resolve("a/two.JPEG")), "batch"));
+		assertEquals(report.getBytesWritten(), Files.size(output.resolve("two.JPEG")) * 2);
+	}
+
+	@Test
+	public void process_withoutOutputDirectory_replacesChangedFiles() throws IOException {
+		new BatchProcessor((file, jpeg) -> addComment(jpeg)).process(root);
+
+		assertTrue(hasComment(read(root.resolve("one.jpg")), "batch"));
+		assertTrue(hasComment(read(root.resolve("a/b/three.jpg")), "batch"));
+		try (Stream<Path> files = Files.list(root)) {
+			assertEquals(2, files.count());
+		}
+	}
+
+	@Test
+	public void process_inPlace_keepsPermissions() throws IOException {
+		Path file = root.resolve("one.jpg");
+		Assume.assumeTrue(Files.getFileAttributeView(file, PosixFileAttributeView.class) != null);
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+		Files.setPosixFilePermissions(file, permissions);
+
+		new BatchProcessor((path, jpeg) -> addComment(jpeg)).process(file);
+
+		assertTrue(hasComment(read(file), "batch"));
+		assertEquals(permissions, Files.getPosixFilePermissions(file));
+	}
+
+	@Test
+	public void process_inPlaceThroughLink_replacesLinkedFile() throws IOException {
+		Path link = root.resolve("link.jpg");
+		try {
+			Files.createSymbolicLink(link, root.resolve("one.jpg"));
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+		}
+
+		new BatchProcessor((path, jpeg) -> addComment(jpeg)).process(link);
+
+		assertTrue(Files.isSymbolicLink(link));
+		assertTrue(hasComment(read(root.resolve("one.jpg")), "batch"));
+	}
+
+	@Test
+	public void process_singleFile_processesIt() throws IOException {
+		BatchReport report = new BatchProcessor((file, jpeg) -> addComment(jpeg)).process(root.resolve("one.jpg"));
+
+		assertEquals(1, report.getFileCount());
+		assertTrue(hasComment(read(root.resolve("one.jpg")), "batch"));
+	}
+
+	@Test
+	public void process_badFile_isReportedAndOthersProcessed() throws IOException {
+		Files.write(root.resolve("a/bad.jpg"), new byte[] {(byte) 0xFF, (byte) 0xD8, 0x12, 0x34});
+
+		BatchReport report = new BatchProcessor((file, jpeg) -> false).process(root);
+
+		assertEquals(4, report.getFileCount());
+		assertEquals(1, report.getFailureCount());
+		BatchFailure failure = report.getFailures().get(0);
+		assertEquals(root.resolve("a/bad.jpg"), failure.getFile());
+		assertEquals(BatchStage.PARSE, failure.getStage());
+		assertEquals(3, report.getStageCount(BatchStage.OPERATION));
+	}
+
+	@Test
+	public void process_operationThrows_isReportedAndNotWritten() throws IOException {
+		BatchReport report = new BatchProcessor((file, jpeg) -> {
+			addComment(jpeg);
+			if (file.getFileName().toString().equals("one.jpg")) {
+				throw new IllegalStateException("no");
+			}
+			return true;
+		}).process(root);
+
+		assertEquals(1, report.getFailureCount());
+		assertEquals(BatchStage.OPERATION, report.getFailures().get(0).getStage());
+		assertEquals(2, report.getWrittenCount());
+		assertFalse(hasComment(read(root.resolve("one.jpg")), "batch"));
+	}
+
+	@Test
+	public void process_withFilter_processesOnlyMatchingFiles() {
+		BatchProcessor processor = new BatchProcessor((file, jpeg) -> false);
+		processor.setFilter(file -> file.getFileName().toString().startsWith("t"));
+
+		BatchReport report = processor.process(root);
+
+		assertEquals(2, report.getFileCount());
+	}
+
+	@Test
+	public void processOnExecutor_visitsEveryJpegInTree() throws InterruptedException, IOException {
+		Set<Path> seen = ConcurrentHashMap.newKeySet();
+		BatchProcessor processor = new BatchProcessor((file, jpeg) -> {
+			seen.add(file);
+			return addComment(jpeg);
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+
+		BatchReport report;
+		try {
+			report = processor.process(root, executor, 2);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(3, seen.size());
+		assertEquals(3, report.getFileCount());
+		assertEquals(3, report.getWrittenCount());
+		assertEquals(3, report.getStageCount(BatchStage.WRITE));
+		assertTrue(hasComment(read(root.resolve("a/two.JPEG")), "batch"));
+	}
+
+	@Test
+	public void process_linksInTree_areSkippedInBothModes() throws InterruptedException, IOException {
+		try {
+			Files.createSymbolicLink(root.resolve("link.jpg"), root.resolve("one.jpg"));
+			Files.createSymbolicLink(root.resolve("linked"), root.resolve("a"));
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+		}
+		Set<Path> onPool = ConcurrentHashMap.newKeySet();
+		Set<Path> onExecutor = ConcurrentHashMap.newKeySet();
+
+		BatchReport poolReport = new BatchProcessor((file, jpeg) -> {
+			onPool.add(file);
+			return false;
+		}).process(root);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		BatchReport executorReport;
+		try {
+			executorReport = new BatchProcessor((file, jpeg) -> {
+				onExecutor.add(file);
+				return false;
+			}).process(root, executor, 2);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(3, poolReport.getFileCount());
+		assertEquals(3, executorReport.getFileCount());
+		assertEquals(onPool, onExecutor);
+		assertFalse(onPool.contains(root.resolve("link.jpg")));
+	}
+
+	@Test
+	public void processOnExecutor_oneInFlight_processesEachFile() throws InterruptedException {
+		ExecutorService executor = BatchExecutors.newPerFileExecutor(1);
+
+		BatchReport report;
+		try {
+			report = new BatchProcessor((file, jpeg) -> false).process(root, executor, 1);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(3, report.getFileCount());
+		assertEquals(0, report.getFailureCount());
+	}
+
+	@Test
+	public void processOnExecutor_executorRejects_waitsForSubmittedFiles() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicInteger finished = new AtomicInteger();
+		AtomicInteger tested = new AtomicInteger();
+		BatchProcessor processor = new BatchProcessor((file, jpeg) -> {
+			started.countDown();
+			Thread.sleep(200);
+			finished.incrementAndGet();
+			return false;
+		});
+		// Only offer the second file once the first is being processed
+		processor.setFilter(file -> {
+			if (tested.getAndIncrement() > 0) {
+				try {
+					started.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return true;
+		});
+		// One thread and no queue, so the second file is rejected
+		ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+				  new SynchronousQueue<Runnable>());
+
+		try {
+			processor.process(root, executor, 3);
+			fail("Expected the executor to reject a file");
+		} catch (RejectedExecutionException e) {
+			assertEquals(1, finished.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void processOnExecutor_noneInFlight_throwsException() throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			new BatchProcessor((file, jpeg) -> false).process(root, executor, 0);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.ArithmeticScanDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.ArithmeticScanEncoder;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientReader;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientWriter;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.ScanScript;
+import com.davidjohnburrowes.format.jpeg.component.DacConditioningTable;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.DacSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ArithmeticScanDecoderTest {
+
+	/**
+	 * Rewrites the coefficients of the store into the image as an arithmetic
+	 * coded frame, and reads the result back from its bytes.
+	 */
+	private static JpegData writeArithmetic(JpegData jpeg, CoefficientStore store, FrameMode mode,
+			  int restartInterval) throws IOException {
+		FrameLayout layout = store.getLayout();
+		ScanScript script = (mode == FrameMode.AC_PROGRESSIVE_DCT) ?
+				  ScanScript.progressive(layout) : ScanScript.sequential(layout);
+		int[] restartIntervals = new int[script.getScans().size()];
+		Arrays.fill(restartIntervals, restartInterval);
+
+		new CoefficientWriter().write(jpeg, CoefficientWriter.makeFrame(mode, layout), store, script,
+				  restartIntervals);
+		assertTrue(jpeg.validate().isEmpty());
+
+		return SampleJpegs.read(SampleJpegs.write(jpeg));
+	}
+
+	private static void checkRoundTrip(byte[] original, FrameMode mode, int restartInterval) throws IOException {
+		JpegData jpeg = SampleJpegs.read(original);
+		CoefficientStore store = new CoefficientReader().read(jpeg);
+
+		JpegData arithmetic = writeArithmetic(jpeg, store, mode, restartInterval);
+
+		assertEquals(mode, new JpegStructure(arithmetic).getFrameMode());
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), arithmetic);
+	}
+
+	@Test
+	public void sequential_colourImage_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0),
+				  FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, 0);
+	}
+
+	@Test
+	public void sequential_withRestarts_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(64, 40), 0.95f, false, 0),
+				  FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, 3);
+	}
+
+	@Test
+	public void progressive_colourImage_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.8f, true, 0),
+				  FrameMode.AC_PROGRESSIVE_DCT, 0);
+	}
+
+	@Test
+	public void progressive_grayImageWithRestarts_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makeFlatGray(33, 20, 77), 0.9f, false, 0),
+				  FrameMode.AC_PROGRESSIVE_DCT, 2);
+	}
+
+	@Test
+	public void largeCoefficients_roundTrip() throws IOException {
+		for (FrameMode mode : new FrameMode[] { FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, FrameMode.AC_PROGRESSIVE_DCT }) {
+			JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(40, 24), 0.9f, false, 0));
+			CoefficientStore store = new CoefficientReader().read(jpeg);
+			FrameLayout layout = store.getLayout();
+			Random random = new Random(mode.getValue());
+			for (int component = 0; component < layout.getComponentCount(); component++) {
+				for (int row = 0; row < layout.getComponentBlocksHigh(component); row++) {
+					for (int column = 0; column < layout.getComponentBlocksWide(component); column++) {
+						for (int index = 0; index < 64; index++) {
+							int value = (random.nextInt(3) == 0) ? random.nextInt(2047) - 1023 : 0;
+							store.setCoefficient(component, row, column, index, (short) value);
+						}
+					}
+				}
+			}
+
+			JpegData arithmetic = writeArithmetic(jpeg, store, mode, 0);
+
+			CodecAssert.assertSameCoefficients(store, new CoefficientReader().read(arithmetic));
+		}
+	}
+
+	@Test
+	public void arithmeticImage_hasConditioningInsteadOfHuffmanTables() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.9f, false, 0));
+
+		JpegData arithmetic = writeArithmetic(jpeg, new CoefficientReader().read(jpeg),
+				  FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, 0);
+
+		int conditioningSegments = 0;
+		for (DataItem item : arithmetic) {
+			assertFalse(item instanceof DhtSegment);
+			if (item instanceof DacSegment) {
+				conditioningSegments++;
+			}
+		}
+		assertEquals(1, conditioningSegments);
+	}
+
+	@Test
+	public void decode_usesConditioningTables() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(48, 32), 0.9f, false, 0));
+		CoefficientStore store = new CoefficientReader().read(jpeg);
+		JpegData arithmetic = writeArithmetic(jpeg, store, FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, 0);
+		DacConditioningTable[] dcTables = new DacConditioningTable[4];
+		DacConditioningTable[] acTables = new DacConditioningTable[4];
+		SosSegment header = null;
+		int dataIndex = -1;
+		for (int index = 0; index < arithmetic.getItemCount(); index++) {
+			DataItem item = arithmetic.getItem(index);
+			if (item instanceof DacSegment) {
+				for (DacConditioningTable table : (DacSegment) item) {
+					table.setTableValue(table.getTableClass() == 0 ? 0x52 : 2);
+					(table.getTableClass() == 0 ? dcTables : acTables)[table.getTableId()] = table;
+				}
+			} else if (item instanceof SosSegment) {
+				header = (SosSegment) item;
+			} else if (item instanceof EntropyData) {
+				dataIndex = index;
+			}
+		}
+		FrameLayout layout = store.getLayout();
+		byte[] defaultData = ((EntropyData) arithmetic.getItem(dataIndex)).getData();
+
+		byte[] data = new ArithmeticScanEncoder(layout, FrameMode.AC_EXTENDED_SEQUENTIAL_DCT)
+				  .encode(header, 0, store, dcTables, acTables).get(0);
+		((EntropyData) arithmetic.getItem(dataIndex)).setData(data);
+
+		assertFalse(Arrays.equals(defaultData, data));
+		CodecAssert.assertSameCoefficients(store, new CoefficientReader().read(arithmetic));
+	}
+
+	/**
+	 * @return The entropy coded data of each scan of the image, in order
+	 */
+	private static List<byte[]> scanData(JpegData jpeg) {
+		List<byte[]> data = new ArrayList<byte[]>();
+		for (DataItem item : jpeg) {
+			if (item instanceof EntropyData) {
+				data.add(((EntropyData) item).getData());
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Checks an image made by libjpeg-turbo from a Huffman coded one: that
+	 * it decodes to the original's coefficients, and that encoding those
+	 * coefficients with the same scans gives the same bytes.
+	 */
+	private static void checkReference(String original, String reference, FrameMode mode) throws IOException {
+		JpegData huffman = SampleJpegs.readResource(original);
+		JpegData arithmetic = SampleJpegs.readResource(reference);
+		assertEquals(mode, new JpegStructure(arithmetic).getFrameMode());
+
+		CodecAssert.assertSameCoefficients(huffman, arithmetic);
+
+		JpegData encoded = writeArithmetic(huffman, new CoefficientReader().read(huffman), mode, 0);
+		List<byte[]> expected = scanData(arithmetic);
+		List<byte[]> actual = scanData(encoded);
+		assertEquals(expected.size(), actual.size());
+		for (int scan = 0; scan < expected.size(); scan++) {
+			assertArrayEquals("scan " + scan, expected.get(scan), actual.get(scan));
+		}
+	}
+
+	@Test
+	public void libjpegSequential_grayImage_matchesOriginalAndEncoder() throws IOException {
+		checkReference("knuth.jpg", "knuth-arithmetic.jpg", FrameMode.AC_EXTENDED_SEQUENTIAL_DCT);
+	}
+
+	@Test
+	public void libjpegProgressive_grayImage_matchesOriginalAndEncoder() throws IOException {
+		checkReference("knuth.jpg", "knuth-arithmetic-progressive.jpg", FrameMode.AC_PROGRESSIVE_DCT);
+	}
+
+	@Test
+	public void libjpegSequential_colourImage_matchesOriginalAndEncoder() throws IOException {
+		checkReference("colour.jpg", "colour-arithmetic.jpg", FrameMode.AC_EXTENDED_SEQUENTIAL_DCT);
+	}
+
+	@Test
+	public void libjpegProgressive_colourImage_matchesOriginalAndEncoder() throws IOException {
+		checkReference("colour.jpg", "colour-arithmetic-progressive.jpg", FrameMode.AC_PROGRESSIVE_DCT);
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void constructor_huffmanMode_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makeFlatGray(8, 8, 10), 0.9f, false, 0));
+
+		new ArithmeticScanDecoder(new JpegStructure(jpeg));
+	}
+}
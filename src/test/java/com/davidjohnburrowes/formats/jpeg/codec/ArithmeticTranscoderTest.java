@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.ArithmeticTranscoder;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DacSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ArithmeticTranscoderTest {
+
+	private static List<Integer> restartIntervals(JpegData jpeg) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (Scan scan : new JpegStructure(jpeg).getScans()) {
+			result.add(scan.getRestartInterval());
+		}
+		return result;
+	}
+
+	private static void checkRoundTrip(byte[] original, FrameMode arithmeticMode, FrameMode huffmanMode)
+			  throws IOException {
+		JpegData jpeg = SampleJpegs.read(original);
+		List<Integer> originalIntervals = restartIntervals(jpeg);
+
+		new ArithmeticTranscoder().toArithmetic(jpeg);
+		JpegData arithmetic = SampleJpegs.read(SampleJpegs.write(jpeg));
+
+		assertTrue(arithmetic.validate().isEmpty());
+		assertEquals(arithmeticMode, new JpegStructure(arithmetic).getFrameMode());
+		assertEquals(originalIntervals, restartIntervals(arithmetic));
+		for (DataItem item : arithmetic) {
+			assertFalse(item instanceof DhtSegment);
+		}
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), arithmetic);
+
+		new ArithmeticTranscoder().toHuffman(arithmetic);
+		byte[] bytes = SampleJpegs.write(arithmetic);
+
+		assertTrue(arithmetic.validate().isEmpty());
+		assertEquals(huffmanMode, new JpegStructure(arithmetic).getFrameMode());
+		assertEquals(originalIntervals, restartIntervals(arithmetic));
+		for (DataItem item : arithmetic) {
+			assertFalse(item instanceof DacSegment);
+		}
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), SampleJpegs.read(bytes));
+		assertArrayEquals(SampleJpegs.decodePixels(original), SampleJpegs.decodePixels(bytes));
+	}
+
+	@Test
+	public void sequentialImage_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0),
+				  FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT);
+	}
+
+	@Test
+	public void sequentialImageWithRestarts_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(64, 40), 0.95f, false, 3),
+				  FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT);
+	}
+
+	@Test
+	public void progressiveImage_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.8f, true, 0),
+				  FrameMode.AC_PROGRESSIVE_DCT, FrameMode.HUFF_PROGRESSIVE_DCT);
+	}
+
+	@Test
+	public void progressiveImageWithRestarts_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makePattern(50, 50), 0.9f, true, 2),
+				  FrameMode.AC_PROGRESSIVE_DCT, FrameMode.HUFF_PROGRESSIVE_DCT);
+	}
+
+	@Test
+	public void grayImage_roundTrips() throws IOException {
+		checkRoundTrip(SampleJpegs.encode(SampleJpegs.makeFlatGray(33, 20, 77), 0.9f, false, 0),
+				  FrameMode.AC_EXTENDED_SEQUENTIAL_DCT, FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT);
+	}
+
+	@Test
+	public void toArithmetic_isSmaller() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new ArithmeticTranscoder().toArithmetic(jpeg);
+
+		assertTrue(SampleJpegs.write(jpeg).length < original.length);
+	}
+
+	@Test
+	public void toArithmetic_arithmeticImage_isUnchanged() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.9f, false, 0));
+		new ArithmeticTranscoder().toArithmetic(jpeg);
+		byte[] arithmetic = SampleJpegs.write(jpeg);
+
+		new ArithmeticTranscoder().toArithmetic(jpeg);
+
+		assertArrayEquals(arithmetic, SampleJpegs.write(jpeg));
+	}
+
+	@Test
+	public void toHuffman_huffmanImage_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.9f, true, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new ArithmeticTranscoder().toHuffman(jpeg);
+
+		assertArrayEquals(original, SampleJpegs.write(jpeg));
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.BitReader;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class BitReaderTest {
+
+	private static byte[] bytes(int... values) {
+		byte[] result = new byte[values.length];
+		for (int index = 0; index < values.length; index++) {
+			result[index] = (byte) values[index];
+		}
+		return result;
+	}
+
+	@Test
+	public void readBits_readsMostSignificantBitFirst() {
+		BitReader reader = new BitReader();
+		reader.reset(bytes(0xA5));
+
+		assertEquals(1, reader.readBits(1));
+		assertEquals(2, reader.readBits(3));
+		assertEquals(5, reader.readBits(4));
+	}
+
+	@Test
+	public void readBits_readsAcrossBytes() {
+		BitReader reader = new BitReader();
+		reader.reset(bytes(0x12, 0x34, 0x56));
+
+		assertEquals(0x123, reader.readBits(12));
+		assertEquals(0x456, reader.readBits(12));
+		assertFalse(reader.isOverrun());
+	}
+
+	@Test
+	public void readBits_pastEnd_suppliesZerosAndReportsOverrun() {
+		BitReader reader = new BitReader();
+		reader.reset(bytes(0xFF));
+
+		assertEquals(0xFF, reader.readBits(8));
+		assertFalse(reader.isOverrun());
+		assertEquals(0, reader.readBits(16));
+		assertTrue(reader.isOverrun());
+	}
+
+	@Test
+	public void peekBits_doesNotConsume() {
+		BitReader reader = new BitReader();
+		reader.reset(bytes(0xC3));
+
+		assertEquals(0x0C, reader.peekBits(4));
+		assertEquals(0x0C, reader.peekBits(4));
+		reader.skipBits(4);
+		assertEquals(0x03, reader.readBits(4));
+	}
+
+	@Test
+	public void alignToByte_skipsRestOfByte() {
+		BitReader reader = new BitReader();
+		reader.reset(bytes(0xF0, 0x5A));
+
+		reader.readBits(3);
+		reader.alignToByte();
+		assertEquals(0x5A, reader.readBits(8));
+	}
+
+	@Test
+	public void reset_withOffset_readsOnlyThatRange() {
+		BitReader reader = new BitReader();
+		reader.reset(bytes(0x11, 0x22, 0x33), 1, 1);
+
+		assertEquals(0x22, reader.readBits(8));
+		assertEquals(0, reader.readBits(8));
+		assertTrue(reader.isOverrun());
+	}
+
+	@Test
+	public void stuffed_skipsZeroAfterFf() {
+		BitReader reader = new BitReader(true);
+		reader.reset(bytes(0xFF, 0x00, 0x12));
+
+		assertEquals(0xFF12, reader.readBits(16));
+		assertFalse(reader.foundMarker());
+	}
+
+	@Test
+	public void stuffed_stopsAtMarker() {
+		BitReader reader = new BitReader(true);
+		reader.reset(bytes(0x12, 0xFF, 0xD0, 0x34));
+
+		assertEquals(0x12, reader.readBits(8));
+		assertEquals(0, reader.readBits(8));
+		assertTrue(reader.foundMarker());
+		assertTrue(reader.isOverrun());
+	}
+
+	@Test
+	public void receiveExtend_producesSignedValues() {
+		BitReader reader = new BitReader();
+		// 0, 1, 010, 101
+		reader.reset(bytes(0x55, 0x00));
+
+		assertEquals(-1, reader.receiveExtend(1));
+		assertEquals(1, reader.receiveExtend(1));
+		assertEquals(-5, reader.receiveExtend(3));
+		assertEquals(5, reader.receiveExtend(3));
+		assertEquals(0, reader.receiveExtend(0));
+	}
+
+	@Test
+	public void extend_handlesLargestCategory() {
+		assertEquals(-32767, BitReader.extend(0, 15));
+		assertEquals(32767, BitReader.extend(0x7FFF, 15));
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientReader;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoefficientReaderTest {
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private void checkParallelMatches(byte[] bytes) throws IOException {
+		JpegStructure structure = new JpegStructure(SampleJpegs.read(bytes));
+		CoefficientReader reader = new CoefficientReader();
+
+		CodecAssert.assertSameCoefficients(reader.read(structure), reader.read(structure, pool));
+	}
+
+	@Test
+	public void read_sequentialAndProgressive_giveSameCoefficients() throws IOException {
+		CoefficientReader reader = new CoefficientReader();
+
+		CoefficientStore sequential = reader.read(SampleJpegs.read(
+				  SampleJpegs.encode(SampleJpegs.makePattern(48, 40), 0.7f, false, 0)));
+		CoefficientStore progressive = reader.read(SampleJpegs.read(
+				  SampleJpegs.encode(SampleJpegs.makePattern(48, 40), 0.7f, true, 0)));
+
+		CodecAssert.assertSameCoefficients(sequential, progressive);
+	}
+
+	@Test
+	public void readWithPool_sequential_matchesRead() throws IOException {
+		checkParallelMatches(SampleJpegs.encode(SampleJpegs.makePattern(300, 200), 0.85f, false, 2));
+	}
+
+	@Test
+	public void readWithPool_progressive_matchesRead() throws IOException {
+		checkParallelMatches(SampleJpegs.encode(SampleJpegs.makePattern(300, 200), 0.85f, true, 2));
+	}
+
+	@Test
+	public void readWithPool_noRestarts_matchesRead() throws IOException {
+		checkParallelMatches(SampleJpegs.encode(SampleJpegs.makePattern(64, 64), 0.85f, false, 0));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void readWithPool_givenNull_throwsException() throws IOException {
+		new CoefficientReader().read(new JpegStructure(SampleJpegs.readKnuth()), (ForkJoinPool) null);
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanScanDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoefficientStoreTest {
+
+	private FrameLayout layout;
+
+	@Before
+	public void setUp() {
+		SofSegment sof = new SofSegment(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT.getValue());
+		sof.setImageWidth(40);
+		sof.setImageHeight(24);
+		for (int id = 1; id <= 3; id++) {
+			FrameComponent component = new FrameComponent();
+			component.setComponentId(id);
+			component.setHorizontalScaling(id == 1 ? 2 : 1);
+			component.setVerticalScaling(id == 1 ? 2 : 1);
+			sof.addComponent(component);
+		}
+		layout = new FrameLayout(sof);
+	}
+
+	private static short[] makeBlock(int seed) {
+		short[] block = new short[64];
+		for (int index = 0; index < 64; index++) {
+			block[index] = (short) (seed * 100 + index - 32);
+		}
+		return block;
+	}
+
+	private void checkRoundTrip(CoefficientStore store) {
+		for (int component = 0; component < 3; component++) {
+			for (int row = 0; row < store.getBlocksHigh(component); row++) {
+				for (int column = 0; column < store.getBlocksWide(component); column++) {
+					store.putBlock(component, row, column, makeBlock(component + row + column));
+				}
+			}
+		}
+
+		short[] block = new short[64];
+		for (int component = 0; component < 3; component++) {
+			for (int row = 0; row < store.getBlocksHigh(component); row++) {
+				for (int column = 0; column < store.getBlocksWide(component); column++) {
+					store.getBlock(component, row, column, block);
+					assertArrayEquals(makeBlock(component + row + column), block);
+				}
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNull_throwsException() {
+		new CoefficientStore(null);
+	}
+
+	@Test
+	public void constructor_sizesComponentsFromLayout() {
+		CoefficientStore store = new CoefficientStore(layout);
+
+		assertEquals(6, store.getBlocksWide(0));
+		assertEquals(4, store.getBlocksHigh(0));
+		assertEquals(3, store.getBlocksWide(1));
+		assertEquals(2, store.getBlocksHigh(2));
+	}
+
+	@Test
+	public void getBlock_startsAtZero() {
+		CoefficientStore store = new CoefficientStore(layout);
+		short[] block = makeBlock(5);
+
+		store.getBlock(2, 1, 2, block);
+
+		assertArrayEquals(new short[64], block);
+	}
+
+	@Test
+	public void putBlock_canBeReadBack() {
+		checkRoundTrip(new CoefficientStore(layout));
+	}
+
+	@Test
+	public void setCoefficient_changesOneCoefficient() {
+		CoefficientStore store = new CoefficientStore(layout);
+
+		store.setCoefficient(1, 1, 2, 9, (short) -7);
+
+		assertEquals(-7, store.getCoefficient(1, 1, 2, 9));
+		assertEquals(0, store.getCoefficient(1, 1, 2, 8));
+		assertEquals(0, store.getCoefficient(2, 1, 2, 9));
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void putBlock_outsideComponent_throwsException() {
+		new CoefficientStore(layout).putBlock(1, 0, 3, new short[64]);
+	}
+
+	@Test
+	public void createTemporary_canBeReadBack() throws IOException {
+		CoefficientStore store = CoefficientStore.createTemporary(layout);
+		try {
+			checkRoundTrip(store);
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void createFileBacked_keepsCoefficientsInFile() throws IOException {
+		File file = File.createTempFile("CoefficientStoreTest", ".tmp");
+		file.deleteOnExit();
+
+		CoefficientStore store = CoefficientStore.createFileBacked(layout, file);
+		try {
+			checkRoundTrip(store);
+		} finally {
+			store.close();
+		}
+
+		assertEquals((24 + 6 + 6) * 128, file.length());
+		file.delete();
+	}
+
+	@Test
+	public void store_canReceiveDecodedScan() throws IOException {
+		JpegStructure structure = new JpegStructure(SampleJpegs.read(SampleJpegs.encode(
+				  SampleJpegs.makeFlatGray(16, 8, 0), 1.0f, false, 0)));
+		CoefficientStore store = new CoefficientStore(structure.getLayout());
+		HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+
+		for (Scan scan : structure.getScans()) {
+			decoder.decode(scan, store);
+		}
+
+		assertEquals(-1024, store.getCoefficient(0, 0, 1, 0), 1);
+	}
+}
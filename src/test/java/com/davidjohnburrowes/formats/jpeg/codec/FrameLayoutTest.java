@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.component.SosComponentSpec;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameLayoutTest {
+
+	private SofSegment sof;
+
+	@Before
+	public void setUp() {
+		sof = new SofSegment(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT.getValue());
+		sof.setImageWidth(33);
+		sof.setImageHeight(17);
+		sof.addComponent(makeComponent(1, 2, 2));
+		sof.addComponent(makeComponent(2, 1, 1));
+		sof.addComponent(makeComponent(3, 1, 1));
+	}
+
+	private FrameComponent makeComponent(int id, int horizontal, int vertical) {
+		FrameComponent component = new FrameComponent();
+		component.setComponentId(id);
+		component.setHorizontalScaling(horizontal);
+		component.setVerticalScaling(vertical);
+		return component;
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNull_throwsException() {
+		new FrameLayout(null);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void constructor_givenNoHeight_throwsException() {
+		sof.setImageHeight(0);
+		new FrameLayout(sof);
+	}
+
+	@Test
+	public void constructor_givenHeight_usesIt() {
+		sof.setImageHeight(0);
+		assertEquals(40, new FrameLayout(sof, 40).getImageHeight());
+	}
+
+	@Test
+	public void layout_computesMcus() {
+		FrameLayout layout = new FrameLayout(sof);
+
+		assertEquals(2, layout.getMaxHorizontalSampling());
+		assertEquals(2, layout.getMaxVerticalSampling());
+		assertEquals(3, layout.getMcusPerRow());
+		assertEquals(2, layout.getMcuRows());
+	}
+
+	@Test
+	public void layout_computesBlocksPerComponent() {
+		FrameLayout layout = new FrameLayout(sof);
+
+		assertEquals(6, layout.getBlocksWide(0));
+		assertEquals(4, layout.getBlocksHigh(0));
+		assertEquals(5, layout.getComponentBlocksWide(0));
+		assertEquals(3, layout.getComponentBlocksHigh(0));
+
+		assertEquals(3, layout.getBlocksWide(1));
+		assertEquals(2, layout.getBlocksHigh(1));
+		assertEquals(17, layout.getComponentWidth(1));
+		assertEquals(9, layout.getComponentHeight(1));
+		assertEquals(3, layout.getComponentBlocksWide(1));
+		assertEquals(2, layout.getComponentBlocksHigh(1));
+	}
+
+	@Test
+	public void getComponentIndex_findsComponents() {
+		FrameLayout layout = new FrameLayout(sof);
+
+		assertEquals(2, layout.getComponentIndex(3));
+		assertEquals(-1, layout.getComponentIndex(4));
+	}
+
+	@Test
+	public void getScanComponents_mapsSelectors() {
+		SosSegment sos = new SosSegment();
+		SosComponentSpec spec = new SosComponentSpec();
+		spec.setComponentSelector(2);
+		sos.addComponentSpec(spec);
+
+		FrameLayout layout = new FrameLayout(sof);
+		int[] components = layout.getScanComponents(sos);
+
+		assertArrayEquals(new int[] { 1 }, components);
+		assertEquals(6, layout.getScanMcuCount(components));
+		assertEquals(6, layout.getScanMcuCount(new int[] { 0, 1, 2 }));
+		assertEquals(15, layout.getScanMcuCount(new int[] { 0 }));
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void getScanComponents_givenUnknownComponent_throwsException() {
+		SosSegment sos = new SosSegment();
+		SosComponentSpec spec = new SosComponentSpec();
+		spec.setComponentSelector(9);
+		sos.addComponentSpec(spec);
+
+		new FrameLayout(sof).getScanComponents(sos);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.BitReader;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanDecodingTable;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HuffmanDecodingTableTest {
+
+	private DhtHuffmanTable table;
+
+	@Before
+	public void setUp() {
+		table = new DhtHuffmanTable();
+		table.setElement(0, new short[] { 0x10 });
+		table.setElement(1, new short[] { 0x20 });
+		table.setElement(10, new short[] { 0x30, 0x31 });
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNull_throwsException() {
+		new HuffmanDecodingTable(null);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void constructor_givenTooManyCodes_throwsException() {
+		DhtHuffmanTable bad = new DhtHuffmanTable();
+		bad.setElement(0, new short[] { 1, 2, 3 });
+
+		new HuffmanDecodingTable(bad);
+	}
+
+	@Test
+	public void decode_decodesShortAndLongCodes() {
+		BitReader reader = new BitReader();
+		// 0 10 11000000001 11000000000 0
+		reader.reset(new byte[] { (byte) 0x58, (byte) 0x07, (byte) 0x00, (byte) 0x00 });
+		HuffmanDecodingTable decoding = new HuffmanDecodingTable(table);
+
+		assertEquals(0x10, reader.decode(decoding));
+		assertEquals(0x20, reader.decode(decoding));
+		assertEquals(0x31, reader.decode(decoding));
+		assertEquals(0x30, reader.decode(decoding));
+		assertEquals(0x10, reader.decode(decoding));
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void decode_givenUnassignedCode_throwsException() {
+		BitReader reader = new BitReader();
+		reader.reset(new byte[] { (byte) 0xFF, (byte) 0xFF });
+
+		reader.decode(new HuffmanDecodingTable(table));
+	}
+}
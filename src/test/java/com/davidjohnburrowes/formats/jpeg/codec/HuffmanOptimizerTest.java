@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanOptimizer;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.DataMode;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HuffmanOptimizerTest {
+
+	private void checkOptimizes(byte[] original) throws IOException {
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new HuffmanOptimizer().optimize(jpeg);
+		byte[] optimized = SampleJpegs.write(jpeg);
+
+		assertTrue(optimized.length < original.length);
+		assertArrayEquals(SampleJpegs.decodePixels(original), SampleJpegs.decodePixels(optimized));
+		assertTrue(jpeg.validate().isEmpty());
+	}
+
+	@Test
+	public void optimize_colourImage_isSmallerAndIdentical() throws IOException {
+		checkOptimizes(SampleJpegs.encode(SampleJpegs.makePattern(120, 90), 0.85f, false, 0));
+	}
+
+	@Test
+	public void optimize_grayImage_isSmallerAndIdentical() throws IOException {
+		checkOptimizes(SampleJpegs.encode(SampleJpegs.makeFlatGray(64, 64, 90), 0.85f, false, 0));
+	}
+
+	@Test
+	public void optimize_withRestarts_isSmallerAndIdentical() throws IOException {
+		checkOptimizes(SampleJpegs.encode(SampleJpegs.makePattern(100, 60), 0.9f, false, 3));
+	}
+
+	@Test
+	public void optimize_knuth_isIdentical() throws IOException {
+		JpegData jpeg = SampleJpegs.readKnuth();
+		byte[] original = SampleJpegs.write(jpeg);
+
+		new HuffmanOptimizer().optimize(jpeg);
+
+		assertArrayEquals(SampleJpegs.decodePixels(original),
+				  SampleJpegs.decodePixels(SampleJpegs.write(jpeg)));
+	}
+
+	@Test
+	public void optimize_putsTablesBeforeScan() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.8f, false, 0));
+
+		new HuffmanOptimizer().optimize(jpeg);
+
+		int dhtCount = 0;
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			DataItem item = jpeg.getItem(index);
+			if (item instanceof DhtSegment) {
+				dhtCount++;
+				assertTrue(jpeg.getItem(index + 1) instanceof SosSegment);
+			}
+		}
+		assertEquals(1, dhtCount);
+	}
+
+	@Test
+	public void optimize_scanWithoutData_keepsItsTables() throws IOException {
+		byte[] knuth = SampleJpegs.write(SampleJpegs.readKnuth());
+		JpegData original = SampleJpegs.readKnuth();
+		List<DhtHuffmanTable> originalTables = new ArrayList<DhtHuffmanTable>();
+		ByteArrayOutputStream scanHeader = new ByteArrayOutputStream();
+		for (DataItem item : original) {
+			if (item instanceof DhtSegment) {
+				for (DhtHuffmanTable table : (DhtSegment) item) {
+					originalTables.add(table);
+				}
+			} else if (item instanceof SosSegment) {
+				item.write(scanHeader);
+			}
+		}
+		// Repeat the scan header, with no data after it, before EOI
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(knuth, 0, knuth.length - 2);
+		scanHeader.writeTo(bytes);
+		bytes.write(knuth, knuth.length - 2, 2);
+		JpegData jpeg = new JpegData();
+		jpeg.setDataMode(DataMode.LAX);
+		jpeg.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+		new HuffmanOptimizer().optimize(jpeg);
+
+		List<Integer> scanHeaders = new ArrayList<Integer>();
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (jpeg.getItem(index) instanceof SosSegment) {
+				scanHeaders.add(index);
+			}
+		}
+		assertEquals(2, scanHeaders.size());
+		DataItem tables = jpeg.getItem(scanHeaders.get(1) - 1);
+		assertTrue(tables instanceof DhtSegment);
+		List<DhtHuffmanTable> keptTables = new ArrayList<DhtHuffmanTable>();
+		for (DhtHuffmanTable table : (DhtSegment) tables) {
+			keptTables.add(table);
+		}
+		assertEquals(originalTables, keptTables);
+		assertTrue(jpeg.getItem(scanHeaders.get(0) - 1) instanceof DhtSegment);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.BlockSink;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanScanDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HuffmanScanDecoderTest {
+
+	/**
+	 * Remembers every block it's given
+	 */
+	private static class RecordingSink implements BlockSink {
+		final Map<String, short[]> blocks = new HashMap<String, short[]>();
+
+		@Override
+		public void putBlock(int component, int blockRow, int blockColumn, short[] coefficients) {
+			blocks.put(component + ":" + blockRow + ":" + blockColumn, coefficients.clone());
+		}
+	}
+
+	private static RecordingSink decodeAll(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+		RecordingSink sink = new RecordingSink();
+		for (Scan scan : structure.getScans()) {
+			decoder.decode(scan, sink);
+		}
+		return sink;
+	}
+
+	private static int countBlocks(FrameLayout layout) {
+		int count = 0;
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			count += layout.getBlocksWide(component) * layout.getBlocksHigh(component);
+		}
+		return count;
+	}
+
+	@Test
+	public void decode_flatGray_givesOnlyDcCoefficients() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(
+				  SampleJpegs.makeFlatGray(24, 16, 200), 1.0f, false, 0));
+
+		RecordingSink sink = decodeAll(jpeg);
+
+		assertEquals(6, sink.blocks.size());
+		for (short[] block : sink.blocks.values()) {
+			// 8 * (200 - 128), with a quantization value of 1
+			assertEquals(576, block[0], 1);
+			for (int index = 1; index < 64; index++) {
+				assertEquals(0, block[index]);
+			}
+		}
+	}
+
+	@Test
+	public void decode_colourImage_givesEveryBlock() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(
+				  SampleJpegs.makePattern(50, 35), 0.8f, false, 0));
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+
+		RecordingSink sink = decodeAll(jpeg);
+
+		assertEquals(countBlocks(layout), sink.blocks.size());
+	}
+
+	@Test
+	public void decode_withRestarts_givesSameBlocksAsWithout() throws IOException {
+		byte[] plain = SampleJpegs.encode(SampleJpegs.makePattern(70, 40), 0.75f, false, 0);
+		byte[] restarted = SampleJpegs.encode(SampleJpegs.makePattern(70, 40), 0.75f, false, 2);
+		JpegData restartedJpeg = SampleJpegs.read(restarted);
+		assertEquals(2, new JpegStructure(restartedJpeg).getScans().get(0).getRestartInterval());
+
+		RecordingSink expected = decodeAll(SampleJpegs.read(plain));
+		RecordingSink actual = decodeAll(restartedJpeg);
+
+		assertEquals(expected.blocks.keySet(), actual.blocks.keySet());
+		for (String key : expected.blocks.keySet()) {
+			assertArrayEquals(key, expected.blocks.get(key), actual.blocks.get(key));
+		}
+	}
+
+	@Test
+	public void decode_knuth_givesEveryBlock() throws IOException {
+		JpegData jpeg = SampleJpegs.readKnuth();
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+
+		RecordingSink sink = decodeAll(jpeg);
+
+		assertEquals(countBlocks(layout), sink.blocks.size());
+	}
+
+	@Test
+	public void decodeWithPool_givesSameBlocksAsDecode() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(200, 120), 0.8f, false, 1));
+		JpegStructure structure = new JpegStructure(jpeg);
+		HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+		RecordingSink expected = new RecordingSink();
+		final Map<String, short[]> actual = new ConcurrentHashMap<String, short[]>();
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			for (Scan scan : structure.getScans()) {
+				decoder.decode(scan, expected);
+				decoder.decode(scan, new BlockSink() {
+					@Override
+					public void putBlock(int component, int blockRow, int blockColumn, short[] coefficients) {
+						actual.put(component + ":" + blockRow + ":" + blockColumn, coefficients.clone());
+					}
+				}, pool);
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(expected.blocks.keySet(), actual.keySet());
+		for (String key : expected.blocks.keySet()) {
+			assertArrayEquals(key, expected.blocks.get(key), actual.get(key));
+		}
+	}
+
+	@Test
+	public void decodeRange_withRestarts_skipsEarlierIntervals() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(70, 40), 0.75f, false, 2));
+		JpegStructure structure = new JpegStructure(jpeg);
+		RecordingSink expected = decodeAll(jpeg);
+		RecordingSink actual = new RecordingSink();
+
+		new HuffmanScanDecoder(structure).decode(structure.getScans().get(0), actual, 5, 10);
+
+		// 5 MCUs per row, so MCUs 4-9 (intervals 2-4) are decoded
+		assertEquals(6 * 6, actual.blocks.size());
+		assertFalse(actual.blocks.containsKey("0:0:0"));
+		assertFalse(actual.blocks.containsKey("0:4:0"));
+		for (String key : actual.blocks.keySet()) {
+			assertArrayEquals(key, expected.blocks.get(key), actual.blocks.get(key));
+		}
+	}
+
+	@Test
+	public void decodeRange_withoutRestarts_stopsAtEnd() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(70, 40), 0.75f, false, 0));
+		JpegStructure structure = new JpegStructure(jpeg);
+		RecordingSink actual = new RecordingSink();
+
+		new HuffmanScanDecoder(structure).decode(structure.getScans().get(0), actual, 5, 10);
+
+		assertEquals(10 * 6, actual.blocks.size());
+		assertTrue(actual.blocks.containsKey("0:0:0"));
+		assertFalse(actual.blocks.containsKey("0:4:0"));
+	}
+
+	@Test
+	public void decodeDc_givesDcOfEveryBlock() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(70, 40), 0.9f, false, 3));
+		JpegStructure structure = new JpegStructure(jpeg);
+		RecordingSink expected = decodeAll(jpeg);
+		RecordingSink actual = new RecordingSink();
+
+		HuffmanScanDecoder decoder = new HuffmanScanDecoder(structure);
+		for (Scan scan : structure.getScans()) {
+			decoder.decodeDc(scan, actual);
+		}
+
+		assertEquals(expected.blocks.keySet(), actual.blocks.keySet());
+		for (String key : expected.blocks.keySet()) {
+			short[] block = actual.blocks.get(key);
+			assertEquals(key, expected.blocks.get(key)[0], block[0]);
+			for (int index = 1; index < 64; index++) {
+				assertEquals(key, 0, block[index]);
+			}
+		}
+	}
+
+	@Test
+	public void decodeDc_knuth_givesDcOfEveryBlock() throws IOException {
+		JpegData jpeg = SampleJpegs.readKnuth();
+		JpegStructure structure = new JpegStructure(jpeg);
+		RecordingSink expected = decodeAll(jpeg);
+		RecordingSink actual = new RecordingSink();
+
+		new HuffmanScanDecoder(structure).decodeDc(structure.getScans().get(0), actual);
+
+		assertEquals(expected.blocks.size(), actual.blocks.size());
+		for (String key : expected.blocks.keySet()) {
+			assertEquals(key, expected.blocks.get(key)[0], actual.blocks.get(key)[0]);
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void decodeWithPool_givenNullPool_throwsException() throws IOException {
+		JpegStructure structure = new JpegStructure(SampleJpegs.readKnuth());
+
+		new HuffmanScanDecoder(structure).decode(structure.getScans().get(0), new RecordingSink(), null);
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void constructor_givenProgressive_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(
+				  SampleJpegs.makePattern(16, 16), 0.8f, true, 0));
+
+		new HuffmanScanDecoder(new JpegStructure(jpeg));
+	}
+}
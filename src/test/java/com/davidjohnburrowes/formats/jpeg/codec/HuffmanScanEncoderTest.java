@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanEncodingTable;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanScanDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanScanEncoder;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanTableBuilder;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HuffmanScanEncoderTest {
+
+	private static HuffmanEncodingTable[] tables(Scan scan, boolean dc) {
+		HuffmanEncodingTable[] tables = new HuffmanEncodingTable[4];
+		for (int selector = 0; selector < 4; selector++) {
+			if ((dc ? scan.getDcTable(selector) : scan.getAcTable(selector)) != null) {
+				tables[selector] = new HuffmanEncodingTable(
+						  dc ? scan.getDcTable(selector) : scan.getAcTable(selector));
+			}
+		}
+		return tables;
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNull_throwsException() {
+		new HuffmanScanEncoder(null);
+	}
+
+	@Test
+	public void encode_withOriginalTables_reproducesOriginalData() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(60, 44), 0.8f, false, 4));
+		JpegStructure structure = new JpegStructure(jpeg);
+		CoefficientStore store = new CoefficientStore(structure.getLayout());
+		HuffmanScanEncoder encoder = new HuffmanScanEncoder(structure.getLayout());
+		Scan scan = structure.getScans().get(0);
+
+		new HuffmanScanDecoder(structure).decode(scan, store);
+		List<byte[]> intervals = encoder.encode(scan.getHeader(), scan.getRestartInterval(),
+				  store, tables(scan, true), tables(scan, false));
+
+		assertEquals(scan.getIntervals().size(), intervals.size());
+		for (int index = 0; index < intervals.size(); index++) {
+			assertArrayEquals(scan.getIntervals().get(index).getData(), intervals.get(index));
+		}
+	}
+
+	@Test
+	public void countSymbols_countsEveryBlock() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makeFlatGray(32, 16, 128), 0.8f, false, 0));
+		JpegStructure structure = new JpegStructure(jpeg);
+		CoefficientStore store = new CoefficientStore(structure.getLayout());
+		Scan scan = structure.getScans().get(0);
+		HuffmanTableBuilder[] dc = new HuffmanTableBuilder[] { new HuffmanTableBuilder(), null, null, null };
+		HuffmanTableBuilder[] ac = new HuffmanTableBuilder[] { new HuffmanTableBuilder(), null, null, null };
+
+		new HuffmanScanDecoder(structure).decode(scan, store);
+		new HuffmanScanEncoder(structure.getLayout()).countSymbols(scan.getHeader(), 0, store, dc, ac);
+
+		// Every block is flat at the level shift, so has no DC difference or AC
+		assertEquals(8, dc[0].getFrequency(0));
+		assertEquals(8, ac[0].getFrequency(0));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanEncodingTable;
+import com.davidjohnburrowes.format.jpeg.codec.HuffmanTableBuilder;
+import com.davidjohnburrowes.format.jpeg.component.DhtHuffmanTable;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HuffmanTableBuilderTest {
+
+	private static DhtHuffmanTable build(HuffmanTableBuilder builder) {
+		DhtHuffmanTable table = new DhtHuffmanTable();
+		builder.build(table);
+		return table;
+	}
+
+	@Test
+	public void build_givesShorterCodesToCommonerSymbols() {
+		HuffmanTableBuilder builder = new HuffmanTableBuilder();
+		for (int count = 0; count < 100; count++) {
+			builder.count(7);
+		}
+		for (int count = 0; count < 10; count++) {
+			builder.count(3);
+		}
+		builder.count(200);
+
+		HuffmanEncodingTable table = new HuffmanEncodingTable(build(builder));
+
+		assertEquals(1, table.getLength(7));
+		assertTrue(table.getLength(3) <= table.getLength(200));
+		assertEquals(0, table.getLength(5));
+	}
+
+	@Test
+	public void build_givesNoCodeOfAllOnes() {
+		HuffmanTableBuilder builder = new HuffmanTableBuilder();
+		builder.count(1);
+
+		HuffmanEncodingTable table = new HuffmanEncodingTable(build(builder));
+
+		assertEquals(1, table.getLength(1));
+		assertEquals(0, table.getCode(1));
+	}
+
+	@Test
+	public void build_limitsCodesTo16Bits() {
+		HuffmanTableBuilder builder = new HuffmanTableBuilder();
+		long a = 1;
+		long b = 1;
+		for (int symbol = 0; symbol < 40; symbol++) {
+			for (long count = 0; count < a; count++) {
+				builder.count(symbol);
+			}
+			long next = a + b;
+			a = b;
+			b = next;
+			if (a > 200000) {
+				break;
+			}
+		}
+
+		DhtHuffmanTable table = build(builder);
+		HuffmanEncodingTable codes = new HuffmanEncodingTable(table);
+
+		int total = 0;
+		for (int length = 1; length <= 16; length++) {
+			total += table.getElement(length - 1).length;
+		}
+		for (int symbol = 0; symbol < 256; symbol++) {
+			if (builder.getFrequency(symbol) > 0) {
+				assertTrue(codes.getLength(symbol) > 0);
+				assertTrue(codes.getLength(symbol) <= 16);
+				int length = codes.getLength(symbol);
+				assertTrue(codes.getCode(symbol) != (1 << length) - 1);
+			}
+		}
+		assertTrue(total > 20);
+	}
+
+	@Test
+	public void clear_forgetsCounts() {
+		HuffmanTableBuilder builder = new HuffmanTableBuilder();
+		builder.count(4);
+		assertFalse(builder.isEmpty());
+
+		builder.clear();
+
+		assertTrue(builder.isEmpty());
+		assertEquals(0, builder.getFrequency(4));
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.IncrementalDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.PixelDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.PixelImage;
+import com.davidjohnburrowes.format.jpeg.support.DataMode;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class IncrementalDecoderTest {
+
+	/**
+	 * @return The mean difference between the samples of two images
+	 */
+	private static double meanDifference(PixelImage expected, PixelImage actual) {
+		byte[] expectedSamples = expected.getSamples();
+		byte[] actualSamples = actual.getSamples();
+		long total = 0;
+
+		assertEquals(expectedSamples.length, actualSamples.length);
+		for (int index = 0; index < expectedSamples.length; index++) {
+			total += Math.abs((expectedSamples[index] & 0xFF) - (actualSamples[index] & 0xFF));
+		}
+		return (double) total / expectedSamples.length;
+	}
+
+	@Test
+	public void decodeAll_progressiveImage_matchesPixelDecoder() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(70, 33), 0.8f, true, 0));
+		IncrementalDecoder decoder = new IncrementalDecoder(jpeg);
+
+		try {
+			decoder.decodeAll();
+
+			assertFalse(decoder.hasNextScan());
+			assertEquals(decoder.getScanCount(), decoder.getScansDecoded());
+			assertArrayEquals(new PixelDecoder().decode(jpeg).getSamples(), decoder.snapshot().getSamples());
+		} finally {
+			decoder.close();
+		}
+	}
+
+	@Test
+	public void snapshot_afterEachScan_getsCloser() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(96, 64), 0.9f, true, 0));
+		PixelImage finished = new PixelDecoder().decode(jpeg);
+		IncrementalDecoder decoder = new IncrementalDecoder(jpeg);
+
+		try {
+			assertTrue(decoder.decodeUntilAllComponentsCovered());
+			assertEquals(1, decoder.getScansDecoded());
+			double first = meanDifference(finished, decoder.snapshot());
+			assertTrue(first > 0);
+			assertTrue(first < 20);
+
+			double previous = first;
+			while (decoder.hasNextScan()) {
+				decoder.decodeNextScan();
+				double difference = meanDifference(finished, decoder.snapshot());
+				assertTrue(difference <= previous + 0.5);
+				previous = difference;
+			}
+			assertEquals(0.0, previous, 0.0);
+		} finally {
+			decoder.close();
+		}
+	}
+
+	@Test
+	public void snapshot_beforeAnyScans_isGray() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(16, 16), 0.9f, true, 0));
+		IncrementalDecoder decoder = new IncrementalDecoder(jpeg);
+
+		try {
+			assertFalse(decoder.coversAllComponents());
+			PixelImage image = decoder.snapshot(8);
+			assertEquals(2, image.getWidth());
+			for (byte sample : image.getSamples()) {
+				assertEquals(128, sample & 0xFF);
+			}
+		} finally {
+			decoder.close();
+		}
+	}
+
+	@Test
+	public void decodeAll_sequentialImage_matchesPixelDecoder() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(50, 40), 0.8f, false, 0));
+		IncrementalDecoder decoder = new IncrementalDecoder(jpeg);
+
+		try {
+			decoder.decodeAll();
+
+			assertTrue(decoder.coversAllComponents());
+			assertArrayEquals(new PixelDecoder().decode(jpeg, 2).getSamples(), decoder.snapshot(2).getSamples());
+		} finally {
+			decoder.close();
+		}
+	}
+
+	@Test
+	public void decodeAll_truncatedProgressiveImage_decodesWhatArrived() throws IOException {
+		byte[] bytes = SampleJpegs.encode(SampleJpegs.makePattern(96, 64), 0.9f, true, 0);
+		JpegData whole = SampleJpegs.read(bytes);
+		JpegData truncated = new JpegData();
+		truncated.setDataMode(DataMode.LAX);
+		truncated.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2)));
+		IncrementalDecoder wholeDecoder = new IncrementalDecoder(whole);
+		IncrementalDecoder decoder = new IncrementalDecoder(truncated);
+
+		try {
+			assertTrue(decoder.getScanCount() > 1);
+			assertTrue(decoder.getScanCount() < wholeDecoder.getScanCount());
+
+			// The scans before the last, cut off, one are whole
+			while (decoder.getScansDecoded() < decoder.getScanCount() - 1) {
+				decoder.decodeNextScan();
+				wholeDecoder.decodeNextScan();
+			}
+			assertArrayEquals(wholeDecoder.snapshot().getSamples(), decoder.snapshot().getSamples());
+
+			decoder.decodeAll();
+			assertTrue(decoder.coversAllComponents());
+			assertTrue(meanDifference(new PixelDecoder().decode(whole), decoder.snapshot()) < 20);
+		} finally {
+			decoder.close();
+			wholeDecoder.close();
+		}
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void decodeNextScan_afterLastScan_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(16, 16), 0.9f, false, 0));
+		IncrementalDecoder decoder = new IncrementalDecoder(jpeg);
+
+		try {
+			decoder.decodeAll();
+			decoder.decodeNextScan();
+		} finally {
+			decoder.close();
+		}
+	}
+}
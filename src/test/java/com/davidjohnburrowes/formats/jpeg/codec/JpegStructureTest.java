@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.format.jpeg.marker.DhpSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class JpegStructureTest {
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNull_throwsException() {
+		new JpegStructure(null);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void constructor_givenNoFrame_throwsException() {
+		JpegData jpeg = new JpegData();
+		jpeg.addItem(new SoiMarker());
+
+		new JpegStructure(jpeg);
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void constructor_givenHierarchical_throwsException() {
+		JpegData jpeg = new JpegData();
+		jpeg.addItem(new SoiMarker());
+		jpeg.addItem(new DhpSegment());
+
+		new JpegStructure(jpeg);
+	}
+
+	@Test
+	public void constructor_knuth_findsFrameAndScan() throws IOException {
+		JpegData jpeg = SampleJpegs.readKnuth();
+		JpegStructure structure = new JpegStructure(jpeg);
+
+		assertEquals(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT, structure.getFrameMode());
+		assertSame(structure.getFrame(), jpeg.getItem(structure.getFrameIndex()));
+		assertEquals(1, structure.getScans().size());
+
+		Scan scan = structure.getScans().get(0);
+		assertNotNull(scan.getDcTable(0));
+		assertNotNull(scan.getAcTable(0));
+		assertNotNull(scan.getQuantizationTable(0));
+		assertEquals(1, scan.getIntervals().size());
+	}
+
+	@Test
+	public void constructor_withRestarts_findsEachInterval() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(
+				  SampleJpegs.makeFlatGray(64, 8, 10), 0.9f, false, 3));
+		Scan scan = new JpegStructure(jpeg).getScans().get(0);
+
+		assertEquals(3, scan.getRestartInterval());
+		assertEquals(3, scan.getIntervals().size());
+	}
+
+	@Test
+	public void constructor_progressive_findsEveryScan() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(
+				  SampleJpegs.makePattern(16, 16), 0.8f, true, 0));
+
+		assertTrue(new JpegStructure(jpeg).getScans().size() > 1);
+	}
+}
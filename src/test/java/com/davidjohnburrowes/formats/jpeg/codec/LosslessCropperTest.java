@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientReader;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessCropper;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LosslessCropperTest {
+
+	private static BufferedImage makeGrayPattern(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.getRaster().setSample(x, y, 0, (x * 7 + y * 3) & 0xFF);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Checks that every block of the cropped image is the block of the
+	 * original at the offset (in MCUs) of the crop
+	 */
+	private static void assertCroppedBlocks(JpegData original, JpegData cropped, int mcuRow, int mcuColumn) {
+		CoefficientStore expected = new CoefficientReader().read(original);
+		CoefficientStore actual = new CoefficientReader().read(cropped);
+		FrameLayout layout = actual.getLayout();
+		short[] expectedBlock = new short[64];
+		short[] actualBlock = new short[64];
+
+		try {
+			for (int component = 0; component < layout.getComponentCount(); component++) {
+				int rowOffset = mcuRow * layout.getVerticalSampling(component);
+				int columnOffset = mcuColumn * layout.getHorizontalSampling(component);
+				for (int row = 0; row < layout.getComponentBlocksHigh(component); row++) {
+					for (int column = 0; column < layout.getComponentBlocksWide(component); column++) {
+						expected.getBlock(component, row + rowOffset, column + columnOffset, expectedBlock);
+						actual.getBlock(component, row, column, actualBlock);
+						assertArrayEquals("Block " + component + ":" + row + ":" + column,
+								  expectedBlock, actualBlock);
+					}
+				}
+			}
+		} finally {
+			expected.close();
+			actual.close();
+		}
+	}
+
+	@Test
+	public void crop_grayImage_keepsPixels() throws IOException {
+		byte[] original = SampleJpegs.encode(makeGrayPattern(64, 48), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new LosslessCropper().crop(jpeg, 16, 8, 24, 32);
+
+		assertTrue(jpeg.validate().isEmpty());
+		int[] before = SampleJpegs.decodePixels(original);
+		int[] after = SampleJpegs.decodePixels(SampleJpegs.write(jpeg));
+		assertEquals(24 * 32, after.length);
+		for (int y = 0; y < 32; y++) {
+			for (int x = 0; x < 24; x++) {
+				assertEquals(before[(y + 8) * 64 + x + 16], after[y * 24 + x]);
+			}
+		}
+	}
+
+	@Test
+	public void crop_colourImage_copiesBlocks() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(96, 80), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new LosslessCropper().crop(jpeg, 32, 16, 40, 50);
+
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+		assertEquals(40, layout.getImageWidth());
+		assertEquals(50, layout.getImageHeight());
+		assertCroppedBlocks(SampleJpegs.read(original), jpeg, 1, 2);
+	}
+
+	@Test
+	public void crop_unalignedCorner_movesToMcuBoundary() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(96, 80), 0.9f, false, 0));
+
+		new LosslessCropper().crop(jpeg, 20, 35, 30, 20);
+
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+		assertEquals(34, layout.getImageWidth());
+		assertEquals(23, layout.getImageHeight());
+	}
+
+	@Test
+	public void crop_withRestarts_setsNewInterval() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(96, 80), 0.9f, false, 1);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new LosslessCropper().crop(jpeg, 48, 32, 48, 48, 3);
+
+		Scan scan = new JpegStructure(jpeg).getScans().get(0);
+		assertEquals(3, scan.getRestartInterval());
+		assertEquals(3, scan.getIntervals().size());
+		assertCroppedBlocks(SampleJpegs.read(original), jpeg, 2, 3);
+	}
+
+	@Test
+	public void crop_progressiveImage_copiesBlocks() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.8f, true, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+		int scanCount = new JpegStructure(jpeg).getScans().size();
+
+		new LosslessCropper().crop(jpeg, 16, 16, 65, 31);
+
+		assertEquals(scanCount, new JpegStructure(jpeg).getScans().size());
+		assertCroppedBlocks(SampleJpegs.read(original), jpeg, 1, 1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void crop_outsideImage_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.9f, false, 0));
+
+		new LosslessCropper().crop(jpeg, 16, 16, 17, 8);
+	}
+}
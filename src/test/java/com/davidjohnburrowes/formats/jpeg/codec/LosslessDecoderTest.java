@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessEncoder;
+import com.davidjohnburrowes.format.jpeg.codec.SampleRowSink;
+import com.davidjohnburrowes.format.jpeg.codec.SampleRowSource;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DriSegment;
+import com.davidjohnburrowes.format.jpeg.marker.EoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LosslessDecoderTest {
+
+	/**
+	 * Supplies rows whose samples depend on the component, row and column
+	 */
+	private static final SampleRowSource SOURCE = new SampleRowSource() {
+		@Override
+		public void getRow(int component, int row, int[] samples) {
+			for (int column = 0; column < samples.length; column++) {
+				samples[column] = (component * 50 + row * 7 + column * column) & 0xFF;
+			}
+		}
+	};
+
+	/**
+	 * Records the order rows arrive in
+	 */
+	private static final class RowRecorder implements SampleRowSink {
+		final List<String> rows = new ArrayList<String>();
+
+		@Override
+		public void putRow(int component, int row, int[] samples) {
+			int[] expected = new int[samples.length];
+			SOURCE.getRow(component, row, expected);
+			assertArrayEquals(expected, samples);
+			rows.add(component + ":" + row);
+		}
+	}
+
+	@Test
+	public void decode_interleavedScan_givesRowsInOrder() {
+		RowRecorder recorder = new RowRecorder();
+
+		new LosslessDecoder(new JpegStructure(new LosslessEncoder(1, 0).encode(6, 2, 8, 2, SOURCE))).decode(recorder);
+
+		assertEquals(Arrays.asList("0:0", "1:0", "0:1", "1:1"), recorder.rows);
+	}
+
+	@Test
+	public void decode_scanPerComponent_givesEachComponent() throws IOException {
+		JpegData first = new LosslessEncoder(2, 0).encode(9, 3, 8, 1, SOURCE);
+		JpegData second = new LosslessEncoder(3, 0).encode(9, 3, 8, 2, SOURCE);
+		SofSegment frame = (SofSegment) second.getItem(1);
+
+		List<DataItem> items = new ArrayList<DataItem>();
+		items.add(new SoiMarker());
+		items.add(frame);
+		for (int index = 2; index < first.getItemCount() - 1; index++) {
+			items.add(first.getItem(index));
+		}
+		// The second component of an image whose first component is the same
+		// as the first image's
+		JpegData single = new LosslessEncoder(3, 0).encode(9, 3, 8, 1, new SampleRowSource() {
+			@Override
+			public void getRow(int component, int row, int[] samples) {
+				SOURCE.getRow(1, row, samples);
+			}
+		});
+		for (int index = 2; index < single.getItemCount() - 1; index++) {
+			DataItem item = single.getItem(index);
+			if (item instanceof SosSegment) {
+				((SosSegment) item).getComponentSpec(0).setComponentSelector(2);
+			}
+			items.add(item);
+		}
+		items.add(new EoiMarker());
+		JpegData jpeg = new JpegData();
+		jpeg.replaceItems(0, 0, items);
+		RowRecorder recorder = new RowRecorder();
+
+		new LosslessDecoder(new JpegStructure(SampleJpegs.read(SampleJpegs.write(jpeg)))).decode(recorder);
+
+		assertEquals(Arrays.asList("0:0", "0:1", "0:2", "1:0", "1:1", "1:2"), recorder.rows);
+		assertEquals(2, frame.getComponent(1).getComponentId());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void decode_restartsNotWholeRows_throwsException() {
+		JpegData jpeg = new LosslessEncoder(1, 0, 1).encode(6, 4, 8, 1, SOURCE);
+		for (DataItem item : jpeg) {
+			if (item instanceof DriSegment) {
+				((DriSegment) item).setRestartInterval(4);
+			}
+		}
+
+		new LosslessDecoder(new JpegStructure(jpeg)).decode(new RowRecorder());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void constructor_dctImage_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makeFlatGray(8, 8, 10), 0.9f, false, 0));
+
+		new LosslessDecoder(new JpegStructure(jpeg));
+	}
+
+	@Test
+	public void constructor_losslessImage_hasLayout() {
+		JpegData jpeg = new LosslessEncoder(1, 0).encode(6, 4, 12, 3, SOURCE);
+
+		LosslessDecoder decoder = new LosslessDecoder(new JpegStructure(jpeg));
+
+		assertEquals(FrameMode.HUFF_LOSSLESS, new JpegStructure(jpeg).getFrameMode());
+		assertEquals(12, decoder.getLayout().getSamplePrecision());
+		assertEquals(3, decoder.getLayout().getComponentCount());
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessEncoder;
+import com.davidjohnburrowes.format.jpeg.codec.SampleRowSink;
+import com.davidjohnburrowes.format.jpeg.codec.SampleRowSource;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LosslessEncoderTest {
+
+	/**
+	 * Supplies rows from arrays, indexed by component, row and column
+	 */
+	private static SampleRowSource source(final int[][][] samples) {
+		return new SampleRowSource() {
+			@Override
+			public void getRow(int component, int row, int[] result) {
+				System.arraycopy(samples[component][row], 0, result, 0, samples[component][row].length);
+			}
+		};
+	}
+
+	/**
+	 * Makes smooth samples with some noise and some large jumps
+	 */
+	private static int[][][] makeSamples(int components, int width, int height, int precision, long seed) {
+		Random random = new Random(seed);
+		int max = (1 << precision) - 1;
+		int[][][] samples = new int[components][height][width];
+
+		for (int component = 0; component < components; component++) {
+			for (int row = 0; row < height; row++) {
+				for (int column = 0; column < width; column++) {
+					int value = (max * (row + column + component)) / (width + height + components);
+					value += random.nextInt(5) - 2;
+					if (random.nextInt(50) == 0) {
+						value = random.nextInt(max + 1);
+					}
+					samples[component][row][column] = Math.max(0, Math.min(max, value));
+				}
+			}
+		}
+		return samples;
+	}
+
+	private static int[][][] decode(JpegData jpeg) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		int components = structure.getLayout().getComponentCount();
+		final int[][][] result = new int[components][structure.getLayout().getImageHeight()][];
+
+		new LosslessDecoder(structure).decode(new SampleRowSink() {
+			@Override
+			public void putRow(int component, int row, int[] samples) {
+				assertNull(result[component][row]);
+				result[component][row] = samples.clone();
+			}
+		});
+		return result;
+	}
+
+	private static void checkRoundTrip(LosslessEncoder encoder, int[][][] samples, int precision) throws IOException {
+		JpegData jpeg = encoder.encode(samples[0][0].length, samples[0].length, precision, samples.length,
+				  source(samples));
+
+		assertTrue(jpeg.validate().isEmpty());
+		JpegData read = SampleJpegs.read(SampleJpegs.write(jpeg));
+		assertEquals(FrameMode.HUFF_LOSSLESS, new JpegStructure(read).getFrameMode());
+		assertArrayEquals(samples, decode(read));
+	}
+
+	@Test
+	public void encode_eachPredictor_roundTrips() throws IOException {
+		for (int predictor = 1; predictor <= 7; predictor++) {
+			checkRoundTrip(new LosslessEncoder(predictor, 0), makeSamples(1, 37, 23, 8, predictor), 8);
+		}
+	}
+
+	@Test
+	public void encode_sixteenBitColour_roundTrips() throws IOException {
+		checkRoundTrip(new LosslessEncoder(6, 0), makeSamples(3, 40, 30, 16, 1), 16);
+	}
+
+	@Test
+	public void encode_largestDifference_roundTrips() throws IOException {
+		int[][][] samples = new int[1][3][8];
+		for (int column = 0; column < 8; column += 2) {
+			samples[0][1][column] = 32768;
+			samples[0][2][column + 1] = 65535;
+		}
+
+		checkRoundTrip(new LosslessEncoder(1, 0), samples, 16);
+	}
+
+	@Test
+	public void encode_twoBitSamples_roundTrip() throws IOException {
+		checkRoundTrip(new LosslessEncoder(4, 0), makeSamples(1, 17, 9, 2, 3), 2);
+	}
+
+	@Test
+	public void encode_withRestarts_roundTrips() throws IOException {
+		LosslessEncoder encoder = new LosslessEncoder(7, 0, 4);
+		int[][][] samples = makeSamples(2, 25, 19, 12, 4);
+
+		checkRoundTrip(encoder, samples, 12);
+		JpegStructure structure = new JpegStructure(encoder.encode(25, 19, 12, 2, source(samples)));
+		assertEquals(100, structure.getScans().get(0).getRestartInterval());
+		assertEquals(5, structure.getScans().get(0).getIntervals().size());
+	}
+
+	@Test
+	public void encode_pointTransform_dropsLowBits() throws IOException {
+		int[][][] samples = makeSamples(1, 20, 10, 10, 5);
+
+		int[][][] decoded = decode(new LosslessEncoder(5, 3).encode(20, 10, 10, 1, source(samples)));
+
+		for (int row = 0; row < 10; row++) {
+			for (int column = 0; column < 20; column++) {
+				assertEquals((samples[0][row][column] >> 3) << 3, decoded[0][row][column]);
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void encode_sampleTooLarge_throwsException() {
+		int[][][] samples = new int[1][2][2];
+		samples[0][1][1] = 256;
+
+		new LosslessEncoder(1, 0).encode(2, 2, 8, 1, source(samples));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_badPredictor_throwsException() {
+		new LosslessEncoder(8, 0);
+	}
+}
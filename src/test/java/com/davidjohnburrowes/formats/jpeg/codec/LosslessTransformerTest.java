@@ -0,0 +1,192 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.EdgeHandling;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessTransformer;
+import com.davidjohnburrowes.format.jpeg.codec.Transform;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LosslessTransformerTest {
+
+	/**
+	 * @return A gray scale image with a pattern that looks different in
+	 *			every orientation
+	 */
+	private static BufferedImage makeGrayPattern(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.getRaster().setSample(x, y, 0, (x * 200) / width + (y * 50) / height);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Checks that the pixels of the transformed image are those of the
+	 * original, moved as the transform says. The IDCT doesn't round the same
+	 * way in both directions, so samples may be off by a little.
+	 */
+	private static void assertTransformedPixels(byte[] original, int width, int height,
+			  JpegData transformed, Transform transform) throws IOException {
+		int[] before = SampleJpegs.decodePixels(original);
+		int[] after = SampleJpegs.decodePixels(SampleJpegs.write(transformed));
+		int newWidth = transform.transposes() ? height : width;
+		int newHeight = transform.transposes() ? width : height;
+
+		assertEquals(before.length, after.length);
+		for (int y = 0; y < newHeight; y++) {
+			for (int x = 0; x < newWidth; x++) {
+				int fromX = transform.mirrorsHorizontally() ? newWidth - 1 - x : x;
+				int fromY = transform.mirrorsVertically() ? newHeight - 1 - y : y;
+				int from = transform.transposes() ? fromX * width + fromY : fromY * width + fromX;
+				int expected = before[from] & 0xFF;
+				int actual = after[y * newWidth + x] & 0xFF;
+				assertTrue("Pixel " + x + "," + y + " " + expected + " != " + actual,
+						  Math.abs(expected - actual) <= 2);
+			}
+		}
+	}
+
+	@Test
+	public void transform_grayImage_movesPixels() throws IOException {
+		byte[] original = SampleJpegs.encode(makeGrayPattern(40, 24), 0.95f, false, 0);
+
+		for (Transform transform : Transform.values()) {
+			JpegData jpeg = SampleJpegs.read(original);
+
+			new LosslessTransformer().transform(jpeg, transform);
+
+			assertTrue(jpeg.validate().isEmpty());
+			assertTransformedPixels(original, 40, 24, jpeg, transform);
+		}
+	}
+
+	@Test
+	public void transform_rotate90_swapsSize() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(64, 48), 0.9f, false, 0));
+
+		new LosslessTransformer().transform(jpeg, Transform.ROTATE_90);
+
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+		assertEquals(48, layout.getImageWidth());
+		assertEquals(64, layout.getImageHeight());
+	}
+
+	@Test
+	public void transform_rotate90FourTimes_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(64, 48), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		for (int count = 0; count < 4; count++) {
+			new LosslessTransformer().transform(jpeg, Transform.ROTATE_90);
+		}
+
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), jpeg);
+		assertArrayEquals(SampleJpegs.decodePixels(original), SampleJpegs.decodePixels(SampleJpegs.write(jpeg)));
+	}
+
+	@Test
+	public void transform_transposeTwice_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new LosslessTransformer().transform(jpeg, Transform.TRANSPOSE);
+		new LosslessTransformer().transform(jpeg, Transform.TRANSPOSE);
+
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), jpeg);
+	}
+
+	@Test
+	public void transform_progressiveImage_flipsTwiceUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(64, 32), 0.8f, true, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+		int scanCount = new JpegStructure(jpeg).getScans().size();
+
+		new LosslessTransformer().transform(jpeg, Transform.ROTATE_180);
+		new LosslessTransformer().transform(jpeg, Transform.FLIP_VERTICAL);
+		new LosslessTransformer().transform(jpeg, Transform.FLIP_HORIZONTAL);
+
+		assertEquals(scanCount, new JpegStructure(jpeg).getScans().size());
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), jpeg);
+	}
+
+	@Test
+	public void transform_trim_dropsPartialMcus() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0));
+
+		new LosslessTransformer().transform(jpeg, Transform.FLIP_HORIZONTAL, EdgeHandling.TRIM);
+
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+		assertEquals(80, layout.getImageWidth());
+		assertEquals(70, layout.getImageHeight());
+	}
+
+	@Test
+	public void transform_keep_keepsSize() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new LosslessTransformer().transform(jpeg, Transform.ROTATE_270, EdgeHandling.KEEP);
+
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+		assertEquals(70, layout.getImageWidth());
+		assertEquals(90, layout.getImageHeight());
+
+		new LosslessTransformer().transform(jpeg, Transform.ROTATE_90, EdgeHandling.KEEP);
+
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), jpeg);
+	}
+
+	@Test
+	public void transform_unalignedImage_trimsMirroredEdgeOnly() throws IOException {
+		byte[] original = SampleJpegs.encode(makeGrayPattern(45, 27), 0.95f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new LosslessTransformer().transform(jpeg, Transform.ROTATE_90);
+
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+		assertEquals(24, layout.getImageWidth());
+		assertEquals(45, layout.getImageHeight());
+	}
+
+	@Test
+	public void forExifOrientation_mapsEachValue() {
+		assertNull(Transform.forExifOrientation(1));
+		assertEquals(Transform.FLIP_HORIZONTAL, Transform.forExifOrientation(2));
+		assertEquals(Transform.ROTATE_180, Transform.forExifOrientation(3));
+		assertEquals(Transform.FLIP_VERTICAL, Transform.forExifOrientation(4));
+		assertEquals(Transform.TRANSPOSE, Transform.forExifOrientation(5));
+		assertEquals(Transform.ROTATE_90, Transform.forExifOrientation(6));
+		assertEquals(Transform.TRANSVERSE, Transform.forExifOrientation(7));
+		assertEquals(Transform.ROTATE_270, Transform.forExifOrientation(8));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void forExifOrientation_badValue_throwsException() {
+		Transform.forExifOrientation(9);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.PerceptualHash;
+import com.davidjohnburrowes.format.jpeg.marker.AppNSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PerceptualHashTest {
+
+	/**
+	 * Draws a scene of a few shapes, at any size
+	 */
+	private static BufferedImage drawScene(int width, int height, boolean other) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.scale(width / 100.0, height / 100.0);
+		graphics.setColor(new Color(40, 90, 160));
+		graphics.fillRect(0, 0, 100, 100);
+		if (other) {
+			graphics.setColor(new Color(230, 200, 60));
+			graphics.fillRect(10, 55, 80, 30);
+			graphics.setColor(new Color(20, 20, 20));
+			graphics.fillOval(60, 5, 30, 40);
+		} else {
+			graphics.setColor(new Color(240, 240, 230));
+			graphics.fillOval(10, 10, 45, 45);
+			graphics.setColor(new Color(120, 30, 30));
+			graphics.fillRect(55, 40, 35, 50);
+		}
+		graphics.dispose();
+		return image;
+	}
+
+	private static JpegData encode(BufferedImage image, float quality, boolean progressive) throws IOException {
+		return SampleJpegs.read(SampleJpegs.encode(image, quality, progressive, 0));
+	}
+
+	/**
+	 * Encodes the image with its R, G and B as the components, and an Adobe
+	 * segment saying so
+	 */
+	private static JpegData encodeRgb(BufferedImage image) throws IOException {
+		BufferedImage bytes = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+		bytes.getGraphics().drawImage(image, 0, 0, null);
+
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageOutputStream stream = ImageIO.createImageOutputStream(output);
+		writer.setOutput(stream);
+		writer.write(null, new IIOImage(bytes.getRaster(), null, null), writer.getDefaultWriteParam());
+		stream.close();
+		writer.dispose();
+
+		JpegData jpeg = SampleJpegs.read(output.toByteArray());
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (jpeg.getItem(index) instanceof JfifSegment) {
+				jpeg.deleteItem(index);
+			}
+		}
+		AppNSegment adobe = new AppNSegment(AppNSegment.ADOBE_MARKERID);
+		byte[] segment = new byte[12];
+		System.arraycopy("Adobe".getBytes(StandardCharsets.US_ASCII), 0, segment, 0, 5);
+		adobe.setBytes(segment);
+		jpeg.insertItem(1, adobe);
+		return jpeg;
+	}
+
+	@Test
+	public void distance_countsDifferentBits() {
+		assertEquals(0, PerceptualHash.distance(0x1234L, 0x1234L));
+		assertEquals(3, PerceptualHash.distance(0x0L, 0x13L));
+		assertEquals(64, PerceptualHash.distance(0L, -1L));
+	}
+
+	@Test
+	public void hash_sameImage_sameHash() throws IOException {
+		BufferedImage image = drawScene(400, 300, false);
+
+		assertEquals(PerceptualHash.hash(encode(image, 0.8f, false)),
+				  PerceptualHash.hash(encode(image, 0.8f, false)));
+	}
+
+	@Test
+	public void hash_progressiveAndSequential_sameHash() throws IOException {
+		BufferedImage image = drawScene(400, 300, false);
+
+		assertEquals(PerceptualHash.hash(encode(image, 0.8f, false)),
+				  PerceptualHash.hash(encode(image, 0.8f, true)));
+	}
+
+	@Test
+	public void hash_differentQuality_isClose() throws IOException {
+		BufferedImage image = drawScene(400, 300, false);
+
+		long high = PerceptualHash.hash(encode(image, 0.95f, false));
+		long low = PerceptualHash.hash(encode(image, 0.3f, false));
+
+		assertTrue(PerceptualHash.distance(high, low) <= 4);
+	}
+
+	@Test
+	public void hash_differentSize_isClose() throws IOException {
+		long large = PerceptualHash.hash(encode(drawScene(640, 480, false), 0.8f, false));
+		long small = PerceptualHash.hash(encode(drawScene(320, 240, false), 0.8f, false));
+		long tiny = PerceptualHash.hash(encode(drawScene(96, 72, false), 0.8f, false));
+
+		assertTrue(PerceptualHash.distance(large, small) <= 6);
+		assertTrue(PerceptualHash.distance(large, tiny) <= 10);
+	}
+
+	@Test
+	public void hash_differentImage_isFar() throws IOException {
+		long first = PerceptualHash.hash(encode(drawScene(400, 300, false), 0.8f, false));
+		long second = PerceptualHash.hash(encode(drawScene(400, 300, true), 0.8f, false));
+
+		assertTrue(PerceptualHash.distance(first, second) >= 16);
+	}
+
+	@Test
+	public void hash_grayImage_hashesLuminance() throws IOException {
+		BufferedImage colour = drawScene(400, 300, false);
+		BufferedImage gray = new BufferedImage(400, 300, BufferedImage.TYPE_BYTE_GRAY);
+		gray.getGraphics().drawImage(colour, 0, 0, null);
+
+		long colourHash = PerceptualHash.hash(encode(colour, 0.8f, false));
+		long grayHash = PerceptualHash.hash(encode(gray, 0.8f, false));
+
+		assertTrue(PerceptualHash.distance(colourHash, grayHash) <= 6);
+	}
+
+	@Test
+	public void hash_rgbImage_hashesLuminance() throws IOException {
+		BufferedImage image = drawScene(400, 300, false);
+
+		long ycc = PerceptualHash.hash(encode(image, 0.8f, false));
+		long rgb = PerceptualHash.hash(encodeRgb(image));
+
+		assertTrue(PerceptualHash.distance(ycc, rgb) <= 4);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.PixelDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.PixelImage;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PixelDecoderTest {
+
+	private static BufferedImage makeGrayPattern(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.getRaster().setSample(x, y, 0, (x * 13 + y * 5) & 0xFF);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Checks that the image decodes to the same samples as the JDK (which
+	 * uses libjpeg) gives
+	 */
+	private static void assertSameAsJdk(byte[] bytes) throws IOException {
+		int[] expected = SampleJpegs.decodeSamples(bytes);
+
+		PixelImage image = new PixelDecoder().decode(SampleJpegs.read(bytes));
+
+		byte[] samples = image.getSamples();
+		assertEquals(expected.length, samples.length);
+		for (int index = 0; index < expected.length; index++) {
+			if (expected[index] != (samples[index] & 0xFF)) {
+				int pixel = index / image.getChannels();
+				fail("Sample " + (index % image.getChannels()) + " of pixel " + (pixel % image.getWidth()) + "," +
+						  (pixel / image.getWidth()) + " expected " + expected[index] + " was " + (samples[index] & 0xFF));
+			}
+		}
+	}
+
+	@Test
+	public void decode_colourImage_matchesJdk() throws IOException {
+		assertSameAsJdk(SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.85f, false, 0));
+	}
+
+	@Test
+	public void decode_grayImage_matchesJdk() throws IOException {
+		byte[] bytes = SampleJpegs.encode(makeGrayPattern(45, 30), 0.75f, false, 0);
+
+		PixelImage image = new PixelDecoder().decode(SampleJpegs.read(bytes));
+
+		assertEquals(1, image.getChannels());
+		assertEquals(45, image.getWidth());
+		assertEquals(30, image.getHeight());
+		assertSameAsJdk(bytes);
+	}
+
+	@Test
+	public void decode_withRestarts_matchesJdk() throws IOException {
+		assertSameAsJdk(SampleJpegs.encode(SampleJpegs.makePattern(100, 60), 0.9f, false, 2));
+	}
+
+	@Test
+	public void decode_progressiveImage_matchesJdk() throws IOException {
+		assertSameAsJdk(SampleJpegs.encode(SampleJpegs.makePattern(70, 33), 0.8f, true, 0));
+	}
+
+	@Test
+	public void decode_knuth_matchesJdk() throws IOException {
+		assertSameAsJdk(SampleJpegs.write(SampleJpegs.readKnuth()));
+	}
+
+	@Test
+	public void decode_colourImage_givesRgb() throws IOException {
+		byte[] bytes = SampleJpegs.encode(SampleJpegs.makePattern(32, 16), 0.95f, false, 0);
+
+		PixelImage image = new PixelDecoder().decode(SampleJpegs.read(bytes));
+
+		assertEquals(3, image.getChannels());
+		// The pattern is red across, green down
+		assertTrue(image.getSample(31, 0, 0) > 200);
+		assertTrue(image.getSample(0, 0, 0) < 50);
+		assertTrue(image.getSample(0, 15, 1) > 200);
+	}
+
+	@Test
+	public void decode_scaled_givesReducedSizes() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.85f, false, 0));
+		PixelDecoder decoder = new PixelDecoder();
+
+		PixelImage half = decoder.decode(jpeg, 2);
+		PixelImage quarter = decoder.decode(jpeg, 4);
+		PixelImage eighth = decoder.decode(jpeg, 8);
+
+		assertEquals(41, half.getWidth());
+		assertEquals(24, half.getHeight());
+		assertEquals(21, quarter.getWidth());
+		assertEquals(12, quarter.getHeight());
+		assertEquals(11, eighth.getWidth());
+		assertEquals(6, eighth.getHeight());
+		assertEquals(3, eighth.getChannels());
+	}
+
+	@Test
+	public void decode_scaled_averagesFullSizeImage() throws IOException {
+		BufferedImage original = new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < 48; y++) {
+			for (int x = 0; x < 64; x++) {
+				original.getRaster().setSample(x, y, 0, 40 + x * 2 + y);
+			}
+		}
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(original, 0.95f, false, 0));
+		PixelImage full = new PixelDecoder().decode(jpeg);
+
+		for (int scale = 2; scale <= 8; scale *= 2) {
+			PixelImage reduced = new PixelDecoder().decode(jpeg, scale);
+			for (int y = 0; y < reduced.getHeight(); y++) {
+				for (int x = 0; x < reduced.getWidth(); x++) {
+					int sum = 0;
+					for (int row = 0; row < scale; row++) {
+						for (int column = 0; column < scale; column++) {
+							sum += full.getSample(x * scale + column, y * scale + row, 0);
+						}
+					}
+					int expected = sum / (scale * scale);
+					assertTrue("Scale " + scale + " at " + x + "," + y,
+							  Math.abs(expected - reduced.getSample(x, y, 0)) <= 3);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void decode_progressiveScaled_matchesSequentialScaled() throws IOException {
+		byte[] sequential = SampleJpegs.encode(SampleJpegs.makePattern(70, 33), 0.8f, false, 0);
+		byte[] progressive = SampleJpegs.encode(SampleJpegs.makePattern(70, 33), 0.8f, true, 0);
+
+		assertArrayEquals(new PixelDecoder().decode(SampleJpegs.read(sequential), 4).getSamples(),
+				  new PixelDecoder().decode(SampleJpegs.read(progressive), 4).getSamples());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void decode_badScale_throwsException() throws IOException {
+		new PixelDecoder().decode(SampleJpegs.read(SampleJpegs.encode(makeGrayPattern(8, 8), 0.9f, false, 0)), 3);
+	}
+
+	@Test
+	public void chooseScale_picksSmallestSizeThatFits() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(makeGrayPattern(800, 600), 0.5f, false, 0));
+		FrameLayout layout = new JpegStructure(jpeg).getLayout();
+
+		assertEquals(8, PixelDecoder.chooseScale(layout, 100, 75));
+		assertEquals(4, PixelDecoder.chooseScale(layout, 101, 75));
+		assertEquals(2, PixelDecoder.chooseScale(layout, 300, 10));
+		assertEquals(1, PixelDecoder.chooseScale(layout, 401, 10));
+		assertEquals(1, PixelDecoder.chooseScale(layout, 2000, 2000));
+
+		PixelImage image = new PixelDecoder().decodeToFit(jpeg, 150, 150);
+		assertEquals(200, image.getWidth());
+		assertEquals(150, image.getHeight());
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void getSample_outsideImage_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(makeGrayPattern(8, 8), 0.9f, false, 0));
+
+		new PixelDecoder().decode(jpeg).getSample(8, 0, 0);
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.PixelDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.PixelEncoder;
+import com.davidjohnburrowes.format.jpeg.codec.PixelImage;
+import com.davidjohnburrowes.format.jpeg.codec.QuantizationTables;
+import com.davidjohnburrowes.format.jpeg.codec.Subsampling;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.marker.DhtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.EoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PixelEncoderTest {
+
+	@Test
+	public void encode_grayImage_givesBaselineItems() throws IOException {
+		JpegData jpeg = new PixelEncoder(75).encode(toPixels(SampleJpegs.makeFlatGray(20, 10, 100)));
+
+		assertEquals(8, jpeg.getItemCount());
+		assertTrue(jpeg.getItem(0) instanceof SoiMarker);
+		assertTrue(jpeg.getItem(1) instanceof JfifSegment);
+		assertTrue(jpeg.getItem(2) instanceof DqtSegment);
+		assertTrue(jpeg.getItem(3) instanceof SofSegment);
+		assertTrue(jpeg.getItem(4) instanceof DhtSegment);
+		assertTrue(jpeg.getItem(5) instanceof SosSegment);
+		assertTrue(jpeg.getItem(6) instanceof EntropyData);
+		assertTrue(jpeg.getItem(7) instanceof EoiMarker);
+		assertEquals(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT.getValue(), ((SofSegment) jpeg.getItem(3)).getMarkerId());
+		assertTrue(jpeg.validate().isEmpty());
+	}
+
+	@Test
+	public void encode_flatGray_decodesExactly() throws IOException {
+		byte[] bytes = SampleJpegs.write(new PixelEncoder(75).encode(toPixels(SampleJpegs.makeFlatGray(19, 13, 100))));
+
+		int[] samples = SampleJpegs.decodeSamples(bytes);
+
+		assertEquals(19 * 13, samples.length);
+		for (int sample : samples) {
+			assertEquals(100, sample);
+		}
+	}
+
+	@Test
+	public void encode_eachSubsampling_decodesCloseToOriginal() throws IOException {
+		BufferedImage original = SampleJpegs.makePattern(37, 23);
+		PixelImage pixels = toPixels(original);
+
+		for (Subsampling subsampling : Subsampling.values()) {
+			JpegData jpeg = new PixelEncoder(90, subsampling).encode(pixels);
+			SofSegment frame = (SofSegment) jpeg.getItem(3);
+			assertEquals(subsampling.getHorizontalFactor(), frame.getComponent(0).getHorizontalScaling());
+			assertEquals(subsampling.getVerticalFactor(), frame.getComponent(0).getVerticalScaling());
+
+			int[] decoded = SampleJpegs.decodeSamples(SampleJpegs.write(jpeg));
+			assertEquals(pixels.getSamples().length, decoded.length);
+			assertTrue(subsampling + " differs too much", meanDifference(pixels.getSamples(), decoded) < 4.0);
+		}
+	}
+
+	@Test
+	public void encode_sameQuality_isAboutTheSizeOfTheJdksImage() throws IOException {
+		BufferedImage original = SampleJpegs.makePattern(160, 120);
+
+		int ours = SampleJpegs.write(new PixelEncoder(75, Subsampling.YCC_420).encode(toPixels(original))).length;
+		int theirs = SampleJpegs.encode(original, 0.75f, false, 0).length;
+
+		assertTrue(ours + " vs " + theirs, Math.abs(ours - theirs) < theirs / 10);
+	}
+
+	@Test
+	public void encode_higherQuality_givesLargerImage() throws IOException {
+		PixelImage pixels = toPixels(SampleJpegs.makePattern(64, 64));
+
+		int low = SampleJpegs.write(new PixelEncoder(30).encode(pixels)).length;
+		int high = SampleJpegs.write(new PixelEncoder(95).encode(pixels)).length;
+
+		assertTrue(low < high);
+	}
+
+	@Test
+	public void encode_givenTables_writesThem() throws IOException {
+		DqtQuantizationTable luminance = QuantizationTables.makeTable(0, 60, false);
+		DqtQuantizationTable chrominance = QuantizationTables.makeTable(2, 40, true);
+		PixelEncoder encoder = new PixelEncoder(luminance, chrominance, Subsampling.YCC_444);
+
+		JpegData jpeg = encoder.encode(toPixels(SampleJpegs.makePattern(16, 16)));
+
+		DqtSegment tables = (DqtSegment) jpeg.getItem(2);
+		assertEquals(2, tables.getTableCount());
+		for (int index = 0; index < 64; index++) {
+			assertEquals(luminance.getElement(index), tables.getTable(0).getElement(index));
+			assertEquals(chrominance.getElement(index), tables.getTable(1).getElement(index));
+		}
+		assertEquals(1, tables.getTable(1).getTableId());
+	}
+
+	@Test
+	public void encode_matchesOwnDecoder() throws IOException {
+		JpegData jpeg = new PixelEncoder(85, Subsampling.YCC_422).encode(toPixels(SampleJpegs.makePattern(50, 30)));
+
+		PixelImage ours = new PixelDecoder().decode(jpeg);
+		int[] theirs = SampleJpegs.decodeSamples(SampleJpegs.write(jpeg));
+
+		assertTrue(meanDifference(ours.getSamples(), theirs) < 1.0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_tableTooLargeForBaseline_throwsException() {
+		DqtQuantizationTable table = new DqtQuantizationTable();
+		table.setElement(5, 300);
+
+		new PixelEncoder(table, table, Subsampling.YCC_420);
+	}
+
+	private static PixelImage toPixels(BufferedImage image) {
+		int channels = image.getRaster().getNumBands();
+		int[] samples = image.getRaster().getPixels(0, 0, image.getWidth(), image.getHeight(), (int[]) null);
+		byte[] bytes = new byte[samples.length];
+		for (int index = 0; index < samples.length; index++) {
+			bytes[index] = (byte) samples[index];
+		}
+		return new PixelImage(image.getWidth(), image.getHeight(), channels, bytes);
+	}
+
+	private static double meanDifference(byte[] expected, int[] actual) {
+		long total = 0;
+		for (int index = 0; index < expected.length; index++) {
+			total += Math.abs((expected[index] & 0xFF) - actual[index]);
+		}
+		return (double) total / expected.length;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.ProgressionTranscoder;
+import com.davidjohnburrowes.format.jpeg.codec.ScanScript;
+import com.davidjohnburrowes.format.jpeg.codec.ScanSpec;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ProgressionTranscoderTest {
+
+	private static void checkSameImage(byte[] original, JpegData transcoded) throws IOException {
+		byte[] bytes = SampleJpegs.write(transcoded);
+
+		assertTrue(transcoded.validate().isEmpty());
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), SampleJpegs.read(bytes));
+		assertArrayEquals(SampleJpegs.decodePixels(original), SampleJpegs.decodePixels(bytes));
+	}
+
+	@Test
+	public void toProgressive_colourImage_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new ProgressionTranscoder().toProgressive(jpeg);
+
+		assertEquals(FrameMode.HUFF_PROGRESSIVE_DCT, new JpegStructure(jpeg).getFrameMode());
+		assertEquals(10, new JpegStructure(jpeg).getScans().size());
+		checkSameImage(original, jpeg);
+	}
+
+	@Test
+	public void toProgressive_grayImage_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makeFlatGray(33, 20, 77), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new ProgressionTranscoder().toProgressive(jpeg);
+
+		checkSameImage(original, jpeg);
+	}
+
+	@Test
+	public void toProgressive_withRestarts_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(64, 40), 0.95f, false, 3);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new ProgressionTranscoder().toProgressive(jpeg);
+
+		checkSameImage(original, jpeg);
+	}
+
+	@Test
+	public void toProgressive_withScript_usesIt() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+		ScanScript script = new ScanScript(Arrays.asList(
+				  new ScanSpec(new int[] { 0, 1, 2 }, 0, 0, 0, 0),
+				  new ScanSpec(new int[] { 0 }, 1, 63, 0, 0),
+				  new ScanSpec(new int[] { 1 }, 1, 63, 0, 0),
+				  new ScanSpec(new int[] { 2 }, 1, 63, 0, 0)));
+
+		new ProgressionTranscoder().toProgressive(jpeg, script);
+
+		assertEquals(4, new JpegStructure(jpeg).getScans().size());
+		checkSameImage(original, jpeg);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void toProgressive_withIncompleteScript_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.9f, false, 0));
+		ScanScript script = new ScanScript(Arrays.asList(
+				  new ScanSpec(new int[] { 0, 1, 2 }, 0, 0, 0, 0)));
+
+		new ProgressionTranscoder().toProgressive(jpeg, script);
+	}
+
+	@Test
+	public void toSequential_progressiveImage_isUnchangedBaseline() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.8f, true, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new ProgressionTranscoder().toSequential(jpeg);
+
+		assertEquals(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT, new JpegStructure(jpeg).getFrameMode());
+		assertEquals(1, new JpegStructure(jpeg).getScans().size());
+		checkSameImage(original, jpeg);
+	}
+
+	@Test
+	public void toProgressive_knuth_isUnchanged() throws IOException {
+		JpegData jpeg = SampleJpegs.readKnuth();
+		byte[] original = SampleJpegs.write(jpeg);
+
+		new ProgressionTranscoder().toProgressive(jpeg);
+		new ProgressionTranscoder().toSequential(jpeg);
+
+		checkSameImage(original, jpeg);
+	}
+}
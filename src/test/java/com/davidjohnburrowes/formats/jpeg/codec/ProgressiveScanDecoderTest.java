@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientReader;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.ProgressiveScanDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ProgressiveScanDecoderTest {
+
+	private void checkMatchesSequential(BufferedImage image, int restartInterval) throws IOException {
+		JpegStructure progressive = new JpegStructure(SampleJpegs.read(
+				  SampleJpegs.encode(image, 0.9f, true, restartInterval)));
+		assertTrue(progressive.getScans().size() > 1);
+
+		CoefficientStore store = new CoefficientStore(progressive.getLayout());
+		ProgressiveScanDecoder decoder = new ProgressiveScanDecoder(progressive);
+		for (Scan scan : progressive.getScans()) {
+			decoder.decode(scan, store);
+		}
+
+		CoefficientStore sequential = new CoefficientReader().read(
+				  SampleJpegs.read(SampleJpegs.encode(image, 0.9f, false, 0)));
+		CodecAssert.assertSameCoefficients(sequential, store);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNull_throwsException() {
+		new ProgressiveScanDecoder((FrameLayout) null);
+	}
+
+	@Test
+	public void decode_colourImage_matchesSequential() throws IOException {
+		checkMatchesSequential(SampleJpegs.makePattern(75, 51), 0);
+	}
+
+	@Test
+	public void decode_grayImage_matchesSequential() throws IOException {
+		BufferedImage image = new BufferedImage(40, 24, BufferedImage.TYPE_BYTE_GRAY);
+		image.getGraphics().drawImage(SampleJpegs.makePattern(40, 24), 0, 0, null);
+
+		checkMatchesSequential(image, 0);
+	}
+
+	@Test
+	public void decode_withRestarts_matchesSequential() throws IOException {
+		checkMatchesSequential(SampleJpegs.makePattern(64, 48), 2);
+	}
+}
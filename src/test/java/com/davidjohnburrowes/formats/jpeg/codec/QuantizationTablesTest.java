@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.QuantizationTables;
+import com.davidjohnburrowes.format.jpeg.codec.ZigZag;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class QuantizationTablesTest {
+
+	@Test
+	public void scale_quality50_givesExampleTables() {
+		int[] luminance = QuantizationTables.scale(50, false);
+		int[] chrominance = QuantizationTables.scale(50, true);
+
+		assertEquals(16, luminance[0]);
+		assertEquals(99, luminance[63]);
+		assertEquals(17, chrominance[0]);
+		assertEquals(99, chrominance[63]);
+	}
+
+	@Test
+	public void scale_quality100_givesOnes() {
+		for (int value : QuantizationTables.scale(100, false)) {
+			assertEquals(1, value);
+		}
+	}
+
+	@Test
+	public void scale_lowQuality_limitsTo255() {
+		int[] values = QuantizationTables.scale(1, false);
+
+		assertEquals(255, values[63]);
+		assertEquals(255, values[0]);
+	}
+
+	@Test
+	public void scale_quality75_matchesLibjpeg() {
+		int[] values = QuantizationTables.scale(75, false);
+
+		assertEquals(8, values[0]);
+		assertEquals(6, values[1]);
+		assertEquals(50, values[63]);
+	}
+
+	@Test
+	public void makeTable_storesValuesInZigZagOrder() {
+		int[] natural = QuantizationTables.scale(80, true);
+
+		DqtQuantizationTable table = QuantizationTables.makeTable(3, 80, true);
+
+		assertEquals(3, table.getTableId());
+		for (int index = 0; index < 64; index++) {
+			assertEquals(natural[ZigZag.toNatural(index)], table.getElement(index));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void scale_qualityZero_throwsException() {
+		QuantizationTables.scale(0, false);
+	}
+}
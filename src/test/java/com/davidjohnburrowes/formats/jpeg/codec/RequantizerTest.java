@@ -0,0 +1,197 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientReader;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.LosslessEncoder;
+import com.davidjohnburrowes.format.jpeg.codec.QuantizationTables;
+import com.davidjohnburrowes.format.jpeg.codec.Requantizer;
+import com.davidjohnburrowes.format.jpeg.codec.SampleRowSource;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.format.jpeg.codec.ZigZag;
+import com.davidjohnburrowes.format.jpeg.component.DqtQuantizationTable;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RequantizerTest {
+
+	private static int[] tableValues(JpegData jpeg, int component) {
+		JpegStructure structure = new JpegStructure(jpeg);
+		Scan scan = structure.getScans().get(0);
+		DqtQuantizationTable table = scan.getQuantizationTable(structure.getLayout().getQuantizationSelector(component));
+		int[] natural = new int[64];
+		for (int index = 0; index < 64; index++) {
+			natural[ZigZag.toNatural(index)] = table.getElement(index);
+		}
+		return natural;
+	}
+
+	@Test
+	public void requantize_lowerQuality_roundsEachCoefficient() throws IOException {
+		JpegData original = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(48, 40), 0.95f, false, 0));
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.write(original));
+
+		new Requantizer().requantize(jpeg, 50);
+		JpegData result = SampleJpegs.read(SampleJpegs.write(jpeg));
+
+		assertTrue(result.validate().isEmpty());
+		CoefficientStore before = new CoefficientReader().read(original);
+		CoefficientStore after = new CoefficientReader().read(result);
+		short[] oldBlock = new short[64];
+		short[] newBlock = new short[64];
+		for (int component = 0; component < 3; component++) {
+			int[] oldValues = tableValues(original, component);
+			int[] newValues = tableValues(result, component);
+			for (int row = 0; row < before.getBlocksHigh(component); row++) {
+				for (int column = 0; column < before.getBlocksWide(component); column++) {
+					before.getBlock(component, row, column, oldBlock);
+					after.getBlock(component, row, column, newBlock);
+					for (int index = 0; index < 64; index++) {
+						double exact = (double) oldBlock[index] * oldValues[index] / newValues[index];
+						assertEquals(Math.signum(exact) * Math.floor(Math.abs(exact) + 0.5), newBlock[index], 0.0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void requantize_lowerQuality_usesScaledTables() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.95f, false, 0));
+
+		new Requantizer().requantize(jpeg, 40);
+
+		assertArrayEquals(QuantizationTables.scale(40, false), tableValues(jpeg, 0));
+		assertArrayEquals(QuantizationTables.scale(40, true), tableValues(jpeg, 1));
+	}
+
+	@Test
+	public void requantize_lowerQuality_makesSmallerImageThatLooksTheSame() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(120, 80), 0.95f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new Requantizer().requantize(jpeg, 60);
+		byte[] bytes = SampleJpegs.write(jpeg);
+
+		assertTrue(bytes.length < original.length);
+		int[] expected = SampleJpegs.decodeSamples(original);
+		int[] actual = SampleJpegs.decodeSamples(bytes);
+		long total = 0;
+		for (int index = 0; index < expected.length; index++) {
+			total += Math.abs(expected[index] - actual[index]);
+		}
+		assertTrue((double) total / expected.length < 4.0);
+	}
+
+	@Test
+	public void requantize_finerTables_leavesCoefficients() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(40, 24), 0.5f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+		int[] oldValues = tableValues(jpeg, 0);
+
+		new Requantizer().requantize(jpeg, 95);
+
+		assertArrayEquals(oldValues, tableValues(jpeg, 0));
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), SampleJpegs.read(SampleJpegs.write(jpeg)));
+	}
+
+	@Test
+	public void requantize_progressiveWithRestarts_keepsScans() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(64, 48), 0.9f, true, 3));
+		int scanCount = new JpegStructure(jpeg).getScans().size();
+
+		new Requantizer().requantize(jpeg, 50);
+		JpegData result = SampleJpegs.read(SampleJpegs.write(jpeg));
+
+		JpegStructure structure = new JpegStructure(result);
+		assertEquals(FrameMode.HUFF_PROGRESSIVE_DCT, structure.getFrameMode());
+		assertEquals(scanCount, structure.getScans().size());
+		for (Scan scan : structure.getScans()) {
+			assertEquals(3, scan.getRestartInterval());
+		}
+		assertNotNull(SampleJpegs.decodeSamples(SampleJpegs.write(result)));
+	}
+
+	@Test
+	public void requantize_givenTable_onlyChangesThatTable() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.95f, false, 0));
+		int[] chrominance = tableValues(jpeg, 1);
+		DqtQuantizationTable[] targets = new DqtQuantizationTable[4];
+		targets[0] = QuantizationTables.makeTable(0, 30, false);
+
+		new Requantizer().requantize(jpeg, targets);
+
+		assertArrayEquals(QuantizationTables.scale(30, false), tableValues(jpeg, 0));
+		assertArrayEquals(chrominance, tableValues(jpeg, 1));
+	}
+
+	@Test
+	public void requantize_lowerQuality_replacesTablesRatherThanChangingThem() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.95f, false, 0));
+		JpegStructure structure = new JpegStructure(jpeg);
+		DqtQuantizationTable old = structure.getScans().get(0).getQuantizationTable(
+				  structure.getLayout().getQuantizationSelector(0));
+		int[] oldValues = tableValues(jpeg, 0);
+
+		new Requantizer().requantize(jpeg, 40);
+
+		int[] values = new int[64];
+		for (int index = 0; index < 64; index++) {
+			values[ZigZag.toNatural(index)] = old.getElement(index);
+		}
+		assertArrayEquals(oldValues, values);
+		assertArrayEquals(QuantizationTables.scale(40, false), tableValues(jpeg, 0));
+	}
+
+	@Test
+	public void requantize_baselineTooCoarse_leavesImage() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(32, 32), 0.95f, false, 0));
+		byte[] before = SampleJpegs.write(jpeg);
+		DqtQuantizationTable[] targets = new DqtQuantizationTable[4];
+		targets[1] = new DqtQuantizationTable();
+		targets[1].setElementPrecision(1);
+		for (int index = 0; index < 64; index++) {
+			targets[1].setElement(index, 300);
+		}
+
+		try {
+			new Requantizer().requantize(jpeg, targets);
+			fail("Expected an exception");
+		} catch (IllegalArgumentException e) {
+			assertArrayEquals(before, SampleJpegs.write(jpeg));
+		}
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void requantize_losslessImage_throwsException() {
+		JpegData jpeg = new LosslessEncoder(1, 0).encode(8, 8, 8, 1,
+				  new SampleRowSource() {
+			@Override
+			public void getRow(int component, int row, int[] samples) {
+			}
+		});
+
+		new Requantizer().requantize(jpeg, 50);
+	}
+}
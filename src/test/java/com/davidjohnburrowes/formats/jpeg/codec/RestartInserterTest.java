@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.JpegStructure;
+import com.davidjohnburrowes.format.jpeg.codec.RestartInserter;
+import com.davidjohnburrowes.format.jpeg.codec.Scan;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.marker.DriSegment;
+import com.davidjohnburrowes.format.jpeg.marker.RstMMarker;
+import com.davidjohnburrowes.formats.jpeg.test.CodecAssert;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RestartInserterTest {
+
+	private static void checkSameImage(byte[] original, JpegData changed) throws IOException {
+		byte[] bytes = SampleJpegs.write(changed);
+
+		assertTrue(changed.validate().isEmpty());
+		CodecAssert.assertSameCoefficients(SampleJpegs.read(original), SampleJpegs.read(bytes));
+		assertArrayEquals(SampleJpegs.decodePixels(original), SampleJpegs.decodePixels(bytes));
+	}
+
+	private static List<Integer> rstMarkerIds(JpegData jpeg) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (DataItem item : jpeg) {
+			if (item instanceof RstMMarker) {
+				result.add(((RstMMarker) item).getMarkerId());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void insertRestarts_sequentialImage_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(90, 70), 0.9f, false, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new RestartInserter().insertRestarts(jpeg, 2);
+
+		Scan scan = new JpegStructure(jpeg).getScans().get(0);
+		assertEquals(2, scan.getRestartInterval());
+		assertEquals(15, scan.getIntervals().size());
+		checkSameImage(original, jpeg);
+	}
+
+	@Test
+	public void insertRestarts_markersCycle() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makeFlatGray(80, 8, 10), 0.9f, false, 0));
+
+		new RestartInserter().insertRestarts(jpeg, 1);
+
+		List<Integer> ids = rstMarkerIds(jpeg);
+		assertEquals(9, ids.size());
+		for (int index = 0; index < ids.size(); index++) {
+			assertEquals(RstMMarker.FIRST_MARKERID + (index % 8), (int) ids.get(index));
+		}
+	}
+
+	@Test
+	public void insertRestarts_zero_removesRestarts() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(64, 40), 0.9f, false, 3);
+		JpegData jpeg = SampleJpegs.read(original);
+
+		new RestartInserter().insertRestarts(jpeg, 0);
+
+		assertEquals(0, new JpegStructure(jpeg).getScans().get(0).getRestartInterval());
+		assertTrue(rstMarkerIds(jpeg).isEmpty());
+		for (DataItem item : jpeg) {
+			assertFalse(item instanceof DriSegment);
+		}
+		checkSameImage(original, jpeg);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void insertRestarts_tooLarge_throwsException() throws IOException {
+		JpegData jpeg = SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makeFlatGray(8, 8, 10), 0.9f, false, 0));
+
+		new RestartInserter().insertRestarts(jpeg, 65536);
+	}
+
+	@Test
+	public void insertRestartsPerRow_progressiveImage_isUnchanged() throws IOException {
+		byte[] original = SampleJpegs.encode(SampleJpegs.makePattern(81, 47), 0.8f, true, 0);
+		JpegData jpeg = SampleJpegs.read(original);
+		int scanCount = new JpegStructure(jpeg).getScans().size();
+
+		new RestartInserter().insertRestartsPerRow(jpeg);
+
+		JpegStructure structure = new JpegStructure(jpeg);
+		FrameLayout layout = structure.getLayout();
+		assertEquals(scanCount, structure.getScans().size());
+		for (Scan scan : structure.getScans()) {
+			int[] components = layout.getScanComponents(scan.getHeader());
+			if (components.length == 1) {
+				assertEquals(layout.getComponentBlocksWide(components[0]), scan.getRestartInterval());
+				assertEquals(layout.getComponentBlocksHigh(components[0]), scan.getIntervals().size());
+			} else {
+				assertEquals(layout.getMcusPerRow(), scan.getRestartInterval());
+				assertEquals(layout.getMcuRows(), scan.getIntervals().size());
+			}
+		}
+		checkSameImage(original, jpeg);
+	}
+
+	@Test
+	public void insertRestartsPerRow_knuth_isUnchanged() throws IOException {
+		JpegData jpeg = SampleJpegs.readKnuth();
+		byte[] original = SampleJpegs.write(jpeg);
+
+		new RestartInserter().insertRestartsPerRow(jpeg);
+
+		checkSameImage(original, jpeg);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import com.davidjohnburrowes.format.jpeg.codec.ScanScript;
+import com.davidjohnburrowes.format.jpeg.codec.ScanSpec;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ScanScriptTest {
+
+	private static FrameLayout makeLayout(int componentCount) {
+		SofSegment sof = new SofSegment(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT.getValue());
+		sof.setImageWidth(16);
+		sof.setImageHeight(16);
+		for (int id = 1; id <= componentCount; id++) {
+			FrameComponent component = new FrameComponent();
+			component.setComponentId(id);
+			component.setHorizontalScaling(id == 1 ? 2 : 1);
+			component.setVerticalScaling(id == 1 ? 2 : 1);
+			sof.addComponent(component);
+		}
+		return new FrameLayout(sof);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_givenNoScans_throwsException() {
+		new ScanScript(new ArrayList<ScanSpec>());
+	}
+
+	@Test
+	public void sequential_interleavesComponents() {
+		ScanScript script = ScanScript.sequential(makeLayout(3));
+
+		assertEquals(1, script.getScans().size());
+		script.check(makeLayout(3), false);
+	}
+
+	@Test
+	public void progressive_isValid() {
+		for (int count = 1; count <= 4; count++) {
+			ScanScript.progressive(makeLayout(count)).check(makeLayout(count), true);
+		}
+		assertEquals(10, ScanScript.progressive(makeLayout(3)).getScans().size());
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void check_progressiveAsSequential_throwsException() {
+		ScanScript.progressive(makeLayout(1)).check(makeLayout(1), false);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void check_refinementBeforeFirst_throwsException() {
+		new ScanScript(Arrays.asList(
+				  new ScanSpec(new int[] { 0 }, 0, 0, 1, 0),
+				  new ScanSpec(new int[] { 0 }, 1, 63, 0, 0))).check(makeLayout(1), true);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void check_acBeforeDc_throwsException() {
+		new ScanScript(Arrays.asList(
+				  new ScanSpec(new int[] { 0 }, 1, 63, 0, 0),
+				  new ScanSpec(new int[] { 0 }, 0, 0, 0, 0))).check(makeLayout(1), true);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void check_interleavedAc_throwsException() {
+		new ScanScript(Arrays.asList(
+				  new ScanSpec(new int[] { 0, 1 }, 0, 0, 0, 0),
+				  new ScanSpec(new int[] { 0, 1 }, 1, 63, 0, 0))).check(makeLayout(2), true);
+	}
+
+	@Test(expected=InvalidJpegFormat.class)
+	public void check_componentCodedTwice_throwsException() {
+		new ScanScript(Arrays.asList(
+				  new ScanSpec(new int[] { 0 }, 0, 63, 0, 0),
+				  new ScanSpec(new int[] { 0 }, 0, 63, 0, 0))).check(makeLayout(1), false);
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.formats.jpeg.codec;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.PixelDecoder;
+import com.davidjohnburrowes.format.jpeg.codec.PixelImage;
+import com.davidjohnburrowes.format.jpeg.codec.ThumbnailEmbedder;
+import com.davidjohnburrowes.format.jpeg.codec.ThumbnailFormat;
+import com.davidjohnburrowes.format.jpeg.component.Thumbnail3BytesPerPixel;
+import com.davidjohnburrowes.format.jpeg.component.ThumbnailJpeg;
+import com.davidjohnburrowes.format.jpeg.marker.AppNSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfxxSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.formats.jpeg.test.SampleJpegs;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ThumbnailEmbedderTest {
+
+	private static JpegData makeImage(int width, int height) throws IOException {
+		return SampleJpegs.read(SampleJpegs.encode(SampleJpegs.makePattern(width, height), 0.9f, false, 0));
+	}
+
+	private static void deleteJfif(JpegData jpeg) {
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (jpeg.getItem(index) instanceof JfifSegment) {
+				jpeg.deleteItem(index);
+				return;
+			}
+		}
+	}
+
+	private static int count(JpegData jpeg, Class<?> type) {
+		int count = 0;
+		for (int index = 0; index < jpeg.getItemCount(); index++) {
+			if (type.isInstance(jpeg.getItem(index))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void constructor_tooWide_throws() {
+		new ThumbnailEmbedder(256, 10);
+	}
+
+	@Test
+	public void makeThumbnail_keepsShapeWithinBounds() throws IOException {
+		PixelImage thumbnail = new ThumbnailEmbedder(40, 40).makeThumbnail(makeImage(320, 160));
+
+		assertEquals(40, thumbnail.getWidth());
+		assertEquals(20, thumbnail.getHeight());
+		assertEquals(3, thumbnail.getChannels());
+	}
+
+	@Test
+	public void makeThumbnail_smallImage_isNotEnlarged() throws IOException {
+		PixelImage thumbnail = new ThumbnailEmbedder().makeThumbnail(makeImage(30, 20));
+
+		assertEquals(30, thumbnail.getWidth());
+		assertEquals(20, thumbnail.getHeight());
+	}
+
+	/**
+	 * Each thumbnail pixel should be about the average of the 8x8 pixels it
+	 * covers. The image's chroma is subsampled, so at 1/8 each chroma value
+	 * covers 2x2 thumbnail pixels, hence the tolerance.
+	 */
+	@Test
+	public void makeThumbnail_isCloseToTheImage() throws IOException {
+		BufferedImage image = new BufferedImage(256, 128, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 128; y++) {
+			for (int x = 0; x < 256; x++) {
+				image.setRGB(x, y, (x << 16) | ((y * 2) << 8) | ((x + y) / 2));
+			}
+		}
+		byte[] bytes = SampleJpegs.encode(image, 0.9f, false, 0);
+		PixelImage full = new PixelDecoder().decode(SampleJpegs.read(bytes));
+
+		PixelImage thumbnail = new ThumbnailEmbedder(32, 32).makeThumbnail(SampleJpegs.read(bytes));
+
+		assertEquals(32, thumbnail.getWidth());
+		assertEquals(16, thumbnail.getHeight());
+		byte[] samples = thumbnail.getSamples();
+		byte[] fullSamples = full.getSamples();
+		for (int y = 0; y < 16; y++) {
+			for (int x = 0; x < 32; x++) {
+				for (int channel = 0; channel < 3; channel++) {
+					int sum = 0;
+					for (int row = 0; row < 8; row++) {
+						for (int column = 0; column < 8; column++) {
+							sum += fullSamples[((y * 8 + row) * 256 + x * 8 + column) * 3 + channel] & 0xFF;
+						}
+					}
+					int actual = samples[(y * 32 + x) * 3 + channel] & 0xFF;
+					assertTrue("pixel " + x + "," + y + "," + channel, Math.abs(sum / 64 - actual) <= 12);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void embed_jfif_storesThumbnailInJfifSegment() throws IOException {
+		JpegData jpeg = makeImage(200, 100);
+
+		new ThumbnailEmbedder(64, 64).embed(jpeg, ThumbnailFormat.JFIF);
+
+		JpegData reread = SampleJpegs.read(SampleJpegs.write(jpeg));
+		assertTrue(reread.getItem(1) instanceof JfifSegment);
+		Thumbnail3BytesPerPixel thumbnail = ((JfifSegment) reread.getItem(1)).getThumbnail();
+		assertEquals(64, thumbnail.getWidth());
+		assertEquals(32, thumbnail.getHeight());
+		assertEquals(64 * 32 * 3, thumbnail.getPixelBytes().length);
+		assertEquals(0, count(reread, JfxxSegment.class));
+		assertTrue(reread.validate().isEmpty());
+	}
+
+	@Test
+	public void embed_jfxxRgb_addsJfxxSegmentAfterJfif() throws IOException {
+		JpegData jpeg = makeImage(100, 100);
+
+		new ThumbnailEmbedder(50, 50).embed(jpeg, ThumbnailFormat.JFXX_RGB);
+
+		JpegData reread = SampleJpegs.read(SampleJpegs.write(jpeg));
+		assertTrue(reread.getItem(1) instanceof JfifSegment);
+		JfxxSegment jfxx = (JfxxSegment) reread.getItem(2);
+		assertEquals(JfxxSegment.THREE_BYTES_PER_PIXEL, jfxx.getExtensionCode());
+		assertEquals(50, ((Thumbnail3BytesPerPixel) jfxx.getThumbnail()).getWidth());
+		assertTrue(reread.validate().isEmpty());
+	}
+
+	@Test
+	public void embed_jfxxJpeg_storesJpegWithoutJfif() throws IOException {
+		JpegData jpeg = makeImage(240, 180);
+
+		new ThumbnailEmbedder().embed(jpeg, ThumbnailFormat.JFXX_JPEG);
+
+		JpegData reread = SampleJpegs.read(SampleJpegs.write(jpeg));
+		JfxxSegment jfxx = (JfxxSegment) reread.getItem(2);
+		assertEquals(JfxxSegment.JPEG, jfxx.getExtensionCode());
+		JpegData thumbnail = ((ThumbnailJpeg) jfxx.getThumbnail()).getJpegImage();
+		assertEquals(0, count(thumbnail, JfifSegment.class));
+		PixelImage pixels = new PixelDecoder().decode(thumbnail);
+		assertEquals(160, pixels.getWidth());
+		assertEquals(120, pixels.getHeight());
+	}
+
+	@Test
+	public void embed_twice_replacesThumbnail() throws IOException {
+		JpegData jpeg = makeImage(100, 100);
+		int items = jpeg.getItemCount();
+
+		new ThumbnailEmbedder(50, 50).embed(jpeg, ThumbnailFormat.JFXX_RGB);
+		new ThumbnailEmbedder(20, 20).embed(jpeg, ThumbnailFormat.JFXX_JPEG);
+
+		assertEquals(items + 1, jpeg.getItemCount());
+		assertEquals(1, count(jpeg, JfxxSegment.class));
+		assertTrue(((JfxxSegment) jpeg.getItem(2)).getThumbnail() instanceof ThumbnailJpeg);
+	}
+
+	@Test
+	public void embed_noJfif_addsJfifAfterSoi() throws IOException {
+		JpegData jpeg = makeImage(64, 64);
+		deleteJfif(jpeg);
+
+		new ThumbnailEmbedder(16, 16).embed(jpeg, ThumbnailFormat.JFIF);
+
+		assertTrue(jpeg.getItem(0) instanceof SoiMarker);
+		assertTrue(jpeg.getItem(1) instanceof JfifSegment);
+		assertEquals(1, count(jpeg, JfifSegment.class));
+	}
+
+	@Test
+	public void embed_rgbImageWithoutJfif_throws() throws IOException {
+		JpegData jpeg = makeImage(64, 64);
+		deleteJfif(jpeg);
+		AppNSegment adobe = new AppNSegment(0xEE);
+		byte[] bytes = new byte[12];
+		System.arraycopy("Adobe".getBytes(StandardCharsets.US_ASCII), 0, bytes, 0, 5);
+		adobe.setBytes(bytes);
+		jpeg.insertItem(1, adobe);
+		int items = jpeg.getItemCount();
+
+		try {
+			new ThumbnailEmbedder().embed(jpeg, ThumbnailFormat.JFIF);
+			fail("Expected an exception");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(items, jpeg.getItemCount());
+		}
+	}
+}
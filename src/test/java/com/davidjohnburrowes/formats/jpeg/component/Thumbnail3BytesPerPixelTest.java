@@ -118,6 +118,15 @@ public class Thumbnail3BytesPerPixelTest {
 		assertEquals(1, thumbnail.validate().size());
 	}
 
+	@Test
+	public void validate_withValidThumbnail() throws IOException {
+		thumbnail.setWidth(2);
+		thumbnail.setHeight(3);
+		thumbnail.setPixelBytes(new byte[2 * 3 * 3]);
+
+		assertEquals(0, thumbnail.validate().size());
+	}
+
 	@Test
 	public void read_goodInput_readSuccessfully() throws IOException {
 		InputStream stream = utils.makeInputStream("00 FF");
@@ -66,4 +66,13 @@ public class ThumbnailJpegTest {
 		thumbnail.setJpegImage(jpeg);
 		assertFalse(thumbnail.equals(new ThumbnailJpeg()));
 	}
+
+	@Test
+	public void validate_withInvalidImage_reportsItsProblems() {
+		JpegData jpeg = new JpegData();
+		thumbnail.setJpegImage(jpeg);
+
+		assertEquals(jpeg.validate().size(), thumbnail.validate().size());
+		assertFalse(thumbnail.validate().isEmpty());
+	}
 }
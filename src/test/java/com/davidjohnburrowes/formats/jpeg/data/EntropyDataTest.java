@@ -20,6 +20,7 @@ import com.davidjohnburrowes.format.jpeg.data.EntropyData;
 import com.davidjohnburrowes.format.jpeg.support.DataMode;
 import com.davidjohnburrowes.format.jpeg.support.InvalidJpegFormat;
 import com.davidjohnburrowes.formats.jpeg.test.TestUtils;
+import com.davidjohnburrowes.util.ContentDigest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -171,6 +172,64 @@ public class EntropyDataTest {
 		data.setDataMode(DataMode.STRICT);
 	}
 
+	@Test
+	public void testGetSizeOnDisk_countsEscapedFF() throws IOException {
+		data.setData(utils.makeByteArray("00 FF 01 FF"));
+
+		assertEquals(6, data.getSizeOnDisk());
+	}
+
+	@Test
+	public void testGetSizeOnDisk_withTrailingFF_doesNotCountEscape() throws IOException {
+		InputStream stream = utils.makeInputStream("00 01 FF");
+		data.setDataMode(DataMode.LAX);
+		data.read(stream);
+
+		assertEquals(3, data.getSizeOnDisk());
+	}
+
+	@Test
+	public void testGetDigest_readAndSetData_same() throws IOException {
+		data.read(utils.makeInputStream("00 01 FF 00 23"));
+		EntropyData other = new EntropyData();
+		other.setData(new byte[] {0, 1, -1, 35});
+
+		assertEquals(other.getDigest(), data.getDigest());
+	}
+
+	@Test
+	public void testGetDigest_afterSetData_isForNewData() throws IOException {
+		data.read(utils.makeInputStream("00 01 02"));
+		ContentDigest before = data.getDigest();
+
+		data.setData(new byte[] {0, 1, 3});
+
+		assertFalse(before.equals(data.getDigest()));
+		assertEquals(ContentDigest.of(new byte[] {0, 1, 3}), data.getDigest());
+	}
+
+	@Test
+	public void testGetDigest_afterRead_isForNewData() throws IOException {
+		data.setData(new byte[] {0, 1, 3});
+		ContentDigest before = data.getDigest();
+
+		data.read(utils.makeInputStream("00 01 02"));
+
+		assertFalse(before.equals(data.getDigest()));
+		assertEquals(ContentDigest.of(new byte[] {0, 1, 2}), data.getDigest());
+	}
+
+	@Test
+	public void testHashCode_dependsOnlyOnData() throws IOException {
+		data.setDataMode(DataMode.LAX);
+		data.read(utils.makeInputStream("00 01 FF"));
+		EntropyData other = new EntropyData();
+		other.setData(new byte[] {0, 1, -1});
+
+		assertEquals(other, data);
+		assertEquals(other.hashCode(), data.hashCode());
+	}
+
 	@Test
 	public void equals_twoEmptyEntropyData_equal() throws IOException {
 		assertEquals(data, new EntropyData());
@@ -87,4 +87,41 @@ public class AppNSegmentTest {
 		GenericSegment other = new GenericSegment(AppNSegment.FIRST_MARKERID);
 		assertFalse(segment.equals(other));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void isAdobe_adobeSegment_isTrue() throws IOException {
+		AppNSegment adobe = new AppNSegment(AppNSegment.ADOBE_MARKERID);
+		adobe.setBytes(utils.makeByteArray("41 64 6F 62 65 00 64 00 00 00 00 01"));
+
+		assertTrue(adobe.isAdobe());
+		assertFalse(adobe.isIccProfile());
+		assertTrue(adobe.describesColor());
+	}
+
+	@Test
+	public void isAdobe_otherApp14_isFalse() throws IOException {
+		AppNSegment other = new AppNSegment(AppNSegment.ADOBE_MARKERID);
+		other.setBytes(utils.makeByteArray("41 64 6F"));
+
+		assertFalse(other.isAdobe());
+		assertFalse(other.describesColor());
+	}
+
+	@Test
+	public void isIccProfile_iccSegment_isTrue() throws IOException {
+		AppNSegment icc = new AppNSegment(AppNSegment.ICC_PROFILE_MARKERID);
+		icc.setBytes(utils.makeByteArray("49 43 43 5F 50 52 4F 46 49 4C 45 00 01 01 AA"));
+
+		assertTrue(icc.isIccProfile());
+		assertFalse(icc.isAdobe());
+		assertTrue(icc.describesColor());
+	}
+
+	@Test
+	public void describesColor_sameBytesInOtherMarker_isFalse() throws IOException {
+		AppNSegment other = new AppNSegment(AppNSegment.FIRST_MARKERID);
+		other.setBytes(utils.makeByteArray("49 43 43 5F 50 52 4F 46 49 4C 45 00 01 01 AA"));
+
+		assertFalse(other.describesColor());
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.formats.jpeg.test;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientReader;
+import com.davidjohnburrowes.format.jpeg.codec.CoefficientStore;
+import com.davidjohnburrowes.format.jpeg.codec.FrameLayout;
+import static org.junit.Assert.*;
+
+/**
+ * Assertions about decoded coefficients, for the codec tests.
+ */
+public class CodecAssert {
+
+	/**
+	 * Checks that two stores hold the same coefficients for every block that
+	 * covers the image.
+	 */
+	public static void assertSameCoefficients(CoefficientStore expected, CoefficientStore actual) {
+		FrameLayout layout = expected.getLayout();
+		short[] expectedBlock = new short[64];
+		short[] actualBlock = new short[64];
+
+		assertEquals(layout.getComponentCount(), actual.getLayout().getComponentCount());
+		for (int component = 0; component < layout.getComponentCount(); component++) {
+			assertEquals(layout.getComponentBlocksWide(component), actual.getLayout().getComponentBlocksWide(component));
+			assertEquals(layout.getComponentBlocksHigh(component), actual.getLayout().getComponentBlocksHigh(component));
+			for (int row = 0; row < layout.getComponentBlocksHigh(component); row++) {
+				for (int column = 0; column < layout.getComponentBlocksWide(component); column++) {
+					expected.getBlock(component, row, column, expectedBlock);
+					actual.getBlock(component, row, column, actualBlock);
+					assertArrayEquals("Block " + component + ":" + row + ":" + column,
+							  expectedBlock, actualBlock);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that two images hold the same coefficients.
+	 */
+	public static void assertSameCoefficients(JpegData expected, JpegData actual) {
+		CoefficientReader reader = new CoefficientReader();
+		CoefficientStore expectedStore = reader.read(expected);
+		CoefficientStore actualStore = reader.read(actual);
+
+		assertSameCoefficients(expectedStore, actualStore);
+	}
+}
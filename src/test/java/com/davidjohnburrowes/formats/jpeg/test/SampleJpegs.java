@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.formats.jpeg.test;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Makes JPEG images for the codec tests, using the JDK's own JPEG writer.
+ */
+public class SampleJpegs {
+	private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+
+	/**
+	 * @return A gray scale image with every sample set to the value
+	 */
+	public static BufferedImage makeFlatGray(int width, int height, int value) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.getRaster().setSample(x, y, 0, value);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @return A colour image with a smooth pattern in it
+	 */
+	public static BufferedImage makePattern(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int red = (x * 255) / Math.max(1, width - 1);
+				int green = (y * 255) / Math.max(1, height - 1);
+				int blue = ((x + y) * 4) & 0xFF;
+				image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Encodes the image as a JPEG
+	 *
+	 * @param image The image to encode
+	 * @param quality The quality, 0-1
+	 * @param progressive True for a progressive JPEG
+	 * @param restartInterval The restart interval, or 0 for none
+	 */
+	public static byte[] encode(BufferedImage image, float quality, boolean progressive,
+			  int restartInterval) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality);
+		if (progressive) {
+			param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+		}
+
+		IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+		if (restartInterval > 0) {
+			IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA);
+			IIOMetadataNode markers = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+			IIOMetadataNode dri = new IIOMetadataNode("dri");
+			dri.setAttribute("interval", Integer.toString(restartInterval));
+			markers.insertBefore(dri, markers.getFirstChild());
+			metadata.setFromTree(JPEG_METADATA, root);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageOutputStream output = ImageIO.createImageOutputStream(bytes);
+		writer.setOutput(output);
+		writer.write(null, new IIOImage(image, null, metadata), param);
+		output.close();
+		writer.dispose();
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return The JpegData read from the bytes
+	 */
+	public static JpegData read(byte[] bytes) throws IOException {
+		JpegData jpeg = new JpegData();
+		jpeg.read(new ByteArrayInputStream(bytes));
+		return jpeg;
+	}
+
+	/**
+	 * @return The bytes of the JpegData
+	 */
+	public static byte[] write(JpegData jpeg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		jpeg.write(bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return The pixels of the JPEG, as decoded by the JDK, in RGB
+	 */
+	public static int[] decodePixels(byte[] bytes) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	/**
+	 * @return The samples of the JPEG, as decoded by the JDK, interleaved
+	 *			(gray, or R, G and B)
+	 */
+	public static int[] decodeSamples(byte[] bytes) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+		return image.getRaster().getPixels(0, 0, image.getWidth(), image.getHeight(), (int[]) null);
+	}
+
+	/**
+	 * @return The JpegData for the knuth.jpg test resource
+	 */
+	public static JpegData readKnuth() throws IOException {
+		return readResource("knuth.jpg");
+	}
+
+	/**
+	 * Reads one of the test resources. Besides knuth.jpg, these are:
+	 * colour.jpg, a 64x48 4:2:0 image made by the JDK's writer; and
+	 * knuth-arithmetic.jpg, knuth-arithmetic-progressive.jpg,
+	 * colour-arithmetic.jpg and colour-arithmetic-progressive.jpg, which
+	 * libjpeg-turbo 2.1.5 made from those two by transcoding their
+	 * coefficients to arithmetic coding (as jpegtran -arithmetic does, with
+	 * -progressive for the progressive ones).
+	 *
+	 * @param name The name of the resource
+	 * @return The JpegData read from it
+	 */
+	public static JpegData readResource(String name) throws IOException {
+		InputStream stream = SampleJpegs.class.getResourceAsStream(
+				  "/com/davidjohnburrowes/formats/jpeg/resources/" + name);
+		try {
+			JpegData jpeg = new JpegData();
+			jpeg.read(stream);
+			return jpeg;
+		} finally {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.davidjohnburrowes.formats.jpeg.validate;
+
+import com.davidjohnburrowes.format.jpeg.JpegData;
+import com.davidjohnburrowes.format.jpeg.component.FrameComponent;
+import com.davidjohnburrowes.format.jpeg.component.ThumbnailJpeg;
+import com.davidjohnburrowes.format.jpeg.data.DataItem;
+import com.davidjohnburrowes.format.jpeg.data.EntropyData;
+import com.davidjohnburrowes.format.jpeg.data.ExtraFf;
+import com.davidjohnburrowes.format.jpeg.marker.ComSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DhpSegment;
+import com.davidjohnburrowes.format.jpeg.marker.DqtSegment;
+import com.davidjohnburrowes.format.jpeg.marker.EoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.JfifSegment;
+import com.davidjohnburrowes.format.jpeg.marker.JfxxSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SofSegment;
+import com.davidjohnburrowes.format.jpeg.marker.SoiMarker;
+import com.davidjohnburrowes.format.jpeg.marker.SosSegment;
+import com.davidjohnburrowes.format.jpeg.support.FrameMode;
+import com.davidjohnburrowes.format.jpeg.validate.AutoDetectingValidator;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AutoDetectingValidatorTest {
+
+	private AutoDetectingValidator validator;
+	private SofSegment sof;
+
+	@Before
+	public void setUp() {
+		validator = new AutoDetectingValidator();
+		sof = new SofSegment(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT.getValue());
+
+		for (int id = 1; id <= 3; id++) {
+			FrameComponent c = new FrameComponent();
+			c.setComponentId(id);
+			sof.addComponent(c);
+		}
+	}
+
+	@Test
+	public void validate_emptyList_hasProblem() {
+		assertEquals(1, validator.validate(new ArrayList<DataItem>()).size());
+	}
+
+	@Test
+	public void validate_nonHierarchical_noProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(new ComSegment());
+		elements.add(new ExtraFf());
+		elements.add(new DqtSegment());
+		elements.add(sof);
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertEquals(0, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_nonHierarchical_missingEoi_hasProblem() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(sof);
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+
+		assertEquals(1, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_nonHierarchical_withSosBeforeSof_hasProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(new SosSegment());
+		elements.add(new EoiMarker());
+
+		assertFalse(validator.validate(elements).isEmpty());
+	}
+
+	@Test
+	public void validate_hierarchical_noProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(new DqtSegment());
+		elements.add(new DhpSegment());
+		elements.add(new SofSegment(SofSegment.FIRST2_MARKERID));
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new DqtSegment());
+		elements.add(new SofSegment(SofSegment.FIRST2_MARKERID));
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertEquals(0, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_twoFramesWithoutDhp_hasProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(new SofSegment(SofSegment.FIRST2_MARKERID));
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new SofSegment(SofSegment.FIRST2_MARKERID));
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertFalse(validator.validate(elements).isEmpty());
+	}
+
+	@Test
+	public void validate_hierarchical_missingFrame_hasProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(new DhpSegment());
+		elements.add(new EoiMarker());
+
+		assertEquals(2, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_jfif_noProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		elements.add(new SoiMarker());
+		elements.add(new JfifSegment());
+		elements.add(new JfxxSegment());
+		elements.add(sof);
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertEquals(0, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_jfif_withInvalidSof_hasProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		sof.getComponent(0).setComponentId(2);
+
+		elements.add(new SoiMarker());
+		elements.add(new JfifSegment());
+		elements.add(sof);
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertEquals(1, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_notJfif_withSofThatWouldBeInvalidInJfif_noProblems() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		sof.getComponent(0).setComponentId(2);
+
+		elements.add(new SoiMarker());
+		elements.add(sof);
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertEquals(0, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_jfxxWithThumbnailWithJfif_hasProblem() {
+		List<DataItem> elements = new ArrayList<DataItem>();
+		JfxxSegment jfxx = new JfxxSegment();
+		ThumbnailJpeg thumb = new ThumbnailJpeg();
+		JpegData jpeg = new JpegData();
+		jpeg.addItem(new SoiMarker());
+		jpeg.addItem(new JfifSegment());
+		jpeg.addItem(sof);
+		jpeg.addItem(new SosSegment());
+		jpeg.addItem(new EntropyData());
+		jpeg.addItem(new EoiMarker());
+		thumb.setJpegImage(jpeg);
+		jfxx.setThumbnail(thumb);
+
+		elements.add(new SoiMarker());
+		elements.add(new JfifSegment());
+		elements.add(jfxx);
+		elements.add(sof);
+		elements.add(new SosSegment());
+		elements.add(new EntropyData());
+		elements.add(new EoiMarker());
+
+		assertEquals(1, validator.validate(elements).size());
+	}
+
+	@Test
+	public void validate_canBeReusedAcrossFiles() {
+		List<DataItem> jfif = new ArrayList<DataItem>();
+		jfif.add(new SoiMarker());
+		jfif.add(new JfifSegment());
+		jfif.add(sof);
+		jfif.add(new SosSegment());
+		jfif.add(new EntropyData());
+		jfif.add(new EoiMarker());
+
+		SofSegment plainSof = new SofSegment(FrameMode.HUFF_BASELINE_SEQUENTIAL_DCT.getValue());
+		FrameComponent c = new FrameComponent();
+		c.setComponentId(7);
+		plainSof.addComponent(c);
+		List<DataItem> plain = new ArrayList<DataItem>();
+		plain.add(new SoiMarker());
+		plain.add(plainSof);
+		plain.add(new SosSegment());
+		plain.add(new EntropyData());
+		plain.add(new EoiMarker());
+
+		assertEquals(0, validator.validate(jfif).size());
+		assertEquals(0, validator.validate(plain).size());
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2014,2017 柏大衛
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.davidjohnburrowes.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ContentDigestTest {
+
+	private static ContentDigest digest(String text) {
+		return ContentDigest.of(text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void of_emptyArray_isZero() {
+		assertEquals(new ContentDigest(0, 0), ContentDigest.of(new byte[0]));
+	}
+
+	@Test
+	public void of_matchesMurmurHash3() {
+		assertEquals("e34bbc7bbc071b6c7a433ca9c49a9347",
+				  digest("The quick brown fox jumps over the lazy dog").toString());
+		assertEquals("cbd8a7b341bd9b025b1e906a48ae1d19", digest("hello").toString());
+	}
+
+	@Test
+	public void of_partOfArray_sameAsCopyOfPart() {
+		byte[] bytes = new byte[100];
+		for (int index = 0; index < bytes.length; index++) {
+			bytes[index] = (byte) (index * 37);
+		}
+
+		for (int length = 0; length < 40; length++) {
+			assertEquals(ContentDigest.of(Arrays.copyOfRange(bytes, 7, 7 + length)),
+					  ContentDigest.of(bytes, 7, length));
+		}
+	}
+
+	@Test
+	public void of_oneByteDifferent_differs() {
+		assertFalse(digest("abcdefghijklmnopq").equals(digest("abcdefghijklmnopr")));
+		assertFalse(digest("abc").equals(digest("abc\0")));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void of_pastEndOfArray_throwsException() {
+		ContentDigest.of(new byte[4], 2, 3);
+	}
+
+	@Test
+	public void equals_sameValues_equalWithSameHashCode() {
+		ContentDigest digest = new ContentDigest(1, 2);
+
+		assertEquals(new ContentDigest(1, 2), digest);
+		assertEquals(new ContentDigest(1, 2).hashCode(), digest.hashCode());
+		assertFalse(new ContentDigest(2, 1).equals(digest));
+	}
+}